@@ -0,0 +1,52 @@
+package org.jpoetker.objstore.atmos;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures turning a 404 response into an exception, as on every existence check of a
+ * missing object.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ErrorParsingBenchmark {
+
+	private HttpResponse notFound;
+
+	@Setup
+	public void setUp() throws Exception {
+		notFound = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 404, "Not Found"));
+		// the entity is backed by a byte array, so it can be read on every invocation
+		notFound.setEntity(new ByteArrayEntity(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Error>\n\t<Code>1003</Code>\n"
+				+ "\t<Message>The requested object was not found.</Message>\n</Error>\n").getBytes("UTF-8")));
+	}
+
+	@Benchmark
+	public AtmosStorageException parseNotFound() {
+		try {
+			new AtmosResponse(notFound);
+		} catch (AtmosStorageException e) {
+			return e;
+		}
+		throw new IllegalStateException("A 404 response should throw");
+	}
+}
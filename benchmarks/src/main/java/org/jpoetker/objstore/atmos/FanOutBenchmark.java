@@ -0,0 +1,116 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.ExecutorAsyncObjectStore;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.VirtualThreads;
+import org.jpoetker.objstore.atmos.simulator.AtmosSimulator;
+import org.jpoetker.objstore.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to complete a burst of concurrent system metadata lookups through
+ * <code>ExecutorAsyncObjectStore</code>, with the same number of callers blocked on the
+ * server at once in both modes.
+ *
+ * "platform" runs the calls on a fixed pool of <code>concurrency</code> platform threads
+ * in the <code>PLATFORM_THREADS</code> execution mode, the blocking client with a
+ * <code>PoolingHttpClientConnectionManager</code>; "virtual" runs every call on its own
+ * virtual thread in the <code>VIRTUAL_THREADS</code> execution mode, where the calls past
+ * <code>concurrency</code> wait for a connection. Both have a pool of
+ * <code>concurrency</code> connections, so the difference is the cost of the threads and
+ * of the connection manager. "virtual" needs Java 21 or later, on older versions its
+ * setup fails rather than measure platform threads twice.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+
+	@Param({"platform", "virtual"})
+	public String mode;
+
+	@Param({"1000", "10000"})
+	public int calls;
+
+	// callers blocked on the server at once, and connections, in both modes
+	@Param({"200"})
+	public int concurrency;
+
+	@Param({"20"})
+	public long latencyMillis;
+
+	private AtmosSimulator simulator;
+	private AtmosObjectStore objectStore;
+	private ExecutorAsyncObjectStore async;
+	private String existingId;
+
+	@Setup
+	public void setUp() throws Exception {
+		if ("virtual".equals(mode) && !VirtualThreads.isAvailable()) {
+			throw new IllegalStateException("Virtual threads are not available before Java 21");
+		}
+		simulator = new AtmosSimulator();
+		simulator.addUser(BenchmarkData.UID, BenchmarkData.SHARED_SECRET);
+		simulator.start();
+
+		objectStore = new AtmosObjectStore(simulator.getHost(), simulator.getPort(), "http", BenchmarkData.UID, BenchmarkData.SHARED_SECRET);
+		objectStore.setMaxConnections(concurrency);
+		if ("virtual".equals(mode)) {
+			objectStore.setExecutionMode(AtmosObjectStore.ExecutionMode.VIRTUAL_THREADS);
+			async = ExecutorAsyncObjectStore.withVirtualThreads(objectStore, concurrency);
+		} else if ("platform".equals(mode)) {
+			ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+			async = new ExecutorAsyncObjectStore(objectStore, executor);
+		} else {
+			throw new IllegalArgumentException("Unknown mode " + mode);
+		}
+
+		existingId = objectStore.createObject(new ByteArrayInputStream(new byte[16]), 16, null);
+		simulator.setLatency(latencyMillis, 0);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		if (async.getExecutor() instanceof ExecutorService) {
+			((ExecutorService) async.getExecutor()).shutdownNow();
+		}
+		objectStore.close();
+		simulator.stop();
+	}
+
+	@Benchmark
+	public int getSystemMetadata() throws Exception {
+		List<CompletableFuture<Collection<Metadata>>> results = new ArrayList<CompletableFuture<Collection<Metadata>>>(calls);
+		for (int i = 0; i < calls; i++) {
+			results.add(async.getSystemMetadata(existingId));
+		}
+		int total = 0;
+		for (CompletableFuture<Collection<Metadata>> result : results) {
+			total += result.get().size();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,66 @@
+package org.jpoetker.objstore.atmos;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.Grant;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.atmos.auth.AuthenticationCredentialProvider;
+import org.jpoetker.objstore.atmos.auth.SimpleAuthenticationCredentialProvider;
+import org.jpoetker.objstore.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding metadata and access control lists into request headers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderEncodingBenchmark {
+
+	@Param({"1", "10", "50", "200"})
+	public int size;
+
+	private URL url;
+	private AuthenticationCredentialProvider authProvider;
+	private List<Metadata> metadata;
+	private Set<Grant> acl;
+
+	@Setup
+	public void setUp() throws Exception {
+		url = new URL("http://localhost/rest/objects");
+		authProvider = new SimpleAuthenticationCredentialProvider(BenchmarkData.UID, BenchmarkData.SHARED_SECRET);
+		metadata = BenchmarkData.metadata(size);
+		acl = BenchmarkData.acl(size);
+	}
+
+	@Benchmark
+	public Map<String, String> encodeMetadata() {
+		AtmosRequest request = new AtmosRequest(url, authProvider);
+		request.setMetadata(metadata);
+		return request.getHeaders();
+	}
+
+	@Benchmark
+	public Map<String, String> encodeAcl() {
+		AtmosRequest request = new AtmosRequest(url, authProvider);
+		request.setAcl(acl);
+		return request.getHeaders();
+	}
+}
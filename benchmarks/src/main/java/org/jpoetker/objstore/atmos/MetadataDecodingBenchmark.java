@@ -0,0 +1,49 @@
+package org.jpoetker.objstore.atmos;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures decoding the x-emc-meta and x-emc-listable-meta response headers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetadataDecodingBenchmark {
+
+	@Param({"1", "10", "50", "200"})
+	public int metadataPairs;
+
+	private AtmosResponse response;
+
+	@Setup
+	public void setUp() throws Exception {
+		HttpResponse httpResponse = BenchmarkData.okResponse(null);
+		httpResponse.addHeader("x-emc-meta", BenchmarkData.metadataHeader(metadataPairs));
+		httpResponse.addHeader("x-emc-listable-meta", BenchmarkData.metadataHeader(metadataPairs));
+		response = new AtmosResponse(httpResponse);
+	}
+
+	@Benchmark
+	public List<Metadata> decodeMetadata() {
+		return response.getMetadata();
+	}
+}
@@ -0,0 +1,71 @@
+package org.jpoetker.objstore.atmos;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.TimeSource;
+import org.jpoetker.objstore.atmos.auth.SimpleAuthenticationCredentialProvider;
+import org.jpoetker.objstore.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures signing a request with a growing number of metadata pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SigningBenchmark {
+	private static final String SIGNATURE_HEADER = "x-emc-signature";
+
+	@Param({"0", "10", "50", "200"})
+	public int metadataPairs;
+
+	private AtmosRequest request;
+
+	@Setup
+	public void setUp() throws Exception {
+		request = new AtmosRequest(new URL("http://localhost/rest/objects"),
+				new SimpleAuthenticationCredentialProvider(BenchmarkData.UID, BenchmarkData.SHARED_SECRET));
+		request.setDateHeaderClock(new DateHeaderClock(new FixedTimeSource(1336155218000L)));
+		request.setContentType("application/octet-stream");
+		request.setMetadata(BenchmarkData.metadata(metadataPairs));
+		request.setAcl(BenchmarkData.acl(4));
+	}
+
+	@Benchmark
+	public String signRequest() throws Exception {
+		request.signRequest("POST");
+		return request.getHeaders().get(SIGNATURE_HEADER);
+	}
+
+	static class FixedTimeSource implements TimeSource {
+		private final long millis;
+
+		FixedTimeSource(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public long currentTimeMillis() {
+			return millis;
+		}
+
+		@Override
+		public long nanoTime() {
+			return millis * 1000000L;
+		}
+	}
+}
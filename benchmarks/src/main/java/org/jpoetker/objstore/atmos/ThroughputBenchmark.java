@@ -0,0 +1,99 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.atmos.simulator.AtmosSimulator;
+import org.jpoetker.objstore.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures end to end throughput of <code>AtmosObjectStore</code> against the in-process
+ * <code>AtmosSimulator</code>, for tuning the size of the connection pool under a given
+ * server latency. Use <code>-t</code> to change the number of client threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class ThroughputBenchmark {
+
+	@Param({"8", "32", "200"})
+	public int maxConnections;
+
+	@Param({"0", "5"})
+	public long latencyMillis;
+
+	@Param({"4096"})
+	public int objectSize;
+
+	private AtmosSimulator simulator;
+	private AtmosObjectStore objectStore;
+	private byte[] content;
+	private String existingId;
+
+	@Setup
+	public void setUp() throws Exception {
+		simulator = new AtmosSimulator();
+		simulator.addUser(BenchmarkData.UID, BenchmarkData.SHARED_SECRET);
+		simulator.setLatency(latencyMillis, 0);
+		simulator.start();
+
+		objectStore = new AtmosObjectStore(simulator.getHost(), simulator.getPort(), "http", BenchmarkData.UID, BenchmarkData.SHARED_SECRET);
+		objectStore.setMaxConnections(maxConnections);
+
+		content = new byte[objectSize];
+		existingId = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		objectStore.getHttpClient().getConnectionManager().shutdown();
+		simulator.stop();
+	}
+
+	@Benchmark
+	public String createObject() {
+		return objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+	}
+
+	@Benchmark
+	public long readObject() throws IOException {
+		InputStream in = objectStore.readObject(existingId);
+		try {
+			byte[] buffer = new byte[8192];
+			long total = 0;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				total += read;
+			}
+			return total;
+		} finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public Collection<Metadata> getSystemMetadata() {
+		return objectStore.getSystemMetadata(existingId);
+	}
+}
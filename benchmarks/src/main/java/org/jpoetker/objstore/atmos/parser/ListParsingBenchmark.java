@@ -0,0 +1,84 @@
+package org.jpoetker.objstore.atmos.parser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
+import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.atmos.AtmosResponse;
+import org.jpoetker.objstore.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing list objects responses with each of the <code>QueryResponseParser</code>
+ * implementations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListParsingBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int objects;
+
+	@Param({"dom", "stream", "statemachine"})
+	public String parser;
+
+	private QueryResponseParser queryResponseParser;
+	private AtmosResponse response;
+
+	@Setup
+	public void setUp() throws Exception {
+		queryResponseParser = createParser(parser);
+		// the entity is backed by a byte array, so it can be read on every invocation
+		response = new AtmosResponse(BenchmarkData.okResponse(BenchmarkData.listObjectsResponse(objects)));
+	}
+
+	@Benchmark
+	public QueryResults<ObjectInfo> parseObjectInfo() {
+		return queryResponseParser.parseObjectInfo(response);
+	}
+
+	/**
+	 * Hands each object to a handler instead of collecting the page.
+	 */
+	@Benchmark
+	public void parseObjectInfoWithHandler(final Blackhole blackhole) {
+		queryResponseParser.parseObjectInfo(response, new ObjectInfoHandler() {
+			@Override
+			public void handle(ObjectInfo info) {
+				blackhole.consume(info);
+			}
+		});
+	}
+
+	@Benchmark
+	public QueryResults<String> parseObjectIdentifiers() {
+		return queryResponseParser.parseObjectIdentifiers(response);
+	}
+
+	static QueryResponseParser createParser(String name) {
+		if ("dom".equals(name)) {
+			return new QueryResponseParserImpl();
+		} else if ("stream".equals(name)) {
+			return new QueryResponseParserStreamImpl();
+		} else if ("statemachine".equals(name)) {
+			return new QueryResponseParserStateMachineImpl();
+		}
+		throw new IllegalArgumentException("Unknown parser " + name);
+	}
+}
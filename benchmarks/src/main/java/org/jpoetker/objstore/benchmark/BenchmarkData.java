@@ -0,0 +1,128 @@
+package org.jpoetker.objstore.benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.jpoetker.objstore.Grant;
+import org.jpoetker.objstore.Grantee;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.Permission;
+
+/**
+ * Generates the requests and responses used by the benchmarks.
+ */
+public final class BenchmarkData {
+	/** A Base64 encoded HmacSHA1 key, the value is irrelevant to the benchmarks */
+	public static final String SHARED_SECRET = "LJLuryj6zs8ste6Y3jTGQp71xq0=";
+	public static final String UID = "a0b1c2d3e4f5/benchmark";
+
+	private BenchmarkData() {
+		super();
+	}
+
+	/**
+	 * Creates metadata pairs, alternating between listable and non-listable. Values
+	 * contain runs of spaces so that value normalization has some work to do.
+	 */
+	public static List<Metadata> metadata(int pairs) {
+		List<Metadata> metadata = new ArrayList<Metadata>(pairs);
+		for (int i = 0; i < pairs; i++) {
+			metadata.add(new Metadata("meta-data-name-" + i, "meta  data value, " + i, (i % 2) == 0));
+		}
+		return metadata;
+	}
+
+	public static Set<Grant> acl(int grants) {
+		Set<Grant> acl = new HashSet<Grant>();
+		Permission[] permissions = Permission.values();
+		for (int i = 0; i < grants; i++) {
+			Grantee.Type type = ((i % 2) == 0) ? Grantee.Type.USER : Grantee.Type.GROUP;
+			acl.add(new Grant(new Grantee("grantee-" + i, type), permissions[i % permissions.length]));
+		}
+		return acl;
+	}
+
+	/**
+	 * Creates the value of an x-emc-meta header with the given number of pairs, as
+	 * it would be returned by Atmos.
+	 */
+	public static String metadataHeader(int pairs) {
+		StringBuilder buff = new StringBuilder();
+		for (int i = 0; i < pairs; i++) {
+			if (buff.length() > 0) {
+				buff.append(", ");
+			}
+			buff.append("meta-data-name-").append(i).append('=').append("meta-data-value-").append(i);
+		}
+		return buff.toString();
+	}
+
+	/**
+	 * Creates a ListObjectsResponse document for the given number of objects, each with
+	 * three system and three user metadata entries.
+	 */
+	public static byte[] listObjectsResponse(int objects) {
+		StringBuilder xml = new StringBuilder(objects * 900);
+		xml.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+		xml.append("<ListObjectsResponse xmlns='http://www.emc.com/cos/'>\n");
+		for (int i = 0; i < objects; i++) {
+			xml.append("\t<Object>\n");
+			xml.append("\t\t<ObjectID>").append(objectId(i)).append("</ObjectID>\n");
+			xml.append("\t\t<SystemMetadataList>\n");
+			appendMetadata(xml, "atime", "2012-05-04T18:13:38Z", null);
+			appendMetadata(xml, "mtime", "2012-05-04T18:13:38Z", null);
+			appendMetadata(xml, "size", Integer.toString(i * 1024), null);
+			xml.append("\t\t</SystemMetadataList>\n");
+			xml.append("\t\t<UserMetadataList>\n");
+			appendMetadata(xml, "benchmark", "true", Boolean.TRUE);
+			appendMetadata(xml, "index", Integer.toString(i), Boolean.FALSE);
+			appendMetadata(xml, "description", "object number " + i, Boolean.FALSE);
+			xml.append("\t\t</UserMetadataList>\n");
+			xml.append("\t</Object>\n");
+		}
+		xml.append("</ListObjectsResponse>");
+		try {
+			return xml.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String objectId(int i) {
+		String suffix = Integer.toHexString(i);
+		StringBuilder id = new StringBuilder("4ee696e4a11f549804f0b909b09e0d04fa41c5");
+		while (id.length() + suffix.length() < 44) {
+			id.append('0');
+		}
+		return id.append(suffix).toString();
+	}
+
+	/**
+	 * Wraps the body in a successful response, the entity can be read more than once.
+	 */
+	public static HttpResponse okResponse(byte[] body) {
+		HttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+		if (body != null) {
+			response.setEntity(new ByteArrayEntity(body));
+		}
+		return response;
+	}
+
+	private static void appendMetadata(StringBuilder xml, String name, String value, Boolean listable) {
+		xml.append("\t\t\t<Metadata>\n");
+		xml.append("\t\t\t\t<Name>").append(name).append("</Name>\n");
+		xml.append("\t\t\t\t<Value>").append(value).append("</Value>\n");
+		if (listable != null) {
+			xml.append("\t\t\t\t<Listable>").append(listable).append("</Listable>\n");
+		}
+		xml.append("\t\t\t</Metadata>\n");
+	}
+}
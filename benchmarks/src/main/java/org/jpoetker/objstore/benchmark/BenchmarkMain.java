@@ -0,0 +1,33 @@
+package org.jpoetker.objstore.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the JMH command line, writing the results as JSON to
+ * <code>jmh-result.json</code> unless a result format or file is given on the command line.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar [jmh options] [benchmark regexp]
+ * </pre>
+ */
+public class BenchmarkMain {
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		
+		if (!arguments.contains("-rf")) {
+			arguments.add(0, "json");
+			arguments.add(0, "-rf");
+		}
+		if (!arguments.contains("-rff")) {
+			arguments.add(0, DEFAULT_RESULT_FILE);
+			arguments.add(0, "-rff");
+		}
+		Main.main(arguments.toArray(new String[arguments.size()]));
+	}
+}
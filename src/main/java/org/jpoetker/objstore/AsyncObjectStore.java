@@ -0,0 +1,152 @@
+package org.jpoetker.objstore;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking companion of {@link ObjectStore}.
+ *
+ * Every operation returns as soon as the request has been queued, the returned future
+ * is completed with the result, or completed exceptionally with an
+ * {@link ObjectStorageException}, when the response arrives.
+ *
+ * The <code>InputStream</code> passed to a create or update may be read on a thread the
+ * implementation uses for other requests as well, so it should not block for long.
+ */
+public interface AsyncObjectStore {
+
+	/**
+	 * Creates a new object in the cloud.
+	 *
+	 * @param data An input stream containing the contents of the object.
+	 * @param length The length of the stream in bytes.
+	 * @param mimeType The MimeType of the object being stored.
+	 * 		  If set to null, will default to "application/octet-stream"
+	 * @return a future completed with the identifier of the newly created object.
+	 */
+	CompletableFuture<String> createObject(InputStream data, long length, String mimeType);
+
+	/**
+	 * Creates a new object in the cloud.
+	 *
+	 * @param data An input stream containing the contents of the object.
+	 * @param length The length of the stream in bytes.
+	 * @param mimeType The MimeType of the object being stored.
+	 * @param acl A set of Grant objects to make up the access control list for this object.
+	 * 		  May be null to use the default acl.
+	 * @param metadata A collection of Metadata to be associated with the object, may be null
+	 * @return a future completed with the identifier of the newly created object.
+	 */
+	CompletableFuture<String> createObject(InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata);
+
+	/**
+	 * Updates an object in the cloud.
+	 *
+	 * @param id The ID of the object being updated
+	 * @param data The InputStream containing the new contents for the object
+	 * @param length The length of the stream in bytes
+	 * @param mimeType The MimeType of the object being stored.
+	 * @return a future completed when the object has been updated
+	 */
+	CompletableFuture<Void> updateObject(String id, InputStream data, long length, String mimeType);
+
+	/**
+	 * Updates an object in the cloud.
+	 *
+	 * @param id The ID of the object being updated
+	 * @param data The InputStream containing the new contents for the object
+	 * @param length The length of the stream in bytes
+	 * @param mimeType The MimeType of the object being stored.
+	 * @param acl A Set of Grant objects that make up the new access control list for the object.
+	 *        May be <code>null</code> in which case the ACL for the object will remain unchanged.
+	 * @param metadata The collection of metadata to be set on the object, may be null
+	 * @return a future completed when the object has been updated
+	 */
+	CompletableFuture<Void> updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata);
+
+	/**
+	 * Creates a new object with the content of a file.
+	 *
+	 * @param file The file containing the contents of the object.
+	 * @param mimeType The MimeType of the object being stored.
+	 * @param acl A set of Grant objects to make up the access control list for this object, may be null
+	 * @param metadata A collection of Metadata to be associated with the object, may be null
+	 * @return a future completed with the identifier of the new object
+	 */
+	CompletableFuture<String> createObject(Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata);
+
+	/**
+	 * Replaces the content of an object with the content of a file.
+	 *
+	 * @param id The ID of the object being updated
+	 * @param file The file containing the new contents for the object
+	 * @param mimeType The MimeType of the object being stored.
+	 * @param acl A Set of Grant objects that make up the new access control list for the object, may be null
+	 * @param metadata The collection of metadata to be set on the object, may be null
+	 * @return a future completed when the object has been updated
+	 */
+	CompletableFuture<Void> updateObject(String id, Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata);
+
+	/**
+	 * Writes the Metadata into the object.
+	 *
+	 * @see ObjectStore#setMetadata(String, Collection)
+	 */
+	CompletableFuture<Void> setMetadata(String id, Collection<Metadata> metadata);
+
+	/**
+	 * Fetches all user metadata for the object.
+	 */
+	CompletableFuture<Collection<Metadata>> getUserMetadata(String id);
+
+	/**
+	 * Fetches the specified user metadata for the object.
+	 */
+	CompletableFuture<Collection<Metadata>> getUserMetadata(String id, Collection<MetadataTag> metadatatags);
+
+	/**
+	 * Fetches all system metadata for the object.
+	 */
+	CompletableFuture<Collection<Metadata>> getSystemMetadata(String id);
+
+	/**
+	 * Fetches the specified system metadata for the object.
+	 */
+	CompletableFuture<Collection<Metadata>> getSystemMetadata(String id, Collection<MetadataTag> tags);
+
+	/**
+	 * Deletes an object from the cloud.
+	 */
+	CompletableFuture<Void> deleteObject(String id);
+
+	/**
+	 * Reads an object's content.
+	 *
+	 * The future is completed as soon as the response headers have arrived, the content is
+	 * streamed as it is read. Close the InputStream when you have completed your operation,
+	 * closing it before the end of the content aborts the request.
+	 *
+	 * @param id the identifier of the object to read
+	 * @return a future completed with an InputStream for reading the object data
+	 */
+	CompletableFuture<InputStream> readObject(String id);
+
+	/**
+	 * List all the objects for a given metadata tag.
+	 *
+	 * @see ObjectStore#listObjects(String, int, String)
+	 */
+	CompletableFuture<QueryResults<String>> listObjects(String tag, int limit, String continuationToken);
+
+	/**
+	 * List all the objects for a given metadata tag, include the metadata in the results.
+	 */
+	CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(String tag, int limit, String continuationToken);
+
+	CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, int limit, String continuationToken);
+
+	CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuationToken);
+}
@@ -0,0 +1,669 @@
+package org.jpoetker.objstore;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the content of objects read through another store in files of a local directory.
+ *
+ * An object read in full with {@link #readObject(String)} is written to a temporary file
+ * as the caller reads it, and the file is kept once the caller has read to the end of
+ * the stream. Objects downloaded with {@link #readObject(String, Path, ParallelOptions)}
+ * are copied into the cache from the target file. Later reads, including ranged reads
+ * and byte channels, are served from the cached file through a <code>FileChannel</code>.
+ *
+ * The least recently read objects are deleted once the cached files take more than the
+ * size budget. Files left in the directory by an earlier instance are used again, oldest
+ * first in line for eviction. Objects changed or deleted through this store are dropped
+ * from the cache, but changes made through other clients are never seen, so the cache
+ * suits objects that are not changed once they are created.
+ */
+public class ContentCachingObjectStore extends InvalidatingObjectStore {
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path directory;
+	private final long maxBytes;
+	// object identifier to the size of its file, in the order the objects were read
+	private final Map<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long cachedBytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	// reads racing a write of their object are not cached, guarded by entries
+	private final PendingReads pending = new PendingReads();
+	private final AtomicLong tempFiles = new AtomicLong();
+
+	/**
+	 * @param delegate the store the objects are read from
+	 * @param directory the directory the content is kept in, it is created if needed and
+	 *        should not be used for anything else
+	 * @param maxBytes how many bytes of content are kept at most
+	 *
+	 * @throws ObjectStorageException if the directory cannot be created or read
+	 */
+	public ContentCachingObjectStore(ObjectStore delegate, Path directory, long maxBytes) {
+		super(delegate);
+		if (directory == null) {
+			throw new IllegalArgumentException("A cache directory is required");
+		}
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("The size of the cache must be greater than 0");
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		try {
+			Files.createDirectories(directory);
+			load();
+		} catch (IOException e) {
+			throw new ObjectStorageException("Cannot use " + directory + " as a cache: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public InputStream readObject(String id) {
+		FileChannel channel = openCached(id);
+		if (channel != null) {
+			hits.incrementAndGet();
+			return new FileRangeInputStream(channel, 0, Long.MAX_VALUE);
+		}
+
+		misses.incrementAndGet();
+		PendingReads.Read read = start(id);
+		InputStream in;
+		try {
+			in = super.readObject(id);
+		} catch (RuntimeException e) {
+			abandon(id, read);
+			throw e;
+		}
+		Path temp = tempFile(id);
+		try {
+			return new CachingInputStream(in, id, temp, Files.newOutputStream(temp), read);
+		} catch (IOException e) {
+			abandon(id, read);
+			deleteQuietly(temp);
+			return in;
+		}
+	}
+
+	/**
+	 * Serves the range from the cached file, a range of an object that is not cached is
+	 * read from the delegate without caching it. A range the cached file cannot serve,
+	 * such as one starting at or past its end, is passed to the delegate as well, so that
+	 * the caller gets the same error or empty content as from an uncached read.
+	 */
+	@Override
+	public InputStream readObject(String id, long offset, long length) throws ObjectStorageException {
+		FileChannel channel = openCached(id);
+		if (channel != null) {
+			long size;
+			try {
+				size = channel.size();
+			} catch (IOException e) {
+				closeQuietly(channel);
+				throw new ObjectStorageException(e.getMessage(), e);
+			}
+			if ((offset >= 0) && (offset < size) && (length > 0)) {
+				hits.incrementAndGet();
+				return new FileRangeInputStream(channel, offset, Math.min(size, offset + length));
+			}
+			closeQuietly(channel);
+		}
+
+		misses.incrementAndGet();
+		return super.readObject(id, offset, length);
+	}
+
+	/**
+	 * Returns the channel of the cached file, the channel of the delegate if the object
+	 * is not cached.
+	 */
+	@Override
+	public SeekableByteChannel newByteChannel(String id) throws ObjectStorageException {
+		FileChannel channel = openCached(id);
+		if (channel != null) {
+			hits.incrementAndGet();
+			return channel;
+		}
+		misses.incrementAndGet();
+		return super.newByteChannel(id);
+	}
+
+	@Override
+	public long readObject(String id, Path target, ParallelOptions options) throws ObjectStorageException {
+		if (target == null) {
+			throw new IllegalArgumentException("A target file is required");
+		}
+
+		FileChannel channel = openCached(id);
+		if (channel != null) {
+			hits.incrementAndGet();
+			try {
+				return copy(channel, target);
+			} catch (IOException e) {
+				throw new ObjectStorageException("Cannot write " + target + ": " + e.getMessage(), e);
+			} finally {
+				closeQuietly(channel);
+			}
+		}
+
+		misses.incrementAndGet();
+		PendingReads.Read read = start(id);
+		long size;
+		try {
+			size = super.readObject(id, target, options);
+		} catch (RuntimeException e) {
+			abandon(id, read);
+			throw e;
+		}
+		if (size > maxBytes) {
+			abandon(id, read);
+			return size;
+		}
+		Path temp = tempFile(id);
+		try {
+			Files.copy(target, temp, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			abandon(id, read);
+			deleteQuietly(temp);
+			return size;
+		}
+		commit(id, temp, size, read);
+		return size;
+	}
+
+	/**
+	 * Deletes the cached content of an object.
+	 */
+	@Override
+	public void invalidate(String id) {
+		synchronized (entries) {
+			pending.invalidate(id);
+			Long size = entries.remove(id);
+			if (size == null) {
+				return;
+			}
+			cachedBytes -= size.longValue();
+		}
+		deleteQuietly(cacheFile(id));
+	}
+
+	/**
+	 * Deletes all cached content.
+	 */
+	public void invalidateAll() {
+		List<String> ids;
+		synchronized (entries) {
+			pending.invalidateAll();
+			ids = new ArrayList<String>(entries.keySet());
+			entries.clear();
+			cachedBytes = 0;
+		}
+		for (String id : ids) {
+			deleteQuietly(cacheFile(id));
+		}
+	}
+
+	/**
+	 * @return the number of reads served from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of reads passed on to the delegate
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of objects deleted to stay within the size budget
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of bytes of content in the cache
+	 */
+	public long getCachedBytes() {
+		synchronized (entries) {
+			return cachedBytes;
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Opens the cached file of an object.
+	 *
+	 * @return the channel, or <code>null</code> if the object is not cached
+	 */
+	private FileChannel openCached(String id) {
+		synchronized (entries) {
+			if (entries.get(id) == null) {
+				return null;
+			}
+		}
+		try {
+			return FileChannel.open(cacheFile(id), StandardOpenOption.READ);
+		} catch (IOException e) {
+			// evicted since, or deleted behind our back
+			synchronized (entries) {
+				Long size = entries.remove(id);
+				if (size != null) {
+					cachedBytes -= size.longValue();
+				}
+			}
+			return null;
+		}
+	}
+
+	private PendingReads.Read start(String id) {
+		synchronized (entries) {
+			return pending.start(id);
+		}
+	}
+
+	/**
+	 * Ends a read whose content is not cached.
+	 */
+	private void abandon(String id, PendingReads.Read read) {
+		synchronized (entries) {
+			pending.finish(id, read);
+		}
+	}
+
+	/**
+	 * Moves a completely written temporary file in place and ends the read, unless the
+	 * object was changed since it was read.
+	 *
+	 * Only the index is updated under the lock, so that hits do not wait for the disk. A
+	 * file deleted in between by a racing eviction is dropped from the index by the next
+	 * read of it.
+	 */
+	private void commit(String id, Path temp, long size, PendingReads.Read read) {
+		boolean current;
+		synchronized (entries) {
+			current = pending.isCurrent(read);
+		}
+		if (!current || (size > maxBytes)) {
+			abandon(id, read);
+			deleteQuietly(temp);
+			return;
+		}
+		Path file = cacheFile(id);
+		try {
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			abandon(id, read);
+			deleteQuietly(temp);
+			return;
+		}
+
+		List<String> evicted;
+		synchronized (entries) {
+			if (!pending.finish(id, read)) {
+				// changed while the file was moved, which may have replaced newer content
+				Long previous = entries.remove(id);
+				if (previous != null) {
+					cachedBytes -= previous.longValue();
+				}
+				evicted = Collections.singletonList(id);
+			} else {
+				Long previous = entries.put(id, Long.valueOf(size));
+				if (previous != null) {
+					cachedBytes -= previous.longValue();
+				}
+				cachedBytes += size;
+				evicted = evict();
+			}
+		}
+		for (String victim : evicted) {
+			deleteQuietly(cacheFile(victim));
+		}
+	}
+
+	/**
+	 * Drops the least recently read objects from the index until the cache is within its
+	 * budget, callers hold the lock on entries and delete the files once they release it.
+	 *
+	 * @return the identifiers of the dropped objects
+	 */
+	private List<String> evict() {
+		List<String> evicted = new ArrayList<String>();
+		Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+		while ((cachedBytes > maxBytes) && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			eldest.remove();
+			cachedBytes -= entry.getValue().longValue();
+			evicted.add(entry.getKey());
+			evictions.incrementAndGet();
+		}
+		return evicted;
+	}
+
+	/**
+	 * Indexes the files left by an earlier instance, least recently modified first, and
+	 * deletes its temporary files.
+	 */
+	private void load() throws IOException {
+		final Map<Path, Long> modified = new LinkedHashMap<Path, Long>();
+		DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+		try {
+			for (Path file : files) {
+				if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+					deleteQuietly(file);
+				} else if (Files.isRegularFile(file) && (decode(file.getFileName().toString()) != null)) {
+					modified.put(file, Long.valueOf(Files.getLastModifiedTime(file).toMillis()));
+				}
+			}
+		} finally {
+			files.close();
+		}
+
+		List<Path> oldestFirst = new ArrayList<Path>(modified.keySet());
+		Collections.sort(oldestFirst, new Comparator<Path>() {
+			@Override
+			public int compare(Path a, Path b) {
+				return modified.get(a).compareTo(modified.get(b));
+			}
+		});
+		List<String> evicted;
+		synchronized (entries) {
+			for (Path file : oldestFirst) {
+				long size = Files.size(file);
+				entries.put(decode(file.getFileName().toString()), Long.valueOf(size));
+				cachedBytes += size;
+			}
+			evicted = evict();
+		}
+		for (String id : evicted) {
+			deleteQuietly(cacheFile(id));
+		}
+	}
+
+	private long copy(FileChannel source, Path target) throws IOException {
+		FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			long size = source.size();
+			long position = 0;
+			while (position < size) {
+				position += source.transferTo(position, size - position, out);
+			}
+			return size;
+		} finally {
+			out.close();
+		}
+	}
+
+	private Path cacheFile(String id) {
+		return directory.resolve(encode(id));
+	}
+
+	private Path tempFile(String id) {
+		return directory.resolve(encode(id) + "." + tempFiles.incrementAndGet() + TEMP_SUFFIX);
+	}
+
+	/**
+	 * Turns an identifier into a file name, escaping every character but letters, digits,
+	 * <code>-</code> and <code>_</code> as <code>%</code> and the hex of its UTF-8 bytes.
+	 */
+	static String encode(String id) {
+		StringBuilder name = new StringBuilder(id.length());
+		for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xff);
+			if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '-') || (c == '_')) {
+				name.append(c);
+			} else {
+				name.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+			}
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @return the identifier of a file name, or <code>null</code> if it was not encoded
+	 *         by {@link #encode(String)}
+	 */
+	static String decode(String name) {
+		ByteArrayOutputStream id = new ByteArrayOutputStream(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '%') {
+				int high = (i + 2 < name.length()) ? Character.digit(name.charAt(i + 1), 16) : -1;
+				int low = (high >= 0) ? Character.digit(name.charAt(i + 2), 16) : -1;
+				if (low < 0) {
+					return null;
+				}
+				id.write((high << 4) | low);
+				i += 2;
+			} else if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '-') || (c == '_')) {
+				id.write(c);
+			} else {
+				return null;
+			}
+		}
+		return (id.size() > 0) ? new String(id.toByteArray(), StandardCharsets.UTF_8) : null;
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// the file is overwritten or deleted the next time it is used
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nothing was written to it
+		}
+	}
+
+	/**
+	 * Copies what the caller reads from the response into a temporary file, which is
+	 * committed to the cache when the end of the stream is read. Closing the stream early,
+	 * skipping or a read error drops the file.
+	 */
+	private class CachingInputStream extends FilterInputStream {
+		private final String id;
+		private final Path temp;
+		private final PendingReads.Read read;
+		private OutputStream out;
+		private long written;
+
+		CachingInputStream(InputStream in, String id, Path temp, OutputStream out, PendingReads.Read read) {
+			super(in);
+			this.id = id;
+			this.temp = temp;
+			this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+			this.read = read;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b;
+			try {
+				b = super.read();
+			} catch (IOException e) {
+				discard();
+				throw e;
+			}
+			if (b < 0) {
+				finish();
+			} else if (out != null) {
+				try {
+					out.write(b);
+					written++;
+					if (written > maxBytes) {
+						discard();
+					}
+				} catch (IOException e) {
+					discard();
+				}
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n;
+			try {
+				n = super.read(b, off, len);
+			} catch (IOException e) {
+				discard();
+				throw e;
+			}
+			if (n < 0) {
+				finish();
+			} else if (out != null) {
+				try {
+					out.write(b, off, n);
+					written += n;
+					if (written > maxBytes) {
+						discard();
+					}
+				} catch (IOException e) {
+					discard();
+				}
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			discard();
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				discard();
+			} finally {
+				super.close();
+			}
+		}
+
+		private void finish() {
+			if (out == null) {
+				return;
+			}
+			try {
+				out.close();
+				out = null;
+				commit(id, temp, written, read);
+			} catch (IOException e) {
+				discard();
+			}
+		}
+
+		private void discard() {
+			if (out == null) {
+				return;
+			}
+			try {
+				out.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			out = null;
+			deleteQuietly(temp);
+			abandon(id, read);
+		}
+	}
+
+	/**
+	 * Reads the bytes of a file from a position up to an end with positional reads, and
+	 * closes the channel when it is closed.
+	 */
+	private static class FileRangeInputStream extends InputStream {
+		private final FileChannel channel;
+		private final long end;
+		private long position;
+
+		FileRangeInputStream(FileChannel channel, long position, long end) {
+			super();
+			this.channel = channel;
+			this.position = position;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return (n < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (position >= end) {
+				return -1;
+			}
+			int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if (n > 0) {
+				position += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = Math.max(0, Math.min(n, Math.min(end, channel.size()) - position));
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.min(end, channel.size()) - position));
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package org.jpoetker.objstore;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * An {@link AsyncObjectStore} running each call of a blocking {@link ObjectStore} on an
+ * executor.
+ *
+ * This is meant for fanning out calls on virtual threads, where a blocked call costs little
+ * more than its stack, see {@link #withVirtualThreads(ObjectStore, int)}.
+ */
+public class ExecutorAsyncObjectStore implements AsyncObjectStore, Closeable {
+	private final ObjectStore objectStore;
+	private final Executor executor;
+	private final boolean ownsExecutor;
+
+	public ExecutorAsyncObjectStore(ObjectStore objectStore, Executor executor) {
+		this(objectStore, executor, false);
+	}
+
+	private ExecutorAsyncObjectStore(ObjectStore objectStore, Executor executor, boolean ownsExecutor) {
+		super();
+		if (objectStore == null) {
+			throw new IllegalArgumentException("An ObjectStore is required");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("An Executor is required");
+		}
+		this.objectStore = objectStore;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Creates a facade running every call on a new virtual thread. On runtimes without virtual
+	 * threads the calls run on a fixed pool of <code>platformThreads</code> threads instead.
+	 * The executor is shut down by {@link #close()}.
+	 */
+	public static ExecutorAsyncObjectStore withVirtualThreads(ObjectStore objectStore, int platformThreads) {
+		return new ExecutorAsyncObjectStore(objectStore, VirtualThreads.newExecutor(platformThreads), true);
+	}
+
+	@Override
+	public CompletableFuture<String> createObject(final InputStream data, final long length, final String mimeType) {
+		return supply(new Supplier<String>() {
+			@Override
+			public String get() {
+				return objectStore.createObject(data, length, mimeType);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> createObject(final InputStream data, final long length, final String mimeType, final Set<Grant> acl, final Collection<Metadata> metadata) {
+		return supply(new Supplier<String>() {
+			@Override
+			public String get() {
+				return objectStore.createObject(data, length, mimeType, acl, metadata);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> updateObject(final String id, final InputStream data, final long length, final String mimeType) {
+		return run(new Runnable() {
+			@Override
+			public void run() {
+				objectStore.updateObject(id, data, length, mimeType);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> updateObject(final String id, final InputStream data, final long length, final String mimeType, final Set<Grant> acl, final Collection<Metadata> metadata) {
+		return run(new Runnable() {
+			@Override
+			public void run() {
+				objectStore.updateObject(id, data, length, mimeType, acl, metadata);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<String> createObject(final Path file, final String mimeType, final Set<Grant> acl, final Collection<Metadata> metadata) {
+		return supply(new Supplier<String>() {
+			@Override
+			public String get() {
+				return objectStore.createObject(file, mimeType, acl, metadata);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> updateObject(final String id, final Path file, final String mimeType, final Set<Grant> acl, final Collection<Metadata> metadata) {
+		return run(new Runnable() {
+			@Override
+			public void run() {
+				objectStore.updateObject(id, file, mimeType, acl, metadata);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> setMetadata(final String id, final Collection<Metadata> metadata) {
+		return run(new Runnable() {
+			@Override
+			public void run() {
+				objectStore.setMetadata(id, metadata);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getUserMetadata(final String id) {
+		return supply(new Supplier<Collection<Metadata>>() {
+			@Override
+			public Collection<Metadata> get() {
+				return objectStore.getUserMetadata(id);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getUserMetadata(final String id, final Collection<MetadataTag> metadatatags) {
+		return supply(new Supplier<Collection<Metadata>>() {
+			@Override
+			public Collection<Metadata> get() {
+				return objectStore.getUserMetadata(id, metadatatags);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getSystemMetadata(final String id) {
+		return supply(new Supplier<Collection<Metadata>>() {
+			@Override
+			public Collection<Metadata> get() {
+				return objectStore.getSystemMetadata(id);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getSystemMetadata(final String id, final Collection<MetadataTag> tags) {
+		return supply(new Supplier<Collection<Metadata>>() {
+			@Override
+			public Collection<Metadata> get() {
+				return objectStore.getSystemMetadata(id, tags);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteObject(final String id) {
+		return run(new Runnable() {
+			@Override
+			public void run() {
+				objectStore.deleteObject(id);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<InputStream> readObject(final String id) {
+		return supply(new Supplier<InputStream>() {
+			@Override
+			public InputStream get() {
+				return objectStore.readObject(id);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<String>> listObjects(final String tag, final int limit, final String continuationToken) {
+		return supply(new Supplier<QueryResults<String>>() {
+			@Override
+			public QueryResults<String> get() {
+				return objectStore.listObjects(tag, limit, continuationToken);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(final String tag, final int limit, final String continuationToken) {
+		return supply(new Supplier<QueryResults<ObjectInfo>>() {
+			@Override
+			public QueryResults<ObjectInfo> get() {
+				return objectStore.listObjectsWithMetadata(tag, limit, continuationToken);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(final String tag, final Collection<String> userMetadataTags, final int limit, final String continuationToken) {
+		return supply(new Supplier<QueryResults<ObjectInfo>>() {
+			@Override
+			public QueryResults<ObjectInfo> get() {
+				return objectStore.listObjectsWithMetadata(tag, userMetadataTags, limit, continuationToken);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(final String tag, final Collection<String> userMetadataTags, final Collection<String> systemMetadataTags, final int limit, final String continuationToken) {
+		return supply(new Supplier<QueryResults<ObjectInfo>>() {
+			@Override
+			public QueryResults<ObjectInfo> get() {
+				return objectStore.listObjectsWithMetadata(tag, userMetadataTags, systemMetadataTags, limit, continuationToken);
+			}
+		});
+	}
+
+	/**
+	 * Shuts down the executor if it was created by {@link #withVirtualThreads(ObjectStore, int)},
+	 * calls already submitted still run.
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+	public ObjectStore getObjectStore() {
+		return objectStore;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	private <T> CompletableFuture<T> supply(Supplier<T> call) {
+		return CompletableFuture.supplyAsync(call, executor);
+	}
+
+	private CompletableFuture<Void> run(Runnable call) {
+		return CompletableFuture.runAsync(call, executor);
+	}
+}
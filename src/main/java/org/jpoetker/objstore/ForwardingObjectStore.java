@@ -0,0 +1,242 @@
+package org.jpoetker.objstore;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An <code>ObjectStore</code> passing every call on to another one.
+ *
+ * Decorators extend this class and override only the calls they change.
+ */
+public class ForwardingObjectStore implements ObjectStore {
+	private final ObjectStore delegate;
+
+	public ForwardingObjectStore(ObjectStore delegate) {
+		super();
+		if (delegate == null) {
+			throw new IllegalArgumentException("An ObjectStore to forward to is required");
+		}
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @return the store every call is passed on to
+	 */
+	public ObjectStore getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType) throws ObjectStorageException {
+		return getDelegate().createObject(data, length, mimeType);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Collection<Metadata> metadata) throws ObjectStorageException {
+		return getDelegate().createObject(data, length, mimeType, metadata);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Metadata... metadata) throws ObjectStorageException {
+		return getDelegate().createObject(data, length, mimeType, metadata);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Set<Grant> acl) throws ObjectStorageException {
+		return getDelegate().createObject(data, length, mimeType, acl);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		return getDelegate().createObject(data, length, mimeType, acl, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, length, mimeType);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Collection<Metadata> metadata) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, length, mimeType, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Metadata... metadata) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, length, mimeType, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, length, mimeType, acl);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, length, mimeType, acl, metadata);
+	}
+
+	@Override
+	public String createObject(Path file, String mimeType) throws ObjectStorageException {
+		return getDelegate().createObject(file, mimeType);
+	}
+
+	@Override
+	public String createObject(Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		return getDelegate().createObject(file, mimeType, acl, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, Path file, String mimeType) throws ObjectStorageException {
+		getDelegate().updateObject(id, file, mimeType);
+	}
+
+	@Override
+	public void updateObject(String id, Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		getDelegate().updateObject(id, file, mimeType, acl, metadata);
+	}
+
+	@Override
+	public String createObject(byte[] data, String mimeType) throws ObjectStorageException {
+		return getDelegate().createObject(data, mimeType);
+	}
+
+	@Override
+	public String createObject(ByteBuffer data, String mimeType) throws ObjectStorageException {
+		return getDelegate().createObject(data, mimeType);
+	}
+
+	@Override
+	public String createObject(ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		return getDelegate().createObject(data, mimeType, acl, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, byte[] data, String mimeType) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, mimeType);
+	}
+
+	@Override
+	public void updateObject(String id, ByteBuffer data, String mimeType) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, mimeType);
+	}
+
+	@Override
+	public void updateObject(String id, ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, mimeType, acl, metadata);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, ParallelOptions options) throws ObjectStorageException {
+		return getDelegate().createObject(data, length, mimeType, options);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long offset, long length, ParallelOptions options) throws ObjectStorageException {
+		getDelegate().updateObject(id, data, offset, length, options);
+	}
+
+	@Override
+	public void setMetadata(String id, Collection<Metadata> metadata) throws ObjectStorageException {
+		getDelegate().setMetadata(id, metadata);
+	}
+
+	@Override
+	public void setMetadata(String id, Metadata... metadata) throws ObjectStorageException {
+		getDelegate().setMetadata(id, metadata);
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id) throws ObjectStorageException {
+		return getDelegate().getUserMetadata(id);
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id, Collection<MetadataTag> metadatatags) throws ObjectStorageException {
+		return getDelegate().getUserMetadata(id, metadatatags);
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id, MetadataTag... metadatatags) throws ObjectStorageException {
+		return getDelegate().getUserMetadata(id, metadatatags);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id) {
+		return getDelegate().getSystemMetadata(id);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id, Collection<MetadataTag> tags) {
+		return getDelegate().getSystemMetadata(id, tags);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id, MetadataTag... tags) {
+		return getDelegate().getSystemMetadata(id, tags);
+	}
+
+	@Override
+	public void deleteObject(String id) throws ObjectStorageException {
+		getDelegate().deleteObject(id);
+	}
+
+	@Override
+	public InputStream readObject(String id) {
+		return getDelegate().readObject(id);
+	}
+
+	@Override
+	public InputStream readObject(String id, long offset, long length) throws ObjectStorageException {
+		return getDelegate().readObject(id, offset, length);
+	}
+
+	@Override
+	public SeekableByteChannel newByteChannel(String id) throws ObjectStorageException {
+		return getDelegate().newByteChannel(id);
+	}
+
+	@Override
+	public long readObject(String id, Path target, ParallelOptions options) throws ObjectStorageException {
+		return getDelegate().readObject(id, target, options);
+	}
+
+	@Override
+	public QueryResults<String> listObjects(String tag, int limit, String continuationToken) {
+		return getDelegate().listObjects(tag, limit, continuationToken);
+	}
+
+	@Override
+	public QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, int limit, String continuationToken) {
+		return getDelegate().listObjectsWithMetadata(tag, limit, continuationToken);
+	}
+
+	@Override
+	public QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, int limit, String continuationToken) {
+		return getDelegate().listObjectsWithMetadata(tag, userMetadataTags, limit, continuationToken);
+	}
+
+	@Override
+	public QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuationToken) {
+		return getDelegate().listObjectsWithMetadata(tag, userMetadataTags, systemMetadataTags, limit, continuationToken);
+	}
+
+	@Override
+	public String listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuationToken, ObjectInfoHandler handler) {
+		return getDelegate().listObjectsWithMetadata(tag, userMetadataTags, systemMetadataTags, limit, continuationToken, handler);
+	}
+
+	@Override
+	public ObjectListing<String> listAllObjects(String tag, int pageSize, int prefetch) {
+		return getDelegate().listAllObjects(tag, pageSize, prefetch);
+	}
+
+	@Override
+	public ObjectListing<ObjectInfo> listAllObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int pageSize, int prefetch) {
+		return getDelegate().listAllObjectsWithMetadata(tag, userMetadataTags, systemMetadataTags, pageSize, prefetch);
+	}
+}
@@ -0,0 +1,28 @@
+package org.jpoetker.objstore;
+
+/**
+ * Thrown when a chunked upload fails after the object was created.
+ *
+ * Every byte of the object before {@link #getResumeOffset()} has been acknowledged by the
+ * server, so the upload can be resumed by writing the rest of the data from that offset.
+ */
+public class IncompleteUploadException extends ObjectStorageException {
+
+	private static final long serialVersionUID = 1L;
+	private final String objectId;
+	private final long resumeOffset;
+
+	public IncompleteUploadException(String message, String objectId, long resumeOffset, Throwable cause) {
+		super(message, cause);
+		this.objectId = objectId;
+		this.resumeOffset = resumeOffset;
+	}
+
+	public String getObjectId() {
+		return objectId;
+	}
+
+	public long getResumeOffset() {
+		return resumeOffset;
+	}
+}
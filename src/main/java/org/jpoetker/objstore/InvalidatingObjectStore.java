@@ -0,0 +1,135 @@
+package org.jpoetker.objstore;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An <code>ObjectStore</code> passing every call on to another one, that is told about
+ * each object whose content is changed through it.
+ *
+ * {@link #invalidate(String)} is called after every <code>updateObject</code> and
+ * <code>deleteObject</code>, whether it succeeded or not, since a failed call may still
+ * have changed the object. It is the base for caches of what is read through the store.
+ */
+public abstract class InvalidatingObjectStore extends ForwardingObjectStore {
+
+	public InvalidatingObjectStore(ObjectStore delegate) {
+		super(delegate);
+	}
+
+	/**
+	 * Forgets what is known about an object.
+	 */
+	public abstract void invalidate(String id);
+
+	@Override
+	public void deleteObject(String id) throws ObjectStorageException {
+		try {
+			super.deleteObject(id);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, length, mimeType);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Collection<Metadata> metadata) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, length, mimeType, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Metadata... metadata) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, length, mimeType, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, length, mimeType, acl);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, length, mimeType, acl, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, Path file, String mimeType) throws ObjectStorageException {
+		try {
+			super.updateObject(id, file, mimeType);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		try {
+			super.updateObject(id, file, mimeType, acl, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, byte[] data, String mimeType) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, mimeType);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, ByteBuffer data, String mimeType) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, mimeType);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, mimeType, acl, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long offset, long length, ParallelOptions options) throws ObjectStorageException {
+		try {
+			super.updateObject(id, data, offset, length, options);
+		} finally {
+			invalidate(id);
+		}
+	}
+}
@@ -20,6 +20,13 @@ public class Metadata implements Serializable {
 		this.listable = listable;
 	}
 
+	/**
+	 * Creates a copy of the metadata, for callers that hand out metadata they keep.
+	 */
+	public Metadata(Metadata metadata) {
+		this(metadata.getName(), metadata.getValue(), metadata.isListable());
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -44,10 +51,19 @@ public class Metadata implements Serializable {
 		this.listable = listable;
 	}
 
+	/**
+	 * Returns <code>name=value</code>, leaving out the commas and new lines that cannot be
+	 * sent in a metadata header.
+	 */
 	public String toKeyValueString() {
-		StringBuilder buff = new StringBuilder(name);
-		buff.append("=");
-		buff.append(value.replace(",", "").replace("\n", ""));
+		StringBuilder buff = new StringBuilder(name.length() + 1 + value.length());
+		buff.append(name).append('=');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c != ',') && (c != '\n')) {
+				buff.append(c);
+			}
+		}
 		return buff.toString();
 	}
 	
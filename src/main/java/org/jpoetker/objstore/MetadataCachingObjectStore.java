@@ -0,0 +1,296 @@
+package org.jpoetker.objstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the user and system metadata of objects read through another store.
+ *
+ * The complete user or system metadata of an object is kept for a fixed time after it was
+ * read, and the least recently used entries are evicted once the cache is full. A read of
+ * some tags is answered from the complete metadata when it is cached, and is passed on
+ * otherwise. Every call through this store that changes an object, including a failed
+ * one, drops the cached metadata of the object, but changes made through other clients
+ * are only seen once the entries expire.
+ *
+ * <code>Metadata</code> can be changed, so the cache keeps its own copies and hands out
+ * new copies on every read.
+ */
+public class MetadataCachingObjectStore extends InvalidatingObjectStore {
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final TimeSource timeSource;
+	private final Map<CacheKey, CacheEntry> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	// reads racing a write of their object are not cached, guarded by entries
+	private final PendingReads pending = new PendingReads();
+
+	public MetadataCachingObjectStore(ObjectStore delegate) {
+		this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, TimeSource.SYSTEM);
+	}
+
+	/**
+	 * @param delegate the store the metadata is read from
+	 * @param maxEntries the most metadata collections kept, the user and the system metadata
+	 *        of an object are separate entries
+	 * @param ttl how long metadata is kept after it was read
+	 * @param unit the unit of <code>ttl</code>
+	 */
+	public MetadataCachingObjectStore(ObjectStore delegate, int maxEntries, long ttl, TimeUnit unit) {
+		this(delegate, maxEntries, ttl, unit, TimeSource.SYSTEM);
+	}
+
+	public MetadataCachingObjectStore(ObjectStore delegate, final int maxEntries, long ttl, TimeUnit unit, TimeSource timeSource) {
+		super(delegate);
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("The maximum number of entries must be greater than 0");
+		}
+		if (ttl <= 0) {
+			throw new IllegalArgumentException("The time to live must be greater than 0");
+		}
+		if (timeSource == null) {
+			throw new IllegalArgumentException("A TimeSource is required");
+		}
+		this.maxEntries = maxEntries;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.timeSource = timeSource;
+		this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+				if (size() > maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id) throws ObjectStorageException {
+		return getMetadata(id, false, null);
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id, Collection<MetadataTag> metadatatags) throws ObjectStorageException {
+		return getMetadata(id, false, metadatatags);
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id, MetadataTag... metadatatags) throws ObjectStorageException {
+		return getMetadata(id, false, (metadatatags != null) ? Arrays.asList(metadatatags) : null);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id) {
+		return getMetadata(id, true, null);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id, Collection<MetadataTag> tags) {
+		return getMetadata(id, true, tags);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id, MetadataTag... tags) {
+		return getMetadata(id, true, (tags != null) ? Arrays.asList(tags) : null);
+	}
+
+	@Override
+	public void setMetadata(String id, Collection<Metadata> metadata) throws ObjectStorageException {
+		try {
+			super.setMetadata(id, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	@Override
+	public void setMetadata(String id, Metadata... metadata) throws ObjectStorageException {
+		try {
+			super.setMetadata(id, metadata);
+		} finally {
+			invalidate(id);
+		}
+	}
+
+	/**
+	 * Drops the cached user and system metadata of an object.
+	 */
+	@Override
+	public void invalidate(String id) {
+		synchronized (entries) {
+			pending.invalidate(id);
+			entries.remove(new CacheKey(id, false));
+			entries.remove(new CacheKey(id, true));
+		}
+	}
+
+	/**
+	 * Drops all cached metadata.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			pending.invalidateAll();
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return the number of reads answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of reads passed on to the delegate
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries dropped to make room for others, expired and
+	 *         invalidated entries are not counted
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of cached entries, some of which may have expired
+	 */
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	private Collection<Metadata> getMetadata(String id, boolean system, Collection<MetadataTag> tags) {
+		CacheKey key = new CacheKey(id, system);
+		List<Metadata> cached = lookup(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return select(cached, tags);
+		}
+
+		misses.incrementAndGet();
+		if ((tags != null) && !tags.isEmpty()) {
+			return system ? super.getSystemMetadata(id, tags) : super.getUserMetadata(id, tags);
+		}
+
+		PendingReads.Read read;
+		synchronized (entries) {
+			read = pending.start(id);
+		}
+		List<Metadata> copy = null;
+		try {
+			Collection<Metadata> metadata = system ? super.getSystemMetadata(id) : super.getUserMetadata(id);
+			copy = copy((metadata != null) ? metadata : Collections.<Metadata>emptyList());
+		} finally {
+			synchronized (entries) {
+				if (pending.finish(id, read) && (copy != null)) {
+					entries.put(key, new CacheEntry(copy, timeSource.nanoTime() + ttlNanos));
+				}
+			}
+		}
+		return copy(copy);
+	}
+
+	private List<Metadata> lookup(CacheKey key) {
+		synchronized (entries) {
+			CacheEntry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (timeSource.nanoTime() - entry.expiresAt >= 0) {
+				entries.remove(key);
+				return null;
+			}
+			return entry.metadata;
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached metadata, only the tags asked for if there are any.
+	 */
+	private static Collection<Metadata> select(List<Metadata> cached, Collection<MetadataTag> tags) {
+		if ((tags == null) || tags.isEmpty()) {
+			return copy(cached);
+		}
+		Set<String> names = new HashSet<String>();
+		for (MetadataTag tag : tags) {
+			names.add(tag.getName());
+		}
+		List<Metadata> selected = new ArrayList<Metadata>(names.size());
+		for (Metadata metadata : cached) {
+			if (names.contains(metadata.getName())) {
+				selected.add(new Metadata(metadata));
+			}
+		}
+		return selected;
+	}
+
+	private static List<Metadata> copy(Collection<Metadata> metadata) {
+		List<Metadata> copy = new ArrayList<Metadata>(metadata.size());
+		for (Metadata meta : metadata) {
+			copy.add(new Metadata(meta));
+		}
+		return copy;
+	}
+
+	private static class CacheKey {
+		final String id;
+		final boolean system;
+
+		CacheKey(String id, boolean system) {
+			this.id = id;
+			this.system = system;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * ((id == null) ? 0 : id.hashCode())) + (system ? 1231 : 1237);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return (system == other.system) && ((id == null) ? (other.id == null) : id.equals(other.id));
+		}
+	}
+
+	private static class CacheEntry {
+		final List<Metadata> metadata;
+		final long expiresAt;
+
+		CacheEntry(List<Metadata> metadata, long expiresAt) {
+			this.metadata = metadata;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
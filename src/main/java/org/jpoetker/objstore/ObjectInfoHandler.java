@@ -0,0 +1,15 @@
+package org.jpoetker.objstore;
+
+/**
+ * Receives each object of a listing as soon as it has been read from the response, so a
+ * page of results never has to be held in memory at once.
+ */
+public interface ObjectInfoHandler {
+	
+	/**
+	 * Called once for each object, in the order of the listing.
+	 * 
+	 * An exception thrown by the handler stops the listing and is thrown to the caller.
+	 */
+	void handle(ObjectInfo info);
+}
@@ -0,0 +1,192 @@
+package org.jpoetker.objstore;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over every result of a paged listing, following the continuation token of each
+ * page to the next one.
+ *
+ * With a prefetch depth greater than 0 the pages are fetched one after the other on a
+ * background thread, which runs up to <code>prefetch</code> pages ahead of the page being
+ * iterated, so the caller does not wait a round trip at each page boundary. With a depth
+ * of 0 each page is fetched by the caller when the previous one is used up.
+ *
+ * A listing that is not iterated to its end should be closed to stop the background thread.
+ * A listing is not safe for use by several threads.
+ */
+public class ObjectListing<T> implements Iterator<T>, Closeable {
+	/**
+	 * Fetches one page of a listing.
+	 */
+	public interface PageSource<T> {
+		/**
+		 * @param continuationToken the token returned with the previous page, or
+		 *        <code>null</code> for the first page
+		 */
+		QueryResults<T> fetchPage(String continuationToken);
+	}
+
+	private final PageSource<T> source;
+	private final BlockingQueue<Page<T>> pages;
+	private final ExecutorService executor;
+	private Iterator<T> current = Collections.<T>emptyList().iterator();
+	private String continuationToken;
+	private boolean last;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a listing and, when <code>prefetch</code> is greater than 0, starts fetching
+	 * the first page.
+	 *
+	 * @param source fetches each page
+	 * @param prefetch the number of pages fetched ahead of the page being iterated
+	 */
+	public ObjectListing(PageSource<T> source, int prefetch) {
+		super();
+		if (source == null) {
+			throw new IllegalArgumentException("A page source is required");
+		}
+		if (prefetch < 0) {
+			throw new IllegalArgumentException("The prefetch depth cannot be negative");
+		}
+		this.source = source;
+		if (prefetch > 0) {
+			this.pages = new ArrayBlockingQueue<Page<T>>(prefetch);
+			this.executor = VirtualThreads.newExecutor(1);
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					fetchPages();
+				}
+			});
+		} else {
+			this.pages = null;
+			this.executor = null;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!closed && !current.hasNext()) {
+			if (last) {
+				return false;
+			}
+			Page<T> page = nextPage();
+			if (page.failure != null) {
+				close();
+				if (page.failure instanceof Error) {
+					throw (Error) page.failure;
+				}
+				if (page.failure instanceof RuntimeException) {
+					throw (RuntimeException) page.failure;
+				}
+				throw new ObjectStorageException(page.failure.getMessage(), page.failure);
+			}
+			current = page.results.iterator();
+			last = page.last;
+		}
+		return !closed;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Objects cannot be removed from a listing");
+	}
+
+	/**
+	 * Returns a sequential stream over the remaining results, closing the stream closes
+	 * the listing.
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(new Runnable() {
+					@Override
+					public void run() {
+						close();
+					}
+				});
+	}
+
+	/**
+	 * Stops fetching pages and discards the pages fetched ahead.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (executor != null) {
+			executor.shutdownNow();
+			pages.clear();
+		}
+	}
+
+	private Page<T> nextPage() {
+		if (pages == null) {
+			QueryResults<T> results = source.fetchPage(continuationToken);
+			continuationToken = results.getContinuationToken();
+			return new Page<T>(results.getResults(), continuationToken == null, null);
+		}
+		try {
+			return pages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ObjectStorageException("Interrupted while waiting for the next page", e);
+		}
+	}
+
+	/**
+	 * Runs on the background thread, handing each page over until the last one or the
+	 * first failure, errors included.
+	 */
+	private void fetchPages() {
+		String token = null;
+		try {
+			do {
+				QueryResults<T> results = source.fetchPage(token);
+				token = results.getContinuationToken();
+				pages.put(new Page<T>(results.getResults(), token == null, null));
+			} while ((token != null) && !closed);
+		} catch (InterruptedException e) {
+			// closed while the queue was full
+		} catch (Throwable t) {
+			// the consumer waits on the queue, so every failure is handed over
+			try {
+				pages.put(new Page<T>(null, true, t));
+			} catch (InterruptedException interrupted) {
+				// closed while the queue was full
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static class Page<T> {
+		final Collection<T> results;
+		final boolean last;
+		final Throwable failure;
+
+		Page(Collection<T> results, boolean last, Throwable failure) {
+			this.results = (results != null) ? results : Collections.<T>emptyList();
+			this.last = last;
+			this.failure = failure;
+		}
+	}
+}
@@ -1,9 +1,24 @@
 package org.jpoetker.objstore;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.Set;
 
+/**
+ * The operations of an object store.
+ *
+ * The methods added since the first release have default implementations built on the
+ * stream based operations, so that existing implementations keep compiling; an
+ * implementation overrides them where it can do better, as <code>AtmosObjectStore</code>
+ * does.
+ */
 public interface ObjectStore {
 
 	/**
@@ -118,7 +133,169 @@ public interface ObjectStore {
 	 * @throws ObjectStorageException if the request fails
 	 */
 	void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException;
+
+	/**
+	 * Creates a new object with the content of a file.
+	 * 
+	 * @param file The file containing the contents of the object.
+	 * @param mimeType The MimeType of the object being stored.
+	 * 		  If set to null, will default to "application/octet-stream"
+	 * @returns String of the newly created object.
+	 * 
+	 * @throws ObjectStorageException if the file cannot be read or the request fails
+	 */
+	default String createObject(Path file, String mimeType) throws ObjectStorageException {
+		return createObject(file, mimeType, null, null);
+	}
+	
+	/**
+	 * The default implementation sends the file as a stream with
+	 * {@link #createObject(InputStream, long, String, Set, Collection)}.
+	 */
+	default String createObject(Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return createObject(in, Files.size(file), mimeType, acl, metadata);
+		} catch (IOException e) {
+			throw new ObjectStorageException("Cannot read " + file + ": " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Replaces the content of an object with the content of a file.
+	 * 
+	 * @param id The ID of the object being updated
+	 * @param file The file containing the new contents for the object
+	 * @param mimeType The MimeType of the object
+	 * @throws ObjectStorageException if the file cannot be read or the request fails
+	 */
+	default void updateObject(String id, Path file, String mimeType) throws ObjectStorageException {
+		updateObject(id, file, mimeType, null, null);
+	}
+	
+	/**
+	 * The default implementation sends the file as a stream with
+	 * {@link #updateObject(String, InputStream, long, String, Set, Collection)}.
+	 */
+	default void updateObject(String id, Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		try (InputStream in = Files.newInputStream(file)) {
+			updateObject(id, in, Files.size(file), mimeType, acl, metadata);
+		} catch (IOException e) {
+			throw new ObjectStorageException("Cannot read " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Creates a new object with the contents of a byte array.
+	 * 
+	 * The request body is sent straight from the array and can be sent again, so a write
+	 * failing on a stale connection is retried.
+	 * 
+	 * @param data The contents of the object.
+	 * @param mimeType The MimeType of the object being stored.
+	 * 		  If set to null, will default to "application/octet-stream"
+	 * @returns String of the newly created object.
+	 */
+	default String createObject(byte[] data, String mimeType) throws ObjectStorageException {
+		return createObject(new ByteArrayInputStream(data), data.length, mimeType);
+	}
+	
+	/**
+	 * Creates a new object with the remaining bytes of a heap or direct buffer.
+	 * The position of the buffer is not changed.
+	 * 
+	 * @param data The contents of the object, from its position to its limit.
+	 * @param mimeType The MimeType of the object being stored.
+	 * 		  If set to null, will default to "application/octet-stream"
+	 * @returns String of the newly created object.
+	 */
+	default String createObject(ByteBuffer data, String mimeType) throws ObjectStorageException {
+		return createObject(data, mimeType, null, null);
+	}
+	
+	/**
+	 * The default implementation copies the remaining bytes to an array and sends them
+	 * with {@link #createObject(InputStream, long, String, Set, Collection)}.
+	 */
+	default String createObject(ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		byte[] bytes = ObjectStores.remaining(data);
+		return createObject(new ByteArrayInputStream(bytes), bytes.length, mimeType, acl, metadata);
+	}
+	
+	/**
+	 * Replaces the content of an object with the contents of a byte array.
+	 * 
+	 * @param id The ID of the object being updated
+	 * @param data The new contents for the object
+	 * @param mimeType The MimeType of the object
+	 */
+	default void updateObject(String id, byte[] data, String mimeType) throws ObjectStorageException {
+		updateObject(id, new ByteArrayInputStream(data), data.length, mimeType);
+	}
+	
+	/**
+	 * Replaces the content of an object with the remaining bytes of a heap or direct buffer.
+	 * The position of the buffer is not changed.
+	 * 
+	 * @param id The ID of the object being updated
+	 * @param data The new contents for the object, from its position to its limit
+	 * @param mimeType The MimeType of the object
+	 */
+	default void updateObject(String id, ByteBuffer data, String mimeType) throws ObjectStorageException {
+		updateObject(id, data, mimeType, null, null);
+	}
 	
+	/**
+	 * The default implementation copies the remaining bytes to an array and sends them
+	 * with {@link #updateObject(String, InputStream, long, String, Set, Collection)}.
+	 */
+	default void updateObject(String id, ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
+		byte[] bytes = ObjectStores.remaining(data);
+		updateObject(id, new ByteArrayInputStream(bytes), bytes.length, mimeType, acl, metadata);
+	}
+
+	/**
+	 * Creates a new object from a large stream. The object is created with the first chunk
+	 * of the stream, the other chunks are written with ranged updates over concurrent requests.
+	 *
+	 * @param data An input stream containing the contents of the object.
+	 *        The stream will not be closed at the end of the request.
+	 * @param length The length of the stream in bytes.
+	 * @param mimeType The MimeType of the object being stored.
+	 * @param options the chunk size, how many chunks are sent at once and how often a
+	 *        failed chunk is retried
+	 * @returns String of the newly created object.
+	 *
+	 * The default implementation sends the stream with a single
+	 * {@link #createObject(InputStream, long, String)}.
+	 *
+	 * @throws IncompleteUploadException if the object was created but a chunk failed,
+	 *         the upload can be resumed with {@link #updateObject(String, InputStream, long, long, ParallelOptions)}
+	 * @throws ObjectStorageException if the request fails
+	 */
+	default String createObject(InputStream data, long length, String mimeType, ParallelOptions options) throws ObjectStorageException {
+		return createObject(data, length, mimeType);
+	}
+
+	/**
+	 * Writes a large stream into an object starting at <code>offset</code>, in chunks sent
+	 * over concurrent requests. Content of the object past the written range is kept.
+	 *
+	 * @param id The ID of the object being updated
+	 * @param data The InputStream containing the content to write from <code>offset</code> on
+	 * @param offset The position in the object of the first byte of the stream
+	 * @param length The length of the stream in bytes
+	 * @param options the chunk size, how many chunks are sent at once and how often a
+	 *        failed chunk is retried
+	 *
+	 * @throws IncompleteUploadException if a chunk failed, with the offset to resume from
+	 * @throws ObjectStorageException if the request fails
+	 * @throws UnsupportedOperationException if the store cannot write part of an object,
+	 *         which is what the default implementation throws
+	 */
+	default void updateObject(String id, InputStream data, long offset, long length, ParallelOptions options) throws ObjectStorageException {
+		throw new UnsupportedOperationException("Ranged updates are not supported by " + getClass().getName());
+	}
+
 	/**
      * Writes the Metadata into the object. If the tag does not exist, it is 
      * created and set to the corresponding value. If the tag exists, the 
@@ -204,7 +381,76 @@ public interface ObjectStore {
      * @throws ObjectStorageException if the request fails
      */
     InputStream readObject(String id);
-    
+
+    /**
+     * Reads part of an object's content and returns an InputStream to read it.
+     *
+     * Reminder: Close the InputStream when you have completed you operation so that the
+     * HTTPConnection can be released.
+     *
+     * @param id the identifier of the object to read
+     * @param offset the position of the first byte to read
+     * @param length the number of bytes to read, fewer are returned if the object ends first
+     *
+     * @return an InputStream for reading the range of the object data
+     *
+     * The default implementation reads the object from the start with
+     * {@link #readObject(String)} and skips to the offset.
+     *
+     * @throws ObjectStorageException if the request fails, or the offset is past the end of the object
+     */
+    default InputStream readObject(String id, long offset, long length) throws ObjectStorageException {
+    	if ((offset < 0) || (length <= 0)) {
+    		throw new IllegalArgumentException("Invalid range, offset " + offset + " length " + length);
+    	}
+    	return ObjectStores.range(readObject(id), id, offset, length);
+    }
+
+    /**
+     * Opens a read only channel over an object's content. Reads issue ranged requests on
+     * demand, so only the parts of the object that are read are transferred.
+     *
+     * The channel holds no connection between reads, but it should still be closed.
+     *
+     * @param id the identifier of the object to read
+     *
+     * @return a channel whose size is the size of the object when it was opened
+     *
+     * @throws ObjectStorageException if the object cannot be found
+     * @throws UnsupportedOperationException if the store cannot read ranges on demand,
+     *         which is what the default implementation throws
+     */
+    default SeekableByteChannel newByteChannel(String id) throws ObjectStorageException {
+    	throw new UnsupportedOperationException("Byte channels are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Downloads an object's content into a file, fetching ranges of the object over
+     * concurrent requests and writing each range at its offset in the file.
+     *
+     * @param id the identifier of the object to read
+     * @param target the file to write, it is created or truncated
+     * @param options the size of the ranges, how many are fetched at once and how often
+     *        a failed range is retried
+     *
+     * @return the number of bytes written
+     *
+     * The default implementation copies the stream of {@link #readObject(String)}
+     * into the file.
+     *
+     * @throws ObjectStorageException if the request fails
+     */
+    default long readObject(String id, Path target, ParallelOptions options) throws ObjectStorageException {
+    	if (target == null) {
+    		throw new IllegalArgumentException("A target file is required");
+    	}
+    	try (InputStream in = readObject(id)) {
+    		return Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+    	} catch (IOException e) {
+    		throw new ObjectStorageException("Cannot write " + target + ": " + e.getMessage(), e);
+    	}
+    }
+
     /**
      * List all the objects for a given metadata tag
      * @param tag
@@ -223,4 +469,58 @@ public interface ObjectStore {
     
     QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, int limit, String continuatinoToken);
     QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuatinoToken);
+    
+    /**
+     * Lists a page of the objects for a given metadata tag, handing each object to the handler
+     * as it is read from the response rather than collecting the page.
+     * 
+     * @param handler receives each object in the order of the listing
+     * @return the continuation token for the next page, or <code>null</code> after the last page
+     */
+    default String listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuationToken, ObjectInfoHandler handler) {
+    	QueryResults<ObjectInfo> page = listObjectsWithMetadata(tag, userMetadataTags, systemMetadataTags, limit, continuationToken);
+    	for (ObjectInfo info : page.getResults()) {
+    		handler.handle(info);
+    	}
+    	return page.getContinuationToken();
+    }
+
+    /**
+     * Lists all the objects for a given metadata tag, requesting further pages with the
+     * continuation token of each page until the last one.
+     * 
+     * @param tag
+     * @param pageSize the number of records requested with each page, or 0 for the server's default
+     * @param prefetch the number of pages fetched in the background ahead of the page being
+     * 		  iterated, or 0 to fetch each page when the previous one has been iterated
+     * @return the identifiers of the objects, the listing should be closed if it is not iterated to its end
+     */
+    default ObjectListing<String> listAllObjects(final String tag, final int pageSize, int prefetch) {
+    	if (tag == null) {
+    		throw new IllegalArgumentException("Tag cannot be null");
+    	}
+    	return new ObjectListing<String>(new ObjectListing.PageSource<String>() {
+    		@Override
+    		public QueryResults<String> fetchPage(String continuationToken) {
+    			return listObjects(tag, pageSize, continuationToken);
+    		}
+    	}, prefetch);
+    }
+    
+    /**
+     * Lists all the objects for a given metadata tag with their metadata, following the
+     * continuation tokens like {@link #listAllObjects(String, int, int)}.
+     */
+    default ObjectListing<ObjectInfo> listAllObjectsWithMetadata(final String tag, final Collection<String> userMetadataTags,
+    		final Collection<String> systemMetadataTags, final int pageSize, int prefetch) {
+    	if (tag == null) {
+    		throw new IllegalArgumentException("Tag cannot be null");
+    	}
+    	return new ObjectListing<ObjectInfo>(new ObjectListing.PageSource<ObjectInfo>() {
+    		@Override
+    		public QueryResults<ObjectInfo> fetchPage(String continuationToken) {
+    			return listObjectsWithMetadata(tag, userMetadataTags, systemMetadataTags, pageSize, continuationToken);
+    		}
+    	}, prefetch);
+    }
 }
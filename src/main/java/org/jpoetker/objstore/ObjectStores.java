@@ -0,0 +1,120 @@
+package org.jpoetker.objstore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers of the default methods of {@link ObjectStore}.
+ */
+final class ObjectStores {
+
+	private ObjectStores() {
+		super();
+	}
+
+	/**
+	 * Copies the remaining bytes of a buffer without changing its position.
+	 */
+	static byte[] remaining(ByteBuffer data) {
+		ByteBuffer copy = data.duplicate();
+		byte[] bytes = new byte[copy.remaining()];
+		copy.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Skips a stream of a whole object to an offset, and returns a stream ending
+	 * <code>length</code> bytes further, which closes the whole stream when it is closed.
+	 *
+	 * @throws ObjectStorageException if the object ends before the offset
+	 */
+	static InputStream range(InputStream in, String id, long offset, long length) {
+		try {
+			long skipped = 0;
+			while (skipped < offset) {
+				long n = in.skip(offset - skipped);
+				if (n <= 0) {
+					// skip may return 0 before the end, a read tells
+					if (in.read() < 0) {
+						throw new ObjectStorageException("Offset " + offset + " is past the end of object " + id);
+					}
+					n = 1;
+				}
+				skipped += n;
+			}
+		} catch (IOException e) {
+			closeQuietly(in);
+			throw new ObjectStorageException(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			closeQuietly(in);
+			throw e;
+		}
+		return new LimitedInputStream(in, length);
+	}
+
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+			// the read failed already
+		}
+	}
+
+	/**
+	 * Reads up to a number of bytes from a stream.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		private long remaining;
+
+		LimitedInputStream(InputStream in, long remaining) {
+			super(in);
+			this.remaining = remaining;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = super.read(b, off, (int) Math.min(len, remaining));
+			if (n > 0) {
+				remaining -= n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.jpoetker.objstore;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Options for transferring a large object as several parts over concurrent requests.
+ */
+public class ParallelOptions {
+	public static final long DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+	public static final int DEFAULT_CONCURRENCY = 8;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	private long partSize = DEFAULT_PART_SIZE;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private Executor executor;
+
+	public ParallelOptions() {
+		super();
+	}
+
+	public ParallelOptions(long partSize, int concurrency) {
+		this();
+		setPartSize(partSize);
+		setConcurrency(concurrency);
+	}
+
+	/**
+	 * Returns the size in bytes of each part, the last part may be smaller.
+	 *
+	 * By default this is 8MB.
+	 */
+	public long getPartSize() {
+		return partSize;
+	}
+
+	public void setPartSize(long partSize) {
+		if (partSize <= 0) {
+			throw new IllegalArgumentException("The part size must be greater than 0");
+		}
+		this.partSize = partSize;
+	}
+
+	/**
+	 * Returns the maximum number of parts transferred at the same time.
+	 *
+	 * By default this is 8, it should not be larger than the connection pool.
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public void setConcurrency(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("The concurrency must be greater than 0");
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Returns how many times the transfer of a single part is retried after a network or
+	 * server error before the whole transfer fails.
+	 *
+	 * The transfer owns the retries of its parts: a part request is neither retried by the
+	 * retry policy of the store nor resent by its default client. The size lookup before a
+	 * download is retried as many times, on top of the store's retries when those are on.
+	 *
+	 * By default this is 3.
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("The number of retries cannot be negative");
+		}
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Returns the executor running the transfers, or <code>null</code> to run them on
+	 * threads created for each transfer.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+}
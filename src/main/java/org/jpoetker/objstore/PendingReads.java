@@ -0,0 +1,83 @@
+package org.jpoetker.objstore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tells the reads of an object that were overtaken by an invalidation of that object, so
+ * that a cache does not keep what such a read returned.
+ *
+ * A read is started before the object is read, and finished once, when its result is
+ * about to be cached or is dropped. Only objects with reads in progress are tracked, and
+ * an invalidation only affects the reads of its own object. Callers hold the lock of their
+ * cache around every call, the lock their invalidation holds as well.
+ */
+final class PendingReads {
+	private final Map<String, Read> reads = new HashMap<String, Read>();
+
+	/**
+	 * Counts a read of the object as in progress.
+	 *
+	 * @return the read to pass to {@link #finish(String, Read)}
+	 */
+	Read start(String id) {
+		Read read = reads.get(id);
+		if (read == null) {
+			read = new Read();
+			reads.put(id, read);
+		}
+		read.count++;
+		return read;
+	}
+
+	/**
+	 * @return whether the object was not invalidated since the read started, without
+	 *         finishing the read
+	 */
+	boolean isCurrent(Read read) {
+		return !read.invalidated;
+	}
+
+	/**
+	 * Ends a read.
+	 *
+	 * @return whether the object was not invalidated since the read started, so that its
+	 *         result may be cached
+	 */
+	boolean finish(String id, Read read) {
+		read.count--;
+		if ((read.count == 0) && (reads.get(id) == read)) {
+			reads.remove(id);
+		}
+		return !read.invalidated;
+	}
+
+	/**
+	 * Marks the reads of an object in progress as overtaken, reads started later are not.
+	 */
+	void invalidate(String id) {
+		Read read = reads.remove(id);
+		if (read != null) {
+			read.invalidated = true;
+		}
+	}
+
+	void invalidateAll() {
+		for (Read read : reads.values()) {
+			read.invalidated = true;
+		}
+		reads.clear();
+	}
+
+	/**
+	 * The reads of an object started since its last invalidation.
+	 */
+	static final class Read {
+		private int count;
+		private boolean invalidated;
+
+		private Read() {
+			super();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package org.jpoetker.objstore;
+
+/**
+ * A source of the current time.
+ * 
+ * Components that depend on the clock take a <code>TimeSource</code> so tests and
+ * benchmarks can control time. Use {@link #SYSTEM} in production.
+ */
+public interface TimeSource {
+	
+	/**
+	 * The time source backed by <code>System.currentTimeMillis()</code> and 
+	 * <code>System.nanoTime()</code>
+	 */
+	public static final TimeSource SYSTEM = new TimeSource() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * @return the current wall clock time in milliseconds since the epoch
+	 */
+	public long currentTimeMillis();
+	
+	/**
+	 * @return a monotonic time in nanoseconds, only meaningful for measuring elapsed time
+	 */
+	public long nanoTime();
+}
@@ -0,0 +1,86 @@
+package org.jpoetker.objstore;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors that run each task on its own virtual thread.
+ *
+ * The library is compiled for Java 8, so virtual threads are looked up reflectively and on
+ * runtimes without them the executors fall back to a bounded pool of daemon platform threads,
+ * whose threads exit after a minute idle so that an unused executor holds none.
+ */
+public final class VirtualThreads {
+	private static final long IDLE_SECONDS = 60;
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+	private VirtualThreads() {
+		super();
+	}
+
+	/**
+	 * @return true if the running JVM supports virtual threads
+	 */
+	public static boolean isAvailable() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * Returns an executor starting a new virtual thread for each task, or a pool of up to
+	 * <code>platformThreads</code> daemon threads when virtual threads are not available.
+	 */
+	public static ExecutorService newExecutor(int platformThreads) {
+		return newExecutor(platformThreads, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns an executor starting a new virtual thread for each task, or a pool of up to
+	 * <code>platformThreads</code> daemon threads when virtual threads are not available, in
+	 * which up to <code>queueCapacity</code> tasks wait for a thread. Tasks beyond that are
+	 * rejected, with a capacity of 0 a task is only accepted if a thread is free.
+	 */
+	public static ExecutorService newExecutor(int platformThreads, int queueCapacity) {
+		if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+			} catch (Exception e) {
+				// fall through to platform threads
+			}
+		}
+		BlockingQueue<Runnable> queue = (queueCapacity > 0) ? new LinkedBlockingQueue<Runnable>(queueCapacity) : new SynchronousQueue<Runnable>();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(platformThreads, platformThreads,
+				IDLE_SECONDS, TimeUnit.SECONDS, queue, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "objstore-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static Method findVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			// a preview API throws when it is called without --enable-preview
+			((ExecutorService) method.invoke(null)).shutdown();
+			return method;
+		} catch (Exception e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,622 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.jpoetker.objstore.AsyncObjectStore;
+import org.jpoetker.objstore.Grant;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.MetadataTag;
+import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectStorageException;
+import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.atmos.auth.AuthenticationCredentialProvider;
+import org.jpoetker.objstore.atmos.auth.SimpleAuthenticationCredentialProvider;
+import org.jpoetker.objstore.atmos.parser.QueryResponseParser;
+import org.jpoetker.objstore.atmos.parser.QueryResponseParserStateMachineImpl;
+
+/**
+ * An {@link AsyncObjectStore} for Atmos driven by a non-blocking HTTP client.
+ *
+ * Requests are multiplexed over a small number of I/O dispatch threads, so the number of
+ * requests in flight is only bounded by the connection pool and pending requests wait for
+ * a connection without holding a thread. The futures are completed on the I/O dispatch
+ * threads, dependent stages that block must be run with the <code>*Async</code> methods
+ * of <code>CompletableFuture</code>.
+ *
+ * Request bodies are read from the supplied <code>InputStream</code> as the connection is
+ * ready to accept them and the stream is closed at the end of the request. The stream is
+ * read on an I/O dispatch thread, which holds up every other request on that thread while a
+ * read blocks, so only streams over data already in memory or on a local disk should be
+ * passed; the <code>Path</code> overloads send a file without blocking.
+ *
+ * The client is started on first use, {@link #close()} shuts it down.
+ */
+public class AtmosAsyncObjectStore implements AsyncObjectStore, Closeable {
+	private static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+	private String host;
+	private int port;
+	private String scheme;
+	private String contextRoot = "/rest";
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private CloseableHttpAsyncClient httpAsyncClient;
+	private QueryResponseParser queryResponseProcessor;
+	private AuthenticationCredentialProvider authenticationCredentialProvider;
+	private DateHeaderClock dateHeaderClock = DateHeaderClock.getDefault();
+
+	public AtmosAsyncObjectStore() {
+		this(null, 80, "http", null, null);
+	}
+
+	/**
+	 * Creates an AtmosAsyncObjectStore for the host and port supplied.
+	 *
+	 * Assumes the protocol is http unless the port is 443, in which case
+	 * this constructor will assume https.
+	 */
+	public AtmosAsyncObjectStore(String host, int port, String uid, String sharedSecret) {
+		this(host, port, (port == 443) ? "https" : "http", new SimpleAuthenticationCredentialProvider(uid, sharedSecret), null);
+	}
+
+	public AtmosAsyncObjectStore(String host, int port, String scheme, AuthenticationCredentialProvider authProvider) {
+		this(host, port, scheme, authProvider, null);
+	}
+
+	public AtmosAsyncObjectStore(String host, int port, String scheme, AuthenticationCredentialProvider authProvider, CloseableHttpAsyncClient httpAsyncClient) {
+		super();
+		this.host = host;
+		this.port = port;
+		this.scheme = (scheme != null) ? scheme.toLowerCase() : ((port == 443) ? "https" : "http");
+		this.httpAsyncClient = httpAsyncClient;
+		this.queryResponseProcessor = new QueryResponseParserStateMachineImpl();
+		this.authenticationCredentialProvider = authProvider;
+	}
+
+	@Override
+	public CompletableFuture<String> createObject(InputStream data, long length, String mimeType) {
+		return createObject(data, length, mimeType, null, null);
+	}
+
+	@Override
+	public CompletableFuture<String> createObject(InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		IllegalArgumentException invalid = checkInputStreamParameters(data, length);
+		if (invalid != null) {
+			return failed(invalid);
+		}
+
+		try {
+			URL url = buildUrl(getContextRoot() + "/objects", null);
+
+			AtmosRequest request = newRequest(url);
+
+			request.setContentType(mimeType);
+			request.setAcl(acl);
+			request.setMetadata(metadata);
+
+			return execute(request.createPost(data, length), new ResultBuilder<String>() {
+				@Override
+				public String build(AtmosResponse response) {
+					return response.getObjectId();
+				}
+			});
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> updateObject(String id, InputStream data, long length, String mimeType) {
+		return updateObject(id, data, length, mimeType, null, null);
+	}
+
+	@Override
+	public CompletableFuture<Void> updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		IllegalArgumentException invalid = checkInputStreamParameters(data, length);
+		if (invalid != null) {
+			return failed(invalid);
+		}
+
+		try {
+			URL url = buildUrl(getResourcePath(id), null);
+
+			AtmosRequest request = newRequest(url);
+
+			request.setContentType(mimeType);
+			request.setMetadata(metadata);
+			request.setAcl(acl);
+
+			return execute(request.createPut(data, length), NO_RESULT);
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	/**
+	 * Creates an object from a file. Over plain HTTP the file is sent with
+	 * <code>FileChannel.transferTo</code>, over TLS through a direct buffer.
+	 */
+	@Override
+	public CompletableFuture<String> createObject(Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		if (file == null) {
+			return failed(new IllegalArgumentException("A file is required"));
+		}
+
+		try {
+			URL url = buildUrl(getContextRoot() + "/objects", null);
+
+			AtmosRequest request = newRequest(url);
+
+			request.setContentType(mimeType);
+			request.setAcl(acl);
+			request.setMetadata(metadata);
+
+			return execute(new FileRequestProducer(request.createPost(), file), new ResultBuilder<String>() {
+				@Override
+				public String build(AtmosResponse response) {
+					return response.getObjectId();
+				}
+			});
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (IOException e) {
+			return failed(new AtmosStorageException("Could not read " + file, e));
+		}
+	}
+
+	/**
+	 * Replaces the content of an object with a file. Over plain HTTP the file is sent with
+	 * <code>FileChannel.transferTo</code>, over TLS through a direct buffer.
+	 */
+	@Override
+	public CompletableFuture<Void> updateObject(String id, Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		if (file == null) {
+			return failed(new IllegalArgumentException("A file is required"));
+		}
+
+		try {
+			URL url = buildUrl(getResourcePath(id), null);
+
+			AtmosRequest request = newRequest(url);
+
+			request.setContentType(mimeType);
+			request.setMetadata(metadata);
+			request.setAcl(acl);
+
+			return execute(new FileRequestProducer(request.createPut(null, 0), file), NO_RESULT);
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (IOException e) {
+			return failed(new AtmosStorageException("Could not read " + file, e));
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> setMetadata(String id, Collection<Metadata> metadata) {
+		try {
+			URL url = buildUrl(getResourcePath(id), "metadata/user");
+
+			AtmosRequest request = newRequest(url);
+
+			request.setMetadata(metadata);
+
+			return execute(request.createPost(), NO_RESULT);
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getUserMetadata(String id) {
+		Collection<MetadataTag> tags = Collections.emptyList();
+		return getUserMetadata(id, tags);
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getUserMetadata(String id, Collection<MetadataTag> metadatatags) {
+		return getMetadata(id, metadatatags, "metadata/user");
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getSystemMetadata(String id) {
+		Collection<MetadataTag> tags = Collections.emptyList();
+		return getSystemMetadata(id, tags);
+	}
+
+	@Override
+	public CompletableFuture<Collection<Metadata>> getSystemMetadata(String id, Collection<MetadataTag> tags) {
+		return getMetadata(id, tags, "metadata/system");
+	}
+
+	private CompletableFuture<Collection<Metadata>> getMetadata(String id, Collection<MetadataTag> metadatatags, String path) {
+		try {
+			URL url = buildUrl(getResourcePath(id), path);
+
+			AtmosRequest request = newRequest(url);
+
+			request.setMetadataTags(metadatatags);
+
+			return execute(request.createGet(), new ResultBuilder<Collection<Metadata>>() {
+				@Override
+				public Collection<Metadata> build(AtmosResponse response) {
+					return response.getMetadata();
+				}
+			});
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteObject(String id) {
+		try {
+			URL url = buildUrl(getResourcePath(id), null);
+
+			AtmosRequest request = newRequest(url);
+
+			return execute(request.createDelete(), NO_RESULT);
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	/**
+	 * Reads an object from the cloud.
+	 *
+	 * The future is completed when the response headers arrive and the content is streamed
+	 * through a bounded buffer as the returned <code>InputStream</code> is read. The stream
+	 * must be closed, closing it before the end of the content aborts the request.
+	 */
+	@Override
+	public CompletableFuture<InputStream> readObject(String id) {
+		final CompletableFuture<InputStream> content = new CompletableFuture<InputStream>();
+
+		try {
+			URL url = buildUrl(getResourcePath(id), null);
+
+			AtmosRequest request = newRequest(url);
+
+			ObjectContentConsumer consumer = new ObjectContentConsumer(content);
+			Future<HttpResponse> exchange = getHttpAsyncClient().execute(HttpAsyncMethods.create(request.createGet()), consumer,
+					new FutureCallback<HttpResponse>() {
+						@Override
+						public void completed(HttpResponse response) {
+							// the content was handed over when the response arrived
+						}
+
+						@Override
+						public void failed(Exception ex) {
+							completeExceptionally(content, ex);
+						}
+
+						@Override
+						public void cancelled() {
+							content.cancel(false);
+						}
+					});
+			consumer.setExchange(exchange);
+			cancelWith(content, exchange);
+		} catch (MalformedURLException e) {
+			content.completeExceptionally(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			content.completeExceptionally(new AtmosStorageException("Invalid URL", e));
+		}
+		return content;
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<String>> listObjects(String tag, int limit, String continuationToken) {
+		if (tag == null) {
+			return failed(new AtmosStorageException("Tag cannot be null"));
+		}
+
+		try {
+			URL url = buildUrl(getContextRoot() + "/objects", null);
+
+			AtmosRequest request = newRequest(url);
+			request.setTag(tag);
+			request.setLimit(limit);
+			request.setContinuationToken(continuationToken);
+			request.setIncludeMetadata(true);
+
+			return execute(request.createGet(), new ResultBuilder<QueryResults<String>>() {
+				@Override
+				public QueryResults<String> build(AtmosResponse response) {
+					return queryResponseProcessor.parseObjectIdentifiers(response);
+				}
+			});
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(String tag, int limit, String continuationToken) {
+		return listObjectsWithMetadata(tag, null, null, limit, continuationToken);
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, int limit, String continuationToken) {
+		return listObjectsWithMetadata(tag, userMetadataTags, null, limit, continuationToken);
+	}
+
+	@Override
+	public CompletableFuture<QueryResults<ObjectInfo>> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuationToken) {
+		try {
+			URL url = buildUrl(getContextRoot() + "/objects", null);
+
+			AtmosRequest request = newRequest(url);
+			request.setTag(tag);
+			request.setLimit(limit);
+			request.setContinuationToken(continuationToken);
+			request.setIncludeMetadata(true);
+			request.setUserMetaTags(userMetadataTags);
+			request.setSystemMetaTags(systemMetadataTags);
+
+			return execute(request.createGet(), new ResultBuilder<QueryResults<ObjectInfo>>() {
+				@Override
+				public QueryResults<ObjectInfo> build(AtmosResponse response) {
+					return queryResponseProcessor.parseObjectInfo(response);
+				}
+			});
+		} catch (MalformedURLException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		} catch (URISyntaxException e) {
+			return failed(new AtmosStorageException("Invalid URL", e));
+		}
+	}
+
+	/**
+	 * Shuts down the HTTP client, requests still in flight are failed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (httpAsyncClient != null) {
+			httpAsyncClient.close();
+			httpAsyncClient = null;
+		}
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public String getScheme() {
+		return scheme;
+	}
+
+	public void setScheme(String scheme) {
+		this.scheme = scheme;
+	}
+
+	/**
+	 * Returns the HTTP client, creating and starting it on first use.
+	 */
+	public synchronized CloseableHttpAsyncClient getHttpAsyncClient() {
+		if (httpAsyncClient == null) {
+			httpAsyncClient = HttpAsyncClients.custom()
+					.setMaxConnTotal(maxConnections)
+					.setMaxConnPerRoute(maxConnections)
+					.build();
+		}
+		if (!httpAsyncClient.isRunning()) {
+			httpAsyncClient.start();
+		}
+		return httpAsyncClient;
+	}
+
+	public synchronized void setHttpAsyncClient(CloseableHttpAsyncClient httpAsyncClient) {
+		this.httpAsyncClient = httpAsyncClient;
+	}
+
+	/**
+	 * Returns the size of the connection pool of the default client.
+	 *
+	 * By default this is 200, requests beyond this are queued until a connection is free.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Returns the context root of the REST API.
+	 *
+	 * By default this is "/rest"
+	 */
+	public String getContextRoot() {
+		return contextRoot;
+	}
+
+	public void setContextRoot(String contextRoot) {
+		this.contextRoot = contextRoot;
+	}
+
+	public QueryResponseParser getQueryResponseProcessor() {
+		return queryResponseProcessor;
+	}
+
+	public void setQueryResponseProcessor(QueryResponseParser queryResponseProcessor) {
+		this.queryResponseProcessor = queryResponseProcessor;
+	}
+
+	public AuthenticationCredentialProvider getAuthenticationCredentialProvider() {
+		return authenticationCredentialProvider;
+	}
+
+	public void setAuthenticationCredentialProvider(AuthenticationCredentialProvider authenticationCredentialProvider) {
+		this.authenticationCredentialProvider = authenticationCredentialProvider;
+	}
+
+	public DateHeaderClock getDateHeaderClock() {
+		return dateHeaderClock;
+	}
+
+	public void setDateHeaderClock(DateHeaderClock dateHeaderClock) {
+		this.dateHeaderClock = (dateHeaderClock != null) ? dateHeaderClock : DateHeaderClock.getDefault();
+	}
+
+	protected URL buildUrl(String resource, String query) throws URISyntaxException, MalformedURLException {
+		URI uri = new URI(scheme, null, host, port, resource, query, null);
+		return uri.toURL();
+	}
+
+	protected String getResourcePath(String identifier) {
+		StringBuilder sb = new StringBuilder();
+		if (identifier != null) {
+			sb.append(getContextRoot());
+			sb.append("/objects/").append(identifier);
+		}
+
+		return sb.toString();
+	}
+
+	AtmosRequest newRequest(URL url) {
+		AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+		request.setDateHeaderClock(dateHeaderClock);
+		return request;
+	}
+
+	/**
+	 * @return the error the future fails with, or <code>null</code> if the arguments are valid
+	 */
+	private static IllegalArgumentException checkInputStreamParameters(InputStream data, long length) {
+		if (data == null) {
+			return new IllegalArgumentException("An InputStream is required");
+		}
+		if (length <= 0) {
+			return new IllegalArgumentException("The length of bytes in the stream must be greater than 0");
+		}
+		return null;
+	}
+
+	/**
+	 * Sends the request with the response buffered in memory, the result is built from the
+	 * validated response on the I/O dispatch thread.
+	 */
+	private <T> CompletableFuture<T> execute(HttpUriRequest request, ResultBuilder<T> builder) {
+		return execute(HttpAsyncMethods.create(request), builder);
+	}
+
+	private <T> CompletableFuture<T> execute(HttpAsyncRequestProducer producer, final ResultBuilder<T> builder) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+
+		Future<HttpResponse> exchange = getHttpAsyncClient().execute(producer, new BasicAsyncResponseConsumer(),
+				new FutureCallback<HttpResponse>() {
+					@Override
+					public void completed(HttpResponse response) {
+						try {
+							result.complete(builder.build(new AtmosResponse(response)));
+						} catch (RuntimeException e) {
+							completeExceptionally(result, e);
+						}
+					}
+
+					@Override
+					public void failed(Exception ex) {
+						completeExceptionally(result, ex);
+					}
+
+					@Override
+					public void cancelled() {
+						result.cancel(false);
+					}
+				});
+		cancelWith(result, exchange);
+		return result;
+	}
+
+	/**
+	 * Cancels the exchange when the future handed to the caller is cancelled.
+	 */
+	private static void cancelWith(CompletableFuture<?> result, final Future<?> exchange) {
+		result.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable t) {
+				if (t instanceof CancellationException) {
+					exchange.cancel(true);
+				}
+			}
+		});
+	}
+
+	private static void completeExceptionally(CompletableFuture<?> result, Exception e) {
+		if (e instanceof ObjectStorageException) {
+			result.completeExceptionally(e);
+		} else {
+			result.completeExceptionally(new AtmosStorageException(e.getMessage(), e));
+		}
+	}
+
+	private static <T> CompletableFuture<T> failed(RuntimeException e) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		result.completeExceptionally(e);
+		return result;
+	}
+
+	private static final ResultBuilder<Void> NO_RESULT = new ResultBuilder<Void>() {
+		@Override
+		public Void build(AtmosResponse response) {
+			return null;
+		}
+	};
+
+	/**
+	 * Builds the result of an operation from its validated response.
+	 */
+	private interface ResultBuilder<T> {
+		T build(AtmosResponse response);
+	}
+}
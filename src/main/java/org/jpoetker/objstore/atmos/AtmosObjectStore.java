@@ -1,50 +1,213 @@
 package org.jpoetker.objstore.atmos;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.scheme.SchemeSocketFactory;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.StandardHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.jpoetker.objstore.Grant;
 
 import org.jpoetker.objstore.Metadata;
 import org.jpoetker.objstore.MetadataTag;
 import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
 import org.jpoetker.objstore.ObjectStorageException;
 import org.jpoetker.objstore.ObjectStore;
+import org.jpoetker.objstore.ParallelOptions;
 import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.TimeSource;
+import org.jpoetker.objstore.VirtualThreads;
 import org.jpoetker.objstore.atmos.auth.AuthenticationCredentialProvider;
 import org.jpoetker.objstore.atmos.auth.SimpleAuthenticationCredentialProvider;
 import org.jpoetker.objstore.atmos.parser.QueryResponseParser;
-import org.jpoetker.objstore.atmos.parser.QueryResponseParserStreamImpl;
+import org.jpoetker.objstore.atmos.parser.QueryResponseParserStateMachineImpl;
 
-public class AtmosObjectStore implements ObjectStore {
+public class AtmosObjectStore implements ObjectStore, Closeable {
+	private static final int DEFAULT_MAX_CONNECTIONS = 200;
+	private static final int DEFAULT_READ_AHEAD_SIZE = 64 * 1024;
+	private static final int DEFAULT_COALESCING_BUFFER_SIZE = 256 * 1024;
+	private static final int DEFAULT_MAX_NODE_FAILURES = 3;
+	private static final long DEFAULT_NODE_EJECTION_MILLIS = 10 * 1000;
+	private static final double DEFAULT_HEDGING_PERCENTILE = 95;
+	private static final int DEFAULT_HEDGING_BUDGET_PERCENT = 5;
+	private static final int DEFAULT_MAX_RETRIES = 3;
+	private static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 50;
+	private static final long DEFAULT_RETRY_MAX_DELAY_MILLIS = 2000;
+	private static final int DEFAULT_RETRY_BUDGET_PERCENT = 10;
+	private static final int DEFAULT_INITIAL_CONCURRENCY_LIMIT = 20;
+	private static final long DEFAULT_CONCURRENCY_QUEUE_TIMEOUT_MILLIS = 1000;
+	private static final int DEFAULT_CIRCUIT_WINDOW_SIZE = 20;
+	private static final int DEFAULT_CIRCUIT_FAILURE_RATE_PERCENT = 50;
+	private static final int DEFAULT_CIRCUIT_SLOW_CALL_RATE_PERCENT = 80;
+	private static final long DEFAULT_CIRCUIT_SLOW_CALL_MILLIS = 5000;
+	private static final long DEFAULT_CIRCUIT_OPEN_MILLIS = 10 * 1000;
+	
+	/**
+	 * How the default <code>HttpClient</code> is built.
+	 */
+	public enum ExecutionMode {
+		/**
+		 * A <code>PoolingHttpClientConnectionManager</code>, for callers on platform threads.
+		 */
+		PLATFORM_THREADS,
+		/**
+		 * A connection pool that parks rather than waits on a monitor while leasing a 
+		 * connection, so callers on virtual threads are never pinned to their carrier.
+		 */
+		VIRTUAL_THREADS
+	}
+
+	/**
+	 * How a request picks one of the {@link #setEndpoints(List) endpoints}.
+	 */
+	public enum BalancingPolicy {
+		/**
+		 * The node with the fewest requests waiting for a response.
+		 */
+		LEAST_OUTSTANDING_REQUESTS,
+		/**
+		 * The node with the lowest average latency times the requests waiting for a response
+		 * plus one.
+		 */
+		LATENCY_WEIGHTED
+	}
+
+	/**
+	 * The state of the circuit breaker of a node.
+	 */
+	public enum CircuitState {
+		/**
+		 * Requests are sent and their outcomes counted.
+		 */
+		CLOSED,
+		/**
+		 * Requests fail at once without being sent.
+		 */
+		OPEN,
+		/**
+		 * A few trial requests are sent to find out whether the node is back.
+		 */
+		HALF_OPEN
+	}
 	
 	private String host;
 	private int port;
 	private String scheme;
 	private String contextRoot = "/rest";
-	private HttpClient httpClient;
+	private volatile HttpClient httpClient;
+	private boolean ownsHttpClient;
 	private QueryResponseParser queryResponseProcessor;
 	private AuthenticationCredentialProvider authenticationCredentialProvider;
+	private DateHeaderClock dateHeaderClock = DateHeaderClock.getDefault();
+	private TimeSource timeSource = TimeSource.SYSTEM;
+	private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private int readAheadSize = DEFAULT_READ_AHEAD_SIZE;
+	private boolean coalescing;
+	private int coalescingBufferSize = DEFAULT_COALESCING_BUFFER_SIZE;
+	private volatile List<Endpoint> endpoints = Collections.emptyList();
+	private BalancingPolicy balancingPolicy = BalancingPolicy.LEAST_OUTSTANDING_REQUESTS;
+	private int maxNodeFailures = DEFAULT_MAX_NODE_FAILURES;
+	private long nodeEjectionMillis = DEFAULT_NODE_EJECTION_MILLIS;
+	private volatile LoadBalancer loadBalancer;
+	private boolean hedging;
+	private double hedgingPercentile = DEFAULT_HEDGING_PERCENTILE;
+	private int hedgingBudgetPercent = DEFAULT_HEDGING_BUDGET_PERCENT;
+	private volatile Hedger hedger;
+	private ExecutorService hedgingExecutor;
+	private boolean retrying;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private long retryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
+	private long retryMaxDelayMillis = DEFAULT_RETRY_MAX_DELAY_MILLIS;
+	private int retryBudgetPercent = DEFAULT_RETRY_BUDGET_PERCENT;
+	private volatile Retrier retrier;
+	private volatile boolean adaptiveConcurrency;
+	private int initialConcurrencyLimit = DEFAULT_INITIAL_CONCURRENCY_LIMIT;
+	private long concurrencyQueueTimeoutMillis = DEFAULT_CONCURRENCY_QUEUE_TIMEOUT_MILLIS;
+	private final ConcurrentMap<Endpoint, ConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<Endpoint, ConcurrencyLimiter>();
+	private volatile boolean circuitBreaking;
+	private int circuitWindowSize = DEFAULT_CIRCUIT_WINDOW_SIZE;
+	private int circuitFailureRatePercent = DEFAULT_CIRCUIT_FAILURE_RATE_PERCENT;
+	private int circuitSlowCallRatePercent = DEFAULT_CIRCUIT_SLOW_CALL_RATE_PERCENT;
+	private long circuitSlowCallMillis = DEFAULT_CIRCUIT_SLOW_CALL_MILLIS;
+	private long circuitOpenMillis = DEFAULT_CIRCUIT_OPEN_MILLIS;
+	private final ConcurrentMap<Endpoint, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<Endpoint, CircuitBreaker>();
+	private final List<CircuitBreakerListener> circuitBreakerListeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+	private final RequestSender clientSender = new RequestSender() {
+		@Override
+		public HttpResponse send(HttpUriRequest request) throws IOException {
+			return getHttpClient().execute(request);
+		}
+	};
+
+	private final RequestSender limitedSender = new RequestSender() {
+		@Override
+		public HttpResponse send(HttpUriRequest request) throws IOException {
+			if (!adaptiveConcurrency) {
+				return clientSender.send(request);
+			}
+			return getConcurrencyLimiter(endpointOf(request.getURI())).execute(clientSender, request);
+		}
+	};
+
+	/**
+	 * Sends a request to the node in its URI, through the circuit breaker and within the
+	 * concurrency limit of the node.
+	 */
+	private final RequestSender nodeSender = new RequestSender() {
+		@Override
+		public HttpResponse send(HttpUriRequest request) throws IOException {
+			if (!circuitBreaking) {
+				return limitedSender.send(request);
+			}
+			return getCircuitBreaker(endpointOf(request.getURI())).execute(limitedSender, request);
+		}
+	};
+
+	// requests whose caller retries them, which the default client must not resend
+	private final Set<HttpRequest> sentOnce = Collections.newSetFromMap(new ConcurrentHashMap<HttpRequest, Boolean>());
+	private final SingleFlight<List<Metadata>> metadataReads = new SingleFlight<List<Metadata>>();
+	private final ConcurrentMap<String, SharedBody> objectReads = new ConcurrentHashMap<String, SharedBody>();
 	
 	public AtmosObjectStore() {
 		this(null, null, null);
@@ -97,7 +260,7 @@ public class AtmosObjectStore implements ObjectStore {
 		this.port = port;
 		this.scheme = (scheme != null) ? scheme.toLowerCase() : ((port == 443) ? "https" : "http");
 		this.httpClient = httpClient;
-		this.queryResponseProcessor = new QueryResponseParserStreamImpl();
+		this.queryResponseProcessor = new QueryResponseParserStateMachineImpl();
 		this.authenticationCredentialProvider = authProvider;
 	}
 	
@@ -130,20 +293,59 @@ public class AtmosObjectStore implements ObjectStore {
 	public String createObject(InputStream data,
 			long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata)
 			throws ObjectStorageException {
-		AtmosResponse response = null;
-		
 		validateInputStreamParamaters(data, length);
 		
+		return createObject(new InputStreamEntity(data, length), mimeType, acl, metadata);
+	}
+
+	@Override
+	public String createObject(Path file, String mimeType) throws ObjectStorageException {
+		return createObject(file, mimeType, null, null);
+	}
+
+	/**
+	 * Creates an object from a file, read again from the start if the request is resent.
+	 * The blocking client copies the file to the socket through a heap buffer, only
+	 * {@link AtmosAsyncObjectStore} hands it to the kernel without a copy.
+	 */
+	@Override
+	public String createObject(Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata)
+			throws ObjectStorageException {
+		return createObject(newFileEntity(file), mimeType, acl, metadata);
+	}
+
+	@Override
+	public String createObject(byte[] data, String mimeType) throws ObjectStorageException {
+		return createObject(wrap(data), mimeType, null, null);
+	}
+
+	@Override
+	public String createObject(ByteBuffer data, String mimeType) throws ObjectStorageException {
+		return createObject(data, mimeType, null, null);
+	}
+
+	/**
+	 * Creates an object from a buffer, sent with a repeatable entity so the client can retry it.
+	 */
+	@Override
+	public String createObject(ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata)
+			throws ObjectStorageException {
+		return createObject(newBufferEntity(data), mimeType, acl, metadata);
+	}
+
+	private String createObject(HttpEntity entity, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		AtmosResponse response = null;
+		
 		try {
 			URL url = buildUrl(getContextRoot() + "/objects", null);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			
 			request.setContentType(mimeType);
 			request.setAcl(acl);
 			request.setMetadata(metadata);
 			
-			response = execute( request.createPost(data, length));
+			response = execute( request.createPost(entity));
 			
 			return response.getObjectId();
 		} catch (MalformedURLException e) {
@@ -193,20 +395,60 @@ public class AtmosObjectStore implements ObjectStore {
 			InputStream data, long length, String mimeType,
 			Set<Grant> acl, Collection<Metadata> metadata) throws ObjectStorageException {
 		
-		AtmosResponse response = null;
-		
 		validateInputStreamParamaters(data, length);
 		
+		updateObject(id, new InputStreamEntity(data, length), mimeType, acl, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, Path file, String mimeType) throws ObjectStorageException {
+		updateObject(id, file, mimeType, null, null);
+	}
+
+	/**
+	 * Replaces the content of an object with a file, read again from the start if the request is resent.
+	 * The blocking client copies the file to the socket through a heap buffer, only
+	 * {@link AtmosAsyncObjectStore} hands it to the kernel without a copy.
+	 */
+	@Override
+	public void updateObject(String id, Path file, String mimeType, Set<Grant> acl, Collection<Metadata> metadata)
+			throws ObjectStorageException {
+		updateObject(id, newFileEntity(file), mimeType, acl, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, byte[] data, String mimeType) throws ObjectStorageException {
+		updateObject(id, wrap(data), mimeType, null, null);
+	}
+
+	@Override
+	public void updateObject(String id, ByteBuffer data, String mimeType) throws ObjectStorageException {
+		updateObject(id, data, mimeType, null, null);
+	}
+
+	/**
+	 * Replaces the content of an object with a buffer, sent with a repeatable entity so the
+	 * client can retry it.
+	 */
+	@Override
+	public void updateObject(String id, ByteBuffer data, String mimeType, Set<Grant> acl, Collection<Metadata> metadata)
+			throws ObjectStorageException {
+		updateObject(id, newBufferEntity(data), mimeType, acl, metadata);
+	}
+
+	private void updateObject(String id, HttpEntity entity, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		AtmosResponse response = null;
+		
 		try {
 			URL url = buildUrl(getResourcePath(id), null);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			
 			request.setContentType(mimeType);
 			request.setMetadata(metadata);
 			request.setAcl(acl);
 			
-			response = execute(request.createPut(data, length));
+			response = execute(request.createPut(entity));
 		
 		} catch (MalformedURLException e) {
 			throw new AtmosStorageException("Invalid URL", e);
@@ -221,6 +463,40 @@ public class AtmosObjectStore implements ObjectStore {
 		}
 	}
 
+	/**
+	 * Creates an object with the first chunk of the stream, then writes the other chunks
+	 * with ranged PUTs over concurrent requests.
+	 * 
+	 * Creating the object is not retried, since a retried POST could create a second object.
+	 */
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, ParallelOptions options)
+			throws ObjectStorageException {
+		validateInputStreamParamaters(data, length);
+		long first = Math.min((options != null) ? options.getPartSize() : ParallelOptions.DEFAULT_PART_SIZE, length);
+		if (first > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The part size of an upload must fit in a byte array");
+		}
+		
+		// the first chunk is read into a buffer, which unlike a stream can be sent again
+		byte[] chunk = new byte[(int) first];
+		ParallelUpload.readChunk(data, chunk, chunk.length);
+		
+		String id = createObject(chunk, mimeType);
+		new ParallelUpload(this, id, options, data, first, length - first).upload();
+		return id;
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long offset, long length, ParallelOptions options)
+			throws ObjectStorageException {
+		validateInputStreamParamaters(data, length);
+		if (offset < 0) {
+			throw new IllegalArgumentException("The offset cannot be negative");
+		}
+		new ParallelUpload(this, id, options, data, offset, length).upload();
+	}
+
 	@Override
 	public void setMetadata(String id,
 			Collection<Metadata> metadata) throws ObjectStorageException {
@@ -229,7 +505,7 @@ public class AtmosObjectStore implements ObjectStore {
 		try {
 			URL url = buildUrl(getResourcePath(id), "metadata/user");
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			
 			request.setMetadata(metadata);
 			
@@ -305,17 +581,46 @@ public class AtmosObjectStore implements ObjectStore {
 	}
 	
 	
-	private Collection<Metadata>getMetadata(String id, Collection<MetadataTag> metadatatags, String path) {
+	/**
+	 * Reads metadata, sharing the response with the concurrent reads of the same metadata
+	 * by the same user. Every caller gets its own copy of the list and of the metadata in it,
+	 * as <code>Metadata</code> can be changed.
+	 */
+	private Collection<Metadata> getMetadata(final String id, final Collection<MetadataTag> metadatatags, final String path) {
+		if (!coalescing) {
+			return fetchMetadata(id, metadatatags, path);
+		}
+
+		StringBuilder key = new StringBuilder(coalescingKey(id)).append('?').append(path);
+		if (metadatatags != null) {
+			for (MetadataTag tag : metadatatags) {
+				key.append(',').append(tag.getName());
+			}
+		}
+		List<Metadata> shared = metadataReads.execute(key.toString(), new Callable<List<Metadata>>() {
+			@Override
+			public List<Metadata> call() {
+				return fetchMetadata(id, metadatatags, path);
+			}
+		});
+		List<Metadata> copy = new ArrayList<Metadata>(shared.size());
+		for (Metadata metadata : shared) {
+			copy.add(new Metadata(metadata));
+		}
+		return copy;
+	}
+
+	private List<Metadata> fetchMetadata(String id, Collection<MetadataTag> metadatatags, String path) {
 		AtmosResponse response = null;
 		
 		try {
 			URL url = buildUrl(getResourcePath(id), path);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			
 			request.setMetadataTags(metadatatags);
 			
-			response = execute(request.createGet());
+			response = executeRead(request);
 			
 			return response.getMetadata();
 		} catch (MalformedURLException e) {
@@ -344,7 +649,7 @@ public class AtmosObjectStore implements ObjectStore {
 		try {
 			URL url = buildUrl(getResourcePath(id), null);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			
 			response = execute(request.createDelete());
 			
@@ -373,14 +678,43 @@ public class AtmosObjectStore implements ObjectStore {
 	 */
 	@Override
 	public InputStream readObject(String id) {
+		if (!coalescing) {
+			return fetchObject(id);
+		}
+
+		String key = coalescingKey(id);
+		while (true) {
+			SharedBody body = new SharedBody(objectReads, key, coalescingBufferSize);
+			SharedBody current = objectReads.putIfAbsent(key, body);
+			if (current == null) {
+				InputStream in;
+				try {
+					in = fetchObject(id);
+				} catch (Throwable t) {
+					// joiners wait without a timeout, so they are released whatever went wrong
+					body.fail((t instanceof RuntimeException) ? (RuntimeException) t : new AtmosStorageException("The shared read failed", t));
+					throw t;
+				}
+				return body.open(in);
+			}
+			InputStream in = current.join();
+			if (in != null) {
+				return in;
+			}
+			// the response can no longer be shared, so send another request
+			objectReads.remove(key, current);
+		}
+	}
+
+	private InputStream fetchObject(String id) {
 		AtmosResponse response = null;
 
 		try {
 			URL url = buildUrl(getResourcePath(id), null);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			
-			response = execute(request.createGet());
+			response = executeRead(request);
 		
 			return response.getInputStream();
 		} catch (MalformedURLException e) {
@@ -392,6 +726,65 @@ public class AtmosObjectStore implements ObjectStore {
 		}
 	}
 
+	/**
+	 * Reads a range of an object with the Range header.
+	 *
+	 * A server that ignores the range and answers with the whole object is treated as an
+	 * error, rather than reading past the range.
+	 */
+	@Override
+	public InputStream readObject(String id, long offset, long length) {
+		HttpGet get = null;
+		AtmosResponse response = null;
+
+		try {
+			URL url = buildUrl(getResourcePath(id), null);
+
+			AtmosRequest request = newRequest(url);
+			request.setRange(offset, length);
+
+			get = request.createGet();
+			response = execute(get);
+
+			int status = response.getStatusLine().getStatusCode();
+			if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+				get.abort();
+				throw new AtmosStorageException("Expected a partial response but got " + status, status);
+			}
+			return response.getInputStream();
+		} catch (MalformedURLException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} catch (URISyntaxException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} catch (IOException e) {
+			throw new AtmosStorageException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Opens a read only channel over an object, reading at least
+	 * {@link #getReadAheadSize()} bytes with each ranged request.
+	 */
+	@Override
+	public SeekableByteChannel newByteChannel(String id) {
+		return new ObjectByteChannel(this, id, getObjectSize(id), readAheadSize);
+	}
+
+	/**
+	 * Downloads an object into a file using ranged reads over concurrent requests.
+	 *
+	 * The size of the object is read from its system metadata first. The ranges share the
+	 * connection pool of the <code>HttpClient</code>, so the concurrency of the options
+	 * should not be larger than {@link #getMaxConnections()}.
+	 */
+	@Override
+	public long readObject(String id, Path target, ParallelOptions options) throws ObjectStorageException {
+		if (target == null) {
+			throw new IllegalArgumentException("A target file is required");
+		}
+		return new ParallelDownload(this, id, options).download(target);
+	}
+
 	@Override
 	public QueryResults<String> listObjects(String tag, int limit, String continuationToken) {
 		AtmosResponse response = null;
@@ -401,7 +794,7 @@ public class AtmosObjectStore implements ObjectStore {
 		try {
 			URL url = buildUrl(getContextRoot() + "/objects", null);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			request.setTag(tag);
 			request.setLimit(limit);
 			request.setContinuationToken(continuationToken);
@@ -436,7 +829,7 @@ public class AtmosObjectStore implements ObjectStore {
 		try {
 			URL url = buildUrl(getContextRoot() + "/objects", null);
 			
-			AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+			AtmosRequest request = newRequest(url);
 			request.setTag(tag);
 			request.setLimit(limit);
 			request.setContinuationToken(continuationToken);
@@ -457,6 +850,37 @@ public class AtmosObjectStore implements ObjectStore {
 			cleanup(response);
 		}
 	}
+
+	@Override
+	public String listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags, int limit, String continuationToken, ObjectInfoHandler handler) {
+		AtmosResponse response = null;
+		
+		if (handler == null) throw new IllegalArgumentException("A handler is required");
+
+		try {
+			URL url = buildUrl(getContextRoot() + "/objects", null);
+			
+			AtmosRequest request = newRequest(url);
+			request.setTag(tag);
+			request.setLimit(limit);
+			request.setContinuationToken(continuationToken);
+			request.setIncludeMetadata(true);
+			request.setUserMetaTags(userMetadataTags);
+			request.setSystemMetaTags(systemMetadataTags);
+			
+			response = execute( request.createGet() );
+			
+			return queryResponseProcessor.parseObjectInfo(response, handler);
+		} catch (MalformedURLException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} catch (URISyntaxException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} catch (IOException e) {
+			throw new AtmosStorageException(e.getMessage(), e);
+		} finally {
+			cleanup(response);
+		}
+	}
 	
 	public String getHost() {
 		return host;
@@ -478,26 +902,675 @@ public class AtmosObjectStore implements ObjectStore {
 		return scheme;
 	}
 
-	public void setScheme(String scheme) {
+	public synchronized void setScheme(String scheme) {
 		this.scheme = scheme;
+		resetLoadBalancer();
 	}
 
+	/**
+	 * Returns the client, creating a default one on first use.
+	 *
+	 * The default client treats PUT as idempotent, so an update with a repeatable body, such
+	 * as a buffer or a file, is resent after an I/O error on a stale pooled connection,
+	 * unless {@link #isRetrying() retrying} is on and the store resends requests itself. With
+	 * several endpoints its pool holds {@link #getMaxConnections()} connections per node.
+	 */
 	public HttpClient getHttpClient() {
-		if (httpClient == null) {
-			SchemeRegistry schemeRegistry = new SchemeRegistry();
-			SchemeSocketFactory socketFactory = ("https".equals(this.scheme) ? SSLSocketFactory.getSocketFactory() : PlainSocketFactory.getSocketFactory());
-			schemeRegistry.register(new Scheme(this.scheme, this.port, socketFactory));
-			
-			ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(schemeRegistry);
-			cm.setMaxTotal(200);
-			cm.setDefaultMaxPerRoute(200);
-			httpClient = new DefaultHttpClient(cm, null);
+		HttpClient client = httpClient;
+		if (client == null) {
+			// a fan-out of virtual threads may all make their first call at once
+			synchronized (this) {
+				client = httpClient;
+				if (client == null) {
+					client = createDefaultClient();
+					httpClient = client;
+					ownsHttpClient = true;
+				}
+			}
+		}
+		return client;
+	}
+
+	private HttpClient createDefaultClient() {
+		if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+			return HttpClientBuilder.create()
+					.setConnectionManager(new VirtualThreadConnectionManager(maxConnections * nodeCount(), maxConnections))
+					.setRetryHandler(createRetryHandler())
+					.build();
 		}
-		return httpClient;
+		PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+		cm.setMaxTotal(maxConnections * nodeCount());
+		cm.setDefaultMaxPerRoute(maxConnections);
+		return HttpClientBuilder.create()
+				.setConnectionManager(cm)
+				.setRetryHandler(createRetryHandler())
+				.build();
 	}
 
-	public void setHttpClient(HttpClient httpClient) {
+	/**
+	 * Creates the handler of the default client, which leaves retries to the
+	 * {@link Retrier} while there is one, and to the caller of
+	 * {@link #executeOnce(HttpUriRequest)}, so that a request is not resent by both.
+	 */
+	private HttpRequestRetryHandler createRetryHandler() {
+		final HttpRequestRetryHandler standard = new StandardHttpRequestRetryHandler();
+		return new HttpRequestRetryHandler() {
+			@Override
+			public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+				if ((retrier != null) || sentOnce.contains(originalRequest(context))) {
+					return false;
+				}
+				return standard.retryRequest(exception, executionCount, context);
+			}
+		};
+	}
+
+	private static HttpRequest originalRequest(HttpContext context) {
+		HttpRequest request = HttpClientContext.adapt(context).getRequest();
+		// the client and the load balancer each wrap the request
+		while (request instanceof HttpRequestWrapper) {
+			request = ((HttpRequestWrapper) request).getOriginal();
+		}
+		return request;
+	}
+
+	public synchronized void setHttpClient(HttpClient httpClient) {
 		this.httpClient = httpClient;
+		this.ownsHttpClient = false;
+	}
+
+	/**
+	 * Shuts down the executor of hedged reads, and the client if it was created by
+	 * {@link #getHttpClient()}, a client that was passed in is left to its owner.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		hedger = null;
+		if (hedgingExecutor != null) {
+			hedgingExecutor.shutdown();
+			hedgingExecutor = null;
+		}
+		if (ownsHttpClient) {
+			((Closeable) httpClient).close();
+			httpClient = null;
+			ownsHttpClient = false;
+		}
+	}
+
+	/**
+	 * Returns how the default <code>HttpClient</code> is built, 
+	 * {@link ExecutionMode#PLATFORM_THREADS} unless set otherwise.
+	 * 
+	 * The mode only applies to a client created by {@link #getHttpClient()}, so it must be
+	 * set before the first request.
+	 */
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	public void setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = (executionMode != null) ? executionMode : ExecutionMode.PLATFORM_THREADS;
+	}
+
+	/**
+	 * Returns the size of the connection pool of the default <code>HttpClient</code>, for
+	 * each node when there are several endpoints.
+	 * 
+	 * By default this is 200.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Returns the minimum number of bytes a channel from {@link #newByteChannel(String)}
+	 * requests at once, reads that fall into the bytes already fetched need no request.
+	 * 
+	 * By default this is 64KB.
+	 */
+	public int getReadAheadSize() {
+		return readAheadSize;
+	}
+
+	public void setReadAheadSize(int readAheadSize) {
+		if (readAheadSize <= 0) {
+			throw new IllegalArgumentException("The read ahead size must be greater than 0");
+		}
+		this.readAheadSize = readAheadSize;
+	}
+
+	/**
+	 * Returns the access nodes requests are spread over, when there are none every request
+	 * goes to {@link #getHost()} and {@link #getPort()}.
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Spreads requests over several access nodes, picked by the
+	 * {@link #getBalancingPolicy() balancing policy} among the nodes that are healthy.
+	 * 
+	 * The endpoints should be set before the first request, since the pool of the default
+	 * <code>HttpClient</code> is sized for them. Setting the endpoints, or any of the
+	 * balancing settings, forgets what was learnt of the health of the nodes.
+	 */
+	public synchronized void setEndpoints(List<Endpoint> endpoints) {
+		this.endpoints = (endpoints != null) ? Collections.unmodifiableList(new ArrayList<Endpoint>(endpoints)) : Collections.<Endpoint>emptyList();
+		resetLoadBalancer();
+	}
+
+	/**
+	 * Returns how a node is picked for a request, 
+	 * {@link BalancingPolicy#LEAST_OUTSTANDING_REQUESTS} unless set otherwise.
+	 */
+	public BalancingPolicy getBalancingPolicy() {
+		return balancingPolicy;
+	}
+
+	public synchronized void setBalancingPolicy(BalancingPolicy balancingPolicy) {
+		this.balancingPolicy = (balancingPolicy != null) ? balancingPolicy : BalancingPolicy.LEAST_OUTSTANDING_REQUESTS;
+		resetLoadBalancer();
+	}
+
+	/**
+	 * Returns how many requests in a row a node may fail, with an I/O error or a 5xx
+	 * status, before it is ejected.
+	 * 
+	 * By default this is 3.
+	 */
+	public int getMaxNodeFailures() {
+		return maxNodeFailures;
+	}
+
+	public synchronized void setMaxNodeFailures(int maxNodeFailures) {
+		if (maxNodeFailures <= 0) {
+			throw new IllegalArgumentException("The maximum number of node failures must be greater than 0");
+		}
+		this.maxNodeFailures = maxNodeFailures;
+		resetLoadBalancer();
+	}
+
+	/**
+	 * Returns how long an ejected node gets no requests, after which a single request
+	 * probes it.
+	 * 
+	 * By default this is 10 seconds.
+	 */
+	public long getNodeEjectionMillis() {
+		return nodeEjectionMillis;
+	}
+
+	public synchronized void setNodeEjectionMillis(long nodeEjectionMillis) {
+		if (nodeEjectionMillis < 0) {
+			throw new IllegalArgumentException("The node ejection time cannot be negative");
+		}
+		this.nodeEjectionMillis = nodeEjectionMillis;
+		resetLoadBalancer();
+	}
+
+	LoadBalancer getLoadBalancer() {
+		return loadBalancer;
+	}
+
+	/**
+	 * Sets the clock of the load balancer, the hedger, the concurrency limiters and the
+	 * circuit breakers, this is only used for testing and must be called before any
+	 * request is sent.
+	 */
+	synchronized void setTimeSource(TimeSource timeSource) {
+		this.timeSource = timeSource;
+		resetLoadBalancer();
+		resetHedger();
+	}
+
+	private void resetLoadBalancer() {
+		loadBalancer = endpoints.isEmpty() ? null
+				: new LoadBalancer(endpoints, (scheme != null) ? scheme : "http", balancingPolicy, maxNodeFailures, nodeEjectionMillis, timeSource);
+	}
+
+	private int nodeCount() {
+		return Math.max(1, endpoints.size());
+	}
+
+	/**
+	 * Returns whether reads of whole objects and of metadata are hedged: a read taking
+	 * longer than the {@link #getHedgingPercentile() percentile} of the latencies of recent
+	 * reads is sent a second time, to another node when there are several endpoints, and
+	 * the first response is kept while the other request is aborted.
+	 * 
+	 * By default this is false.
+	 */
+	public boolean isHedging() {
+		return hedging;
+	}
+
+	public synchronized void setHedging(boolean hedging) {
+		this.hedging = hedging;
+		resetHedger();
+	}
+
+	/**
+	 * Returns the percentile of the latencies of recent reads after which a read is sent
+	 * again.
+	 * 
+	 * By default this is 95.
+	 */
+	public double getHedgingPercentile() {
+		return hedgingPercentile;
+	}
+
+	public synchronized void setHedgingPercentile(double hedgingPercentile) {
+		if ((hedgingPercentile <= 0) || (hedgingPercentile > 100)) {
+			throw new IllegalArgumentException("The hedging percentile must be greater than 0 and at most 100");
+		}
+		this.hedgingPercentile = hedgingPercentile;
+		resetHedger();
+	}
+
+	/**
+	 * Returns how many reads per hundred may be sent a second time, which caps the load
+	 * added by hedging.
+	 * 
+	 * By default this is 5.
+	 */
+	public int getHedgingBudgetPercent() {
+		return hedgingBudgetPercent;
+	}
+
+	public synchronized void setHedgingBudgetPercent(int hedgingBudgetPercent) {
+		if (hedgingBudgetPercent < 0) {
+			throw new IllegalArgumentException("The hedging budget cannot be negative");
+		}
+		this.hedgingBudgetPercent = hedgingBudgetPercent;
+		resetHedger();
+	}
+
+	Hedger getHedger() {
+		return hedger;
+	}
+
+	private void resetHedger() {
+		if (hedging) {
+			if (hedgingExecutor == null) {
+				// no queue, a read waits for no thread and a copy is skipped when all are busy
+				hedgingExecutor = VirtualThreads.newExecutor(maxConnections, 0);
+			}
+			hedger = new Hedger(hedgingPercentile, hedgingBudgetPercent, hedgingExecutor, timeSource);
+		} else {
+			hedger = null;
+		}
+	}
+
+	/**
+	 * Returns whether requests are sent again after a transient failure: an I/O error, an
+	 * Atmos internal error or busy server, or a 5xx status from a proxy. Reads and updates
+	 * whose content can be read again are retried, other requests only when they could not
+	 * connect. While this is on the default client no longer resends requests itself.
+	 * 
+	 * By default this is false.
+	 */
+	public boolean isRetrying() {
+		return retrying;
+	}
+
+	public synchronized void setRetrying(boolean retrying) {
+		this.retrying = retrying;
+		resetRetrier();
+	}
+
+	/**
+	 * Returns how many times a request is sent again after a transient failure when
+	 * {@link #isRetrying() retrying} is on.
+	 * 
+	 * By default this is 3, 0 turns retries off.
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public synchronized void setMaxRetries(int maxRetries) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("The maximum number of retries cannot be negative");
+		}
+		this.maxRetries = maxRetries;
+		resetRetrier();
+	}
+
+	/**
+	 * Returns the shortest wait before a retry. Each wait is random, between this and three
+	 * times the previous wait.
+	 * 
+	 * By default this is 50 milliseconds.
+	 */
+	public long getRetryBaseDelayMillis() {
+		return retryBaseDelayMillis;
+	}
+
+	public synchronized void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+		if ((retryBaseDelayMillis < 0) || (retryBaseDelayMillis > retryMaxDelayMillis)) {
+			throw new IllegalArgumentException("The base retry delay must be between 0 and the maximum delay");
+		}
+		this.retryBaseDelayMillis = retryBaseDelayMillis;
+		resetRetrier();
+	}
+
+	/**
+	 * Returns the longest wait before a retry.
+	 * 
+	 * By default this is 2 seconds.
+	 */
+	public long getRetryMaxDelayMillis() {
+		return retryMaxDelayMillis;
+	}
+
+	public synchronized void setRetryMaxDelayMillis(long retryMaxDelayMillis) {
+		if (retryMaxDelayMillis < retryBaseDelayMillis) {
+			throw new IllegalArgumentException("The maximum retry delay must be at least the base delay");
+		}
+		this.retryMaxDelayMillis = retryMaxDelayMillis;
+		resetRetrier();
+	}
+
+	/**
+	 * Returns how many retries may be sent per hundred requests once the ten retries saved
+	 * up front are spent, so a failing server is not hit by every request several times.
+	 * 
+	 * By default this is 10.
+	 */
+	public int getRetryBudgetPercent() {
+		return retryBudgetPercent;
+	}
+
+	public synchronized void setRetryBudgetPercent(int retryBudgetPercent) {
+		if (retryBudgetPercent < 0) {
+			throw new IllegalArgumentException("The retry budget cannot be negative");
+		}
+		this.retryBudgetPercent = retryBudgetPercent;
+		resetRetrier();
+	}
+
+	Retrier getRetrier() {
+		return retrier;
+	}
+
+	private void resetRetrier() {
+		retrier = (retrying && (maxRetries > 0)) ? new Retrier(maxRetries, retryBaseDelayMillis, retryMaxDelayMillis, retryBudgetPercent) : null;
+	}
+
+	/**
+	 * Returns whether the requests in flight to each node are capped by a limit that
+	 * adapts to how the node copes: it grows while responses come back quickly and shrinks
+	 * when they slow down or fail. Uploads are not timed, only their failures count. A
+	 * request over the limit waits for another to finish, up
+	 * to the {@link #getConcurrencyQueueTimeoutMillis() queue timeout}, and then fails with
+	 * a {@link ConcurrencyLimitException}. The limit never exceeds
+	 * {@link #getMaxConnections()}.
+	 * 
+	 * By default this is false.
+	 */
+	public boolean isAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+
+	public synchronized void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+		concurrencyLimiters.clear();
+	}
+
+	/**
+	 * Returns the limit of requests in flight to a node before anything is known of it.
+	 * 
+	 * By default this is 20.
+	 */
+	public int getInitialConcurrencyLimit() {
+		return initialConcurrencyLimit;
+	}
+
+	public synchronized void setInitialConcurrencyLimit(int initialConcurrencyLimit) {
+		if (initialConcurrencyLimit <= 0) {
+			throw new IllegalArgumentException("The initial concurrency limit must be greater than 0");
+		}
+		this.initialConcurrencyLimit = initialConcurrencyLimit;
+		concurrencyLimiters.clear();
+	}
+
+	/**
+	 * Returns how long a request over the concurrency limit of a node waits before it
+	 * fails.
+	 * 
+	 * By default this is 1 second, 0 fails such requests at once.
+	 */
+	public long getConcurrencyQueueTimeoutMillis() {
+		return concurrencyQueueTimeoutMillis;
+	}
+
+	public synchronized void setConcurrencyQueueTimeoutMillis(long concurrencyQueueTimeoutMillis) {
+		if (concurrencyQueueTimeoutMillis < 0) {
+			throw new IllegalArgumentException("The concurrency queue timeout cannot be negative");
+		}
+		this.concurrencyQueueTimeoutMillis = concurrencyQueueTimeoutMillis;
+		concurrencyLimiters.clear();
+	}
+
+	/**
+	 * Returns the current concurrency limit of each node requests have been sent to, empty
+	 * unless {@link #isAdaptiveConcurrency() adaptive concurrency} is on.
+	 */
+	public Map<Endpoint, Integer> getConcurrencyLimits() {
+		Map<Endpoint, Integer> limits = new HashMap<Endpoint, Integer>();
+		for (Map.Entry<Endpoint, ConcurrencyLimiter> entry : concurrencyLimiters.entrySet()) {
+			limits.put(entry.getKey(), Integer.valueOf(entry.getValue().getLimit()));
+		}
+		return limits;
+	}
+
+	private ConcurrencyLimiter getConcurrencyLimiter(Endpoint endpoint) {
+		ConcurrencyLimiter limiter = concurrencyLimiters.get(endpoint);
+		if (limiter == null) {
+			ConcurrencyLimiter created = new ConcurrencyLimiter(initialConcurrencyLimit, maxConnections, concurrencyQueueTimeoutMillis, timeSource);
+			limiter = concurrencyLimiters.putIfAbsent(endpoint, created);
+			if (limiter == null) {
+				limiter = created;
+			}
+		}
+		return limiter;
+	}
+
+	/**
+	 * Returns whether each node has a circuit breaker, which fails requests to the node at
+	 * once with a {@link CircuitOpenException} while too many of its recent requests fail,
+	 * with an I/O error or a 5xx status, or are slow. After the
+	 * {@link #getCircuitOpenMillis() open time} a few trial requests are let through, and the
+	 * breaker closes again if they succeed. With several endpoints a request turned away is
+	 * sent to another node.
+	 * 
+	 * By default this is false.
+	 */
+	public boolean isCircuitBreaking() {
+		return circuitBreaking;
+	}
+
+	public synchronized void setCircuitBreaking(boolean circuitBreaking) {
+		this.circuitBreaking = circuitBreaking;
+		circuitBreakers.clear();
+	}
+
+	/**
+	 * Returns how many of the last requests to a node the failure and slow call rates are
+	 * measured over. The breaker cannot open before that many requests were sent.
+	 * 
+	 * By default this is 20.
+	 */
+	public int getCircuitWindowSize() {
+		return circuitWindowSize;
+	}
+
+	public synchronized void setCircuitWindowSize(int circuitWindowSize) {
+		if (circuitWindowSize <= 0) {
+			throw new IllegalArgumentException("The circuit window size must be greater than 0");
+		}
+		this.circuitWindowSize = circuitWindowSize;
+		circuitBreakers.clear();
+	}
+
+	/**
+	 * Returns the percentage of failed requests in the window at which the breaker opens.
+	 * 
+	 * By default this is 50.
+	 */
+	public int getCircuitFailureRatePercent() {
+		return circuitFailureRatePercent;
+	}
+
+	public synchronized void setCircuitFailureRatePercent(int circuitFailureRatePercent) {
+		if ((circuitFailureRatePercent <= 0) || (circuitFailureRatePercent > 100)) {
+			throw new IllegalArgumentException("The circuit failure rate must be greater than 0 and at most 100");
+		}
+		this.circuitFailureRatePercent = circuitFailureRatePercent;
+		circuitBreakers.clear();
+	}
+
+	/**
+	 * Returns the percentage of slow requests in the window at which the breaker opens.
+	 * 
+	 * By default this is 80.
+	 */
+	public int getCircuitSlowCallRatePercent() {
+		return circuitSlowCallRatePercent;
+	}
+
+	public synchronized void setCircuitSlowCallRatePercent(int circuitSlowCallRatePercent) {
+		if ((circuitSlowCallRatePercent <= 0) || (circuitSlowCallRatePercent > 100)) {
+			throw new IllegalArgumentException("The circuit slow call rate must be greater than 0 and at most 100");
+		}
+		this.circuitSlowCallRatePercent = circuitSlowCallRatePercent;
+		circuitBreakers.clear();
+	}
+
+	/**
+	 * Returns how long a request may wait for its response headers before it counts as
+	 * slow. Requests with a body, such as uploads, never count as slow.
+	 * 
+	 * By default this is 5 seconds.
+	 */
+	public long getCircuitSlowCallMillis() {
+		return circuitSlowCallMillis;
+	}
+
+	public synchronized void setCircuitSlowCallMillis(long circuitSlowCallMillis) {
+		if (circuitSlowCallMillis < 0) {
+			throw new IllegalArgumentException("The circuit slow call time cannot be negative");
+		}
+		this.circuitSlowCallMillis = circuitSlowCallMillis;
+		circuitBreakers.clear();
+	}
+
+	/**
+	 * Returns how long an open breaker fails every request before letting trial requests
+	 * through.
+	 * 
+	 * By default this is 10 seconds.
+	 */
+	public long getCircuitOpenMillis() {
+		return circuitOpenMillis;
+	}
+
+	public synchronized void setCircuitOpenMillis(long circuitOpenMillis) {
+		if (circuitOpenMillis < 0) {
+			throw new IllegalArgumentException("The circuit open time cannot be negative");
+		}
+		this.circuitOpenMillis = circuitOpenMillis;
+		circuitBreakers.clear();
+	}
+
+	/**
+	 * Returns the state of the circuit breaker of each node requests have been sent to,
+	 * empty unless {@link #isCircuitBreaking() circuit breaking} is on.
+	 */
+	public Map<Endpoint, CircuitState> getCircuitStates() {
+		Map<Endpoint, CircuitState> states = new HashMap<Endpoint, CircuitState>();
+		for (Map.Entry<Endpoint, CircuitBreaker> entry : circuitBreakers.entrySet()) {
+			states.put(entry.getKey(), entry.getValue().getState());
+		}
+		return states;
+	}
+
+	/**
+	 * Tells the listener of every change of state of a circuit breaker.
+	 */
+	public void addCircuitBreakerListener(CircuitBreakerListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("A listener is required");
+		}
+		circuitBreakerListeners.add(listener);
+	}
+
+	public void removeCircuitBreakerListener(CircuitBreakerListener listener) {
+		circuitBreakerListeners.remove(listener);
+	}
+
+	private CircuitBreaker getCircuitBreaker(Endpoint endpoint) {
+		CircuitBreaker breaker = circuitBreakers.get(endpoint);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(endpoint, circuitWindowSize, circuitFailureRatePercent, circuitSlowCallRatePercent,
+					circuitSlowCallMillis, circuitOpenMillis, timeSource, circuitBreakerListeners);
+			breaker = circuitBreakers.putIfAbsent(endpoint, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	private static Endpoint endpointOf(URI uri) {
+		int targetPort = uri.getPort();
+		if (targetPort < 0) {
+			targetPort = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		}
+		return new Endpoint(uri.getHost(), targetPort);
+	}
+
+	/**
+	 * Returns whether concurrent reads of the same object or the same metadata by the same
+	 * user share one request. Only <code>readObject(id)</code> and the metadata reads are
+	 * shared, and a caller only joins a request that is still in flight.
+	 * 
+	 * A caller that joins may be served a response that was started before its own last
+	 * update of the object or metadata, for as long as that response is in flight, so reads
+	 * that must see the caller's own writes should not be coalesced. Each shared object
+	 * read also keeps up to {@link #getCoalescingBufferSize()} bytes in memory.
+	 * 
+	 * By default this is false.
+	 */
+	public boolean isCoalescing() {
+		return coalescing;
+	}
+
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+
+	/**
+	 * Returns how many bytes of a shared object are kept in memory for the callers reading
+	 * behind the first one, the rest is kept in a temporary file. An object read by a single
+	 * caller is no longer kept, nor shared, once it is past this size.
+	 * 
+	 * By default this is 256KB.
+	 */
+	public int getCoalescingBufferSize() {
+		return coalescingBufferSize;
+	}
+
+	public void setCoalescingBufferSize(int coalescingBufferSize) {
+		if (coalescingBufferSize <= 0) {
+			throw new IllegalArgumentException("The coalescing buffer size must be greater than 0");
+		}
+		this.coalescingBufferSize = coalescingBufferSize;
 	}
 
 	/**
@@ -530,11 +1603,110 @@ public class AtmosObjectStore implements ObjectStore {
 		}
 	}
 
-	private AtmosResponse execute(HttpUriRequest request) throws ClientProtocolException, IOException {
-		return new AtmosResponse(getHttpClient().execute(request));
+	private static ByteBuffer wrap(byte[] data) {
+		return (data != null) ? ByteBuffer.wrap(data) : null;
+	}
+
+	private HttpEntity newBufferEntity(ByteBuffer data) {
+		if (data == null) {
+			throw new IllegalArgumentException("A buffer is required");
+		}
+		if (!data.hasRemaining()) {
+			throw new IllegalArgumentException("The buffer must have bytes remaining");
+		}
+		return new BufferEntity(data);
+	}
+
+	private HttpEntity newFileEntity(Path file) {
+		if (file == null) {
+			throw new IllegalArgumentException("A file is required");
+		}
+		if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+			throw new AtmosStorageException("Could not read " + file);
+		}
+		return new FileEntity(file.toFile());
+	}
+
+	/**
+	 * Executes a request, retrying it after a transient failure when that is safe.
+	 */
+	AtmosResponse execute(final HttpUriRequest request) throws ClientProtocolException, IOException {
+		return retry(isReplayable(request), new Retrier.Call() {
+			@Override
+			public AtmosResponse execute() throws IOException {
+				if (request instanceof HttpRequestBase) {
+					((HttpRequestBase) request).reset();
+				}
+				return new AtmosResponse(send(request));
+			}
+		});
+	}
+
+	/**
+	 * Executes a request once, for callers that retry it themselves. Neither the
+	 * {@link Retrier} nor the default client resends it.
+	 */
+	AtmosResponse executeOnce(HttpUriRequest request) throws ClientProtocolException, IOException {
+		sentOnce.add(request);
+		try {
+			return new AtmosResponse(send(request));
+		} finally {
+			sentOnce.remove(request);
+		}
+	}
+
+	/**
+	 * Executes a GET of the request, hedged when hedging is on.
+	 */
+	AtmosResponse executeRead(final AtmosRequest request) throws ClientProtocolException, IOException {
+		final Hedger current = hedger;
+		if (current == null) {
+			return execute(request.createGet());
+		}
+		return retry(true, new Retrier.Call() {
+			@Override
+			public AtmosResponse execute() throws IOException {
+				return new AtmosResponse(current.execute(request, new RequestSender() {
+					@Override
+					public HttpResponse send(HttpUriRequest httpRequest) throws IOException {
+						return AtmosObjectStore.this.send(httpRequest);
+					}
+				}));
+			}
+		});
+	}
+
+	private AtmosResponse retry(boolean replayable, Retrier.Call call) throws IOException {
+		Retrier current = retrier;
+		return (current != null) ? current.execute(replayable, call) : call.execute();
+	}
+
+	/**
+	 * A GET or HEAD, or a PUT whose body can be sent again, has the same effect when it is
+	 * sent twice. A POST creates another object, and a DELETE that went through fails the
+	 * second time.
+	 */
+	private static boolean isReplayable(HttpUriRequest request) {
+		String method = request.getMethod();
+		if ("GET".equals(method) || "HEAD".equals(method)) {
+			return true;
+		}
+		if ("PUT".equals(method) && (request instanceof HttpEntityEnclosingRequest)) {
+			HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			return (entity == null) || entity.isRepeatable();
+		}
+		return false;
+	}
+
+	private HttpResponse send(HttpUriRequest request) throws ClientProtocolException, IOException {
+		LoadBalancer balancer = loadBalancer;
+		if (balancer != null) {
+			return balancer.execute(nodeSender, request);
+		}
+		return nodeSender.send(request);
 	}
 	
-	private void cleanup(AtmosResponse response) {
+	void cleanup(AtmosResponse response) {
 		if ((response != null) && (response.getEntity() != null)) {
 			try {
 				EntityUtils.consume(response.getEntity());
@@ -560,6 +1732,52 @@ public class AtmosObjectStore implements ObjectStore {
 		this.authenticationCredentialProvider = authenticationCredentialProvider;
 	}
 	
+	/**
+	 * Returns the clock used to create the Date header of each request.
+	 * 
+	 * By default this is the shared clock backed by the system time.
+	 * 
+	 * @return the clock used to create the Date header
+	 */
+	public DateHeaderClock getDateHeaderClock() {
+		return dateHeaderClock;
+	}
+
+	public void setDateHeaderClock(DateHeaderClock dateHeaderClock) {
+		this.dateHeaderClock = (dateHeaderClock != null) ? dateHeaderClock : DateHeaderClock.getDefault();
+	}
+	
+	/**
+	 * Returns the size of an object from its "size" system metadata.
+	 */
+	long getObjectSize(String id) {
+		for (Metadata meta : getSystemMetadata(id, new MetadataTag("size", false))) {
+			if ("size".equals(meta.getName())) {
+				try {
+					return Long.parseLong(meta.getValue().trim());
+				} catch (NumberFormatException e) {
+					throw new AtmosStorageException("Invalid size " + meta.getValue() + " for object " + id, e);
+				}
+			}
+		}
+		throw new AtmosStorageException("The size of object " + id + " is unknown");
+	}
+	
+	/**
+	 * Identifies the reads of an object that may share a response: the user is part of
+	 * the key so a tenant never sees a response to another one.
+	 */
+	private String coalescingKey(String id) {
+		AuthenticationCredentialProvider provider = getAuthenticationCredentialProvider();
+		return ((provider != null) ? provider.getUserId() : "") + ' ' + getResourcePath(id);
+	}
+
+	AtmosRequest newRequest(URL url) {
+		AtmosRequest request = new AtmosRequest(url, getAuthenticationCredentialProvider());
+		request.setDateHeaderClock(dateHeaderClock);
+		return request;
+	}
+	
 	protected String getResourcePath(String identifier) {
 		StringBuilder sb = new StringBuilder();
 		if (identifier != null) {
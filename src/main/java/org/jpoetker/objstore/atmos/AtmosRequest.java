@@ -5,26 +5,16 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLDecoder;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TimeZone;
-import java.util.TreeSet;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -38,7 +28,6 @@ import org.jpoetker.objstore.Grant;
 import org.jpoetker.objstore.Grantee;
 import org.jpoetker.objstore.Metadata;
 import org.jpoetker.objstore.MetadataTag;
-import org.jpoetker.objstore.ObjectStorageException;
 import org.jpoetker.objstore.atmos.auth.AuthenticationCredentialProvider;
 
 class AtmosRequest {
@@ -64,7 +53,8 @@ class AtmosRequest {
 	
 	private Map<String, String> headers;
 	private URL url;
-	private byte[] secret;
+	private HmacSigner signer;
+	private DateHeaderClock dateHeaderClock = DateHeaderClock.getDefault();
 	
 	public AtmosRequest(URL url, AuthenticationCredentialProvider authProvider) {
 		super();
@@ -87,11 +77,7 @@ class AtmosRequest {
 			throw new IllegalArgumentException("No shared secret was provided for accessing object storage.");
 		}
 		
-		try {
-			secret = Base64.decodeBase64(sharedSecret.getBytes(UTF_8));
-		} catch (UnsupportedEncodingException e) {
-			throw new ObjectStorageException("Could not decode shared secret");
-		}
+		signer = HmacSigner.forSecret(sharedSecret);
 	}
 	
 	private void initializeUid(AuthenticationCredentialProvider authProvider) {
@@ -116,26 +102,14 @@ class AtmosRequest {
 	
 	public void setMetadata(Collection<Metadata> metadata) {
 		if ((metadata != null) && (!metadata.isEmpty())) {
-			StringBuilder listable = new StringBuilder();
-			StringBuilder nonListable = new StringBuilder();
-			
-			for (Metadata meta : metadata) {
-				// select the correct buffer for the metadata
-				StringBuilder buff = (meta.isListable()) ? listable : nonListable;
-				// append the comma if we've already got data
-				if (buff.length() > 0) {
-					buff.append(", ");
-				}
-				// append the key value pair for the metadata
-				buff.append(meta.toKeyValueString());
-			}
-			
 			// set the headers values only if we've have data
-			if (listable.length() > 0) {
-				headers.put(X_EMC_LISTABLE_META_HEADER, listable.toString());
+			String listable = MetadataHeaderCodec.encodeMetadata(metadata, true);
+			if (listable != null) {
+				headers.put(X_EMC_LISTABLE_META_HEADER, listable);
 			}
-			if (nonListable.length() > 0) {
-				headers.put(X_EMC_META_HEADER, nonListable.toString());
+			String nonListable = MetadataHeaderCodec.encodeMetadata(metadata, false);
+			if (nonListable != null) {
+				headers.put(X_EMC_META_HEADER, nonListable);
 			}
 		}
 	}
@@ -156,19 +130,8 @@ class AtmosRequest {
 	
 	public void setAcl(Set<Grant> acl) {
 		if ((acl != null) && (!acl.isEmpty())) {
-			StringBuilder userGrants = new StringBuilder();
-			StringBuilder groupGrants = new StringBuilder();
-			
-			for (Grant grant : acl) {
-				StringBuilder buff = (grant.getGrantee().getType() == Grantee.Type.USER) ? userGrants : groupGrants;
-				
-				if (buff.length() > 0) {
-					buff.append(",");
-				}
-				buff.append(grant.toAclHeaderString());
-			}
-			headers.put(X_EMC_USERACL_HEADER, userGrants.toString());
-			headers.put(X_EMC_GROUPACL_HEADER, groupGrants.toString());
+			headers.put(X_EMC_USERACL_HEADER, MetadataHeaderCodec.encodeAcl(acl, Grantee.Type.USER));
+			headers.put(X_EMC_GROUPACL_HEADER, MetadataHeaderCodec.encodeAcl(acl, Grantee.Type.GROUP));
 		}
 	}
 	
@@ -189,6 +152,20 @@ class AtmosRequest {
 			headers.put(X_EMC_TOKEN_HEADER, continuationToken);
 		}
 	}
+
+	/**
+	 * Sets the Range header to request <code>length</code> bytes starting at
+	 * <code>offset</code>.
+	 *
+	 * @param offset the position of the first byte
+	 * @param length the number of bytes, must be greater than 0
+	 */
+	public void setRange(long offset, long length) {
+		if ((offset < 0) || (length <= 0)) {
+			throw new IllegalArgumentException("Invalid range, offset " + offset + " length " + length);
+		}
+		headers.put(RANGE_HEADER, "Bytes=" + offset + "-" + (offset + length - 1));
+	}
 	/**
 	 * Creates a POST request with no body.
 	 * 
@@ -202,10 +179,18 @@ class AtmosRequest {
 		return createRequest(HttpPost.class, data, length);
 	}
 	
+	public HttpPost createPost(HttpEntity entity) {
+		return createRequest(HttpPost.class, entity);
+	}
+	
 	public HttpPut createPut(InputStream data, long length) {
 		return createRequest(HttpPut.class, data, length);
 	}
 	
+	public HttpPut createPut(HttpEntity entity) {
+		return createRequest(HttpPut.class, entity);
+	}
+	
 	public HttpGet createGet() {
 		return createRequest(HttpGet.class);
 	}
@@ -265,8 +250,12 @@ class AtmosRequest {
 	}
 	
 	private <T extends HttpEntityEnclosingRequestBase> T createRequest(Class<T> clss, InputStream data, long contentLength) {
+		return createRequest(clss, createEntity(data, contentLength));
+	}
+	
+	private <T extends HttpEntityEnclosingRequestBase> T createRequest(Class<T> clss, HttpEntity entity) {
 		T req = createRequest(clss);
-		req.setEntity(createEntity(data, contentLength));
+		req.setEntity(entity);
 		return req; 
 	}
 	
@@ -280,87 +269,33 @@ class AtmosRequest {
         }
     }
 
+	/**
+	 * Sets the clock used to create the Date header.
+	 * 
+	 * If <code>null</code> is passed, the shared default clock is used.
+	 * 
+	 * @param dateHeaderClock
+	 */
+	public void setDateHeaderClock(DateHeaderClock dateHeaderClock) {
+		this.dateHeaderClock = (dateHeaderClock != null) ? dateHeaderClock : DateHeaderClock.getDefault();
+	}
+	
 	void createDateHeader() {
-		DateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-		TimeZone timezone = TimeZone.getTimeZone("GMT");
-		
-		dateFormat.setTimeZone(timezone);
-		headers.put(DATE_HEADER, dateFormat.format(new Date()));
+		headers.put(DATE_HEADER, dateHeaderClock.getDateHeader());
 	}
 	
 	void signRequest(String method) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
-		StringBuilder buff = new StringBuilder();
-		
-		buff.append(method).append("\n");
-		
-		if (headers.containsKey(CONTENT_TYPE_HEADER)) {
-			buff.append(headers.get(CONTENT_TYPE_HEADER).toLowerCase());
-		}
-		// line feed even if no content type header exists (which it will)
-		buff.append("\n");
-		
-		// Range headers..
-		if (headers.containsKey(RANGE_HEADER)) {
-			buff.append(headers.get(RANGE_HEADER));
-		} else if (headers.containsKey(CONTENT_RANGE_HEADER)) {
-			buff.append(headers.get(CONTENT_RANGE_HEADER));
-		}
-		// Even if the range headers were not set, we still need a break
-		buff.append("\n");
-		
 		// if the data header has not been set - we need to do so
 		if (!headers.containsKey(DATE_HEADER)) {
 			createDateHeader();
 		}
-		buff.append(headers.get(DATE_HEADER)).append("\n");
-		buff.append(URLDecoder.decode(url.getPath(), UTF_8).toLowerCase());
-		if (url.getQuery() != null) {
-			buff.append("?").append(url.getQuery());
-		}
-		buff.append("\n");
 		
-		// 'x-emc' headers must be hashed in alphabetic order and the 
-		// values stripped of whitespace
-		SortedSet<String> keys = new TreeSet<String>();
-		Map<String, String> xEmcHeaders = new HashMap<String, String>();
-		
-		for (String key : headers.keySet()) {
-			if (key.indexOf("x-emc") == 0) {
-				String lowerKey = key.toLowerCase();
-				keys.add(lowerKey);
-				xEmcHeaders.put(lowerKey, headers.get(key).replace("\n", ""));
-			}
-		}
-		int initial = buff.length();
-		for (String key : keys) {
-			if (buff.length() > initial) {
-				buff.append("\n");
-			}
-			buff.append(key).append(':').append(normalizeSpace(xEmcHeaders.get(key)));
-		}
-		
-		String hash = signHash(buff.toString());
+		// a request created again, such as a hedged read, must not sign the last signature
+		headers.remove(X_EMC_SIGNATURE_HEADER);
+		String hash = CanonicalRequest.sign(signer, method, headers, url);
 		
 		headers.put(X_EMC_SIGNATURE_HEADER, hash);
 	}
-
-	
-	private String normalizeSpace(String str) {
-		StringBuilder buff = new StringBuilder(str);
-		int i=0;
-		while(i<buff.length()) {
-			if ((buff.charAt(i) == ' ') && (i+1 < buff.length())) {
-				if (buff.charAt(i+1) == ' ') {
-					buff.deleteCharAt(i);
-				} else {
-					i++;
-				}
-			} else {
-				i++;
-			}	
-		}
-		return buff.toString().trim();
-	}
 	
 	/**
      * Generates an HMAC-SHA1 signature of the given input string using the
@@ -376,13 +311,7 @@ class AtmosRequest {
      * @throws UnsupportedEncodingException
      */
 	protected String signHash(String hash) throws NoSuchAlgorithmException, InvalidKeyException, IllegalStateException, UnsupportedEncodingException {
-		Mac mac = Mac.getInstance("HmacSHA1");
-		SecretKeySpec key = new SecretKeySpec(secret, "HmacSHA1");
-		mac.init(key);
-		
-		byte[] hashedBytes = mac.doFinal(hash.getBytes(UTF_8));
-		
-		return new String(Base64.encodeBase64(hashedBytes), UTF_8);
+		return signer.sign(hash);
 	}
 
 	
@@ -390,6 +319,18 @@ class AtmosRequest {
 		return headers;
 	}
 
+	/**
+	 * Returns whether the request sends a body, whose upload is part of the time until its
+	 * response arrives.
+	 */
+	static boolean hasBody(HttpRequest request) {
+		if (!(request instanceof HttpEntityEnclosingRequest)) {
+			return false;
+		}
+		HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+		return (entity != null) && (entity.getContentLength() != 0);
+	}
+
 	private static String join(Collection<String> values, String with) {
 		if (values == null) return "";
 		
@@ -8,23 +8,14 @@ import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import org.apache.http.Header;
 import org.apache.http.HeaderIterator;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
-import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 import org.jpoetker.objstore.Metadata;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 public class AtmosResponse implements HttpResponse {
 	private static final Pattern OBJECTID_EXTRACTOR = Pattern.compile("/\\w+/objects/([0-9a-f]{44})");
@@ -75,20 +66,8 @@ public class AtmosResponse implements HttpResponse {
 	}
 
 	private void readMetadata(List<Metadata> metadata, Header header, boolean listable) {
-		if (header != null) {
-			String list = header.getValue();
-			if (list != null) {
-				String[] attrs = list.split(",");
-				for (String pair : attrs) {
-					String[] splitpair = pair.split("=", 2);
-					String name = splitpair[0];
-					String value = splitpair[1];
-
-					name = name.trim();
-
-					metadata.add(new Metadata(name, value, listable));
-				}
-			}
+		if ((header != null) && (header.getValue() != null)) {
+			MetadataHeaderCodec.decodeMetadata(header.getValue(), listable, metadata);
 		}
 	}
 
@@ -128,7 +107,8 @@ public class AtmosResponse implements HttpResponse {
 		return response.getLocale();
 	}
 
-	public HttpParams getParams() {
+	@Deprecated
+	public org.apache.http.params.HttpParams getParams() {
 		return response.getParams();
 	}
 
@@ -176,7 +156,8 @@ public class AtmosResponse implements HttpResponse {
 		response.setLocale(arg0);
 	}
 
-	public void setParams(HttpParams arg0) {
+	@Deprecated
+	public void setParams(org.apache.http.params.HttpParams arg0) {
 		response.setParams(arg0);
 	}
 
@@ -204,42 +185,7 @@ public class AtmosResponse implements HttpResponse {
 
 		StatusLine status = response.getStatusLine();
 		if (status.getStatusCode() > 299) {
-			HttpEntity body = response.getEntity();
-
-			if (body == null) {
-				throw new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode());
-			}
-			try {
-				DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				Document doc = db.parse(body.getContent());
-
-				String code = null;
-				String message = null;
-
-				NodeList nodes = doc.getDocumentElement().getChildNodes();
-				for (int i = 0; i < nodes.getLength(); i++) {
-					Node n = nodes.item(i);
-					if (Node.ELEMENT_NODE == n.getNodeType()) {
-						if ("Code".equals(n.getNodeName())) {
-							code = n.getFirstChild().getNodeValue();
-						} else if ("Message".equals(n.getNodeName())) {
-							message = n.getFirstChild().getNodeValue();
-						}
-					}
-				}
-				if ((code == null) && (message == null)) {
-					throw new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode());
-				}
-				throw new AtmosStorageException(message, status.getStatusCode(), Integer.parseInt(code));
-			} catch (ParserConfigurationException e) {
-				throw new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
-			} catch (IllegalStateException e) {
-				throw new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
-			} catch (SAXException e) {
-				throw new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
-			} catch (IOException e) {
-				throw new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
-			}
+			throw ErrorResponseParser.parse(status, response.getEntity());
 		}
 	}
 
@@ -0,0 +1,14 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * Thrown when the request signature does not match or the secret key of the user cannot be found,
+ * Atmos error codes 1032 and 1033.
+ */
+public class AuthenticationException extends AtmosStorageException {
+
+	private static final long serialVersionUID = 1L;
+
+	public AuthenticationException(String message, int httpCode, int atmosCode) {
+		super(message, httpCode, atmosCode);
+	}
+}
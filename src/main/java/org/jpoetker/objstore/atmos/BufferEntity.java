@@ -0,0 +1,67 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A repeatable entity sending the remaining bytes of a <code>ByteBuffer</code>.
+ *
+ * The buffer is never modified, each write works on a duplicate. A heap buffer is written
+ * from its backing array without a copy, a direct buffer is copied to the stream through
+ * a small array.
+ */
+class BufferEntity extends AbstractHttpEntity {
+	private static final int COPY_SIZE = 64 * 1024;
+
+	private final ByteBuffer buffer;
+
+	BufferEntity(ByteBuffer buffer) {
+		super();
+		this.buffer = buffer.duplicate();
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		if (buffer.hasArray()) {
+			return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		byte[] copy = new byte[buffer.remaining()];
+		buffer.duplicate().get(copy);
+		return new ByteArrayInputStream(copy);
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		} else {
+			ByteBuffer source = buffer.duplicate();
+			byte[] chunk = new byte[Math.min(COPY_SIZE, Math.max(source.remaining(), 1))];
+			while (source.hasRemaining()) {
+				int count = Math.min(chunk.length, source.remaining());
+				source.get(chunk, 0, count);
+				out.write(chunk, 0, count);
+			}
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
@@ -0,0 +1,362 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+
+/**
+ * Writes the canonical form of a request, as defined by the Atmos REST API, and signs it.
+ *
+ * The canonical form is encoded as UTF-8 straight into a byte buffer borrowed from a small
+ * pool, and the buffer is fed to the <code>Mac</code> without building intermediate
+ * strings. The output is identical to hashing the string:
+ *
+ * <pre>
+ * method + "\n" +
+ * lowercase(content-type) + "\n" +
+ * range or content-range + "\n" +
+ * date + "\n" +
+ * lowercase(url-decoded path) + ["?" + query] + "\n" +
+ * lowercase(x-emc header name) + ":" + normalized value, sorted by name, joined with "\n"
+ * </pre>
+ *
+ * where a normalized value has its line feeds removed, runs of spaces collapsed and
+ * leading and trailing whitespace trimmed.
+ */
+final class CanonicalRequest {
+	private static final String X_EMC_PREFIX = "x-emc";
+	private static final String CONTENT_TYPE_HEADER = "Content-Type";
+	private static final String CONTENT_RANGE_HEADER = "Content-Range";
+	private static final String RANGE_HEADER = "Range";
+	private static final String DATE_HEADER = "Date";
+	private static final String UTF_8 = "UTF-8";
+
+	private static final int MAX_POOLED = 2 * Runtime.getRuntime().availableProcessors();
+	// a buffer grown by an unusually large request is not kept
+	private static final int MAX_POOLED_BUFFER_SIZE = 16 * 1024;
+
+	private static final Queue<CanonicalRequest> pool = new ConcurrentLinkedQueue<CanonicalRequest>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+
+	private byte[] buffer = new byte[512];
+	private int length;
+	private char pendingHighSurrogate;
+
+	private String[] names = new String[16];
+	private String[] values = new String[16];
+
+	private CanonicalRequest() {
+		super();
+	}
+
+	/**
+	 * Signs the request described by the method, headers and url.
+	 *
+	 * @return the Base64 encoded HMAC-SHA1 signature of the canonical form of the request
+	 */
+	static String sign(HmacSigner signer, String method, Map<String, String> headers, URL url)
+			throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException {
+		CanonicalRequest canonical = borrow();
+		try {
+			canonical.write(method, headers, url);
+			Mac mac = signer.borrowMac();
+			try {
+				mac.update(canonical.buffer, 0, canonical.length);
+				return HmacSigner.encode(mac.doFinal());
+			} finally {
+				signer.returnMac(mac);
+			}
+		} finally {
+			giveBack(canonical);
+		}
+	}
+
+	/**
+	 * Returns the canonical form of the request as a string, this is only used for testing
+	 * and diagnostics.
+	 */
+	static String canonicalize(String method, Map<String, String> headers, URL url) throws UnsupportedEncodingException {
+		CanonicalRequest canonical = borrow();
+		try {
+			canonical.write(method, headers, url);
+			return new String(canonical.buffer, 0, canonical.length, UTF_8);
+		} finally {
+			giveBack(canonical);
+		}
+	}
+
+	private static CanonicalRequest borrow() {
+		CanonicalRequest canonical = pool.poll();
+		if (canonical == null) {
+			return new CanonicalRequest();
+		}
+		pooled.decrementAndGet();
+		return canonical;
+	}
+
+	private static void giveBack(CanonicalRequest canonical) {
+		if (canonical.buffer.length > MAX_POOLED_BUFFER_SIZE) {
+			return;
+		}
+		if (pooled.incrementAndGet() <= MAX_POOLED) {
+			pool.offer(canonical);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+
+	private void write(String method, Map<String, String> headers, URL url) throws UnsupportedEncodingException {
+		length = 0;
+
+		appendString(method);
+		appendByte('\n');
+
+		String contentType = headers.get(CONTENT_TYPE_HEADER);
+		if (contentType != null) {
+			appendLowerCase(contentType);
+		}
+		appendByte('\n');
+
+		String range = headers.get(RANGE_HEADER);
+		if (range == null) {
+			range = headers.get(CONTENT_RANGE_HEADER);
+		}
+		if (range != null) {
+			appendString(range);
+		}
+		appendByte('\n');
+
+		appendString(headers.get(DATE_HEADER));
+		appendByte('\n');
+
+		String path = url.getPath();
+		if ((path.indexOf('%') < 0) && (path.indexOf('+') < 0)) {
+			// nothing to decode
+			appendLowerCase(path);
+		} else {
+			appendString(URLDecoder.decode(path, UTF_8).toLowerCase());
+		}
+		String query = url.getQuery();
+		if (query != null) {
+			appendByte('?');
+			appendString(query);
+		}
+		appendByte('\n');
+
+		writeEmcHeaders(headers);
+	}
+
+	/**
+	 * 'x-emc' headers must be hashed in alphabetic order of their lower case name, with
+	 * the values normalized.
+	 */
+	private void writeEmcHeaders(Map<String, String> headers) {
+		int count = 0;
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			String name = header.getKey();
+			if (name.startsWith(X_EMC_PREFIX)) {
+				if (count == names.length) {
+					names = grow(names);
+					values = grow(values);
+				}
+				// insertion sort, there are only ever a handful of these headers
+				String lowerName = toLowerCase(name);
+				int i = count;
+				while ((i > 0) && (names[i - 1].compareTo(lowerName) > 0)) {
+					names[i] = names[i - 1];
+					values[i] = values[i - 1];
+					i--;
+				}
+				names[i] = lowerName;
+				values[i] = header.getValue();
+				count++;
+			}
+		}
+
+		boolean first = true;
+		for (int i = 0; i < count; i++) {
+			// when names only differ by case the last value wins
+			if ((i + 1 < count) && names[i].equals(names[i + 1])) {
+				continue;
+			}
+			if (!first) {
+				appendByte('\n');
+			}
+			first = false;
+			appendString(names[i]);
+			appendByte(':');
+			appendNormalized(values[i]);
+		}
+
+		for (int i = 0; i < count; i++) {
+			names[i] = null;
+			values[i] = null;
+		}
+	}
+
+	/**
+	 * Appends the value with line feeds removed, runs of spaces collapsed into a single
+	 * space, and leading and trailing whitespace trimmed.
+	 */
+	private void appendNormalized(String value) {
+		int end = length;
+		boolean content = false;
+		char previous = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c == '\n') || ((c == ' ') && (previous == ' '))) {
+				continue;
+			}
+			previous = c;
+			if (c > ' ') {
+				content = true;
+				appendChar(c);
+				end = length;
+			} else if (content) {
+				if (flushPendingSurrogate()) {
+					end = length;
+				}
+				appendChar(c);
+			}
+		}
+		if (flushPendingSurrogate()) {
+			end = length;
+		}
+		// drop the trailing whitespace
+		length = end;
+	}
+
+	private void appendLowerCase(String value) {
+		if (isLowerCaseSafe(value)) {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				appendByte(((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c);
+			}
+		} else {
+			appendString(value.toLowerCase());
+		}
+	}
+
+	private static String toLowerCase(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c >= 'A') && (c <= 'Z')) {
+				return isLowerCaseSafe(value) ? toLowerCaseAscii(value) : value.toLowerCase();
+			} else if (c >= 0x80) {
+				return value.toLowerCase();
+			}
+		}
+		return value;
+	}
+
+	private static String toLowerCaseAscii(String value) {
+		char[] chars = value.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if ((chars[i] >= 'A') && (chars[i] <= 'Z')) {
+				chars[i] += ('a' - 'A');
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns true if lower casing the string is a plain ASCII transformation in the default
+	 * locale, which is the locale <code>String.toLowerCase()</code> uses.
+	 */
+	private static boolean isLowerCaseSafe(String value) {
+		boolean capitalI = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) {
+				return false;
+			}
+			capitalI |= (c == 'I');
+		}
+		if (capitalI) {
+			String language = Locale.getDefault().getLanguage();
+			return !("tr".equals(language) || "az".equals(language));
+		}
+		return true;
+	}
+
+	private void appendString(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			appendChar(value.charAt(i));
+		}
+		flushPendingSurrogate();
+	}
+
+	/**
+	 * Appends the UTF-8 encoding of the character. Unpaired surrogates are written as '?',
+	 * just like <code>String.getBytes("UTF-8")</code>.
+	 */
+	private void appendChar(char c) {
+		if (pendingHighSurrogate != 0) {
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int codePoint = Character.toCodePoint(high, c);
+				ensureCapacity(4);
+				buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+				return;
+			}
+			appendByte('?');
+		}
+		if (c < 0x80) {
+			appendByte(c);
+		} else if (c < 0x800) {
+			ensureCapacity(2);
+			buffer[length++] = (byte) (0xc0 | (c >> 6));
+			buffer[length++] = (byte) (0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c)) {
+			pendingHighSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			appendByte('?');
+		} else {
+			ensureCapacity(3);
+			buffer[length++] = (byte) (0xe0 | (c >> 12));
+			buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buffer[length++] = (byte) (0x80 | (c & 0x3f));
+		}
+	}
+
+	private boolean flushPendingSurrogate() {
+		if (pendingHighSurrogate != 0) {
+			pendingHighSurrogate = 0;
+			appendByte('?');
+			return true;
+		}
+		return false;
+	}
+
+	private void appendByte(char c) {
+		ensureCapacity(1);
+		buffer[length++] = (byte) c;
+	}
+
+	private void ensureCapacity(int additional) {
+		if (length + additional > buffer.length) {
+			byte[] grown = new byte[Math.max(buffer.length * 2, length + additional)];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+	}
+
+	private static String[] grow(String[] array) {
+		String[] grown = new String[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
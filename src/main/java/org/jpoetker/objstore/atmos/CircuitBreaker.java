@@ -0,0 +1,216 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.jpoetker.objstore.TimeSource;
+import org.jpoetker.objstore.atmos.AtmosObjectStore.CircuitState;
+
+/**
+ * Fails requests to an access node at once while the node looks down, rather than have
+ * each wait out its own timeout.
+ *
+ * While closed, the outcomes of the last requests are kept in a window. Once the window is
+ * full, the breaker opens if the share of failures, I/O errors and 5xx statuses, or the
+ * share of slow requests reaches its threshold. While open, every request fails with a
+ * {@link CircuitOpenException} without being sent. Once the open time is up the breaker is
+ * half open and lets a few trial requests through: it closes with a fresh window if they
+ * all succeed quickly, and opens again as soon as one does not. A request is timed until
+ * its response headers arrive, and an aborted request is not counted. A request with a
+ * body is never slow, as the time it takes grows with the size of the body.
+ *
+ * Outcomes of requests sent before the last change of state are ignored.
+ */
+final class CircuitBreaker {
+	static final int HALF_OPEN_CALLS = 3;
+
+	private static final byte FAILED = 1;
+	private static final byte SLOW = 2;
+
+	private final Endpoint endpoint;
+	private final int failureRatePercent;
+	private final int slowCallRatePercent;
+	private final long slowCallNanos;
+	private final long openNanos;
+	private final TimeSource timeSource;
+	private final List<CircuitBreakerListener> listeners;
+
+	// guarded by this
+	private CircuitState state = CircuitState.CLOSED;
+	private long epoch;
+	private final byte[] outcomes;
+	private int count;
+	private int next;
+	private int failures;
+	private int slowCalls;
+	private long openUntil;
+	private int trialsStarted;
+	private int trialsSucceeded;
+
+	CircuitBreaker(Endpoint endpoint, int windowSize, int failureRatePercent, int slowCallRatePercent, long slowCallMillis,
+			long openMillis, TimeSource timeSource, List<CircuitBreakerListener> listeners) {
+		super();
+		this.endpoint = endpoint;
+		this.outcomes = new byte[Math.max(1, windowSize)];
+		this.failureRatePercent = failureRatePercent;
+		this.slowCallRatePercent = slowCallRatePercent;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.timeSource = timeSource;
+		this.listeners = listeners;
+	}
+
+	HttpResponse execute(RequestSender next, HttpUriRequest request) throws IOException {
+		long permit = acquire();
+		long start = timeSource.nanoTime();
+		HttpResponse response;
+		try {
+			response = next.send(request);
+		} catch (IOException e) {
+			if (request.isAborted()) {
+				release(permit);
+			} else {
+				record(permit, FAILED);
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			release(permit);
+			throw e;
+		}
+		byte outcome = (response.getStatusLine().getStatusCode() >= 500) ? FAILED : 0;
+		if (!AtmosRequest.hasBody(request) && (timeSource.nanoTime() - start > slowCallNanos)) {
+			outcome |= SLOW;
+		}
+		record(permit, outcome);
+		return response;
+	}
+
+	CircuitState getState() {
+		synchronized (this) {
+			return state;
+		}
+	}
+
+	/**
+	 * Lets a request through or fails it.
+	 *
+	 * @return the epoch the request was let through in
+	 */
+	long acquire() {
+		CircuitState from;
+		CircuitState to;
+		long permit;
+		synchronized (this) {
+			from = state;
+			if ((state == CircuitState.OPEN) && (timeSource.nanoTime() - openUntil >= 0)) {
+				transition(CircuitState.HALF_OPEN);
+			}
+			if (state == CircuitState.OPEN) {
+				throw new CircuitOpenException("The circuit breaker of " + endpoint + " is open", endpoint);
+			}
+			if (state == CircuitState.HALF_OPEN) {
+				if (trialsStarted >= HALF_OPEN_CALLS) {
+					throw new CircuitOpenException("The circuit breaker of " + endpoint + " is half open and waiting for trial requests", endpoint);
+				}
+				trialsStarted++;
+			}
+			permit = epoch;
+			to = state;
+		}
+		fire(from, to);
+		return permit;
+	}
+
+	/**
+	 * Gives back a trial taken by a request whose outcome says nothing of the node.
+	 */
+	void release(long permit) {
+		synchronized (this) {
+			if ((permit == epoch) && (state == CircuitState.HALF_OPEN)) {
+				trialsStarted--;
+			}
+		}
+	}
+
+	void record(long permit, byte outcome) {
+		CircuitState from;
+		CircuitState to;
+		synchronized (this) {
+			from = state;
+			if (permit == epoch) {
+				if (state == CircuitState.CLOSED) {
+					add(outcome);
+					if ((count == outcomes.length)
+							&& ((failures * 100 >= failureRatePercent * count) || (slowCalls * 100 >= slowCallRatePercent * count))) {
+						open();
+					}
+				} else if (state == CircuitState.HALF_OPEN) {
+					if (outcome != 0) {
+						open();
+					} else if (++trialsSucceeded >= HALF_OPEN_CALLS) {
+						transition(CircuitState.CLOSED);
+					}
+				}
+			}
+			to = state;
+		}
+		fire(from, to);
+	}
+
+	// callers hold the lock
+	private void add(byte outcome) {
+		if (count == outcomes.length) {
+			byte oldest = outcomes[next];
+			if ((oldest & FAILED) != 0) {
+				failures--;
+			}
+			if ((oldest & SLOW) != 0) {
+				slowCalls--;
+			}
+		} else {
+			count++;
+		}
+		outcomes[next] = outcome;
+		next = (next + 1) % outcomes.length;
+		if ((outcome & FAILED) != 0) {
+			failures++;
+		}
+		if ((outcome & SLOW) != 0) {
+			slowCalls++;
+		}
+	}
+
+	// callers hold the lock
+	private void open() {
+		transition(CircuitState.OPEN);
+		openUntil = timeSource.nanoTime() + openNanos;
+	}
+
+	// callers hold the lock
+	private void transition(CircuitState to) {
+		state = to;
+		epoch++;
+		count = 0;
+		next = 0;
+		failures = 0;
+		slowCalls = 0;
+		trialsStarted = 0;
+		trialsSucceeded = 0;
+	}
+
+	private void fire(CircuitState from, CircuitState to) {
+		if (from == to) {
+			return;
+		}
+		for (CircuitBreakerListener listener : listeners) {
+			try {
+				listener.stateChanged(endpoint, from, to);
+			} catch (RuntimeException e) {
+				// a listener cannot fail the request
+			}
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package org.jpoetker.objstore.atmos;
+
+import org.jpoetker.objstore.atmos.AtmosObjectStore.CircuitState;
+
+/**
+ * Is told when the circuit breaker of an access node changes state.
+ *
+ * It is called on the thread of the request that caused the change, after the change, so
+ * it should return quickly. An exception it throws is ignored.
+ */
+public interface CircuitBreakerListener {
+	void stateChanged(Endpoint endpoint, CircuitState from, CircuitState to);
+}
@@ -0,0 +1,23 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * Thrown without sending a request when the circuit breaker of its access node is open,
+ * after too many recent requests to the node failed or were slow.
+ */
+public class CircuitOpenException extends AtmosStorageException {
+
+	private static final long serialVersionUID = 1L;
+	private final Endpoint endpoint;
+
+	public CircuitOpenException(String message, Endpoint endpoint) {
+		super(message);
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * @return the node the request would have been sent to
+	 */
+	public Endpoint getEndpoint() {
+		return endpoint;
+	}
+}
@@ -0,0 +1,14 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * Thrown when a request waited too long for one of the requests in flight to an access
+ * node to finish. The request was not sent.
+ */
+public class ConcurrencyLimitException extends AtmosStorageException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ConcurrencyLimitException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,176 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.jpoetker.objstore.TimeSource;
+
+/**
+ * Caps the requests in flight to one access node at a limit that follows how the node
+ * copes, additive increase and multiplicative decrease as TCP does for its window.
+ *
+ * The limit grows by one over a limit's worth of requests that are answered quickly while
+ * at least half of it is in use. It is cut by a tenth when a request fails with an I/O
+ * error or a 5xx status, or takes more than twice the baseline round trip, the shortest
+ * seen over the last requests. It is cut at most once for the requests that were in flight
+ * together, as they all saw the same congestion. A request is in flight until its response
+ * headers arrive. Only requests without a body are timed: the round trip of an upload
+ * includes sending its body, so it says more of the size of the body than of the node.
+ *
+ * A request over the limit waits for another to finish, up to the queue timeout, and is
+ * then rejected with a {@link ConcurrencyLimitException}. Waiting parks the thread rather
+ * than holding a monitor, so virtual threads are not pinned.
+ */
+final class ConcurrencyLimiter {
+	private static final double BACKOFF_RATIO = 0.9;
+	private static final double RTT_TOLERANCE = 2.0;
+	// the baseline round trip is the shortest of this many requests
+	private static final int BASELINE_WINDOW = 256;
+
+	private final int maxLimit;
+	private final long queueTimeoutNanos;
+	private final TimeSource timeSource;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+
+	// guarded by lock
+	private double limit;
+	private int inFlight;
+	private long baselineRtt = -1;
+	private long windowMinRtt = Long.MAX_VALUE;
+	private int windowSamples;
+	private long lastDecrease;
+
+	ConcurrencyLimiter(int initialLimit, int maxLimit, long queueTimeoutMillis, TimeSource timeSource) {
+		super();
+		this.maxLimit = Math.max(1, maxLimit);
+		this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+		this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+		this.timeSource = timeSource;
+		this.lastDecrease = timeSource.nanoTime();
+	}
+
+	HttpResponse execute(RequestSender next, HttpUriRequest request) throws IOException {
+		boolean timed = !AtmosRequest.hasBody(request);
+		long start = acquire();
+		HttpResponse response;
+		try {
+			response = next.send(request);
+		} catch (IOException e) {
+			if (request.isAborted()) {
+				release(start, false, false, timed);
+			} else {
+				release(start, true, true, timed);
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			release(start, false, false, timed);
+			throw e;
+		}
+		release(start, true, response.getStatusLine().getStatusCode() >= 500, timed);
+		return response;
+	}
+
+	/**
+	 * Waits for room under the limit.
+	 *
+	 * @return the time the request starts
+	 */
+	long acquire() throws IOException {
+		lock.lock();
+		try {
+			long remaining = queueTimeoutNanos;
+			while (inFlight >= (int) limit) {
+				if (remaining <= 0) {
+					throw new ConcurrencyLimitException("More than " + (int) limit + " requests are in flight");
+				}
+				try {
+					remaining = released.awaitNanos(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+				}
+			}
+			inFlight++;
+			return timeSource.nanoTime();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void release(long start, boolean sample, boolean dropped) {
+		release(start, sample, dropped, true);
+	}
+
+	/**
+	 * @param sample whether the request says something of the node, an aborted request does not
+	 * @param dropped whether the request failed
+	 * @param timed whether the round trip of the request is compared with the baseline
+	 */
+	void release(long start, boolean sample, boolean dropped, boolean timed) {
+		lock.lock();
+		try {
+			int wasInFlight = inFlight;
+			inFlight--;
+			if (sample) {
+				long now = timeSource.nanoTime();
+				long rtt = now - start;
+				if (!dropped && timed) {
+					sampleRtt(rtt);
+				}
+				boolean congested = dropped || (timed && (baselineRtt >= 0) && (rtt > baselineRtt * RTT_TOLERANCE));
+				if (congested) {
+					if (start - lastDecrease > 0) {
+						limit = Math.max(1, limit * BACKOFF_RATIO);
+						lastDecrease = now;
+					}
+				} else if (wasInFlight * 2 >= (int) limit) {
+					limit = Math.min(maxLimit, limit + (1 / limit));
+				}
+			}
+			released.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// callers hold the lock
+	private void sampleRtt(long rtt) {
+		if (rtt < windowMinRtt) {
+			windowMinRtt = rtt;
+		}
+		if ((baselineRtt < 0) || (rtt < baselineRtt)) {
+			baselineRtt = rtt;
+		}
+		windowSamples++;
+		if (windowSamples >= BASELINE_WINDOW) {
+			// let the baseline rise when the node has become slower for good
+			baselineRtt = windowMinRtt;
+			windowMinRtt = Long.MAX_VALUE;
+			windowSamples = 0;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.jpoetker.objstore.atmos;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.jpoetker.objstore.TimeSource;
+
+/**
+ * Produces the value of the <code>Date</code> header sent with each request.
+ *
+ * The header only has a resolution of one second, so the formatted value is cached and
+ * re-formatted at most once per second. Instances are thread safe and are meant to be
+ * shared, the default instance is returned by {@link #getDefault()}.
+ */
+public class DateHeaderClock {
+	private static final String DATE_FORMAT = "EEE, d MMM yyyy HH:mm:ss z";
+
+	private static final DateHeaderClock DEFAULT = new DateHeaderClock(TimeSource.SYSTEM);
+
+	private final TimeSource timeSource;
+	private final DateFormat dateFormat;
+	private volatile CachedDate cached;
+
+	public DateHeaderClock(TimeSource timeSource) {
+		super();
+		if (timeSource == null) {
+			throw new IllegalArgumentException("A TimeSource is required");
+		}
+		this.timeSource = timeSource;
+		this.dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH);
+		this.dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+		this.cached = new CachedDate(Long.MIN_VALUE, null);
+	}
+
+	/**
+	 * @return the shared clock backed by the system time
+	 */
+	public static DateHeaderClock getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return the current time formatted for the <code>Date</code> header,
+	 *         e.g. "Thu, 5 Jun 2008 16:38:19 GMT"
+	 */
+	public String getDateHeader() {
+		long millis = timeSource.currentTimeMillis();
+		long second = floorSecond(millis);
+
+		CachedDate current = cached;
+		if (current.second == second) {
+			return current.value;
+		}
+
+		String value;
+		synchronized (dateFormat) {
+			value = dateFormat.format(new Date(second * 1000));
+		}
+		cached = new CachedDate(second, value);
+		return value;
+	}
+
+	public TimeSource getTimeSource() {
+		return timeSource;
+	}
+
+	private static long floorSecond(long millis) {
+		long second = millis / 1000;
+		return ((millis % 1000) < 0) ? second - 1 : second;
+	}
+
+	private static class CachedDate {
+		final long second;
+		final String value;
+
+		CachedDate(long second, String value) {
+			this.second = second;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * The host and port of an Atmos access node.
+ */
+public class Endpoint {
+	private final String host;
+	private final int port;
+
+	public Endpoint(String host, int port) {
+		super();
+		if (host == null) {
+			throw new IllegalArgumentException("A host is required");
+		}
+		this.host = host;
+		this.port = port;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	@Override
+	public int hashCode() {
+		return (31 * host.hashCode()) + port;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Endpoint)) {
+			return false;
+		}
+		Endpoint other = (Endpoint) obj;
+		return host.equals(other.host) && (port == other.port);
+	}
+
+	@Override
+	public String toString() {
+		return host + ":" + port;
+	}
+}
@@ -0,0 +1,147 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+
+/**
+ * Turns the body of an error response into an exception.
+ *
+ * Only the <code>Code</code> and <code>Message</code> elements are read, with a pull parser
+ * from a factory shared by every response, since looking up a parser factory costs more
+ * than parsing the few bytes of an error. Well known Atmos codes are thrown as
+ * subclasses of <code>AtmosStorageException</code>.
+ */
+final class ErrorResponseParser {
+	private static final String CODE_TAG_NAME = "Code";
+	private static final String MESSAGE_TAG_NAME = "Message";
+
+	// creating readers from a configured factory is thread safe
+	private static final XMLInputFactory XML_INPUT_FACTORY = newFactory();
+
+	private ErrorResponseParser() {
+		super();
+	}
+
+	static AtmosStorageException parse(StatusLine status, HttpEntity body) {
+		if (body == null) {
+			return new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode());
+		}
+
+		InputStream in = null;
+		XMLStreamReader xmlReader = null;
+		try {
+			in = body.getContent();
+			xmlReader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+
+			String code = null;
+			String message = null;
+			int depth = 0;
+			while (xmlReader.hasNext() && ((code == null) || (message == null))) {
+				int event = xmlReader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					if (depth == 2) {
+						String element = xmlReader.getLocalName();
+						if (CODE_TAG_NAME.equals(element)) {
+							code = xmlReader.getElementText().trim();
+							depth--;
+						} else if (MESSAGE_TAG_NAME.equals(element)) {
+							message = xmlReader.getElementText();
+							depth--;
+						}
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
+			}
+
+			if ((code == null) && (message == null)) {
+				return new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode());
+			}
+			Integer atmosCode = parseCode(code);
+			if (atmosCode == null) {
+				return new AtmosStorageException((message != null) ? message : status.getReasonPhrase(), status.getStatusCode());
+			}
+			return newException(message, status.getStatusCode(), atmosCode.intValue());
+		} catch (IllegalStateException e) {
+			return new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
+		} catch (XMLStreamException e) {
+			return new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
+		} catch (IOException e) {
+			return new AtmosStorageException(status.getReasonPhrase(), status.getStatusCode(), e);
+		} finally {
+			close(xmlReader, in);
+		}
+	}
+
+	/**
+	 * Creates the exception for an Atmos error code, a subclass for the codes callers
+	 * commonly handle.
+	 */
+	static AtmosStorageException newException(String message, int httpCode, int atmosCode) {
+		switch (atmosCode) {
+		case 1003:
+			return new ObjectNotFoundException(message, httpCode, atmosCode);
+		case 1004:
+			return new RangeNotSatisfiableException(message, httpCode, atmosCode);
+		case 1032:
+		case 1033:
+			return new AuthenticationException(message, httpCode, atmosCode);
+		case 1040:
+			return new ServerBusyException(message, httpCode, atmosCode);
+		default:
+			return new AtmosStorageException(message, httpCode, atmosCode);
+		}
+	}
+
+	private static Integer parseCode(String code) {
+		if ((code == null) || (code.length() == 0) || (code.length() > 9)) {
+			return null;
+		}
+		int value = 0;
+		for (int i = 0; i < code.length(); i++) {
+			char c = code.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return null;
+			}
+			value = (value * 10) + (c - '0');
+		}
+		return Integer.valueOf(value);
+	}
+
+	/**
+	 * Closing the content of a response from the blocking client reads the rest of the
+	 * body, so the connection goes back to the pool.
+	 */
+	private static void close(XMLStreamReader xmlReader, InputStream in) {
+		if (xmlReader != null) {
+			try {
+				xmlReader.close();
+			} catch (XMLStreamException e) {
+				// the stream is closed below
+			}
+		}
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// the connection is not reused
+			}
+		}
+	}
+
+	private static XMLInputFactory newFactory() {
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+}
@@ -0,0 +1,142 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Sends a file as the body of a signed request on the non-blocking client.
+ *
+ * Over plain HTTP the encoder writes straight to the socket channel, so the file is
+ * handed to it with <code>FileChannel.transferTo</code> and the kernel copies the bytes
+ * without them entering the JVM. Over TLS the bytes must pass through the SSL engine,
+ * so they are read into a large direct buffer instead, as <code>transferTo</code> would
+ * fall back to copying through small temporary buffers.
+ */
+class FileRequestProducer implements HttpAsyncRequestProducer {
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final HttpEntityEnclosingRequestBase request;
+	private final Path file;
+	private final long length;
+	private final boolean zeroCopy;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long position;
+
+	FileRequestProducer(HttpEntityEnclosingRequestBase request, Path file) throws IOException {
+		super();
+		this.request = request;
+		this.file = file;
+		this.length = Files.size(file);
+		this.zeroCopy = !"https".equalsIgnoreCase(request.getURI().getScheme());
+
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContentLength(length);
+		request.setEntity(entity);
+	}
+
+	@Override
+	public HttpHost getTarget() {
+		return URIUtils.extractHost(request.getURI());
+	}
+
+	@Override
+	public HttpRequest generateRequest() throws IOException, HttpException {
+		return request;
+	}
+
+	@Override
+	public synchronized void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			position = 0;
+			if (channel.size() < length) {
+				throw new EOFException("The file " + file + " is shorter than " + length + " bytes");
+			}
+		}
+
+		if (zeroCopy && (encoder instanceof FileContentEncoder)) {
+			position += ((FileContentEncoder) encoder).transfer(channel, position, length - position);
+		} else {
+			copyContent(encoder);
+		}
+
+		if ((position >= length) && ((buffer == null) || !buffer.hasRemaining())) {
+			encoder.complete();
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Refills the buffer from the file once the encoder has taken all of it.
+	 */
+	private void copyContent(ContentEncoder encoder) throws IOException {
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, Math.max(length, 1)));
+			buffer.flip();
+		}
+		if (!buffer.hasRemaining() && (position < length)) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), length - position));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) == -1) {
+					throw new EOFException("The file " + file + " is shorter than " + length + " bytes");
+				}
+			}
+			position += buffer.position();
+			buffer.flip();
+		}
+		encoder.write(buffer);
+	}
+
+	@Override
+	public void requestCompleted(HttpContext context) {
+	}
+
+	@Override
+	public void failed(Exception ex) {
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public synchronized void resetRequest() throws IOException {
+		closeChannel();
+		if (buffer != null) {
+			buffer.clear();
+			buffer.flip();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closeChannel();
+	}
+
+	private void closeChannel() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
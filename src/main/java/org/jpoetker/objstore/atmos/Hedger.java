@@ -0,0 +1,231 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.jpoetker.objstore.TimeSource;
+
+/**
+ * Sends a second copy of a read that is slower than most, and keeps whichever response
+ * arrives first.
+ *
+ * The delay before the copy is a percentile of the latencies of the last reads, until
+ * the first headers of a response arrive, so only the slowest reads are hedged. The copy
+ * is a new request signed afresh, which the load balancer sends to a less busy node, or
+ * otherwise goes out on another connection. The request that loses is aborted. A budget
+ * caps the copies at a percentage of the reads, so hedging cannot double the load on a
+ * server that is slow for everyone. Nothing is hedged until enough latencies are known.
+ *
+ * The attempts run on the executor and the caller waits for them, so only idempotent
+ * requests may be hedged. A read the executor has no thread for is sent on the caller's
+ * thread without a copy, and a copy the executor has no thread for is not sent.
+ */
+final class Hedger {
+	private static final int WINDOW_SIZE = 1024;
+	private static final int MIN_SAMPLES = 32;
+	private static final int RECOMPUTE_INTERVAL = 64;
+	// a budget saved while reads are fast is spent on at most this many copies in a row
+	private static final int MAX_BURST = 10;
+
+	private final double percentile;
+	private final int budgetPercent;
+	private final ExecutorService executor;
+	private final TimeSource timeSource;
+
+	// guarded by this
+	private final long[] latencies = new long[WINDOW_SIZE];
+	private int samples;
+	private int sinceRecompute;
+	private long delayNanos = -1;
+	private long budget;
+
+	private final AtomicLong hedges = new AtomicLong();
+
+	/**
+	 * @param percentile the percentile of the latencies after which a copy is sent, between
+	 *        0 and 100
+	 * @param budgetPercent how many copies may be sent per hundred requests
+	 */
+	Hedger(double percentile, int budgetPercent, ExecutorService executor, TimeSource timeSource) {
+		super();
+		if ((percentile <= 0) || (percentile > 100)) {
+			throw new IllegalArgumentException("The hedging percentile must be greater than 0 and at most 100");
+		}
+		if (budgetPercent < 0) {
+			throw new IllegalArgumentException("The hedging budget cannot be negative");
+		}
+		this.percentile = percentile;
+		this.budgetPercent = budgetPercent;
+		this.executor = executor;
+		this.timeSource = timeSource;
+	}
+
+	HttpResponse execute(AtmosRequest request, RequestSender sender) throws IOException {
+		long delay = deposit();
+		if (delay < 0) {
+			// no copy can be sent, so the request need not leave the caller's thread
+			long start = timeSource.nanoTime();
+			HttpResponse response = sender.send(request.createGet());
+			record(timeSource.nanoTime() - start);
+			return response;
+		}
+
+		BlockingQueue<Attempt> done = new LinkedBlockingQueue<Attempt>();
+		Attempt primary = new Attempt(request.createGet(), sender, done);
+		if (!submit(primary)) {
+			primary.run();
+			return primary.result();
+		}
+		Attempt hedge = null;
+		Attempt first;
+		try {
+			first = done.poll(delay, TimeUnit.NANOSECONDS);
+			if ((first == null) && withdraw()) {
+				Attempt copy = new Attempt(request.createGet(), sender, done);
+				if (submit(copy)) {
+					hedge = copy;
+					hedges.incrementAndGet();
+				} else {
+					refund();
+				}
+			}
+			if (first == null) {
+				first = done.take();
+			}
+			if (first.failed() && (hedge != null)) {
+				Attempt second = done.take();
+				if (!second.failed()) {
+					first = second;
+				}
+			}
+		} catch (InterruptedException e) {
+			primary.request.abort();
+			if (hedge != null) {
+				hedge.request.abort();
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a response");
+		}
+
+		if (hedge != null) {
+			((first == primary) ? hedge : primary).request.abort();
+		}
+		return first.result();
+	}
+
+	/**
+	 * @return the number of copies sent
+	 */
+	long getHedgeCount() {
+		return hedges.get();
+	}
+
+	/**
+	 * @return the current delay before a copy is sent, or -1 while too few latencies are known
+	 */
+	synchronized long getDelayNanos() {
+		return delayNanos;
+	}
+
+	/**
+	 * @return false if the executor is busy or shut down
+	 */
+	private boolean submit(Attempt attempt) {
+		try {
+			executor.execute(attempt);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Adds the share of a request to the budget.
+	 *
+	 * @return the delay before a copy of the request is sent, or -1 if the budget cannot
+	 *         pay for one or too few latencies are known
+	 */
+	private synchronized long deposit() {
+		budget = Math.min(budget + budgetPercent, 100L * MAX_BURST);
+		return (budget >= 100) ? delayNanos : -1;
+	}
+
+	private synchronized boolean withdraw() {
+		if (budget < 100) {
+			return false;
+		}
+		budget -= 100;
+		return true;
+	}
+
+	private synchronized void refund() {
+		budget = Math.min(budget + 100, 100L * MAX_BURST);
+	}
+
+	private synchronized void record(long latencyNanos) {
+		latencies[samples % WINDOW_SIZE] = latencyNanos;
+		samples++;
+		sinceRecompute++;
+		if ((samples >= MIN_SAMPLES) && ((delayNanos < 0) || (sinceRecompute >= RECOMPUTE_INTERVAL))) {
+			int count = Math.min(samples, WINDOW_SIZE);
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			delayNanos = sorted[Math.min(count - 1, (int) Math.ceil(count * percentile / 100) - 1)];
+			sinceRecompute = 0;
+		}
+	}
+
+	private class Attempt implements Runnable {
+		private final HttpUriRequest request;
+		private final RequestSender sender;
+		private final BlockingQueue<Attempt> done;
+		private volatile HttpResponse response;
+		private volatile IOException failure;
+		private volatile RuntimeException runtimeFailure;
+
+		Attempt(HttpUriRequest request, RequestSender sender, BlockingQueue<Attempt> done) {
+			super();
+			this.request = request;
+			this.sender = sender;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			long start = timeSource.nanoTime();
+			try {
+				response = sender.send(request);
+				record(timeSource.nanoTime() - start);
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				runtimeFailure = e;
+			} finally {
+				done.add(this);
+			}
+		}
+
+		boolean failed() {
+			return response == null;
+		}
+
+		HttpResponse result() throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+			if (runtimeFailure != null) {
+				throw runtimeFailure;
+			}
+			return response;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.jpoetker.objstore.ObjectStorageException;
+
+/**
+ * Computes the HMAC-SHA1 signatures for requests made with a single shared secret.
+ *
+ * The shared secret is decoded once, and initialized <code>Mac</code> instances are kept
+ * in a small pool that callers borrow from, so that the JCA provider lookup and key setup
+ * are not repeated for every request. A pool rather than one per thread also serves
+ * virtual threads, which live for a single request. Instances are cached per shared
+ * secret, use {@link #forSecret(String)} to obtain one.
+ */
+final class HmacSigner {
+	private static final String HMAC_SHA1 = "HmacSHA1";
+	private static final String UTF_8 = "UTF-8";
+
+	/**
+	 * Upper bound on the number of credentials kept in the cache, this only matters to
+	 * applications with a very large number of tenants. Past it a signer is dropped for
+	 * each one added.
+	 */
+	private static final int MAX_CACHED_SIGNERS = 1024;
+
+	// signing does not block, so more than this are rarely in use at once
+	private static final int MAX_POOLED_MACS = 2 * Runtime.getRuntime().availableProcessors();
+
+	private static final ConcurrentMap<String, HmacSigner> signers = new ConcurrentHashMap<String, HmacSigner>();
+
+	private final SecretKeySpec key;
+	private final Queue<Mac> macs = new ConcurrentLinkedQueue<Mac>();
+	private final AtomicInteger pooledMacs = new AtomicInteger();
+
+	private HmacSigner(byte[] secret) {
+		super();
+		this.key = new SecretKeySpec(secret, HMAC_SHA1);
+	}
+
+	/**
+	 * Returns the signer for the Base64 encoded shared secret.
+	 *
+	 * @param sharedSecret the Base64 encoded shared secret
+	 * @return a signer for the shared secret
+	 */
+	static HmacSigner forSecret(String sharedSecret) {
+		HmacSigner signer = signers.get(sharedSecret);
+		if (signer == null) {
+			evict();
+			HmacSigner created = new HmacSigner(decode(sharedSecret));
+			signer = signers.putIfAbsent(sharedSecret, created);
+			if (signer == null) {
+				signer = created;
+			}
+		}
+		return signer;
+	}
+
+	/**
+	 * Returns the number of cached signers, this is only used for testing.
+	 */
+	static int cachedSigners() {
+		return signers.size();
+	}
+
+	private static void evict() {
+		Iterator<String> secrets = signers.keySet().iterator();
+		while ((signers.size() >= MAX_CACHED_SIGNERS) && secrets.hasNext()) {
+			secrets.next();
+			secrets.remove();
+		}
+	}
+
+	private static byte[] decode(String sharedSecret) {
+		try {
+			return Base64.decodeBase64(sharedSecret.getBytes(UTF_8));
+		} catch (UnsupportedEncodingException e) {
+			throw new ObjectStorageException("Could not decode shared secret");
+		}
+	}
+
+	/**
+	 * Borrows a <code>Mac</code> initialized with the shared secret, which must be given
+	 * back with {@link #returnMac(Mac)} once done.
+	 *
+	 * The <code>Mac</code> is reset after each call to <code>doFinal</code>, so callers
+	 * may feed it data directly, but must finish with <code>doFinal</code>.
+	 */
+	Mac borrowMac() throws NoSuchAlgorithmException, InvalidKeyException {
+		Mac mac = macs.poll();
+		if (mac != null) {
+			pooledMacs.decrementAndGet();
+			return mac;
+		}
+		mac = Mac.getInstance(HMAC_SHA1);
+		mac.init(key);
+		return mac;
+	}
+
+	/**
+	 * Gives back a borrowed <code>Mac</code>, which is dropped when the pool is full.
+	 */
+	void returnMac(Mac mac) {
+		// a caller that failed half way leaves data in the Mac
+		mac.reset();
+		if (pooledMacs.incrementAndGet() <= MAX_POOLED_MACS) {
+			macs.offer(mac);
+		} else {
+			pooledMacs.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Generates the Base64 encoded HMAC-SHA1 signature of the UTF-8 bytes of the input.
+	 *
+	 * @param input the string to sign
+	 * @return the HMAC-SHA1 signature in Base64 format
+	 */
+	String sign(String input) throws NoSuchAlgorithmException, InvalidKeyException, IllegalStateException, UnsupportedEncodingException {
+		Mac mac = borrowMac();
+		try {
+			return encode(mac.doFinal(input.getBytes(UTF_8)));
+		} finally {
+			returnMac(mac);
+		}
+	}
+
+	static String encode(byte[] hashedBytes) throws UnsupportedEncodingException {
+		return new String(Base64.encodeBase64(hashedBytes), UTF_8);
+	}
+}
@@ -0,0 +1,262 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.jpoetker.objstore.TimeSource;
+import org.jpoetker.objstore.atmos.AtmosObjectStore.BalancingPolicy;
+
+/**
+ * Sends each request to one of several access nodes.
+ *
+ * A node is picked by its number of outstanding requests, or by its average latency
+ * weighted by its outstanding requests, among the nodes that are not ejected. Ties go to
+ * the nodes in turn. A request is outstanding and timed until its response headers
+ * arrive, since the body may be read long after.
+ *
+ * Health is tracked from the traffic itself. A node failing a number of requests in a row,
+ * with an I/O error or a 5xx status, is ejected for a while. Once that time is up a single
+ * request is let through as a probe: the node is readmitted if it succeeds and ejected
+ * again if it fails. When every node is ejected, requests go to the one coming back first
+ * rather than failing outright. A request that could not connect, or was turned away by
+ * the circuit breaker of its node, was never sent, so it is tried on another node, never
+ * on one it was already tried on.
+ */
+final class LoadBalancer {
+	// weight of a new latency sample in the moving average, 1/8 as for TCP round trip times
+	private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+	private final Node[] nodes;
+	private final BalancingPolicy policy;
+	private final int maxFailures;
+	private final long ejectionNanos;
+	private final TimeSource timeSource;
+	private final AtomicInteger next = new AtomicInteger();
+
+	LoadBalancer(List<Endpoint> endpoints, String scheme, BalancingPolicy policy, int maxFailures, long ejectionMillis, TimeSource timeSource) {
+		super();
+		if ((endpoints == null) || endpoints.isEmpty()) {
+			throw new IllegalArgumentException("At least one endpoint is required");
+		}
+		this.nodes = new Node[endpoints.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			Endpoint endpoint = endpoints.get(i);
+			nodes[i] = new Node(i, endpoint, new HttpHost(endpoint.getHost(), endpoint.getPort(), scheme));
+		}
+		this.policy = policy;
+		this.maxFailures = maxFailures;
+		this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMillis);
+		this.timeSource = timeSource;
+	}
+
+	HttpResponse execute(RequestSender sender, HttpUriRequest request) throws IOException {
+		// the nodes this request was tried on, only allocated once it is tried again
+		boolean[] tried = null;
+		for (int attempt = 1; ; attempt++) {
+			Node node = select(tried);
+			long start = timeSource.nanoTime();
+			HttpResponse response;
+			try {
+				response = send(sender, node, request);
+			} catch (ConnectException e) {
+				node.failed(timeSource.nanoTime());
+				if (attempt >= nodes.length) {
+					throw e;
+				}
+				tried = markTried(tried, node);
+				continue;
+			} catch (ConnectTimeoutException e) {
+				node.failed(timeSource.nanoTime());
+				if (attempt >= nodes.length) {
+					throw e;
+				}
+				tried = markTried(tried, node);
+				continue;
+			} catch (IOException e) {
+				if (request.isAborted()) {
+					// a hedged request that lost says nothing of the node
+					node.released();
+				} else {
+					node.failed(timeSource.nanoTime());
+				}
+				throw e;
+			} catch (CircuitOpenException e) {
+				node.released();
+				if (attempt >= nodes.length) {
+					throw e;
+				}
+				tried = markTried(tried, node);
+				continue;
+			} catch (RuntimeException e) {
+				node.released();
+				throw e;
+			}
+
+			long now = timeSource.nanoTime();
+			if (response.getStatusLine().getStatusCode() >= 500) {
+				node.failed(now);
+			} else {
+				node.succeeded(now - start);
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Picks a node the request was not tried on yet, and counts the request as
+	 * outstanding on it.
+	 *
+	 * @param tried flags the nodes by index to skip, or <code>null</code>
+	 */
+	Node select(boolean[] tried) {
+		long now = timeSource.nanoTime();
+		int start = next.getAndIncrement() & Integer.MAX_VALUE;
+		Node best = null;
+		long bestScore = Long.MAX_VALUE;
+		Node soonest = null;
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[(start + i) % nodes.length];
+			if ((tried != null) && tried[node.index]) {
+				continue;
+			}
+			synchronized (node) {
+				if (node.ejected) {
+					if (node.claimProbe(now)) {
+						node.outstanding.incrementAndGet();
+						return node;
+					}
+					if ((soonest == null) || (node.ejectedUntil - soonest.ejectedUntil < 0)) {
+						soonest = node;
+					}
+					continue;
+				}
+			}
+			long score = (policy == BalancingPolicy.LATENCY_WEIGHTED) ? node.latencyScore() : node.outstanding.get();
+			if (score < bestScore) {
+				best = node;
+				bestScore = score;
+			}
+		}
+		if (best == null) {
+			best = soonest;
+		}
+		best.outstanding.incrementAndGet();
+		return best;
+	}
+
+	private boolean[] markTried(boolean[] tried, Node node) {
+		if (tried == null) {
+			tried = new boolean[nodes.length];
+		}
+		tried[node.index] = true;
+		return tried;
+	}
+
+	Node[] getNodes() {
+		return nodes;
+	}
+
+	private static HttpResponse send(RequestSender sender, Node node, HttpUriRequest request) throws IOException {
+		try {
+			URI uri = URIUtils.rewriteURI(request.getURI(), node.host);
+			if (request instanceof HttpRequestBase) {
+				((HttpRequestBase) request).setURI(uri);
+				return sender.send(request);
+			}
+			HttpRequestWrapper wrapper = HttpRequestWrapper.wrap(request);
+			wrapper.setURI(uri);
+			return sender.send(wrapper);
+		} catch (URISyntaxException e) {
+			throw new ClientProtocolException(e);
+		}
+	}
+
+	final class Node {
+		private final int index;
+		private final Endpoint endpoint;
+		private final HttpHost host;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		// guarded by this
+		private long latencyNanos = -1;
+		private int failures;
+		private boolean ejected;
+		private long ejectedUntil;
+		private boolean probing;
+
+		Node(int index, Endpoint endpoint, HttpHost host) {
+			super();
+			this.index = index;
+			this.endpoint = endpoint;
+			this.host = host;
+		}
+
+		Endpoint getEndpoint() {
+			return endpoint;
+		}
+
+		int getOutstanding() {
+			return outstanding.get();
+		}
+
+		synchronized boolean isEjected() {
+			return ejected;
+		}
+
+		synchronized long getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		/**
+		 * The latency the next request can expect, growing with the requests already
+		 * waiting. A node that has not answered yet scores lowest, so it is tried.
+		 */
+		synchronized long latencyScore() {
+			return (latencyNanos < 0) ? 0 : latencyNanos * (outstanding.get() + 1);
+		}
+
+		// callers hold the lock
+		private boolean claimProbe(long now) {
+			if (probing || (now - ejectedUntil < 0)) {
+				return false;
+			}
+			probing = true;
+			return true;
+		}
+
+		synchronized void succeeded(long elapsedNanos) {
+			outstanding.decrementAndGet();
+			latencyNanos = (latencyNanos < 0) ? elapsedNanos : latencyNanos + ((elapsedNanos - latencyNanos) >> LATENCY_SMOOTHING_SHIFT);
+			failures = 0;
+			ejected = false;
+			probing = false;
+		}
+
+		synchronized void failed(long now) {
+			outstanding.decrementAndGet();
+			failures++;
+			if (probing || (failures >= maxFailures)) {
+				ejected = true;
+				ejectedUntil = now + ejectionNanos;
+				probing = false;
+			}
+		}
+
+		synchronized void released() {
+			outstanding.decrementAndGet();
+			probing = false;
+		}
+	}
+}
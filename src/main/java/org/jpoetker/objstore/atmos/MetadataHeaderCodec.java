@@ -0,0 +1,152 @@
+package org.jpoetker.objstore.atmos;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.jpoetker.objstore.Grant;
+import org.jpoetker.objstore.Grantee;
+import org.jpoetker.objstore.Metadata;
+
+/**
+ * Encodes and decodes the <code>x-emc-meta</code> and <code>x-emc-listable-meta</code>
+ * headers, and encodes the <code>x-emc-useracl</code> and <code>x-emc-groupacl</code>
+ * headers.
+ *
+ * Metadata headers are lists of <code>name=value</code> pairs separated by
+ * <code>", "</code>, ACL headers are lists of <code>subject=PERMISSION</code> pairs
+ * separated by <code>","</code>. Encoding measures the header before writing it into a
+ * builder of that size, and decoding scans the header once, cutting each name and value
+ * straight out of it.
+ */
+final class MetadataHeaderCodec {
+	private static final String METADATA_SEPARATOR = ", ";
+	private static final char ACL_SEPARATOR = ',';
+
+	private MetadataHeaderCodec() {
+		super();
+	}
+
+	/**
+	 * Encodes the listable or the non listable metadata of the collection.
+	 *
+	 * Commas and new lines cannot be sent in a value, so they are left out.
+	 *
+	 * @return the header value, or <code>null</code> if there is no metadata of that kind
+	 */
+	static String encodeMetadata(Collection<Metadata> metadata, boolean listable) {
+		int length = 0;
+		for (Metadata meta : metadata) {
+			if (meta.isListable() == listable) {
+				if (length > 0) {
+					length += METADATA_SEPARATOR.length();
+				}
+				length += meta.getName().length() + 1 + meta.getValue().length();
+			}
+		}
+		if (length == 0) {
+			return null;
+		}
+
+		StringBuilder header = new StringBuilder(length);
+		for (Metadata meta : metadata) {
+			if (meta.isListable() == listable) {
+				if (header.length() > 0) {
+					header.append(METADATA_SEPARATOR);
+				}
+				appendKeyValue(header, meta.getName(), meta.getValue());
+			}
+		}
+		return header.toString();
+	}
+
+	/**
+	 * Appends <code>name=value</code>, leaving the commas and new lines out of the value.
+	 */
+	static void appendKeyValue(StringBuilder header, String name, String value) {
+		header.append(name).append('=');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c == ',') || (c == '\n')) {
+				header.append(value, start, i);
+				start = i + 1;
+			}
+		}
+		header.append(value, start, value.length());
+	}
+
+	/**
+	 * Decodes a metadata header into the list.
+	 *
+	 * Names are trimmed while values are kept as sent. Empty entries are skipped, and an
+	 * entry without an <code>=</code> is read as a name with an empty value.
+	 */
+	static void decodeMetadata(String header, boolean listable, List<Metadata> metadata) {
+		int length = header.length();
+		int start = 0;
+		while (start < length) {
+			int end = header.indexOf(',', start);
+			if (end < 0) {
+				end = length;
+			}
+			int equals = indexOf(header, '=', start, end);
+			String name = trimmed(header, start, (equals >= 0) ? equals : end);
+			if (name.length() > 0) {
+				String value = (equals >= 0) ? header.substring(equals + 1, end) : "";
+				metadata.add(new Metadata(name, value, listable));
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Encodes the grants of the ACL for users or for groups.
+	 *
+	 * @return the header value, empty if there is no grant of that type
+	 */
+	static String encodeAcl(Set<Grant> acl, Grantee.Type type) {
+		int length = 0;
+		for (Grant grant : acl) {
+			if (grant.getGrantee().getType() == type) {
+				if (length > 0) {
+					length++;
+				}
+				length += grant.getGrantee().getSubject().length() + 1 + grant.getPermission().name().length();
+			}
+		}
+		if (length == 0) {
+			return "";
+		}
+
+		StringBuilder header = new StringBuilder(length);
+		for (Grant grant : acl) {
+			if (grant.getGrantee().getType() == type) {
+				if (header.length() > 0) {
+					header.append(ACL_SEPARATOR);
+				}
+				header.append(grant.getGrantee().getSubject()).append('=').append(grant.getPermission().name());
+			}
+		}
+		return header.toString();
+	}
+
+	private static int indexOf(String header, char c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (header.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String trimmed(String header, int start, int end) {
+		while ((start < end) && (header.charAt(start) <= ' ')) {
+			start++;
+		}
+		while ((end > start) && (header.charAt(end - 1) <= ' ')) {
+			end--;
+		}
+		return header.substring(start, end);
+	}
+}
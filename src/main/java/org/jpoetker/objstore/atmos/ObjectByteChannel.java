@@ -0,0 +1,147 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import org.jpoetker.objstore.ObjectStorageException;
+
+/**
+ * A read only <code>SeekableByteChannel</code> over an object, reading ranges on demand.
+ *
+ * Small reads are served from a read-ahead window, which is refilled with one ranged
+ * request whenever a read starts outside of it. Reads of at least the window size go
+ * straight into the caller's buffer. The channel is not safe for use by multiple threads.
+ */
+class ObjectByteChannel implements SeekableByteChannel {
+	private final AtmosObjectStore objectStore;
+	private final String id;
+	private final long size;
+	private final byte[] window;
+	private long windowOffset;
+	private int windowLength;
+	private long position;
+	private boolean open = true;
+
+	ObjectByteChannel(AtmosObjectStore objectStore, String id, long size, int readAheadSize) {
+		super();
+		this.objectStore = objectStore;
+		this.id = id;
+		this.size = size;
+		this.window = new byte[(int) Math.min(readAheadSize, Math.max(size, 1))];
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if (position >= size) {
+			return -1;
+		}
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+
+		if ((position < windowOffset) || (position >= windowOffset + windowLength)) {
+			if (dst.remaining() >= window.length) {
+				int length = (int) Math.min(dst.remaining(), size - position);
+				ByteBuffer target = dst.duplicate();
+				target.limit(target.position() + length);
+				readRange(position, target);
+				dst.position(target.position());
+				position += length;
+				return length;
+			}
+			fillWindow();
+		}
+
+		int start = (int) (position - windowOffset);
+		int length = Math.min(dst.remaining(), windowLength - start);
+		dst.put(window, start, length);
+		position += length;
+		return length;
+	}
+
+	private void fillWindow() throws IOException {
+		windowLength = 0;
+		windowOffset = position;
+		int length = (int) Math.min(window.length, size - position);
+		readRange(position, ByteBuffer.wrap(window, 0, length));
+		windowLength = length;
+	}
+
+	/**
+	 * Reads the range starting at <code>offset</code> until the buffer is full.
+	 */
+	private void readRange(long offset, ByteBuffer target) throws IOException {
+		InputStream in;
+		try {
+			in = objectStore.readObject(id, offset, target.remaining());
+		} catch (ObjectStorageException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		try {
+			ReadableByteChannel channel = Channels.newChannel(in);
+			while (target.hasRemaining()) {
+				if (channel.read(target) == -1) {
+					throw new EOFException("Premature end of object " + id + ", " + target.remaining() + " bytes missing");
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("The position cannot be negative");
+		}
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Consumes the response to an object read, handing the content over as an
+ * <code>InputStream</code> while it is still arriving.
+ *
+ * The stream is handed over as soon as the response headers of a successful read arrive.
+ * The content is passed through a bounded buffer, input from the connection is suspended
+ * while the buffer is full so a slow reader never forces the whole object into memory.
+ * Error responses are buffered and turned into an {@link AtmosStorageException}.
+ */
+class ObjectContentConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int ERROR_BUFFER_SIZE = 4096;
+
+	private final CompletableFuture<InputStream> content;
+	private volatile Future<?> exchange;
+	private volatile boolean aborted;
+	private volatile boolean completed;
+	private volatile IOException failure;
+
+	private HttpResponse response;
+	private SharedInputBuffer shared;
+	private SimpleInputBuffer buffered;
+
+	ObjectContentConsumer(CompletableFuture<InputStream> content) {
+		super();
+		this.content = content;
+	}
+
+	/**
+	 * Sets the future of the exchange, it is cancelled when the stream is closed before
+	 * all the content has been read.
+	 */
+	void setExchange(Future<?> exchange) {
+		this.exchange = exchange;
+		if (aborted) {
+			exchange.cancel(true);
+		}
+	}
+
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.response = response;
+	}
+
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+		if (isSuccess()) {
+			shared = new SharedInputBuffer(BUFFER_SIZE, HeapByteBufferAllocator.INSTANCE);
+			content.complete(new ContentInputStream(shared));
+		} else {
+			long length = entity.getContentLength();
+			buffered = new SimpleInputBuffer((length > 0 && length < BUFFER_SIZE) ? (int) length : ERROR_BUFFER_SIZE, HeapByteBufferAllocator.INSTANCE);
+			response.setEntity(new ContentBufferEntity(entity, buffered));
+		}
+	}
+
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+		if (shared != null) {
+			shared.consumeContent(decoder, ioctrl);
+		} else {
+			buffered.consumeContent(decoder);
+		}
+	}
+
+	@Override
+	protected HttpResponse buildResult(HttpContext context) {
+		completed = true;
+		if (shared != null) {
+			shared.close();
+		} else if (isSuccess()) {
+			// no entity was enclosed
+			content.complete(new ByteArrayInputStream(new byte[0]));
+		} else {
+			// throws the error sent by the server
+			new AtmosResponse(response);
+		}
+		return response;
+	}
+
+	@Override
+	protected void releaseResources() {
+		if (!completed && (shared != null)) {
+			Exception ex = getException();
+			failure = (ex instanceof IOException) ? (IOException) ex : new IOException("The read was aborted", ex);
+			shared.shutdown();
+		}
+	}
+
+	private boolean isSuccess() {
+		return response.getStatusLine().getStatusCode() < 300;
+	}
+
+	private void abort() {
+		aborted = true;
+		Future<?> current = exchange;
+		if (current != null) {
+			current.cancel(true);
+		}
+	}
+
+	class ContentInputStream extends InputStream {
+		private final SharedInputBuffer buffer;
+		private boolean endOfStream;
+		private boolean closed;
+
+		ContentInputStream(SharedInputBuffer buffer) {
+			super();
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (endOfStream) {
+				return -1;
+			}
+			int read = buffer.read(b, off, len);
+			if (read == -1) {
+				// a shut down buffer also reports the end of the stream
+				if (failure != null) {
+					throw new IOException(failure.getMessage(), failure);
+				}
+				endOfStream = true;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return closed ? 0 : buffer.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				if (!endOfStream && !completed) {
+					abort();
+				}
+				buffer.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * Thrown when the requested object does not exist, Atmos error code 1003.
+ */
+public class ObjectNotFoundException extends AtmosStorageException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ObjectNotFoundException(String message, int httpCode, int atmosCode) {
+		super(message, httpCode, atmosCode);
+	}
+}
@@ -0,0 +1,181 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.jpoetker.objstore.ParallelOptions;
+
+/**
+ * Downloads an object into a file as ranges fetched over concurrent requests, each range
+ * is written at its own offset in the file.
+ */
+class ParallelDownload extends ParallelTransfer {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final AtomicLong nextPart = new AtomicLong();
+	private FileChannel channel;
+	private long size;
+	private long parts;
+
+	ParallelDownload(AtmosObjectStore objectStore, String id, ParallelOptions options) {
+		super(objectStore, id, options);
+	}
+
+	long download(Path target) {
+		size = getObjectSize();
+		parts = (size + options.getPartSize() - 1) / options.getPartSize();
+
+		try {
+			channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				if (parts > 0) {
+					runWorkers(parts);
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new AtmosStorageException(e.getMessage(), e);
+		}
+
+		if (hasFailed()) {
+			throw getFailure();
+		}
+		return size;
+	}
+
+	/**
+	 * Looks up the size with the retries of a part, as the store only retries requests
+	 * when {@link AtmosObjectStore#isRetrying() retrying} is on.
+	 */
+	private long getObjectSize() {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return objectStore.getObjectSize(id);
+			} catch (AtmosStorageException e) {
+				if (!isRetryable(e) || (attempt >= options.getMaxRetries())) {
+					throw e;
+				}
+			}
+			backoff(attempt);
+		}
+	}
+
+	@Override
+	protected void transferParts() {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long part;
+
+		while (!hasFailed() && ((part = nextPart.getAndIncrement()) < parts)) {
+			long offset = part * options.getPartSize();
+			long length = Math.min(options.getPartSize(), size - offset);
+			fetchWithRetry(offset, length, buffer);
+		}
+	}
+
+	private void fetchWithRetry(long offset, long length, byte[] buffer) {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				fetch(offset, length, buffer);
+				return;
+			} catch (IOException e) {
+				if (attempt >= options.getMaxRetries()) {
+					throw new AtmosStorageException(e.getMessage(), e);
+				}
+			} catch (AtmosStorageException e) {
+				if (!isRetryable(e) || (attempt >= options.getMaxRetries())) {
+					throw e;
+				}
+			}
+			backoff(attempt);
+		}
+	}
+
+	private void fetch(long offset, long length, byte[] buffer) throws IOException {
+		HttpGet get;
+		try {
+			URL url = objectStore.buildUrl(objectStore.getResourcePath(id), null);
+			AtmosRequest request = objectStore.newRequest(url);
+			request.setRange(offset, length);
+			get = request.createGet();
+		} catch (MalformedURLException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} catch (URISyntaxException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		}
+
+		AtmosResponse response = objectStore.executeOnce(get);
+		boolean complete = false;
+		try {
+			int status = response.getStatusLine().getStatusCode();
+			boolean wholeObject = (offset == 0) && (length == size);
+			if ((status != HttpStatus.SC_PARTIAL_CONTENT) && !((status == HttpStatus.SC_OK) && wholeObject)) {
+				throw new IOException("Expected a partial response for range " + offset + "-" + (offset + length - 1) + " but got " + status);
+			}
+			if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+				Header header = response.getFirstHeader("Content-Range");
+				String contentRange = (header != null) ? header.getValue() : null;
+				if (!isRange(contentRange, offset, length, size)) {
+					throw new IOException("Expected range " + offset + "-" + (offset + length - 1) + "/" + size + " but got " + contentRange);
+				}
+			}
+
+			InputStream in = response.getEntity().getContent();
+			long position = offset;
+			long end = offset + length;
+			int read;
+			while ((position < end) && ((read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1)) {
+				ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+				while (bytes.hasRemaining()) {
+					position += channel.write(bytes, position);
+				}
+			}
+			if (position < end) {
+				throw new IOException("Premature end of range " + offset + "-" + (end - 1) + " at " + position);
+			}
+			complete = true;
+		} finally {
+			if (complete) {
+				objectStore.cleanup(response);
+			} else {
+				// the rest of the response is not worth reading just to reuse the connection
+				get.abort();
+			}
+		}
+	}
+
+	/**
+	 * @return whether a Content-Range header, such as <code>bytes 0-99/1000</code>, is of
+	 *         the given range of an object of the given size, a size of <code>*</code> is
+	 *         accepted
+	 */
+	static boolean isRange(String contentRange, long offset, long length, long size) {
+		if ((contentRange == null) || !contentRange.regionMatches(true, 0, "bytes ", 0, 6)) {
+			return false;
+		}
+		int dash = contentRange.indexOf('-', 6);
+		int slash = contentRange.indexOf('/', dash + 1);
+		if ((dash < 0) || (slash < 0)) {
+			return false;
+		}
+		try {
+			long first = Long.parseLong(contentRange.substring(6, dash).trim());
+			long last = Long.parseLong(contentRange.substring(dash + 1, slash).trim());
+			String total = contentRange.substring(slash + 1).trim();
+			return (first == offset) && (last == offset + length - 1) && ("*".equals(total) || (Long.parseLong(total) == size));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
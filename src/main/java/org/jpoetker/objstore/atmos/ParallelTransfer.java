@@ -0,0 +1,112 @@
+package org.jpoetker.objstore.atmos;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpStatus;
+import org.jpoetker.objstore.ObjectStorageException;
+import org.jpoetker.objstore.ParallelOptions;
+import org.jpoetker.objstore.VirtualThreads;
+
+/**
+ * Transfers an object as parts over concurrent requests.
+ *
+ * A fixed number of workers take the next part from shared state, so a slow part never
+ * holds up the parts after it. Each part is retried on its own after a network or server
+ * error, including one while its body is read, and the first part that fails for good
+ * stops the other workers. Part requests are sent once by the store, bypassing its
+ * {@link Retrier} and the retries of its default client, so the retries of a part are
+ * only those made here.
+ */
+abstract class ParallelTransfer {
+	private static final long MAX_BACKOFF_MILLIS = 2000;
+
+	protected final AtmosObjectStore objectStore;
+	protected final String id;
+	protected final ParallelOptions options;
+	private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+	ParallelTransfer(AtmosObjectStore objectStore, String id, ParallelOptions options) {
+		super();
+		this.objectStore = objectStore;
+		this.id = id;
+		this.options = (options != null) ? options : new ParallelOptions();
+	}
+
+	/**
+	 * Transfers parts until there are none left or the transfer has failed.
+	 */
+	protected abstract void transferParts();
+
+	/**
+	 * Runs up to <code>parts</code> workers on the executor from the options and waits
+	 * for all of them to finish.
+	 */
+	protected void runWorkers(long parts) {
+		int workers = (int) Math.min(options.getConcurrency(), parts);
+		ExecutorService ownExecutor = null;
+		Executor executor = options.getExecutor();
+		if (executor == null) {
+			ownExecutor = VirtualThreads.newExecutor(workers);
+			executor = ownExecutor;
+		}
+
+		try {
+			CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+			for (int i = 0; i < workers; i++) {
+				running[i] = CompletableFuture.runAsync(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							transferParts();
+						} catch (RuntimeException e) {
+							fail(e);
+						}
+					}
+				}, executor);
+			}
+			CompletableFuture.allOf(running).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(new AtmosStorageException("Interrupted while transferring object " + id, e));
+		} catch (ExecutionException e) {
+			fail(new AtmosStorageException(e.getCause().getMessage(), e.getCause()));
+		} finally {
+			if (ownExecutor != null) {
+				ownExecutor.shutdown();
+			}
+		}
+	}
+
+	protected boolean isRetryable(AtmosStorageException e) {
+		return (e.getHttpCode() == null) || (e.getHttpCode().intValue() >= HttpStatus.SC_INTERNAL_SERVER_ERROR);
+	}
+
+	protected void backoff(int attempt) {
+		try {
+			Thread.sleep(Math.min(50L << Math.min(attempt, 16), MAX_BACKOFF_MILLIS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AtmosStorageException("Interrupted while transferring object " + id, e);
+		}
+	}
+
+	protected void fail(RuntimeException e) {
+		if (e instanceof ObjectStorageException) {
+			failure.compareAndSet(null, e);
+		} else {
+			failure.compareAndSet(null, new AtmosStorageException(e.getMessage(), e));
+		}
+	}
+
+	protected boolean hasFailed() {
+		return failure.get() != null;
+	}
+
+	protected RuntimeException getFailure() {
+		return failure.get();
+	}
+}
@@ -0,0 +1,150 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jpoetker.objstore.IncompleteUploadException;
+import org.jpoetker.objstore.ParallelOptions;
+
+/**
+ * Writes data into an object as ranged updates sent over concurrent requests.
+ *
+ * The source is read one chunk at a time by whichever worker is free, into a buffer of
+ * that worker, so at most <code>concurrency</code> chunks are held in memory. Atmos
+ * takes the position of an update from the Range header of the PUT. The read cursor is
+ * guarded by a <code>ReentrantLock</code> rather than a monitor, as a virtual thread
+ * blocked reading the source inside a monitor would pin its carrier.
+ */
+class ParallelUpload extends ParallelTransfer {
+	private final InputStream data;
+	private final long offset;
+	private final long length;
+	private final long parts;
+	private final BitSet acknowledged = new BitSet();
+	private final ReentrantLock readLock = new ReentrantLock();
+	private long nextPart;
+
+	ParallelUpload(AtmosObjectStore objectStore, String id, ParallelOptions options, InputStream data, long offset, long length) {
+		super(objectStore, id, options);
+		if (this.options.getPartSize() > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The part size of an upload must fit in a byte array");
+		}
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.parts = (length + this.options.getPartSize() - 1) / this.options.getPartSize();
+		if (parts > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many parts, increase the part size");
+		}
+	}
+
+	/**
+	 * Uploads the data.
+	 *
+	 * @throws IncompleteUploadException if a part could not be written, with the offset
+	 *         the upload can be resumed from
+	 */
+	void upload() {
+		if (parts > 0) {
+			runWorkers(parts);
+		}
+		if (hasFailed()) {
+			RuntimeException failure = getFailure();
+			throw new IncompleteUploadException(failure.getMessage(), id, getResumeOffset(), failure);
+		}
+	}
+
+	/**
+	 * Returns the end of the acknowledged parts that follow each other from the offset
+	 * of the upload.
+	 */
+	long getResumeOffset() {
+		synchronized (acknowledged) {
+			return Math.min(offset + acknowledged.nextClearBit(0) * options.getPartSize(), offset + length);
+		}
+	}
+
+	@Override
+	protected void transferParts() {
+		byte[] buffer = new byte[(int) Math.min(options.getPartSize(), length)];
+
+		while (!hasFailed()) {
+			long part;
+			int chunk;
+			readLock.lock();
+			try {
+				if (hasFailed() || (nextPart >= parts)) {
+					return;
+				}
+				part = nextPart++;
+				chunk = (int) Math.min(options.getPartSize(), length - part * options.getPartSize());
+				readChunk(data, buffer, chunk);
+			} finally {
+				readLock.unlock();
+			}
+
+			sendWithRetry(offset + part * options.getPartSize(), buffer, chunk);
+			synchronized (acknowledged) {
+				acknowledged.set((int) part);
+			}
+		}
+	}
+
+	/**
+	 * Fills the first <code>chunk</code> bytes of the buffer from the stream.
+	 */
+	static void readChunk(InputStream data, byte[] buffer, int chunk) {
+		try {
+			int filled = 0;
+			while (filled < chunk) {
+				int read = data.read(buffer, filled, chunk - filled);
+				if (read == -1) {
+					throw new AtmosStorageException("The data ended before the given length");
+				}
+				filled += read;
+			}
+		} catch (IOException e) {
+			throw new AtmosStorageException("Could not read the data to upload", e);
+		}
+	}
+
+	private void sendWithRetry(long position, byte[] buffer, int chunk) {
+		for (int attempt = 0; ; attempt++) {
+			try {
+				send(position, buffer, chunk);
+				return;
+			} catch (IOException e) {
+				if (attempt >= options.getMaxRetries()) {
+					throw new AtmosStorageException(e.getMessage(), e);
+				}
+			} catch (AtmosStorageException e) {
+				if (!isRetryable(e) || (attempt >= options.getMaxRetries())) {
+					throw e;
+				}
+			}
+			backoff(attempt);
+		}
+	}
+
+	private void send(long position, byte[] buffer, int chunk) throws IOException {
+		AtmosResponse response = null;
+		try {
+			URL url = objectStore.buildUrl(objectStore.getResourcePath(id), null);
+			AtmosRequest request = objectStore.newRequest(url);
+			request.setRange(position, chunk);
+			response = objectStore.executeOnce(request.createPut(new BufferEntity(ByteBuffer.wrap(buffer, 0, chunk))));
+		} catch (MalformedURLException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} catch (URISyntaxException e) {
+			throw new AtmosStorageException("Invalid URL", e);
+		} finally {
+			objectStore.cleanup(response);
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * Thrown when a requested byte range starts at or past the end of the object, Atmos error code 1004.
+ */
+public class RangeNotSatisfiableException extends AtmosStorageException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RangeNotSatisfiableException(String message, int httpCode, int atmosCode) {
+		super(message, httpCode, atmosCode);
+	}
+}
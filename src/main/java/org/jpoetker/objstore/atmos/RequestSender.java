@@ -0,0 +1,14 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Sends a request and returns its response, one link of the chain a request goes through
+ * on its way to the <code>HttpClient</code>.
+ */
+interface RequestSender {
+	HttpResponse send(HttpUriRequest request) throws IOException;
+}
@@ -0,0 +1,163 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * Sends a request again after a transient failure.
+ *
+ * A request that could not connect was never sent, so it is always retried. Otherwise only
+ * a request that can be sent again with the same effect is retried: a GET, a HEAD, or a
+ * PUT whose body can be read again. A transient failure is an I/O error other than an
+ * unknown host, a TLS failure or an aborted request, an Atmos internal error (1001), a busy
+ * server (1040), or a 5xx status without an Atmos code, as sent by a proxy.
+ *
+ * Retries wait with decorrelated jitter: a random time between the base delay and three
+ * times the previous wait, capped. A token bucket shared by all requests holds the retries
+ * back when most requests fail: every request adds a fraction of a token, every retry
+ * takes a whole one, so retries stay a set percentage of the traffic once the bucket has
+ * run dry.
+ */
+final class Retrier {
+	// a bucket of this many tokens is full, and starts full
+	private static final int MAX_TOKENS = 10;
+
+	/**
+	 * Sends a request and returns its validated response.
+	 */
+	interface Call {
+		AtmosResponse execute() throws IOException;
+	}
+
+	private final int maxRetries;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final int budgetPercent;
+	private final Random random = new Random();
+
+	// in hundredths of a token, guarded by this
+	private long tokens = 100L * MAX_TOKENS;
+	private final AtomicLong retries = new AtomicLong();
+
+	/**
+	 * @param maxRetries how many times a request is retried at most
+	 * @param baseDelayMillis the shortest wait before a retry
+	 * @param maxDelayMillis the longest wait before a retry
+	 * @param budgetPercent how many retries may be sent per hundred requests
+	 */
+	Retrier(int maxRetries, long baseDelayMillis, long maxDelayMillis, int budgetPercent) {
+		super();
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("The maximum number of retries cannot be negative");
+		}
+		if ((baseDelayMillis < 0) || (maxDelayMillis < baseDelayMillis)) {
+			throw new IllegalArgumentException("The retry delays must be positive, and the maximum at least the base");
+		}
+		if (budgetPercent < 0) {
+			throw new IllegalArgumentException("The retry budget cannot be negative");
+		}
+		this.maxRetries = maxRetries;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.budgetPercent = budgetPercent;
+	}
+
+	/**
+	 * @param replayable whether the request has the same effect when sent again
+	 */
+	AtmosResponse execute(boolean replayable, Call call) throws IOException {
+		deposit();
+		long delay = baseDelayMillis;
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return call.execute();
+			} catch (IOException e) {
+				if (!shouldRetry(attempt, isConnectFailure(e) || (replayable && isTransient(e)))) {
+					throw e;
+				}
+			} catch (AtmosStorageException e) {
+				if (!shouldRetry(attempt, replayable && isTransient(e))) {
+					throw e;
+				}
+			}
+			delay = nextDelay(delay);
+			sleep(delay);
+		}
+	}
+
+	/**
+	 * @return the number of retries sent
+	 */
+	long getRetryCount() {
+		return retries.get();
+	}
+
+	static boolean isConnectFailure(IOException e) {
+		return (e instanceof ConnectException) || (e instanceof ConnectTimeoutException);
+	}
+
+	static boolean isTransient(IOException e) {
+		if ((e instanceof UnknownHostException) || (e instanceof SSLException)) {
+			return false;
+		}
+		// an aborted request or an interrupted thread, but not a timeout
+		return !(e instanceof InterruptedIOException) || (e instanceof SocketTimeoutException) || (e instanceof ConnectTimeoutException);
+	}
+
+	static boolean isTransient(AtmosStorageException e) {
+		if (e instanceof ServerBusyException) {
+			return true;
+		}
+		Integer atmosCode = e.getAtmosCode();
+		if (atmosCode != null) {
+			return atmosCode.intValue() == 1001;
+		}
+		Integer httpCode = e.getHttpCode();
+		return (httpCode != null) && (httpCode.intValue() >= 500);
+	}
+
+	private boolean shouldRetry(int attempt, boolean retryable) {
+		if (!retryable || (attempt >= maxRetries) || !withdraw()) {
+			return false;
+		}
+		retries.incrementAndGet();
+		return true;
+	}
+
+	private long nextDelay(long previous) {
+		long upper = Math.min(maxDelayMillis, Math.max(baseDelayMillis, previous) * 3);
+		synchronized (random) {
+			return baseDelayMillis + (long) (random.nextDouble() * (upper - baseDelayMillis));
+		}
+	}
+
+	private synchronized void deposit() {
+		tokens = Math.min(tokens + budgetPercent, 100L * MAX_TOKENS);
+	}
+
+	private synchronized boolean withdraw() {
+		if (tokens < 100) {
+			return false;
+		}
+		tokens -= 100;
+		return true;
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+}
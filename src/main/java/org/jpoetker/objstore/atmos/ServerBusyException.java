@@ -0,0 +1,13 @@
+package org.jpoetker.objstore.atmos;
+
+/**
+ * Thrown when the server is too busy to handle the request and it may be retried later, Atmos error code 1040.
+ */
+public class ServerBusyException extends AtmosStorageException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ServerBusyException(String message, int httpCode, int atmosCode) {
+		super(message, httpCode, atmosCode);
+	}
+}
@@ -0,0 +1,282 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The body of one response read by several callers, each from the first byte at its own
+ * pace.
+ *
+ * The reader furthest ahead pulls bytes from the response and keeps them for the others,
+ * the first bytes in memory and the rest in a temporary file. Callers can join while the
+ * response is being read, until the end of the body. A body read by a single caller
+ * stops keeping bytes once the memory is full, and is then read straight from the
+ * response without taking new readers, so a large object read by one caller is not
+ * copied to disk.
+ *
+ * The body is registered under its key by the first caller and removes itself once no
+ * more callers can join. The response is closed when the last reader is closed.
+ */
+final class SharedBody {
+	private static final int INITIAL_MEMORY = 8 * 1024;
+
+	private final ConcurrentMap<String, SharedBody> bodies;
+	private final String key;
+	private final int memoryLimit;
+
+	private InputStream source;
+	private RuntimeException openFailure;
+	private IOException readFailure;
+	private byte[] memory;
+	private FileChannel spill;
+	// bytes read from the response
+	private long filled;
+	private int readers = 1;
+	private boolean opened;
+	private boolean joinable = true;
+	private boolean fetching;
+	private boolean passThrough;
+	private boolean eof;
+
+	/**
+	 * Creates the body for the first caller, who counts as its first reader.
+	 */
+	SharedBody(ConcurrentMap<String, SharedBody> bodies, String key, int memoryLimit) {
+		super();
+		this.bodies = bodies;
+		this.key = key;
+		this.memoryLimit = memoryLimit;
+		this.memory = new byte[Math.min(INITIAL_MEMORY, memoryLimit)];
+	}
+
+	/**
+	 * Hands the response to the body, called by the first caller once it has it.
+	 *
+	 * @return the stream of the first caller
+	 */
+	synchronized InputStream open(InputStream source) {
+		this.source = source;
+		opened = true;
+		notifyAll();
+		return new Reader();
+	}
+
+	/**
+	 * Fails the callers waiting to join, called by the first caller if the request failed.
+	 */
+	synchronized void fail(RuntimeException failure) {
+		openFailure = failure;
+		opened = true;
+		detach();
+		notifyAll();
+	}
+
+	/**
+	 * Waits for the response and adds a reader.
+	 *
+	 * @return a stream from the first byte, or <code>null</code> if readers can no longer
+	 *         join and the caller has to send its own request
+	 *
+	 * @throws RuntimeException the failure of the request
+	 */
+	synchronized InputStream join() {
+		if (!joinable) {
+			return null;
+		}
+		// counted while waiting, so the first reader does not stop keeping bytes for it
+		readers++;
+		while (!opened) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				readers--;
+				Thread.currentThread().interrupt();
+				throw new AtmosStorageException("Interrupted while waiting for a shared response", e);
+			}
+		}
+		if (openFailure != null) {
+			readers--;
+			throw openFailure;
+		}
+		return new Reader();
+	}
+
+	private int read(long position, byte[] b, int off, int len) throws IOException {
+		synchronized (this) {
+			while (true) {
+				if (position < filled) {
+					return copy(position, b, off, (int) Math.min(len, filled - position));
+				}
+				if (readFailure != null) {
+					throw readFailure;
+				}
+				if (eof) {
+					return -1;
+				}
+				if (!fetching) {
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a shared response");
+				}
+			}
+			fetching = true;
+			if ((readers == 1) && (filled >= memoryLimit)) {
+				passThrough = true;
+				detach();
+			}
+		}
+
+		int n;
+		try {
+			n = source.read(b, off, len);
+		} catch (IOException e) {
+			synchronized (this) {
+				fetching = false;
+				readFailure = e;
+				detach();
+				notifyAll();
+			}
+			throw e;
+		}
+
+		synchronized (this) {
+			fetching = false;
+			try {
+				if (n < 0) {
+					eof = true;
+					detach();
+				} else if (n > 0) {
+					if (!passThrough) {
+						store(b, off, n);
+					}
+					filled += n;
+				}
+			} catch (IOException e) {
+				readFailure = e;
+				detach();
+				throw e;
+			} finally {
+				notifyAll();
+			}
+			return n;
+		}
+	}
+
+	// callers hold the lock
+	private int copy(long position, byte[] b, int off, int len) throws IOException {
+		if (position < memoryLimit) {
+			int n = (int) Math.min(len, memoryLimit - position);
+			System.arraycopy(memory, (int) position, b, off, n);
+			return n;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (buffer.hasRemaining()) {
+			if (spill.read(buffer, position - memoryLimit + buffer.position() - off) < 0) {
+				break;
+			}
+		}
+		return buffer.position() - off;
+	}
+
+	// callers hold the lock
+	private void store(byte[] b, int off, int len) throws IOException {
+		int inMemory = (int) Math.max(0, Math.min(len, memoryLimit - filled));
+		if (inMemory > 0) {
+			int needed = (int) filled + inMemory;
+			if (needed > memory.length) {
+				byte[] grown = new byte[Math.min(memoryLimit, Math.max(needed, memory.length * 2))];
+				System.arraycopy(memory, 0, grown, 0, (int) filled);
+				memory = grown;
+			}
+			System.arraycopy(b, off, memory, (int) filled, inMemory);
+		}
+		if (inMemory < len) {
+			if (spill == null) {
+				spill = FileChannel.open(Files.createTempFile("atmos", ".body"),
+						StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(b, off + inMemory, len - inMemory);
+			long position = filled + inMemory - memoryLimit;
+			while (buffer.hasRemaining()) {
+				position += spill.write(buffer, position);
+			}
+		}
+	}
+
+	// callers hold the lock
+	private void detach() {
+		if (joinable) {
+			joinable = false;
+			bodies.remove(key, this);
+		}
+	}
+
+	private void release() throws IOException {
+		FileChannel closeSpill;
+		synchronized (this) {
+			readers--;
+			if (readers > 0) {
+				return;
+			}
+			detach();
+			memory = null;
+			closeSpill = spill;
+			spill = null;
+		}
+		try {
+			source.close();
+		} finally {
+			if (closeSpill != null) {
+				closeSpill.close();
+			}
+		}
+	}
+
+	private class Reader extends InputStream {
+		private long position;
+		private boolean closed;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n;
+			do {
+				n = read(b, 0, 1);
+			} while (n == 0);
+			return (n < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int n = SharedBody.this.read(position, b, off, len);
+			if (n > 0) {
+				position += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				release();
+			}
+		}
+	}
+}
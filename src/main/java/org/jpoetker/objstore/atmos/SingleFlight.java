@@ -0,0 +1,47 @@
+package org.jpoetker.objstore.atmos;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs one call at a time per key: callers that ask for a key while a call for it is in
+ * flight wait for that call and share its result or its exception.
+ *
+ * The call runs on the thread of the first caller, and nothing is kept once it returns,
+ * so a later caller runs it again.
+ */
+final class SingleFlight<V> {
+	private final ConcurrentMap<String, FutureTask<V>> calls = new ConcurrentHashMap<String, FutureTask<V>>();
+
+	V execute(String key, Callable<V> call) {
+		FutureTask<V> task = new FutureTask<V>(call);
+		FutureTask<V> current = calls.putIfAbsent(key, task);
+		if (current == null) {
+			try {
+				task.run();
+			} finally {
+				calls.remove(key, task);
+			}
+			current = task;
+		}
+
+		try {
+			return current.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AtmosStorageException("Interrupted while waiting for a shared request", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new AtmosStorageException(cause.getMessage(), cause);
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package org.jpoetker.objstore.atmos;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * A connection pool for callers running on virtual threads.
+ *
+ * The pools bundled with HttpClient wait for a free connection, and validate idle
+ * connections, while holding a monitor, which pins a virtual thread to its carrier for as
+ * long as the pool is exhausted. Here the number of leased connections is bounded by fair
+ * <code>Semaphore</code>s, one for the whole pool and one for each route, and idle
+ * connections are kept in lock free deques, so a thread waiting for a connection parks and
+ * no monitor is held around socket I/O. A route that stops responding holds at most its own
+ * share of the pool, and requests to the other routes keep flowing.
+ *
+ * A new connection is only opened when no idle one is left, so the number of open
+ * connections to a single route never exceeds the per route maximum. Idle connections are reused
+ * most recently used first, and are checked for staleness when they have been idle for
+ * longer than {@link #setValidateAfterInactivity(int)}.
+ */
+class VirtualThreadConnectionManager implements HttpClientConnectionManager {
+	private static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+	private final int maxConnections;
+	private final int maxPerRoute;
+	private final Semaphore permits;
+	private final ConcurrentMap<HttpRoute, Semaphore> routePermits = new ConcurrentHashMap<HttpRoute, Semaphore>();
+	private final HttpClientConnectionOperator connectionOperator;
+	private final ConcurrentMap<HttpRoute, Deque<IdleConnection>> idleConnections = new ConcurrentHashMap<HttpRoute, Deque<IdleConnection>>();
+	private final ConcurrentMap<HttpClientConnection, Lease> leases = new ConcurrentHashMap<HttpClientConnection, Lease>();
+	private volatile int validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+	private volatile boolean shutdown;
+
+	VirtualThreadConnectionManager(int maxConnections) {
+		this(maxConnections, maxConnections);
+	}
+
+	/**
+	 * @param maxConnections the maximum number of connections leased at once
+	 * @param maxPerRoute the maximum number of connections leased at once to a single route
+	 */
+	VirtualThreadConnectionManager(int maxConnections, int maxPerRoute) {
+		super();
+		if ((maxConnections <= 0) || (maxPerRoute <= 0)) {
+			throw new IllegalArgumentException("The maximum number of connections must be greater than 0");
+		}
+		this.maxConnections = maxConnections;
+		this.maxPerRoute = maxPerRoute;
+		this.permits = new Semaphore(maxConnections, true);
+		this.connectionOperator = new DefaultHttpClientConnectionOperator(
+				RegistryBuilder.<ConnectionSocketFactory>create()
+						.register("http", PlainConnectionSocketFactory.getSocketFactory())
+						.register("https", SSLConnectionSocketFactory.getSocketFactory())
+						.build(), null, null);
+	}
+
+	@Override
+	public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+		return new ConnectionRequest() {
+			private volatile boolean cancelled;
+
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				Semaphore routePermit = getRoutePermits(route);
+				// the route is acquired first so a stalled route never holds pool permits
+				long deadline = (timeout > 0) ? System.nanoTime() + timeUnit.toNanos(timeout) : 0;
+				acquire(routePermit, deadline);
+				try {
+					acquire(permits, deadline);
+				} catch (InterruptedException e) {
+					routePermit.release();
+					throw e;
+				} catch (ConnectionPoolTimeoutException e) {
+					routePermit.release();
+					throw e;
+				}
+				if (cancelled || shutdown) {
+					release(routePermit);
+					throw new ExecutionException(new IllegalStateException(shutdown ? "Connection pool shut down" : "Connection request cancelled"));
+				}
+				try {
+					return lease(route);
+				} catch (RuntimeException e) {
+					release(routePermit);
+					throw e;
+				}
+			}
+
+			@Override
+			public boolean cancel() {
+				cancelled = true;
+				return true;
+			}
+		};
+	}
+
+	private ManagedHttpClientConnection lease(HttpRoute route) {
+		ManagedHttpClientConnection conn = null;
+		boolean routeComplete = false;
+
+		Deque<IdleConnection> idle = idleConnections.get(route);
+		if (idle != null) {
+			IdleConnection entry;
+			while ((conn == null) && ((entry = idle.pollFirst()) != null)) {
+				if (entry.isReusable(validateAfterInactivity)) {
+					conn = entry.connection;
+					routeComplete = true;
+				} else {
+					closeQuietly(entry.connection);
+				}
+			}
+		}
+		if (conn == null) {
+			conn = ManagedHttpClientConnectionFactory.INSTANCE.create(route, ConnectionConfig.DEFAULT);
+		}
+		leases.put(conn, new Lease(route, routeComplete));
+		return conn;
+	}
+
+	@Override
+	public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+		Lease lease = leases.remove(conn);
+		if (lease == null) {
+			// already released, or not leased from this pool
+			return;
+		}
+		try {
+			if (!shutdown && lease.routeComplete && conn.isOpen()) {
+				long now = System.currentTimeMillis();
+				long expiry = (validDuration > 0) ? now + ((timeUnit != null) ? timeUnit : TimeUnit.MILLISECONDS).toMillis(validDuration) : Long.MAX_VALUE;
+				conn.setSocketTimeout(0);
+
+				getIdleConnections(lease.route).offerFirst(new IdleConnection((ManagedHttpClientConnection) conn, now, expiry));
+			} else {
+				closeQuietly(conn);
+			}
+		} finally {
+			release(getRoutePermits(lease.route));
+		}
+	}
+
+	/**
+	 * Acquires a permit, waiting until the deadline in nanoseconds or forever when it is 0.
+	 */
+	private static void acquire(Semaphore semaphore, long deadline) throws InterruptedException, ConnectionPoolTimeoutException {
+		if (deadline == 0) {
+			semaphore.acquire();
+		} else if (!semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+			throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+		}
+	}
+
+	private void release(Semaphore routePermit) {
+		permits.release();
+		routePermit.release();
+	}
+
+	@Override
+	public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+		HttpHost host = (route.getProxyHost() != null) ? route.getProxyHost() : route.getTargetHost();
+		connectionOperator.connect((ManagedHttpClientConnection) conn, host, route.getLocalSocketAddress(), connectTimeout, SocketConfig.DEFAULT, context);
+	}
+
+	@Override
+	public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+		connectionOperator.upgrade((ManagedHttpClientConnection) conn, route.getTargetHost(), context);
+	}
+
+	@Override
+	public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) {
+		Lease lease = leases.get(conn);
+		if (lease != null) {
+			lease.routeComplete = true;
+		}
+	}
+
+	@Override
+	public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+		long cutoff = System.currentTimeMillis() - Math.max(0, timeUnit.toMillis(idletime));
+		for (Deque<IdleConnection> idle : idleConnections.values()) {
+			for (IdleConnection entry : idle) {
+				if ((entry.released <= cutoff) && idle.removeFirstOccurrence(entry)) {
+					closeQuietly(entry.connection);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void closeExpiredConnections() {
+		long now = System.currentTimeMillis();
+		for (Deque<IdleConnection> idle : idleConnections.values()) {
+			for (IdleConnection entry : idle) {
+				if ((entry.expiry <= now) && idle.removeFirstOccurrence(entry)) {
+					closeQuietly(entry.connection);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		for (Deque<IdleConnection> idle : idleConnections.values()) {
+			IdleConnection entry;
+			while ((entry = idle.pollFirst()) != null) {
+				closeQuietly(entry.connection);
+			}
+		}
+		for (Map.Entry<HttpClientConnection, Lease> leased : leases.entrySet()) {
+			try {
+				leased.getKey().shutdown();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Sets the time in milliseconds an idle connection may be unused before it is checked for
+	 * staleness when leased, 0 or less disables the check.
+	 */
+	public void setValidateAfterInactivity(int validateAfterInactivity) {
+		this.validateAfterInactivity = validateAfterInactivity;
+	}
+
+	public int getValidateAfterInactivity() {
+		return validateAfterInactivity;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * @return the number of connections currently leased
+	 */
+	public int getLeased() {
+		return leases.size();
+	}
+
+	/**
+	 * @return the number of idle connections kept for reuse
+	 */
+	public int getAvailable() {
+		int available = 0;
+		for (Deque<IdleConnection> idle : idleConnections.values()) {
+			available += idle.size();
+		}
+		return available;
+	}
+
+	private Deque<IdleConnection> getIdleConnections(HttpRoute route) {
+		Deque<IdleConnection> idle = idleConnections.get(route);
+		if (idle == null) {
+			Deque<IdleConnection> created = new ConcurrentLinkedDeque<IdleConnection>();
+			idle = idleConnections.putIfAbsent(route, created);
+			if (idle == null) {
+				idle = created;
+			}
+		}
+		return idle;
+	}
+
+	private Semaphore getRoutePermits(HttpRoute route) {
+		Semaphore semaphore = routePermits.get(route);
+		if (semaphore == null) {
+			Semaphore created = new Semaphore(maxPerRoute, true);
+			semaphore = routePermits.putIfAbsent(route, created);
+			if (semaphore == null) {
+				semaphore = created;
+			}
+		}
+		return semaphore;
+	}
+
+	private static void closeQuietly(HttpClientConnection conn) {
+		try {
+			conn.close();
+		} catch (IOException e) {
+		}
+	}
+
+	private static class Lease {
+		final HttpRoute route;
+		volatile boolean routeComplete;
+
+		Lease(HttpRoute route, boolean routeComplete) {
+			this.route = route;
+			this.routeComplete = routeComplete;
+		}
+	}
+
+	private static class IdleConnection {
+		final ManagedHttpClientConnection connection;
+		final long released;
+		final long expiry;
+
+		IdleConnection(ManagedHttpClientConnection connection, long released, long expiry) {
+			this.connection = connection;
+			this.released = released;
+			this.expiry = expiry;
+		}
+
+		boolean isReusable(int validateAfterInactivity) {
+			long now = System.currentTimeMillis();
+			if ((expiry <= now) || !connection.isOpen()) {
+				return false;
+			}
+			return (validateAfterInactivity <= 0) || (now - released < validateAfterInactivity) || !connection.isStale();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.jpoetker.objstore.atmos.parser;
 
 import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
 import org.jpoetker.objstore.QueryResults;
 import org.jpoetker.objstore.atmos.AtmosResponse;
 
@@ -9,4 +10,11 @@ public interface QueryResponseParser {
 	public QueryResults<String> parseObjectIdentifiers(AtmosResponse resposne);
 	
 	public QueryResults<ObjectInfo> parseObjectInfo(AtmosResponse response);
+	
+	/**
+	 * Hands each object to the handler as it is parsed.
+	 * 
+	 * @return the continuation token of the response, or <code>null</code> for the last page
+	 */
+	public String parseObjectInfo(AtmosResponse response, ObjectInfoHandler handler);
 }
@@ -11,6 +11,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.apache.http.HttpEntity;
 import org.jpoetker.objstore.Metadata;
 import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
 import org.jpoetker.objstore.QueryResults;
 import org.jpoetker.objstore.atmos.AtmosResponse;
 import org.jpoetker.objstore.atmos.AtmosStorageException;
@@ -116,6 +117,24 @@ public class QueryResponseParserImpl implements QueryResponseParser {
 		return null;
 	}
 
+	/**
+	 * Parses the whole document before handing the objects to the handler, use
+	 * {@link QueryResponseParserStreamImpl} to parse objects as they are read.
+	 */
+	@Override
+	public String parseObjectInfo(AtmosResponse response, ObjectInfoHandler handler) {
+		QueryResults<ObjectInfo> results = parseObjectInfo(response);
+		if (results == null) {
+			return response.getContinuationToken();
+		}
+		if (results.getResults() != null) {
+			for (ObjectInfo objectInfo : results.getResults()) {
+				handler.handle(objectInfo);
+			}
+		}
+		return results.getContinuationToken();
+	}
+
 	private Collection<Metadata> parseMetaData(Node container) {
 		Collection<Metadata> metadata = new LinkedList<Metadata>();
 		NodeList metadataNodes = container.getChildNodes();
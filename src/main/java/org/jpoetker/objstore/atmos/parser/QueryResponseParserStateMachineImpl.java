@@ -0,0 +1,223 @@
+package org.jpoetker.objstore.atmos.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpEntity;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
+import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.atmos.AtmosResponse;
+import org.jpoetker.objstore.atmos.AtmosStorageException;
+
+/**
+ * Parses list objects responses with a state machine driven directly by an
+ * <code>XMLStreamReader</code>.
+ *
+ * Unlike {@link QueryResponseParserStreamImpl} no <code>StreamFilter</code> sits between
+ * the reader and the parser, and an element name is only compared with the few names
+ * expected in the current state. The names are compared by identity first, which is
+ * enough with readers that intern names like the one in the JDK. Metadata lists are
+ * presized from the previous object, as every object of a listing usually carries the
+ * same tags.
+ */
+public class QueryResponseParserStateMachineImpl implements QueryResponseParser {
+	private static final String LISTABLE_TAG_NAME = "Listable";
+	private static final String VALUE_TAG_NAME = "Value";
+	private static final String NAME_TAG_NAME = "Name";
+	private static final String OBJECT_ID_TAG_NAME = "ObjectID";
+	private static final String USER_METADATA_LIST_TAG_NAME = "UserMetadataList";
+	private static final String SYSTEM_METADATA_LIST_TAG_NAME = "SystemMetadataList";
+	private static final String METADATA_TAG_NAME = "Metadata";
+	private static final String OBJECT_TAG_NAME = "Object";
+	private static final String EMC_NAMESPACE_URI = "http://www.emc.com/cos/";
+
+	private static final int DEFAULT_METADATA_CAPACITY = 8;
+
+	private static final int IN_RESPONSE = 0;
+	private static final int IN_OBJECT = 1;
+	private static final int IN_METADATA_LIST = 2;
+	private static final int IN_METADATA = 3;
+
+	private XMLInputFactory xmlInputFactory;
+
+	public QueryResponseParserStateMachineImpl() {
+		super();
+		this.xmlInputFactory = XMLInputFactory.newFactory();
+	}
+
+	@Override
+	public QueryResults<String> parseObjectIdentifiers(AtmosResponse response) {
+		List<String> identifiers = new ArrayList<String>();
+		HttpEntity body = response.getEntity();
+
+		if (body != null) {
+			XMLStreamReader xmlReader = null;
+			try {
+				xmlReader = xmlInputFactory.createXMLStreamReader(body.getContent());
+
+				while (xmlReader.hasNext()) {
+					if ((xmlReader.next() == XMLStreamConstants.START_ELEMENT)
+							&& named(xmlReader.getLocalName(), OBJECT_ID_TAG_NAME)
+							&& EMC_NAMESPACE_URI.equals(xmlReader.getNamespaceURI())) {
+						identifiers.add(xmlReader.getElementText().trim());
+					}
+				}
+			} catch (IllegalStateException e) {
+				throw new AtmosStorageException(e.getMessage(), e);
+			} catch (XMLStreamException e) {
+				throw new AtmosStorageException(e.getMessage(), e);
+			} catch (IOException e) {
+				throw new AtmosStorageException(e.getMessage(), e);
+			} finally {
+				close(xmlReader);
+			}
+		}
+		return new QueryResults<String>((identifiers.size() > 0) ? identifiers : null, response.getContinuationToken());
+	}
+
+	@Override
+	public QueryResults<ObjectInfo> parseObjectInfo(AtmosResponse response) {
+		final List<ObjectInfo> objectInfos = new ArrayList<ObjectInfo>();
+
+		String continuationToken = parseObjectInfo(response, new ObjectInfoHandler() {
+			@Override
+			public void handle(ObjectInfo info) {
+				objectInfos.add(info);
+			}
+		});
+
+		return new QueryResults<ObjectInfo>((objectInfos.size() > 0) ? objectInfos : null, continuationToken);
+	}
+
+	@Override
+	public String parseObjectInfo(AtmosResponse response, ObjectInfoHandler handler) {
+		HttpEntity body = response.getEntity();
+
+		if (body != null) {
+			XMLStreamReader xmlReader = null;
+			try {
+				xmlReader = xmlInputFactory.createXMLStreamReader(body.getContent());
+				parseObjects(xmlReader, handler);
+			} catch (IllegalStateException e) {
+				throw new AtmosStorageException(e.getMessage(), e);
+			} catch (XMLStreamException e) {
+				throw new AtmosStorageException(e.getMessage(), e);
+			} catch (IOException e) {
+				throw new AtmosStorageException(e.getMessage(), e);
+			} finally {
+				close(xmlReader);
+			}
+		}
+		return response.getContinuationToken();
+	}
+
+	private void parseObjects(XMLStreamReader xmlReader, ObjectInfoHandler handler) throws XMLStreamException {
+		int state = IN_RESPONSE;
+		ObjectInfo currentObj = null;
+		List<Metadata> metadata = null;
+		String name = null, value = null;
+		boolean listable = false;
+		int systemCapacity = DEFAULT_METADATA_CAPACITY;
+		int userCapacity = DEFAULT_METADATA_CAPACITY;
+
+		while (xmlReader.hasNext()) {
+			int event = xmlReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String element = xmlReader.getLocalName();
+				switch (state) {
+				case IN_RESPONSE:
+					if (named(element, OBJECT_TAG_NAME) && EMC_NAMESPACE_URI.equals(xmlReader.getNamespaceURI())) {
+						currentObj = new ObjectInfo();
+						state = IN_OBJECT;
+					}
+					break;
+				case IN_OBJECT:
+					if (named(element, OBJECT_ID_TAG_NAME)) {
+						currentObj.setId(xmlReader.getElementText().trim());
+					} else if (named(element, SYSTEM_METADATA_LIST_TAG_NAME)) {
+						metadata = new ArrayList<Metadata>(systemCapacity);
+						state = IN_METADATA_LIST;
+					} else if (named(element, USER_METADATA_LIST_TAG_NAME)) {
+						metadata = new ArrayList<Metadata>(userCapacity);
+						state = IN_METADATA_LIST;
+					}
+					break;
+				case IN_METADATA_LIST:
+					if (named(element, METADATA_TAG_NAME)) {
+						name = null;
+						value = null;
+						listable = false;
+						state = IN_METADATA;
+					}
+					break;
+				case IN_METADATA:
+					if (named(element, NAME_TAG_NAME)) {
+						name = xmlReader.getElementText();
+					} else if (named(element, VALUE_TAG_NAME)) {
+						value = xmlReader.getElementText();
+					} else if (named(element, LISTABLE_TAG_NAME)) {
+						listable = Boolean.parseBoolean(xmlReader.getElementText().trim());
+					}
+					break;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				String element = xmlReader.getLocalName();
+				switch (state) {
+				case IN_OBJECT:
+					if (named(element, OBJECT_TAG_NAME)) {
+						if (currentObj.getId() != null) {
+							handler.handle(currentObj);
+						}
+						currentObj = null;
+						state = IN_RESPONSE;
+					}
+					break;
+				case IN_METADATA_LIST:
+					if (named(element, SYSTEM_METADATA_LIST_TAG_NAME)) {
+						currentObj.setSystemMetadata(metadata);
+						systemCapacity = capacityFor(metadata);
+						state = IN_OBJECT;
+					} else if (named(element, USER_METADATA_LIST_TAG_NAME)) {
+						currentObj.setUserMetadata(metadata);
+						userCapacity = capacityFor(metadata);
+						state = IN_OBJECT;
+					}
+					break;
+				case IN_METADATA:
+					if (named(element, METADATA_TAG_NAME)) {
+						metadata.add(new Metadata(name, value, listable));
+						state = IN_METADATA_LIST;
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	private static boolean named(String element, String name) {
+		return (element == name) || element.equals(name);
+	}
+
+	private static int capacityFor(Collection<Metadata> previous) {
+		return (previous.size() > 0) ? previous.size() : DEFAULT_METADATA_CAPACITY;
+	}
+
+	private static void close(XMLStreamReader xmlReader) {
+		if (xmlReader != null) {
+			try {
+				xmlReader.close();
+			} catch (XMLStreamException e) {
+				// the response entity is consumed and released by the caller
+			}
+		}
+	}
+}
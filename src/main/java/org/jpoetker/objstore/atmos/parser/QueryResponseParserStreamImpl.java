@@ -13,6 +13,7 @@ import javax.xml.stream.XMLStreamReader;
 import org.apache.http.HttpEntity;
 import org.jpoetker.objstore.Metadata;
 import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
 import org.jpoetker.objstore.QueryResults;
 import org.jpoetker.objstore.atmos.AtmosResponse;
 import org.jpoetker.objstore.atmos.AtmosStorageException;
@@ -67,7 +68,24 @@ public class QueryResponseParserStreamImpl implements QueryResponseParser {
 
 	@Override
 	public QueryResults<ObjectInfo> parseObjectInfo(AtmosResponse response) {
-		Collection<ObjectInfo> objectInfos = new LinkedList<ObjectInfo>();
+		final Collection<ObjectInfo> objectInfos = new LinkedList<ObjectInfo>();
+		
+		String continuationToken = parseObjectInfo(response, new ObjectInfoHandler() {
+			@Override
+			public void handle(ObjectInfo info) {
+				objectInfos.add(info);
+			}
+		});
+		
+		return new QueryResults<ObjectInfo>((objectInfos.size() > 0) ? objectInfos : null, continuationToken);
+	}
+
+	/**
+	 * Hands each object to the handler at the end of its <code>Object</code> element, so
+	 * only the object being parsed is held in memory whatever the size of the page.
+	 */
+	@Override
+	public String parseObjectInfo(AtmosResponse response, ObjectInfoHandler handler) {
 		HttpEntity body = response.getEntity();
 
 		if (body != null) {
@@ -88,7 +106,7 @@ public class QueryResponseParserStreamImpl implements QueryResponseParser {
 					{
 						QName element = xmlReader.getName();
 						if (OBJECT_TAG_NAME.equals(element.getLocalPart()) && (currentObj.getId() != null)) {
-							objectInfos.add(currentObj);
+							handler.handle(currentObj);
 							currentObj = new ObjectInfo();
 						} else if (METADATA_TAG_NAME.equals(element.getLocalPart())) {
 							metadata.add(new Metadata(name, value, listable));
@@ -126,8 +144,7 @@ public class QueryResponseParserStreamImpl implements QueryResponseParser {
 			} 
 		}
 		
-		objectInfos = (objectInfos.size() > 0) ? objectInfos : null;
-		return new QueryResults<ObjectInfo>(objectInfos, response.getContinuationToken());
+		return response.getContinuationToken();
 	}
 
 	private static class StringFilter implements StreamFilter {
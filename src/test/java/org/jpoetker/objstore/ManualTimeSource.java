@@ -0,0 +1,30 @@
+package org.jpoetker.objstore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock that only moves when a test moves it, both of its times are read from
+ * <code>nanos</code>.
+ */
+public class ManualTimeSource implements TimeSource {
+	public volatile long nanos;
+
+	public ManualTimeSource() {
+		super();
+	}
+
+	public ManualTimeSource(long millis) {
+		super();
+		this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	@Override
+	public long nanoTime() {
+		return nanos;
+	}
+}
@@ -0,0 +1,239 @@
+package org.jpoetker.objstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps objects in memory and counts the reads of them, implementing only the methods of
+ * <code>ObjectStore</code> that have no default, as a store written against the first
+ * release would.
+ *
+ * ACLs are ignored. Reading the metadata of an object that does not exist returns no
+ * metadata, and objects are listed by the names of their listable metadata.
+ */
+class MemoryObjectStore implements ObjectStore {
+	private final Map<String, byte[]> content = new TreeMap<String, byte[]>();
+	private final Map<String, List<Metadata>> metadata = new TreeMap<String, List<Metadata>>();
+	private int nextId;
+	// calls of readObject(String) and of getUserMetadata(String)
+	int contentReads;
+	int metadataReads;
+
+	void put(String id, String data) {
+		content.put(id, data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	void put(String id, Metadata... values) {
+		metadata.put(id, new ArrayList<Metadata>(Arrays.asList(values)));
+	}
+
+	String getContent(String id) {
+		byte[] data = content.get(id);
+		return (data != null) ? new String(data, StandardCharsets.UTF_8) : null;
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType) {
+		return createObject(data, length, mimeType, null, null);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Collection<Metadata> metadata) {
+		return createObject(data, length, mimeType, null, metadata);
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Metadata... metadata) {
+		return createObject(data, length, mimeType, null, Arrays.asList(metadata));
+	}
+
+	@Override
+	public String createObject(InputStream data, long length, String mimeType, Set<Grant> acl) {
+		return createObject(data, length, mimeType, acl, null);
+	}
+
+	@Override
+	public synchronized String createObject(InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		String id = "object" + (nextId++);
+		updateObject(id, data, length, mimeType, acl, metadata);
+		return id;
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType) {
+		updateObject(id, data, length, mimeType, null, null);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Collection<Metadata> metadata) {
+		updateObject(id, data, length, mimeType, null, metadata);
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Metadata... metadata) {
+		updateObject(id, data, length, mimeType, null, Arrays.asList(metadata));
+	}
+
+	@Override
+	public void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl) {
+		updateObject(id, data, length, mimeType, acl, null);
+	}
+
+	@Override
+	public synchronized void updateObject(String id, InputStream data, long length, String mimeType, Set<Grant> acl, Collection<Metadata> metadata) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		try {
+			while (out.size() < length) {
+				int n = data.read(buffer, 0, (int) Math.min(buffer.length, length - out.size()));
+				if (n < 0) {
+					throw new ObjectStorageException("The data ended before the given length");
+				}
+				out.write(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			throw new ObjectStorageException(e.getMessage(), e);
+		}
+		content.put(id, out.toByteArray());
+		if (metadata != null) {
+			setMetadata(id, metadata);
+		}
+	}
+
+	@Override
+	public synchronized void setMetadata(String id, Collection<Metadata> values) {
+		List<Metadata> current = metadata.get(id);
+		if (current == null) {
+			current = new ArrayList<Metadata>();
+			metadata.put(id, current);
+		}
+		for (Metadata value : values) {
+			for (int i = 0; i < current.size(); i++) {
+				if (current.get(i).getName().equals(value.getName())) {
+					current.remove(i);
+					break;
+				}
+			}
+			current.add(new Metadata(value));
+		}
+	}
+
+	@Override
+	public void setMetadata(String id, Metadata... values) {
+		setMetadata(id, Arrays.asList(values));
+	}
+
+	@Override
+	public synchronized Collection<Metadata> getUserMetadata(String id) {
+		metadataReads++;
+		List<Metadata> values = new ArrayList<Metadata>();
+		List<Metadata> current = metadata.get(id);
+		if (current != null) {
+			for (Metadata value : current) {
+				values.add(new Metadata(value));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id, Collection<MetadataTag> tags) {
+		List<Metadata> selected = new ArrayList<Metadata>();
+		for (Metadata value : getUserMetadata(id)) {
+			for (MetadataTag tag : tags) {
+				if (tag.getName().equals(value.getName())) {
+					selected.add(value);
+				}
+			}
+		}
+		return selected;
+	}
+
+	@Override
+	public Collection<Metadata> getUserMetadata(String id, MetadataTag... tags) {
+		return getUserMetadata(id, Arrays.asList(tags));
+	}
+
+	@Override
+	public synchronized Collection<Metadata> getSystemMetadata(String id) {
+		byte[] data = content.get(id);
+		if (data == null) {
+			throw new ObjectStorageException("Object " + id + " does not exist");
+		}
+		return new ArrayList<Metadata>(Collections.singletonList(new Metadata("size", Integer.toString(data.length))));
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id, Collection<MetadataTag> tags) {
+		return getSystemMetadata(id);
+	}
+
+	@Override
+	public Collection<Metadata> getSystemMetadata(String id, MetadataTag... tags) {
+		return getSystemMetadata(id);
+	}
+
+	@Override
+	public synchronized void deleteObject(String id) {
+		content.remove(id);
+		metadata.remove(id);
+	}
+
+	@Override
+	public synchronized InputStream readObject(String id) {
+		contentReads++;
+		byte[] data = content.get(id);
+		if (data == null) {
+			throw new ObjectStorageException("Object " + id + " does not exist");
+		}
+		return new ByteArrayInputStream(data);
+	}
+
+	@Override
+	public QueryResults<String> listObjects(String tag, int limit, String continuationToken) {
+		QueryResults<ObjectInfo> infos = listObjectsWithMetadata(tag, limit, continuationToken);
+		List<String> ids = new ArrayList<String>();
+		for (ObjectInfo info : infos.getResults()) {
+			ids.add(info.getId());
+		}
+		return new QueryResults<String>(ids, infos.getContinuationToken());
+	}
+
+	@Override
+	public QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, int limit, String continuationToken) {
+		return listObjectsWithMetadata(tag, null, null, limit, continuationToken);
+	}
+
+	@Override
+	public QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, int limit, String continuationToken) {
+		return listObjectsWithMetadata(tag, userMetadataTags, null, limit, continuationToken);
+	}
+
+	@Override
+	public synchronized QueryResults<ObjectInfo> listObjectsWithMetadata(String tag, Collection<String> userMetadataTags, Collection<String> systemMetadataTags,
+			int limit, String continuationToken) {
+		List<ObjectInfo> tagged = new ArrayList<ObjectInfo>();
+		for (Map.Entry<String, List<Metadata>> entry : metadata.entrySet()) {
+			for (Metadata value : entry.getValue()) {
+				if (value.isListable() && value.getName().equals(tag)) {
+					tagged.add(new ObjectInfo(entry.getKey(), new ArrayList<Metadata>(entry.getValue()), null));
+					break;
+				}
+			}
+		}
+		int start = (continuationToken != null) ? Integer.parseInt(continuationToken) : 0;
+		int end = (limit > 0) ? Math.min(start + limit, tagged.size()) : tagged.size();
+		return new QueryResults<ObjectInfo>(new ArrayList<ObjectInfo>(tagged.subList(start, end)), (end < tagged.size()) ? Integer.toString(end) : null);
+	}
+}
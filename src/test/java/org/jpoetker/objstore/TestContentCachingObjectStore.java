@@ -0,0 +1,202 @@
+package org.jpoetker.objstore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestContentCachingObjectStore {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MemoryObjectStore store;
+	private Path directory;
+	private ContentCachingObjectStore cache;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new MemoryObjectStore();
+		directory = folder.newFolder("cache").toPath();
+		cache = new ContentCachingObjectStore(store, directory, 10);
+	}
+
+	@Test
+	public void testReadsThroughOnce() throws Exception {
+		store.put("a", "abcdef");
+
+		assertThat(read(cache.readObject("a")), is("abcdef"));
+		assertThat(read(cache.readObject("a")), is("abcdef"));
+		assertThat(read(cache.readObject("a", 2, 3)), is("cde"));
+		assertThat(read(cache.readObject("a", 4, 100)), is("ef"));
+
+		SeekableByteChannel channel = cache.newByteChannel("a");
+		assertThat(channel.size(), is(6L));
+		ByteBuffer buffer = ByteBuffer.allocate(2);
+		channel.position(3).read(buffer);
+		channel.close();
+		assertThat(new String(buffer.array(), StandardCharsets.UTF_8), is("de"));
+
+		Path target = folder.newFile().toPath();
+		assertThat(cache.readObject("a", target, new ParallelOptions()), is(6L));
+		assertThat(new String(Files.readAllBytes(target), StandardCharsets.UTF_8), is("abcdef"));
+
+		assertThat(store.contentReads, is(1));
+		assertThat(cache.getHitCount(), is(5L));
+		assertThat(cache.getMissCount(), is(1L));
+		assertThat(cache.getCachedBytes(), is(6L));
+	}
+
+	@Test
+	public void testPartialReadIsNotCached() throws Exception {
+		store.put("a", "abcdef");
+
+		InputStream in = cache.readObject("a");
+		in.read(new byte[3]);
+		in.close();
+		read(cache.readObject("a"));
+
+		assertThat(store.contentReads, is(2));
+		assertThat(cache.getCachedBytes(), is(6L));
+		assertThat(directory.toFile().list().length, is(1));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyRead() throws Exception {
+		store.put("a", "aaaa");
+		store.put("b", "bbbb");
+		store.put("c", "cccc");
+		store.put("large", "0123456789x");
+
+		read(cache.readObject("a"));
+		read(cache.readObject("b"));
+		read(cache.readObject("a"));
+		read(cache.readObject("c"));
+		assertThat(cache.getEvictionCount(), is(1L));
+		assertThat(cache.getCachedBytes(), is(8L));
+
+		read(cache.readObject("large"));
+		assertThat(cache.getCachedBytes(), is(8L));
+
+		read(cache.readObject("a"));
+		read(cache.readObject("b"));
+		assertThat(store.contentReads, is(5));
+	}
+
+	@Test
+	public void testByteReadsStopCachingPastTheBudget() throws Exception {
+		store.put("large", "0123456789x");
+
+		InputStream in = cache.readObject("large");
+		for (int i = 0; i < 11; i++) {
+			in.read();
+		}
+		assertThat(directory.toFile().list().length, is(0));
+		assertThat(in.read(), is(-1));
+		in.close();
+		assertThat(cache.getCachedBytes(), is(0L));
+	}
+
+	@Test
+	public void testRangesPastTheCachedFileGoToTheDelegate() throws Exception {
+		store.put("a", "abcdef");
+		store.put("empty", "");
+		read(cache.readObject("a"));
+		read(cache.readObject("empty"));
+
+		assertThat(read(cache.readObject("a", 6, 1)), is(""));
+		try {
+			cache.readObject("a", 7, 1);
+			fail("Expected the error of the delegate");
+		} catch (ObjectStorageException e) {
+			// expected
+		}
+		assertThat(read(cache.readObject("empty", 0, 10)), is(""));
+		assertThat(store.contentReads, is(5));
+		assertThat(cache.getHitCount(), is(0L));
+	}
+
+	@Test
+	public void testWritesInvalidate() throws Exception {
+		store.put("a", "abc");
+		read(cache.readObject("a"));
+
+		cache.updateObject("a", "xyz".getBytes(StandardCharsets.UTF_8), "text/plain");
+		assertThat(read(cache.readObject("a")), is("xyz"));
+
+		cache.deleteObject("a");
+		assertThat(cache.getCachedBytes(), is(0L));
+		assertThat(directory.toFile().list().length, is(0));
+	}
+
+	@Test
+	public void testInvalidationDuringReadIsNotCachedOnlyForItsObject() throws Exception {
+		store.put("a", "abc");
+		store.put("b", "def");
+
+		InputStream in = cache.readObject("a");
+		cache.invalidate("b");
+		assertThat(read(in), is("abc"));
+		assertThat(cache.getCachedBytes(), is(3L));
+
+		cache.invalidate("a");
+		in = cache.readObject("a");
+		cache.invalidate("a");
+		assertThat(read(in), is("abc"));
+		assertThat(cache.getCachedBytes(), is(0L));
+		assertThat(directory.toFile().list().length, is(0));
+
+		read(cache.readObject("a"));
+		assertThat(cache.getCachedBytes(), is(3L));
+		assertThat(store.contentReads, is(3));
+	}
+
+	@Test
+	public void testReusesFilesOfAnEarlierInstance() throws Exception {
+		store.put("id/with spaces", "abc");
+		read(cache.readObject("id/with spaces"));
+		Files.write(directory.resolve("left.1.tmp"), new byte[1]);
+
+		ContentCachingObjectStore reopened = new ContentCachingObjectStore(store, directory, 10);
+		assertThat(reopened.getCachedBytes(), is(3L));
+		assertThat(read(reopened.readObject("id/with spaces")), is("abc"));
+		assertThat(store.contentReads, is(1));
+		assertThat(Files.exists(directory.resolve("left.1.tmp")), is(false));
+	}
+
+	@Test
+	public void testFileNamesRoundTrip() throws Exception {
+		for (String id : new String[] {"4ee696e4a11f549604f0b753", "a.b/c d%e", "\u00e9\u4e2d"}) {
+			String name = ContentCachingObjectStore.encode(id);
+			assertThat(name.indexOf('.'), is(-1));
+			assertThat(name.indexOf('/'), is(-1));
+			assertThat(ContentCachingObjectStore.decode(name), is(id));
+		}
+		assertThat(ContentCachingObjectStore.decode("a.1.tmp"), nullValue());
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.jpoetker.objstore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMetadataCachingObjectStore {
+	private MemoryObjectStore store;
+	private ManualTimeSource time;
+	private MetadataCachingObjectStore cache;
+
+	@Before
+	public void setUp() {
+		store = new MemoryObjectStore();
+		time = new ManualTimeSource();
+		cache = new MetadataCachingObjectStore(store, 2, 10, TimeUnit.SECONDS, time);
+	}
+
+	@Test
+	public void testReadsThroughOnce() throws Exception {
+		store.put("a", new Metadata("color", "red"), new Metadata("size", "1"));
+
+		assertThat(cache.getUserMetadata("a").size(), is(2));
+		assertThat(cache.getUserMetadata("a").size(), is(2));
+		assertThat(cache.getUserMetadata("a", new MetadataTag("size", false)), is((Collection<Metadata>) Arrays.asList(new Metadata("size", "1"))));
+
+		assertThat(store.metadataReads, is(1));
+		assertThat(cache.getHitCount(), is(2L));
+		assertThat(cache.getMissCount(), is(1L));
+	}
+
+	@Test
+	public void testCallersCannotChangeCachedMetadata() throws Exception {
+		store.put("a", new Metadata("color", "red"));
+
+		cache.getUserMetadata("a").clear();
+		assertThat(cache.getUserMetadata("a").size(), is(1));
+
+		cache.getUserMetadata("a").iterator().next().setValue("blue");
+		cache.getUserMetadata("a", new MetadataTag("color", false)).iterator().next().setValue("green");
+		assertThat(cache.getUserMetadata("a"), is((Collection<Metadata>) Arrays.asList(new Metadata("color", "red"))));
+	}
+
+	@Test
+	public void testFirstReaderCannotChangeCachedMetadata() throws Exception {
+		store.put("b", new Metadata("color", "red"));
+
+		cache.getUserMetadata("b").iterator().next().setValue("blue");
+		assertThat(cache.getUserMetadata("b"), is((Collection<Metadata>) Arrays.asList(new Metadata("color", "red"))));
+		assertThat(store.metadataReads, is(1));
+	}
+
+	@Test
+	public void testEntriesExpire() throws Exception {
+		store.put("a", new Metadata("color", "red"));
+
+		cache.getUserMetadata("a");
+		time.nanos += TimeUnit.SECONDS.toNanos(9);
+		cache.getUserMetadata("a");
+		time.nanos += TimeUnit.SECONDS.toNanos(1);
+		cache.getUserMetadata("a");
+
+		assertThat(store.metadataReads, is(2));
+		assertThat(cache.getMissCount(), is(2L));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		store.put("a", new Metadata("n", "a"));
+		store.put("b", new Metadata("n", "b"));
+		store.put("c", new Metadata("n", "c"));
+
+		cache.getUserMetadata("a");
+		cache.getUserMetadata("b");
+		cache.getUserMetadata("a");
+		cache.getUserMetadata("c");
+		assertThat(cache.getEvictionCount(), is(1L));
+		assertThat(cache.getSize(), is(2));
+
+		cache.getUserMetadata("a");
+		assertThat(store.metadataReads, is(3));
+		cache.getUserMetadata("b");
+		assertThat(store.metadataReads, is(4));
+	}
+
+	@Test
+	public void testWritesInvalidate() throws Exception {
+		store.put("a", new Metadata("color", "red"));
+
+		cache.getUserMetadata("a");
+		cache.setMetadata("a", new Metadata("color", "blue"));
+		assertThat(cache.getUserMetadata("a"), is((Collection<Metadata>) Arrays.asList(new Metadata("color", "blue"))));
+
+		cache.deleteObject("a");
+		assertThat(cache.getSize(), is(0));
+		assertThat(cache.getUserMetadata("a").isEmpty(), is(true));
+		assertThat(store.metadataReads, is(3));
+	}
+
+	@Test
+	public void testFilteredMissIsNotCached() throws Exception {
+		store.put("a", new Metadata("color", "red"), new Metadata("size", "1"));
+
+		assertThat(cache.getUserMetadata("a", new MetadataTag("color", false)).size(), is(1));
+		assertThat(cache.getSize(), is(0));
+		assertThat(cache.getMissCount(), is(1L));
+	}
+
+	@Test
+	public void testInvalidationDuringMissIsNotCachedOnlyForItsObject() throws Exception {
+		store = new MemoryObjectStore() {
+			@Override
+			public Collection<Metadata> getUserMetadata(String id) {
+				// a write of b, then one of a, lands while a is read
+				cache.invalidate("b");
+				if (metadataReads == 1) {
+					cache.invalidate("a");
+				}
+				return super.getUserMetadata(id);
+			}
+		};
+		cache = new MetadataCachingObjectStore(store, 2, 10, TimeUnit.SECONDS, time);
+		store.put("a", new Metadata("color", "red"));
+
+		cache.getUserMetadata("a");
+		assertThat(cache.getSize(), is(1));
+
+		cache.invalidate("a");
+		cache.getUserMetadata("a");
+		assertThat(cache.getSize(), is(0));
+		cache.getUserMetadata("a");
+		assertThat(cache.getSize(), is(1));
+		assertThat(store.metadataReads, is(3));
+	}
+}
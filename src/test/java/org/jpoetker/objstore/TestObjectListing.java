@@ -0,0 +1,125 @@
+package org.jpoetker.objstore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestObjectListing {
+
+	@Test
+	public void testFollowsTokensWithAndWithoutPrefetch() throws Exception {
+		for (int prefetch = 0; prefetch <= 3; prefetch++) {
+			ObjectListing<Integer> listing = new ObjectListing<Integer>(new NumberPages(10, 3), prefetch);
+			List<Integer> numbers = new ArrayList<Integer>();
+			while (listing.hasNext()) {
+				numbers.add(listing.next());
+			}
+			assertThat(numbers, is(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+			assertThat(listing.hasNext(), is(false));
+		}
+	}
+
+	@Test
+	public void testPrefetchesAheadOfTheCaller() throws Exception {
+		final CountDownLatch fetched = new CountDownLatch(3);
+		NumberPages pages = new NumberPages(100, 10) {
+			@Override
+			public QueryResults<Integer> fetchPage(String continuationToken) {
+				QueryResults<Integer> page = super.fetchPage(continuationToken);
+				fetched.countDown();
+				return page;
+			}
+		};
+
+		ObjectListing<Integer> listing = new ObjectListing<Integer>(pages, 2);
+		assertThat(fetched.await(5, TimeUnit.SECONDS), is(true));
+		// two pages are queued and a third is held by the fetcher until there is room
+		Thread.sleep(100);
+		assertThat(pages.fetches.get(), is(3));
+
+		assertThat(listing.stream().count(), is(100L));
+		assertThat(pages.fetches.get(), is(10));
+	}
+
+	@Test
+	public void testFailureIsThrownToTheCaller() throws Exception {
+		ObjectListing<Integer> listing = new ObjectListing<Integer>(new NumberPages(10, 3) {
+			@Override
+			public QueryResults<Integer> fetchPage(String continuationToken) {
+				if ("6".equals(continuationToken)) {
+					throw new ObjectStorageException("page failed");
+				}
+				return super.fetchPage(continuationToken);
+			}
+		}, 1);
+
+		int count = 0;
+		try {
+			while (listing.hasNext()) {
+				listing.next();
+				count++;
+			}
+			fail("The failed page should have been thrown");
+		} catch (ObjectStorageException e) {
+			assertThat(e.getMessage(), is("page failed"));
+		}
+		assertThat(count, is(6));
+		assertThat(listing.hasNext(), is(false));
+	}
+
+	@Test(timeout = 10000)
+	public void testErrorIsThrownToTheCaller() throws Exception {
+		ObjectListing<Integer> listing = new ObjectListing<Integer>(new NumberPages(10, 3) {
+			@Override
+			public QueryResults<Integer> fetchPage(String continuationToken) {
+				if ("3".equals(continuationToken)) {
+					throw new AssertionError("parser failed");
+				}
+				return super.fetchPage(continuationToken);
+			}
+		}, 1);
+
+		try {
+			while (listing.hasNext()) {
+				listing.next();
+			}
+			fail("The error should have been thrown");
+		} catch (AssertionError e) {
+			assertThat(e.getMessage(), is("parser failed"));
+		}
+	}
+
+	/**
+	 * Pages over the numbers from 0, the token of a page is the first number of the next page.
+	 */
+	private static class NumberPages implements ObjectListing.PageSource<Integer> {
+		final AtomicInteger fetches = new AtomicInteger();
+		private final int total;
+		private final int pageSize;
+
+		NumberPages(int total, int pageSize) {
+			this.total = total;
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public QueryResults<Integer> fetchPage(String continuationToken) {
+			fetches.incrementAndGet();
+			int start = (continuationToken != null) ? Integer.parseInt(continuationToken) : 0;
+			int end = Math.min(start + pageSize, total);
+			List<Integer> numbers = new ArrayList<Integer>();
+			for (int i = start; i < end; i++) {
+				numbers.add(i);
+			}
+			return new QueryResults<Integer>(numbers, (end < total) ? Integer.toString(end) : null);
+		}
+	}
+}
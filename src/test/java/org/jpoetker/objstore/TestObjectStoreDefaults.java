@@ -0,0 +1,124 @@
+package org.jpoetker.objstore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the default methods of <code>ObjectStore</code> on a store that implements only
+ * the methods of the first release.
+ */
+public class TestObjectStoreDefaults {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MemoryObjectStore store;
+
+	@Before
+	public void setUp() {
+		store = new MemoryObjectStore();
+	}
+
+	@Test
+	public void testArrayBufferAndFileWrites() throws Exception {
+		String id = store.createObject(bytes("abc"), null);
+		assertThat(store.getContent(id), is("abc"));
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes("xxdefxx"));
+		buffer.position(2).limit(5);
+		store.updateObject(id, buffer, null);
+		assertThat(store.getContent(id), is("def"));
+		assertThat(buffer.position(), is(2));
+
+		Path file = folder.newFile().toPath();
+		Files.write(file, bytes("ghi"));
+		store.updateObject(id, file, null, null, Arrays.asList(new Metadata("color", "red")));
+		assertThat(store.getContent(id), is("ghi"));
+		assertThat(store.getUserMetadata(id).size(), is(1));
+
+		assertThat(store.getContent(store.createObject(file, null)), is("ghi"));
+		assertThat(store.getContent(store.createObject(new ByteArrayInputStream(bytes("jk")), 2, null, new ParallelOptions())), is("jk"));
+	}
+
+	@Test
+	public void testRangedAndFileReads() throws Exception {
+		store.put("a", "abcdef");
+
+		assertThat(read(store.readObject("a", 2, 3)), is("cde"));
+		assertThat(read(store.readObject("a", 4, 100)), is("ef"));
+		try {
+			store.readObject("a", 7, 1);
+			fail("Expected the offset past the end to be rejected");
+		} catch (ObjectStorageException e) {
+			// expected
+		}
+
+		Path target = folder.newFile().toPath();
+		assertThat(store.readObject("a", target, new ParallelOptions()), is(6L));
+		assertThat(new String(Files.readAllBytes(target), StandardCharsets.UTF_8), is("abcdef"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRangedUpdateIsNotSupported() throws Exception {
+		store.put("a", "abcdef");
+		store.updateObject("a", new ByteArrayInputStream(bytes("x")), 1, 1, new ParallelOptions());
+	}
+
+	@Test
+	public void testListingsFollowTokens() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			store.put("o" + i, new Metadata("listed", "", true));
+		}
+
+		List<String> ids = new ArrayList<String>();
+		ObjectListing<String> listing = store.listAllObjects("listed", 2, 1);
+		while (listing.hasNext()) {
+			ids.add(listing.next());
+		}
+		assertThat(ids, is(Arrays.asList("o0", "o1", "o2", "o3", "o4")));
+
+		final List<String> handled = new ArrayList<String>();
+		String token = store.listObjectsWithMetadata("listed", null, null, 3, null, new ObjectInfoHandler() {
+			@Override
+			public void handle(ObjectInfo info) {
+				handled.add(info.getId());
+			}
+		});
+		assertThat(handled, is(Arrays.asList("o0", "o1", "o2")));
+		assertThat(token, is("3"));
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.jpoetker.objstore.atmos;
+
+import java.util.Random;
+
+import org.jpoetker.objstore.atmos.simulator.AtmosSimulator;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Starts an in-process <code>AtmosSimulator</code> with one user and an
+ * <code>AtmosObjectStore</code> signed in as that user for each test.
+ */
+public abstract class SimulatorTestBase {
+	protected static final String UID = "testuid";
+
+	protected AtmosSimulator simulator;
+	protected AtmosObjectStore objectStore;
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new AtmosSimulator();
+		simulator.addUser(UID, TestAtmosRequest.testSecret);
+		simulator.start();
+
+		objectStore = new AtmosObjectStore(simulator.getHost(), simulator.getPort(), "http", UID, TestAtmosRequest.testSecret);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		objectStore.close();
+		simulator.stop();
+	}
+
+	/**
+	 * Returns bytes that are the same for a given length from one run to the next.
+	 */
+	protected static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+}
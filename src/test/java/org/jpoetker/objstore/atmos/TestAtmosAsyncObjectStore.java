@@ -0,0 +1,207 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.jpoetker.objstore.atmos.TestAtmosObjectStoreSimulator.read;
+import static org.jpoetker.objstore.atmos.TestAtmosObjectStoreSimulator.stream;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.atmos.simulator.AtmosSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the <code>AtmosAsyncObjectStore</code> end to end against the in-process
+ * <code>AtmosSimulator</code>.
+ */
+public class TestAtmosAsyncObjectStore {
+	private static final String UID = "testuid";
+
+	private AtmosSimulator simulator;
+	private AtmosAsyncObjectStore objectStore;
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new AtmosSimulator();
+		simulator.addUser(UID, TestAtmosRequest.testSecret);
+		simulator.start();
+
+		objectStore = new AtmosAsyncObjectStore(simulator.getHost(), simulator.getPort(), UID, TestAtmosRequest.testSecret);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		objectStore.close();
+		simulator.stop();
+	}
+
+	@Test
+	public void testCreateReadUpdateDelete() throws Exception {
+		String id = get(objectStore.createObject(stream("hello world"), 11, "text/plain"));
+		assertThat(id.length(), is(44));
+		assertThat(read(get(objectStore.readObject(id))), is("hello world"));
+
+		get(objectStore.updateObject(id, stream("goodbye"), 7, "text/plain"));
+		assertThat(read(get(objectStore.readObject(id))), is("goodbye"));
+
+		get(objectStore.deleteObject(id));
+		assertThat(simulator.getObjectCount(), is(0));
+
+		try {
+			get(objectStore.readObject(id));
+			fail("Expected the object to be gone");
+		} catch (ExecutionException e) {
+			AtmosStorageException cause = (AtmosStorageException) e.getCause();
+			assertThat(cause.getHttpCode(), is(404));
+			assertThat(cause.getAtmosCode(), is(1003));
+		}
+	}
+
+	@Test
+	public void testMetadataAndListing() throws Exception {
+		String id = get(objectStore.createObject(stream("data"), 4, null, null,
+				Arrays.asList(new Metadata("color", "blue", false), new Metadata("listed", "", true))));
+
+		get(objectStore.setMetadata(id, Arrays.asList(new Metadata("size", "large"))));
+
+		Collection<Metadata> metadata = get(objectStore.getUserMetadata(id));
+		assertThat(metadata.size(), is(3));
+		assertTrue(metadata.contains(new Metadata("size", "large", false)));
+
+		boolean found = false;
+		for (Metadata meta : get(objectStore.getSystemMetadata(id))) {
+			if ("size".equals(meta.getName())) {
+				assertThat(meta.getValue(), is("4"));
+				found = true;
+			}
+		}
+		assertTrue(found);
+
+		QueryResults<String> ids = get(objectStore.listObjects("listed", 0, null));
+		assertThat(ids.getResults().size(), is(1));
+		assertThat(ids.getResults().iterator().next(), is(id));
+
+		QueryResults<ObjectInfo> infos = get(objectStore.listObjectsWithMetadata("listed", 0, null));
+		assertThat(infos.getResults().iterator().next().getId(), is(id));
+
+		infos = get(objectStore.listObjectsWithMetadata("listed", Arrays.asList("listed"), 0, null));
+		assertThat(infos.getResults().iterator().next().getId(), is(id));
+	}
+
+	@Test
+	public void testLargeReadIsStreamed() throws Exception {
+		byte[] content = new byte[1024 * 1024];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		String id = get(objectStore.createObject(new ByteArrayInputStream(content), content.length, null));
+
+		InputStream in = get(objectStore.readObject(id));
+		byte[] buff = new byte[8192];
+		int total = 0;
+		int read;
+		while ((read = in.read(buff)) != -1) {
+			for (int i = 0; i < read; i++) {
+				assertThat(buff[i], is(content[total + i]));
+			}
+			total += read;
+		}
+		in.close();
+		assertThat(total, is(content.length));
+	}
+
+	@Test
+	public void testClosingBeforeTheEndAbortsTheRead() throws Exception {
+		String id = get(objectStore.createObject(new ByteArrayInputStream(new byte[4 * 1024 * 1024]), 4 * 1024 * 1024, null));
+
+		InputStream in = get(objectStore.readObject(id));
+		assertThat(in.read(), is(0));
+		in.close();
+		try {
+			in.read();
+			fail("Expected the stream to be closed");
+		} catch (IOException e) {
+		}
+
+		// the store is still usable afterwards
+		assertThat(get(objectStore.getSystemMetadata(id)).isEmpty(), is(false));
+	}
+
+	@Test
+	public void testManyRequestsInFlight() throws Exception {
+		String id = get(objectStore.createObject(stream("data"), 4, null));
+		simulator.setLatency(200, 0);
+
+		long start = System.nanoTime();
+		List<CompletableFuture<Collection<Metadata>>> results = new ArrayList<CompletableFuture<Collection<Metadata>>>();
+		for (int i = 0; i < 500; i++) {
+			results.add(objectStore.getSystemMetadata(id));
+		}
+		for (CompletableFuture<Collection<Metadata>> result : results) {
+			assertThat(get(result).isEmpty(), is(false));
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// 200 connections at 200ms each, the calls must overlap
+		assertTrue("took " + elapsed + "ms", elapsed < 500 * 200 / 10);
+	}
+
+	@Test
+	public void testInjectedErrorsFailTheFuture() throws Exception {
+		simulator.setErrorRate(1.0);
+		try {
+			get(objectStore.getUserMetadata("0123456789abcdef0123456789abcdef0123456789ab"));
+			fail("Expected the injected error");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(AtmosStorageException.class));
+			assertThat(((AtmosStorageException) e.getCause()).getHttpCode(), is(500));
+		}
+	}
+
+	@Test
+	public void testNullTagFailsTheFuture() throws Exception {
+		CompletableFuture<QueryResults<String>> listing = objectStore.listObjects(null, 10, null);
+		try {
+			get(listing);
+			fail("Expected the listing to fail");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(AtmosStorageException.class));
+		}
+		assertThat(simulator.getRequestCount(), is(0L));
+	}
+
+	@Test
+	public void testInvalidArgumentsFailTheFuture() throws Exception {
+		List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>();
+		futures.add(objectStore.createObject(null, 11, "text/plain"));
+		futures.add(objectStore.updateObject("0123456789abcdef0123456789abcdef0123456789ab", stream("hello"), 0, "text/plain"));
+		futures.add(objectStore.createObject(null, null, null, null));
+		for (CompletableFuture<?> future : futures) {
+			try {
+				get(future);
+				fail("Expected the arguments to be rejected");
+			} catch (ExecutionException e) {
+				assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+			}
+		}
+		assertThat(simulator.getRequestCount(), is(0L));
+	}
+
+	private static <T> T get(CompletableFuture<T> future) throws Exception {
+		return future.get(30, TimeUnit.SECONDS);
+	}
+}
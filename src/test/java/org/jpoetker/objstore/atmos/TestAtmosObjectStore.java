@@ -6,8 +6,15 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
@@ -61,6 +68,49 @@ public class TestAtmosObjectStore {
 		assertThat(objectStore.getHttpClient(), is(mockHttpClient));
 	}
 	
+	@Test
+	public void testCloseLeavesSuppliedClientToItsOwner() throws Exception {
+		objectStore.setHedging(true);
+		objectStore.close();
+		assertThat(objectStore.getHttpClient(), is(mockHttpClient));
+		verifyZeroInteractions(mockHttpClient);
+	}
+	
+	@Test
+	public void testCloseReleasesDefaultClient() throws Exception {
+		AtmosObjectStore store = new AtmosObjectStore();
+		HttpClient client = store.getHttpClient();
+		store.close();
+		assertThat(store.getHttpClient(), is(not(client)));
+		store.close();
+	}
+	
+	@Test
+	public void testConcurrentFirstUseSharesDefaultClient() throws Exception {
+		final AtmosObjectStore store = new AtmosObjectStore();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<HttpClient>> clients = new ArrayList<Future<HttpClient>>();
+			for (int i = 0; i < 16; i++) {
+				clients.add(executor.submit(new Callable<HttpClient>() {
+					@Override
+					public HttpClient call() throws Exception {
+						start.await();
+						return store.getHttpClient();
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<HttpClient> client : clients) {
+				assertThat(client.get(), is(sameInstance(store.getHttpClient())));
+			}
+		} finally {
+			executor.shutdown();
+			store.close();
+		}
+	}
+	
 	@Test
 	public void testIllegalArgumentWhenInputStreamIsNull() throws Exception {
 		IllegalArgumentException ex = null;
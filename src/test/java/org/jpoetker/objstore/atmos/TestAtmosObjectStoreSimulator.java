@@ -0,0 +1,335 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpGet;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.MetadataTag;
+import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectListing;
+import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.atmos.AtmosObjectStore.CircuitState;
+import org.junit.Test;
+
+/**
+ * Runs the <code>AtmosObjectStore</code> end to end against the in-process 
+ * <code>AtmosSimulator</code>.
+ */
+public class TestAtmosObjectStoreSimulator extends SimulatorTestBase {
+	@Test
+	public void testCreateReadUpdateDelete() throws Exception {
+		String id = objectStore.createObject(stream("hello world"), 11, "text/plain");
+		assertThat(id.length(), is(44));
+		assertThat(read(objectStore.readObject(id)), is("hello world"));
+		
+		objectStore.updateObject(id, stream("goodbye"), 7, "text/plain");
+		assertThat(read(objectStore.readObject(id)), is("goodbye"));
+		
+		objectStore.deleteObject(id);
+		assertThat(simulator.getObjectCount(), is(0));
+		
+		try {
+			objectStore.readObject(id);
+			fail("Expected the object to be gone");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getHttpCode(), is(404));
+			assertThat(e.getAtmosCode(), is(1003));
+		}
+	}
+	
+	@Test
+	public void testUserMetadata() throws Exception {
+		String id = objectStore.createObject(stream("data"), 4, null, 
+				new Metadata("color", "blue", false), new Metadata("shape", "square", true));
+		
+		objectStore.setMetadata(id, new Metadata("size", "large"));
+		
+		Collection<Metadata> metadata = objectStore.getUserMetadata(id);
+		assertThat(metadata.size(), is(3));
+		assertTrue(metadata.contains(new Metadata("color", "blue", false)));
+		assertTrue(metadata.contains(new Metadata("shape", "square", true)));
+		assertTrue(metadata.contains(new Metadata("size", "large", false)));
+		
+		metadata = objectStore.getUserMetadata(id, new MetadataTag("shape", true));
+		assertThat(metadata.size(), is(1));
+		assertThat(metadata.iterator().next().getValue(), is("square"));
+	}
+	
+	@Test
+	public void testSystemMetadata() throws Exception {
+		String id = objectStore.createObject(stream("0123456789"), 10, null);
+		
+		Collection<Metadata> metadata = objectStore.getSystemMetadata(id, new MetadataTag("size", false));
+		assertThat(metadata.size(), is(1));
+		assertThat(metadata.iterator().next().getValue(), is("10"));
+		
+		metadata = objectStore.getSystemMetadata(id);
+		assertTrue(metadata.contains(new Metadata("objectid", id, false)));
+	}
+	
+	@Test
+	public void testListObjectsWithPaging() throws Exception {
+		Set<String> created = new HashSet<String>();
+		for (int i = 0; i < 25; i++) {
+			created.add(objectStore.createObject(stream("object " + i), 8, null, new Metadata("listed", Integer.toString(i), true)));
+		}
+		objectStore.createObject(stream("unlisted"), 8, null);
+		
+		Set<String> listed = new HashSet<String>();
+		String token = null;
+		int pages = 0;
+		do {
+			QueryResults<String> results = objectStore.listObjects("listed", 10, token);
+			listed.addAll(results.getResults());
+			token = results.getContinuationToken();
+			pages++;
+		} while (token != null);
+		
+		assertThat(pages, is(3));
+		assertThat(listed, is(created));
+		
+		QueryResults<ObjectInfo> infos = objectStore.listObjectsWithMetadata("listed", Arrays.asList("listed"), Arrays.asList("size"), 100, null);
+		assertThat(infos.getResults().size(), is(25));
+		ObjectInfo info = infos.getResults().iterator().next();
+		assertThat(info.getUserMetadata().size(), is(1));
+		assertThat(info.getSystemMetadata().iterator().next().getValue(), is("8"));
+	}
+	
+	@Test
+	public void testListAllObjectsFollowsContinuationTokens() throws Exception {
+		Set<String> created = new HashSet<String>();
+		for (int i = 0; i < 25; i++) {
+			created.add(objectStore.createObject(stream("object " + i), 8, null, new Metadata("listed", Integer.toString(i), true)));
+		}
+		
+		Set<String> listed = new HashSet<String>();
+		ObjectListing<String> listing = objectStore.listAllObjects("listed", 4, 2);
+		while (listing.hasNext()) {
+			listed.add(listing.next());
+		}
+		assertThat(listed, is(created));
+		
+		ObjectListing<ObjectInfo> infos = objectStore.listAllObjectsWithMetadata("listed", Arrays.asList("listed"), null, 10, 0);
+		assertThat(infos.stream().count(), is(25L));
+	}
+	
+	@Test
+	public void testInvalidSignatureIsRejected() throws Exception {
+		objectStore = new AtmosObjectStore(simulator.getHost(), simulator.getPort(), "http", UID, "c2VjcmV0");
+		try {
+			objectStore.createObject(stream("data"), 4, null);
+			fail("Expected the signature to be rejected");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getHttpCode(), is(403));
+			assertThat(e.getAtmosCode(), is(1032));
+		}
+		assertThat(simulator.getRejectedSignatureCount(), is(1L));
+	}
+	
+	@Test
+	public void testInjectedErrorsAndLatency() throws Exception {
+		simulator.setErrorRate(1.0);
+		try {
+			objectStore.createObject(stream("data"), 4, null);
+			fail("Expected an injected error");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getHttpCode(), is(500));
+			assertThat(e.getAtmosCode(), is(1001));
+		}
+		
+		simulator.setErrorRate(0.0);
+		simulator.setLatency(100, 0);
+		long started = System.currentTimeMillis();
+		objectStore.createObject(stream("data"), 4, null);
+		assertTrue(System.currentTimeMillis() - started >= 100);
+	}
+	
+	@Test
+	public void testTransientErrorsAreRetried() throws Exception {
+		objectStore.setRetrying(true);
+		objectStore.setRetryBaseDelayMillis(1);
+		objectStore.setRetryMaxDelayMillis(5);
+		String id = objectStore.createObject(stream("data"), 4, null);
+		
+		simulator.setErrorRate(1.0);
+		try {
+			objectStore.readObject(id);
+			fail("Expected an injected error");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getAtmosCode(), is(1001));
+		}
+		assertThat(simulator.getInjectedErrorCount(), is(4L));
+		
+		// a retried create could create the object twice
+		try {
+			objectStore.createObject(stream("data"), 4, null);
+			fail("Expected an injected error");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getAtmosCode(), is(1001));
+		}
+		assertThat(simulator.getInjectedErrorCount(), is(5L));
+		
+		// an update with a buffer is sent again
+		try {
+			objectStore.updateObject(id, "next".getBytes("UTF-8"), null);
+			fail("Expected an injected error");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getAtmosCode(), is(1001));
+		}
+		assertThat(simulator.getInjectedErrorCount(), is(9L));
+	}
+	
+	@Test
+	public void testDroppedConnectionsAreRetriedByOneLayer() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final AtomicInteger connections = new AtomicInteger();
+		Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Socket socket = server.accept();
+						connections.incrementAndGet();
+						socket.close();
+					}
+				} catch (IOException e) {
+				}
+			}
+		};
+		acceptor.start();
+		try {
+			AtmosObjectStore store = new AtmosObjectStore("localhost", server.getLocalPort(), "http", UID, TestAtmosRequest.testSecret);
+			assertThat(readFails(store), is(true));
+			// the client sends a read three more times on its own
+			assertThat(connections.getAndSet(0), is(4));
+			
+			store.setRetrying(true);
+			store.setMaxRetries(1);
+			store.setRetryBaseDelayMillis(1);
+			store.setRetryMaxDelayMillis(5);
+			assertThat(readFails(store), is(true));
+			assertThat(connections.getAndSet(0), is(2));
+			
+			// parts of a parallel transfer are retried by the transfer alone
+			store.setRetrying(false);
+			HttpGet part = store.newRequest(store.buildUrl(store.getResourcePath("dropped"), null)).createGet();
+			try {
+				store.executeOnce(part);
+				fail("Expected the connection to be dropped");
+			} catch (IOException e) {
+			}
+			assertThat(connections.get(), is(1));
+		} finally {
+			server.close();
+			acceptor.join();
+		}
+	}
+	
+	private static boolean readFails(AtmosObjectStore store) {
+		try {
+			store.readObject("dropped");
+			return false;
+		} catch (AtmosStorageException e) {
+			return true;
+		}
+	}
+	
+	@Test
+	public void testHedgedReads() throws Exception {
+		objectStore.setHedging(true);
+		objectStore.setHedgingBudgetPercent(100);
+		String id = objectStore.createObject(stream("hedged"), 6, null, new Metadata("color", "red"));
+		simulator.setLatency(0, 20);
+		
+		for (int i = 0; i < 50; i++) {
+			assertThat(read(objectStore.readObject(id)), is("hedged"));
+			assertThat(objectStore.getUserMetadata(id), is((Collection<Metadata>) Arrays.asList(new Metadata("color", "red"))));
+		}
+		assertThat(objectStore.getHedger().getDelayNanos() >= 0, is(true));
+	}
+	
+	@Test
+	public void testAdaptiveConcurrency() throws Exception {
+		objectStore.setAdaptiveConcurrency(true);
+		objectStore.setInitialConcurrencyLimit(4);
+		String id = objectStore.createObject(stream("limited"), 7, null);
+		
+		for (int i = 0; i < 20; i++) {
+			assertThat(read(objectStore.readObject(id)), is("limited"));
+		}
+		Map<Endpoint, Integer> limits = objectStore.getConcurrencyLimits();
+		assertThat(limits.keySet(), is(Collections.singleton(new Endpoint(simulator.getHost(), simulator.getPort()))));
+		assertThat(limits.values().iterator().next() >= 1, is(true));
+	}
+	
+	@Test
+	public void testOpenCircuitFailsFast() throws Exception {
+		objectStore.setMaxRetries(0);
+		objectStore.setCircuitBreaking(true);
+		objectStore.setCircuitWindowSize(4);
+		final List<CircuitState> states = new CopyOnWriteArrayList<CircuitState>();
+		objectStore.addCircuitBreakerListener(new CircuitBreakerListener() {
+			@Override
+			public void stateChanged(Endpoint endpoint, CircuitState from, CircuitState to) {
+				states.add(to);
+			}
+		});
+		String id = objectStore.createObject(stream("data"), 4, null);
+		
+		simulator.setErrorRate(1.0);
+		for (int i = 0; i < 3; i++) {
+			try {
+				objectStore.readObject(id);
+				fail("Expected an injected error");
+			} catch (AtmosStorageException e) {
+				assertThat(e.getAtmosCode(), is(1001));
+			}
+		}
+		assertThat(states, is(Arrays.<CircuitState>asList(CircuitState.OPEN)));
+		
+		long requests = simulator.getRequestCount();
+		try {
+			objectStore.readObject(id);
+			fail("Expected the open circuit to fail the read");
+		} catch (CircuitOpenException e) {
+			assertThat(e.getEndpoint(), is(new Endpoint(simulator.getHost(), simulator.getPort())));
+		}
+		assertThat(simulator.getRequestCount(), is(requests));
+		assertThat(objectStore.getCircuitStates().values().iterator().next(), is(CircuitState.OPEN));
+	}
+	
+	static InputStream stream(String content) throws Exception {
+		return new ByteArrayInputStream(content.getBytes("UTF-8"));
+	}
+	
+	static String read(InputStream in) throws Exception {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return new String(out.toByteArray(), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -182,6 +182,10 @@ public class TestAtmosRequest {
 		request.signRequest("POST");
 		
 		assertEquals(new String(Base64.encodeBase64(hashedBytes), "UTF-8"), headers.get("x-emc-signature"));
+		
+		// signing again gives the same signature
+		request.signRequest("POST");
+		assertEquals(new String(Base64.encodeBase64(hashedBytes), "UTF-8"), headers.get("x-emc-signature"));
 	}
 	
 	@Test
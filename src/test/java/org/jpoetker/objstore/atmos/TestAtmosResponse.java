@@ -152,4 +152,51 @@ public class TestAtmosResponse {
 		assertEquals("One or more arguments in the request was invalid.", aex.getMessage());
 	}
 	
+	@Test
+	public void testWellKnownCodesAreTyped() throws Exception {
+		AtmosStorageException notFound = validate(404, "Not Found", "<?xml version='1.0' encoding='UTF-8'?>\n<Error><Code>1003</Code><Message>The requested object was not found.</Message></Error>");
+		assertTrue(notFound instanceof ObjectNotFoundException);
+		assertEquals(new Integer(404), notFound.getHttpCode());
+		assertEquals(new Integer(1003), notFound.getAtmosCode());
+		assertEquals("The requested object was not found.", notFound.getMessage());
+		
+		assertTrue(validate(403, "Forbidden", "<Error><Code>1032</Code><Message>mismatch</Message></Error>") instanceof AuthenticationException);
+		assertTrue(validate(416, "Requested Range Not Satisfiable", "<Error><Code>1004</Code></Error>") instanceof RangeNotSatisfiableException);
+		assertTrue(validate(500, "Internal Server Error", "<Error><Code>1040</Code><Message>busy</Message></Error>") instanceof ServerBusyException);
+		assertEquals(AtmosStorageException.class, validate(500, "Internal Server Error", "<Error><Code>1001</Code><Message>error</Message></Error>").getClass());
+	}
+	
+	@Test
+	public void testMalformedErrorBodies() throws Exception {
+		AtmosStorageException html = validate(502, "Bad Gateway", "<html><body>proxy error");
+		assertEquals("Bad Gateway", html.getMessage());
+		assertEquals(new Integer(502), html.getHttpCode());
+		assertNull(html.getAtmosCode());
+		
+		AtmosStorageException noCode = validate(500, "Internal Server Error", "<Error><Message>no code</Message></Error>");
+		assertEquals("no code", noCode.getMessage());
+		assertNull(noCode.getAtmosCode());
+		
+		assertEquals("Bad Request", validate(400, "Bad Request", "").getMessage());
+	}
+	
+	private AtmosStorageException validate(int statusCode, String reason, final String body) throws Exception {
+		StatusLine status = mock(StatusLine.class);
+		when(status.getStatusCode()).thenReturn(statusCode);
+		when(status.getReasonPhrase()).thenReturn(reason);
+		
+		HttpEntity mockEntity = mock(HttpEntity.class);
+		when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(body.getBytes("UTF-8")));
+		
+		HttpResponse errorResponse = mock(HttpResponse.class);
+		when(errorResponse.getStatusLine()).thenReturn(status);
+		when(errorResponse.getEntity()).thenReturn(mockEntity);
+		try {
+			new AtmosResponse(errorResponse);
+		} catch (AtmosStorageException e) {
+			return e;
+		}
+		fail("An error response should throw");
+		return null;
+	}
 }
@@ -0,0 +1,61 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Uploads byte arrays and buffers with <code>AtmosObjectStore</code> against the
+ * in-process <code>AtmosSimulator</code>.
+ */
+public class TestBufferUpload extends SimulatorTestBase {
+	@Test
+	public void testCreateAndUpdateFromByteArray() throws Exception {
+		byte[] content = randomBytes(16 * 1024);
+
+		String id = objectStore.createObject(content, "image/jpeg");
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+
+		byte[] updated = randomBytes(5);
+		objectStore.updateObject(id, updated, null);
+		assertThat(Arrays.equals(simulator.getObjectContent(id), updated), is(true));
+	}
+
+	@Test
+	public void testCreateAndUpdateFromBuffers() throws Exception {
+		byte[] content = randomBytes(70 * 1024);
+		ByteBuffer heap = ByteBuffer.wrap(content, 100, 4096).slice();
+		heap.position(96);
+
+		String id = objectStore.createObject(heap, null);
+		assertThat(Arrays.equals(simulator.getObjectContent(id), Arrays.copyOfRange(content, 196, 4196)), is(true));
+		assertThat(heap.position(), is(96));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+		direct.put(content).flip();
+		objectStore.updateObject(id, direct, null);
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+		assertThat(direct.remaining(), is(content.length));
+	}
+
+	@Test
+	public void testBufferEntityIsRepeatable() throws Exception {
+		byte[] content = randomBytes(100000);
+		ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+		direct.put(content).flip();
+
+		BufferEntity entity = new BufferEntity(direct);
+		assertThat(entity.isRepeatable(), is(true));
+		assertThat(entity.getContentLength(), is(100000L));
+		for (int i = 0; i < 2; i++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entity.writeTo(out);
+			assertThat(Arrays.equals(out.toByteArray(), content), is(true));
+		}
+	}
+}
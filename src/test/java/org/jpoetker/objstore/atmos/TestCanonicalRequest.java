@@ -0,0 +1,240 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Regression corpus for the canonical form of signed requests.
+ *
+ * Every case is signed with both <code>CanonicalRequest</code> and the original string
+ * based implementation of <code>AtmosRequest.signRequest</code>, kept here as
+ * {@link #legacyCanonicalize(String, Map, URL)}, and the results must be identical.
+ */
+public class TestCanonicalRequest {
+	private static final String DATE = "Thu, 5 Jun 2008 16:38:19 GMT";
+	private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD"};
+	private static final String[] PATHS = {
+		"/rest/objects",
+		"/rest/objects/4ee696e4a11f549804f0b909b09e0d04fa41c52938b1",
+		"/rest/namespace/Some%20Dir/File+Name.TXT",
+		"/rest/namespace/%C3%9Cber/%E6%97%A5%E6%9C%AC",
+		"/REST/Objects/ABCDEF"
+	};
+	private static final String[] QUERIES = {null, "metadata/user", "metadata/system", "acl"};
+	private static final String[] VALUE_FRAGMENTS = {
+		"value", " ", "  ", "   ", "\n", "\t", "\r", ",", "=", "Mixed Case", "été",
+		"日本", "😀", "\ud83d", "\ude00", "İ", "I", "\u0000", "x"
+	};
+
+	@Test
+	public void testSimpleRequest() throws Exception {
+		Map<String, String> headers = baseHeaders();
+		headers.put("Content-Type", "application/octet-stream");
+		headers.put("x-emc-meta", "NAME=the value  of the meta  data ");
+		headers.put("x-emc-useracl", "jeff=FULL_CONTROL");
+		headers.put("x-emc-groupacl", "");
+
+		assertSameSignature("POST", headers, new URL("http://localhost/rest/objects"));
+	}
+
+	@Test
+	public void testRangeHeaders() throws Exception {
+		Map<String, String> headers = baseHeaders();
+		headers.put("Range", "Bytes=0-99");
+		assertSameSignature("GET", headers, new URL("http://localhost/rest/objects/abc"));
+
+		headers.remove("Range");
+		headers.put("Content-Range", "Bytes=100-199");
+		assertSameSignature("PUT", headers, new URL("http://localhost/rest/objects/abc"));
+
+		headers.put("Range", "Bytes=0-99");
+		assertSameSignature("PUT", headers, new URL("http://localhost/rest/objects/abc"));
+	}
+
+	@Test
+	public void testWhitespaceOnlyAndEmptyValues() throws Exception {
+		String[] values = {"", " ", "   ", "\n", " \n ", "\t", " \t \n ", "a", " a", "a ", "  a  b  "};
+		for (String value : values) {
+			Map<String, String> headers = baseHeaders();
+			headers.put("x-emc-meta", value);
+			assertSameSignature("GET", headers, new URL("http://localhost/rest/objects"));
+		}
+	}
+
+	@Test
+	public void testHeaderNamesDifferingByCase() throws Exception {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Date", DATE);
+		headers.put("x-emc-uid", "userid");
+		headers.put("x-emc-Meta", "first=1");
+		headers.put("x-emc-meta", "second=2");
+		headers.put("X-EMC-IGNORED", "not signed");
+
+		assertSameSignature("GET", headers, new URL("http://localhost/rest/objects"));
+	}
+
+	@Test
+	public void testLargeMetadataRequests() throws Exception {
+		for (int pairs = 50; pairs <= 500; pairs += 50) {
+			Map<String, String> headers = baseHeaders();
+			headers.put("Content-Type", "Application/Octet-Stream");
+			StringBuilder listable = new StringBuilder();
+			StringBuilder meta = new StringBuilder();
+			for (int i = 0; i < pairs; i++) {
+				StringBuilder buff = ((i % 2) == 0) ? listable : meta;
+				if (buff.length() > 0) {
+					buff.append(", ");
+				}
+				buff.append("name-").append(i).append("=value    with   spaces ").append(i);
+			}
+			headers.put("x-emc-listable-meta", listable.toString());
+			headers.put("x-emc-meta", meta.toString());
+
+			assertSameSignature("POST", headers, new URL("http://localhost/rest/objects"));
+		}
+	}
+
+	@Test
+	public void testTurkishLocale() throws Exception {
+		Locale locale = Locale.getDefault();
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+
+			Map<String, String> headers = baseHeaders();
+			headers.put("Content-Type", "IMAGE/TIFF");
+			assertSameSignature("GET", headers, new URL("http://localhost/REST/OBJECTS/ID"));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void testRandomCorpus() throws Exception {
+		Random random = new Random(20120504L);
+
+		for (int n = 0; n < 2000; n++) {
+			Map<String, String> headers = baseHeaders();
+			if (random.nextBoolean()) {
+				headers.put("Content-Type", randomValue(random, 3));
+			}
+			if (random.nextInt(4) == 0) {
+				headers.put(random.nextBoolean() ? "Range" : "Content-Range", "Bytes=" + random.nextInt(1000) + "-");
+			}
+			int emcHeaders = random.nextInt(12);
+			for (int i = 0; i < emcHeaders; i++) {
+				headers.put("x-emc-" + randomName(random), randomValue(random, random.nextInt(60)));
+			}
+			String query = QUERIES[random.nextInt(QUERIES.length)];
+			String path = PATHS[random.nextInt(PATHS.length)];
+			URL url = new URL("http://localhost" + path + ((query != null) ? "?" + query : ""));
+
+			assertSameSignature(METHODS[random.nextInt(METHODS.length)], headers, url);
+		}
+	}
+
+	private static Map<String, String> baseHeaders() {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("Date", DATE);
+		headers.put("x-emc-uid", "userid");
+		return headers;
+	}
+
+	private static String randomName(Random random) {
+		StringBuilder name = new StringBuilder();
+		int length = 1 + random.nextInt(12);
+		for (int i = 0; i < length; i++) {
+			char c = (char) ('a' + random.nextInt(26));
+			name.append(random.nextInt(5) == 0 ? Character.toUpperCase(c) : c);
+		}
+		return name.toString();
+	}
+
+	private static String randomValue(Random random, int fragments) {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < fragments; i++) {
+			value.append(VALUE_FRAGMENTS[random.nextInt(VALUE_FRAGMENTS.length)]);
+		}
+		return value.toString();
+	}
+
+	private static void assertSameSignature(String method, Map<String, String> headers, URL url) throws Exception {
+		HmacSigner signer = HmacSigner.forSecret(TestAtmosRequest.testSecret);
+		String expected = legacyCanonicalize(method, headers, url);
+
+		// compare the encoded bytes, unpaired surrogates are encoded as '?'
+		assertArrayEquals(expected.getBytes("UTF-8"), CanonicalRequest.canonicalize(method, headers, url).getBytes("UTF-8"));
+		assertEquals(TestHmacSigner.referenceSignature(TestAtmosRequest.testSecret, expected),
+				CanonicalRequest.sign(signer, method, headers, url));
+	}
+
+	/**
+	 * The canonical form as it was originally built by <code>AtmosRequest.signRequest</code>.
+	 */
+	private static String legacyCanonicalize(String method, Map<String, String> headers, URL url) throws Exception {
+		StringBuilder buff = new StringBuilder();
+
+		buff.append(method).append("\n");
+		if (headers.containsKey("Content-Type")) {
+			buff.append(headers.get("Content-Type").toLowerCase());
+		}
+		buff.append("\n");
+		if (headers.containsKey("Range")) {
+			buff.append(headers.get("Range"));
+		} else if (headers.containsKey("Content-Range")) {
+			buff.append(headers.get("Content-Range"));
+		}
+		buff.append("\n");
+		buff.append(headers.get("Date")).append("\n");
+		buff.append(URLDecoder.decode(url.getPath(), "UTF-8").toLowerCase());
+		if (url.getQuery() != null) {
+			buff.append("?").append(url.getQuery());
+		}
+		buff.append("\n");
+
+		SortedSet<String> keys = new TreeSet<String>();
+		Map<String, String> xEmcHeaders = new HashMap<String, String>();
+		for (String key : headers.keySet()) {
+			if (key.indexOf("x-emc") == 0) {
+				String lowerKey = key.toLowerCase();
+				keys.add(lowerKey);
+				xEmcHeaders.put(lowerKey, headers.get(key).replace("\n", ""));
+			}
+		}
+		int initial = buff.length();
+		for (String key : keys) {
+			if (buff.length() > initial) {
+				buff.append("\n");
+			}
+			buff.append(key).append(':').append(legacyNormalizeSpace(xEmcHeaders.get(key)));
+		}
+		return buff.toString();
+	}
+
+	private static String legacyNormalizeSpace(String str) {
+		StringBuilder buff = new StringBuilder(str);
+		int i = 0;
+		while (i < buff.length()) {
+			if ((buff.charAt(i) == ' ') && (i + 1 < buff.length())) {
+				if (buff.charAt(i + 1) == ' ') {
+					buff.deleteCharAt(i);
+				} else {
+					i++;
+				}
+			} else {
+				i++;
+			}
+		}
+		return buff.toString().trim();
+	}
+}
@@ -0,0 +1,162 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.jpoetker.objstore.ManualTimeSource;
+import org.jpoetker.objstore.atmos.AtmosObjectStore.CircuitState;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCircuitBreaker {
+	private static final Endpoint ENDPOINT = new Endpoint("node1", 80);
+
+	private ManualTimeSource time;
+	private List<String> events;
+	private CircuitBreaker breaker;
+
+	@Before
+	public void setUp() throws Exception {
+		time = new ManualTimeSource();
+		events = new ArrayList<String>();
+		List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+		listeners.add(new CircuitBreakerListener() {
+			@Override
+			public void stateChanged(Endpoint endpoint, CircuitState from, CircuitState to) {
+				events.add(endpoint + " " + from + " " + to);
+			}
+		});
+		breaker = new CircuitBreaker(ENDPOINT, 4, 50, 100, 1000, 10000, time, listeners);
+	}
+
+	@Test
+	public void testOpensOnFailureRateAndFailsFast() throws Exception {
+		send(HttpStatus.SC_OK, 0);
+		send(HttpStatus.SC_OK, 0);
+		send(HttpStatus.SC_OK, 0);
+		sendFailing(new SocketTimeoutException("Read timed out"));
+		assertThat(breaker.getState(), is(CircuitState.CLOSED));
+
+		send(HttpStatus.SC_SERVICE_UNAVAILABLE, 0);
+		assertThat(breaker.getState(), is(CircuitState.OPEN));
+		assertThat(events, is(Collections.singletonList("node1:80 CLOSED OPEN")));
+
+		try {
+			send(HttpStatus.SC_OK, 0);
+			fail("Expected the open breaker to fail the request");
+		} catch (CircuitOpenException e) {
+			assertThat(e.getEndpoint(), is(ENDPOINT));
+		}
+	}
+
+	@Test
+	public void testOpensOnSlowCallRate() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			send(HttpStatus.SC_OK, 2000);
+		}
+		assertThat(breaker.getState(), is(CircuitState.CLOSED));
+		send(HttpStatus.SC_OK, 2000);
+		assertThat(breaker.getState(), is(CircuitState.OPEN));
+	}
+
+	@Test
+	public void testSlowUploadsAreNotSlowCalls() throws Exception {
+		HttpPut upload = new HttpPut("http://node1/rest/objects/1");
+		upload.setEntity(new ByteArrayEntity(new byte[8 * 1024 * 1024]));
+		for (int i = 0; i < 8; i++) {
+			send(HttpStatus.SC_OK, 2000, upload);
+		}
+		assertThat(breaker.getState(), is(CircuitState.CLOSED));
+	}
+
+	@Test
+	public void testHalfOpenTrialsCloseTheBreaker() throws Exception {
+		open();
+		time.nanos += TimeUnit.SECONDS.toNanos(10);
+		for (int i = 0; i < CircuitBreaker.HALF_OPEN_CALLS; i++) {
+			send(HttpStatus.SC_OK, 0);
+		}
+		assertThat(breaker.getState(), is(CircuitState.CLOSED));
+		assertThat(events.subList(1, events.size()), is(Arrays.asList("node1:80 OPEN HALF_OPEN", "node1:80 HALF_OPEN CLOSED")));
+
+		// the window starts afresh
+		send(HttpStatus.SC_INTERNAL_SERVER_ERROR, 0);
+		send(HttpStatus.SC_INTERNAL_SERVER_ERROR, 0);
+		assertThat(breaker.getState(), is(CircuitState.CLOSED));
+	}
+
+	@Test
+	public void testFailedTrialReopensTheBreaker() throws Exception {
+		open();
+		time.nanos += TimeUnit.SECONDS.toNanos(10);
+		long first = breaker.acquire();
+		long second = breaker.acquire();
+		long third = breaker.acquire();
+		try {
+			breaker.acquire();
+			fail("Expected only the trial requests through");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+		breaker.release(third);
+		breaker.record(first, (byte) 0);
+		breaker.record(second, (byte) 1);
+		assertThat(breaker.getState(), is(CircuitState.OPEN));
+
+		// a trial that started before the breaker opened again is ignored
+		breaker.record(third, (byte) 0);
+		assertThat(breaker.getState(), is(CircuitState.OPEN));
+	}
+
+	private void open() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			send(HttpStatus.SC_INTERNAL_SERVER_ERROR, 0);
+		}
+		assertThat(breaker.getState(), is(CircuitState.OPEN));
+	}
+
+	private HttpResponse send(int status, long latencyMillis) throws IOException {
+		return send(status, latencyMillis, new HttpGet("http://node1/rest/objects/1"));
+	}
+
+	private HttpResponse send(final int status, final long latencyMillis, HttpUriRequest request) throws IOException {
+		return breaker.execute(new RequestSender() {
+			@Override
+			public HttpResponse send(HttpUriRequest request) {
+				time.nanos += TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+				return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "Status " + status);
+			}
+		}, request);
+	}
+
+	private void sendFailing(final IOException failure) {
+		try {
+			breaker.execute(new RequestSender() {
+				@Override
+				public HttpResponse send(HttpUriRequest request) throws IOException {
+					throw failure;
+				}
+			}, new HttpGet("http://node1/rest/objects/1"));
+			fail("Expected the failure");
+		} catch (IOException e) {
+			assertThat(e, sameInstance((Exception) failure));
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.jpoetker.objstore.ManualTimeSource;
+import org.jpoetker.objstore.TimeSource;
+import org.junit.Test;
+
+public class TestConcurrencyLimiter {
+	private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+	@Test
+	public void testLimitGrowsWhileFastAndInUse() throws Exception {
+		ManualTimeSource time = new ManualTimeSource();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 4, 0, time);
+		for (int i = 0; i < 100; i++) {
+			time.nanos += RTT;
+			long first = limiter.acquire();
+			long second = limiter.acquire();
+			time.nanos += RTT;
+			limiter.release(first, true, false);
+			limiter.release(second, true, false);
+		}
+		assertThat(limiter.getLimit(), is(4));
+		assertThat(limiter.getInFlight(), is(0));
+	}
+
+	@Test
+	public void testLimitShrinksOncePerWindow() throws Exception {
+		ManualTimeSource time = new ManualTimeSource();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 20, 0, time);
+		time.nanos += RTT;
+		long[] starts = new long[10];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = limiter.acquire();
+		}
+		time.nanos += RTT;
+		for (long start : starts) {
+			limiter.release(start, true, true);
+		}
+		assertThat(limiter.getLimit(), is(18));
+
+		time.nanos += RTT;
+		limiter.release(limiter.acquire(), true, true);
+		assertThat(limiter.getLimit(), is(16));
+	}
+
+	@Test
+	public void testSlowResponsesShrinkTheLimit() throws Exception {
+		ManualTimeSource time = new ManualTimeSource();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10, 0, time);
+		time.nanos += RTT;
+		long start = limiter.acquire();
+		time.nanos += RTT;
+		limiter.release(start, true, false);
+		assertThat(limiter.getLimit(), is(10));
+
+		start = limiter.acquire();
+		time.nanos += 3 * RTT;
+		limiter.release(start, true, false);
+		assertThat(limiter.getLimit(), is(9));
+	}
+
+	@Test
+	public void testUploadsAreNotTimed() throws Exception {
+		final ManualTimeSource time = new ManualTimeSource();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10, 0, time);
+		time.nanos += RTT;
+		long start = limiter.acquire();
+		time.nanos += RTT;
+		limiter.release(start, true, false);
+
+		HttpPut upload = new HttpPut("http://localhost/rest/objects/1");
+		upload.setEntity(new ByteArrayEntity(new byte[8 * 1024 * 1024]));
+		for (int i = 0; i < 10; i++) {
+			time.nanos += RTT;
+			limiter.execute(new RequestSender() {
+				@Override
+				public HttpResponse send(HttpUriRequest request) {
+					time.nanos += 100 * RTT;
+					return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+				}
+			}, upload);
+		}
+		assertThat(limiter.getLimit(), is(10));
+	}
+
+	@Test
+	public void testRequestsOverTheLimitWaitThenFail() throws Exception {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 5000, TimeSource.SYSTEM);
+		final long held = limiter.acquire();
+
+		final CountDownLatch waiting = new CountDownLatch(1);
+		final AtomicReference<HttpResponse> result = new AtomicReference<HttpResponse>();
+		Thread queued = new Thread() {
+			@Override
+			public void run() {
+				try {
+					waiting.countDown();
+					result.set(limiter.execute(new RequestSender() {
+						@Override
+						public HttpResponse send(HttpUriRequest request) {
+							return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+						}
+					}, new HttpGet("http://localhost/rest/objects/1")));
+				} catch (Exception e) {
+					// the assertion below fails
+				}
+			}
+		};
+		queued.start();
+		waiting.await();
+		Thread.sleep(50);
+		assertThat(result.get(), nullValue());
+		limiter.release(held, false, false);
+		queued.join(5000);
+		assertThat(result.get().getStatusLine().getStatusCode(), is(HttpStatus.SC_OK));
+
+		ConcurrencyLimiter rejecting = new ConcurrencyLimiter(1, 1, 0, TimeSource.SYSTEM);
+		rejecting.acquire();
+		try {
+			rejecting.acquire();
+			fail("Expected the request over the limit to be rejected");
+		} catch (ConcurrencyLimitException e) {
+			assertThat(rejecting.getInFlight(), is(1));
+		}
+	}
+
+	@Test
+	public void testServerErrorsCountAsDropped() throws Exception {
+		ManualTimeSource time = new ManualTimeSource();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10, 0, time);
+		time.nanos += RTT;
+		HttpResponse response = limiter.execute(new RequestSender() {
+			@Override
+			public HttpResponse send(HttpUriRequest request) {
+				return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+			}
+		}, new HttpGet("http://localhost/rest/objects/1"));
+
+		assertThat(response.getStatusLine().getStatusCode(), is(HttpStatus.SC_SERVICE_UNAVAILABLE));
+		assertThat(limiter.getLimit(), is(9));
+		assertThat(limiter.getInFlight(), is(0));
+	}
+}
@@ -0,0 +1,55 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.ManualTimeSource;
+import org.jpoetker.objstore.atmos.auth.SimpleAuthenticationCredentialProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDateHeaderClock {
+	private ManualTimeSource timeSource;
+	private DateHeaderClock clock;
+	
+	@Before
+	public void setUp() throws Exception {
+		timeSource = new ManualTimeSource(1212683899000L);
+		clock = new DateHeaderClock(timeSource);
+	}
+	
+	@Test
+	public void testFormat() throws Exception {
+		assertThat(clock.getDateHeader(), is("Thu, 5 Jun 2008 16:38:19 GMT"));
+		
+		timeSource.nanos = 0;
+		assertThat(clock.getDateHeader(), is("Thu, 1 Jan 1970 00:00:00 GMT"));
+		
+		timeSource.nanos = TimeUnit.MILLISECONDS.toNanos(-1);
+		assertThat(clock.getDateHeader(), is("Wed, 31 Dec 1969 23:59:59 GMT"));
+	}
+	
+	@Test
+	public void testCachedWithinTheSameSecond() throws Exception {
+		String first = clock.getDateHeader();
+		
+		timeSource.nanos += TimeUnit.MILLISECONDS.toNanos(999);
+		assertThat(clock.getDateHeader(), sameInstance(first));
+		
+		timeSource.nanos += TimeUnit.MILLISECONDS.toNanos(1);
+		assertThat(clock.getDateHeader(), is("Thu, 5 Jun 2008 16:38:20 GMT"));
+	}
+	
+	@Test
+	public void testRequestUsesClock() throws Exception {
+		AtmosRequest request = new AtmosRequest(new URL("http://localhost/rest/objects"), 
+				new SimpleAuthenticationCredentialProvider("userid", TestAtmosRequest.testSecret));
+		request.setDateHeaderClock(clock);
+		request.signRequest("GET");
+		
+		assertThat(request.getHeaders().get("Date"), is("Thu, 5 Jun 2008 16:38:19 GMT"));
+	}
+}
@@ -0,0 +1,137 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.nio.ContentEncoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Uploads files with <code>AtmosObjectStore</code> and <code>AtmosAsyncObjectStore</code>
+ * against the in-process <code>AtmosSimulator</code>.
+ */
+public class TestFileUpload extends SimulatorTestBase {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AtmosAsyncObjectStore asyncObjectStore;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		asyncObjectStore = new AtmosAsyncObjectStore(simulator.getHost(), simulator.getPort(), UID, TestAtmosRequest.testSecret);
+	}
+
+	@After
+	@Override
+	public void tearDown() throws Exception {
+		asyncObjectStore.close();
+		super.tearDown();
+	}
+
+	@Test
+	public void testCreateAndUpdateFromFile() throws Exception {
+		byte[] content = randomBytes(9 * 1024 * 1024 + 3);
+		File file = write(content);
+
+		String id = objectStore.createObject(file.toPath(), "application/x-test");
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+
+		byte[] updated = randomBytes(1000);
+		objectStore.updateObject(id, write(updated).toPath(), null);
+		assertThat(Arrays.equals(simulator.getObjectContent(id), updated), is(true));
+	}
+
+	@Test
+	public void testMissingFileFails() throws Exception {
+		try {
+			objectStore.createObject(folder.getRoot().toPath().resolve("missing"), null);
+			fail("Expected the file to be missing");
+		} catch (AtmosStorageException e) {
+			assertThat(simulator.getRequestCount(), is(0L));
+		}
+	}
+
+	@Test
+	public void testAsyncCreateAndUpdateFromFile() throws Exception {
+		byte[] content = randomBytes(3 * 1024 * 1024 + 11);
+		File file = write(content);
+
+		String id = asyncObjectStore.createObject(file.toPath(), null, null, null).get(30, TimeUnit.SECONDS);
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+
+		byte[] updated = randomBytes(1);
+		asyncObjectStore.updateObject(id, write(updated).toPath(), null, null, null).get(30, TimeUnit.SECONDS);
+		assertThat(Arrays.equals(simulator.getObjectContent(id), updated), is(true));
+	}
+
+	@Test
+	public void testProducerCopiesThroughBufferWithoutFileEncoder() throws Exception {
+		byte[] content = randomBytes(600 * 1024 + 7);
+		FileRequestProducer producer = new FileRequestProducer(new HttpPut(URI.create("https://localhost/rest/objects/x")), write(content).toPath());
+		assertThat(producer.generateRequest().getFirstHeader("Content-Length"), nullValue());
+
+		for (int i = 0; i < 2; i++) {
+			SlowEncoder encoder = new SlowEncoder(10000);
+			while (!encoder.isCompleted()) {
+				producer.produceContent(encoder, null);
+			}
+			assertThat(Arrays.equals(encoder.out.toByteArray(), content), is(true));
+			producer.resetRequest();
+		}
+		producer.close();
+	}
+
+	private File write(byte[] content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	/**
+	 * Accepts at most <code>limit</code> bytes per write, like a socket with a small send buffer.
+	 */
+	private static class SlowEncoder implements ContentEncoder {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final int limit;
+		private boolean completed;
+
+		SlowEncoder(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int count = Math.min(limit, src.remaining());
+			byte[] bytes = new byte[count];
+			src.get(bytes);
+			out.write(bytes, 0, count);
+			return count;
+		}
+
+		@Override
+		public void complete() {
+			completed = true;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return completed;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.jpoetker.objstore.ManualTimeSource;
+import org.jpoetker.objstore.TimeSource;
+import org.jpoetker.objstore.atmos.auth.SimpleAuthenticationCredentialProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHedger {
+	private ExecutorService executor;
+	private AtmosRequest request;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newCachedThreadPool();
+		request = new AtmosRequest(new URL("http://localhost/rest/objects/1"), new SimpleAuthenticationCredentialProvider("uid", TestAtmosRequest.testSecret));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testDelayIsPercentileOfLatencies() throws Exception {
+		final ManualTimeSource time = new ManualTimeSource();
+		Hedger hedger = new Hedger(95, 0, executor, time);
+		for (int i = 1; i <= 100; i++) {
+			final long latency = TimeUnit.MILLISECONDS.toNanos(i);
+			hedger.execute(request, new RequestSender() {
+				@Override
+				public HttpResponse send(HttpUriRequest httpRequest) {
+					time.nanos += latency;
+					return ok();
+				}
+			});
+			if (i < 32) {
+				assertThat(hedger.getDelayNanos(), is(-1L));
+			}
+		}
+		// recomputed after 32 and 96 samples
+		assertThat(hedger.getDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(92)));
+		assertThat(hedger.getHedgeCount(), is(0L));
+	}
+
+	@Test
+	public void testSlowRequestIsHedged() throws Exception {
+		Hedger hedger = warmedUp(100);
+		final AtomicInteger sent = new AtomicInteger();
+		final HttpUriRequest[] requests = new HttpUriRequest[2];
+
+		long start = System.nanoTime();
+		HttpResponse response = hedger.execute(request, new RequestSender() {
+			@Override
+			public HttpResponse send(HttpUriRequest httpRequest) throws IOException {
+				int attempt = sent.getAndIncrement();
+				requests[attempt] = httpRequest;
+				if (attempt == 0) {
+					sleep(2000);
+					return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "slow");
+				}
+				return ok();
+			}
+		});
+
+		assertThat(response.getStatusLine().getStatusCode(), is(HttpStatus.SC_OK));
+		assertThat(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), is(true));
+		assertThat(hedger.getHedgeCount(), is(1L));
+		assertThat(requests[0].isAborted(), is(true));
+		assertThat(requests[1].isAborted(), is(false));
+	}
+
+	@Test
+	public void testBudgetCapsHedges() throws Exception {
+		Hedger hedger = warmedUp(0);
+
+		long start = System.nanoTime();
+		HttpResponse response = hedger.execute(request, new RequestSender() {
+			@Override
+			public HttpResponse send(HttpUriRequest httpRequest) throws IOException {
+				sleep(300);
+				return ok();
+			}
+		});
+
+		assertThat(response.getStatusLine().getStatusCode(), is(HttpStatus.SC_OK));
+		assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300), is(true));
+		assertThat(hedger.getHedgeCount(), is(0L));
+	}
+
+	@Test
+	public void testBusyExecutorSendsOnCallersThreadWithoutCopy() throws Exception {
+		executor.shutdownNow();
+		executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new SynchronousQueue<Runnable>());
+		Hedger hedger = warmedUp(100);
+		final AtomicInteger sent = new AtomicInteger();
+
+		// the primary takes the only thread, so the copy cannot be sent
+		HttpResponse response = hedger.execute(request, new RequestSender() {
+			@Override
+			public HttpResponse send(HttpUriRequest httpRequest) throws IOException {
+				sent.incrementAndGet();
+				sleep(300);
+				return ok();
+			}
+		});
+		assertThat(response.getStatusLine().getStatusCode(), is(HttpStatus.SC_OK));
+		assertThat(sent.get(), is(1));
+		assertThat(hedger.getHedgeCount(), is(0L));
+
+		// a new pool, whose only thread surely takes the task that blocks it
+		executor.shutdownNow();
+		executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new SynchronousQueue<Runnable>());
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		hedger = warmedUp(100);
+		final Thread caller = Thread.currentThread();
+		final Thread[] sender = new Thread[1];
+		hedger.execute(request, new RequestSender() {
+			@Override
+			public HttpResponse send(HttpUriRequest httpRequest) {
+				sender[0] = Thread.currentThread();
+				return ok();
+			}
+		});
+		release.countDown();
+		assertThat(sender[0], is(caller));
+	}
+
+	private Hedger warmedUp(int budgetPercent) throws IOException {
+		Hedger hedger = new Hedger(95, budgetPercent, executor, TimeSource.SYSTEM);
+		for (int i = 0; i < 32; i++) {
+			hedger.execute(request, new RequestSender() {
+				@Override
+				public HttpResponse send(HttpUriRequest httpRequest) {
+					return ok();
+				}
+			});
+		}
+		assertThat(hedger.getDelayNanos() >= 0, is(true));
+		return hedger;
+	}
+
+	private static HttpResponse ok() {
+		return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+	}
+
+	private static void sleep(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+public class TestHmacSigner {
+	private static final String INPUT = "GET\napplication/octet-stream\n\nThu, 05 Jun 2008 16:38:19 GMT\n/rest/objects\nx-emc-uid:userid";
+
+	@Test
+	public void testSignatureMatchesFreshMac() throws Exception {
+		HmacSigner signer = HmacSigner.forSecret(TestAtmosRequest.testSecret);
+
+		assertEquals(referenceSignature(TestAtmosRequest.testSecret, INPUT), signer.sign(INPUT));
+		// the second signature reuses the pooled Mac
+		assertEquals(referenceSignature(TestAtmosRequest.testSecret, INPUT + "\n"), signer.sign(INPUT + "\n"));
+		assertEquals(referenceSignature(TestAtmosRequest.testSecret, INPUT), signer.sign(INPUT));
+	}
+
+	@Test
+	public void testMacsAreReusedAcrossThreads() throws Exception {
+		final HmacSigner signer = HmacSigner.forSecret("cG9vbGVk");
+		final Mac[] borrowed = new Mac[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					borrowed[0] = signer.borrowMac();
+					// left half fed, the pool must reset it
+					borrowed[0].update((byte) 1);
+					signer.returnMac(borrowed[0]);
+				} catch (Exception e) {
+					// the assertion below fails
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+
+		Mac mac = signer.borrowMac();
+		assertThat(mac, sameInstance(borrowed[0]));
+		signer.returnMac(mac);
+		assertEquals(referenceSignature("cG9vbGVk", INPUT), signer.sign(INPUT));
+	}
+
+	@Test
+	public void testSignersAreCachedBySecret() throws Exception {
+		assertThat(HmacSigner.forSecret(TestAtmosRequest.testSecret), sameInstance(HmacSigner.forSecret(TestAtmosRequest.testSecret)));
+		assertThat(HmacSigner.forSecret(TestAtmosRequest.testSecret), not(sameInstance(HmacSigner.forSecret("c2VjcmV0"))));
+	}
+
+	@Test
+	public void testCacheDropsSignersOneAtATime() throws Exception {
+		HmacSigner signer = HmacSigner.forSecret(TestAtmosRequest.testSecret);
+		for (int i = 0; i < 2000; i++) {
+			HmacSigner.forSecret(Base64.encodeBase64String(("tenant" + i).getBytes("UTF-8")));
+			assertThat(HmacSigner.cachedSigners() <= 1024, is(true));
+		}
+		assertThat(HmacSigner.cachedSigners(), is(1024));
+		assertEquals(referenceSignature(TestAtmosRequest.testSecret, INPUT), signer.sign(INPUT));
+	}
+
+	@Test
+	public void testConcurrentSigning() throws Exception {
+		final HmacSigner signer = HmacSigner.forSecret(TestAtmosRequest.testSecret);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new LinkedList<Future<String>>();
+			for (int i = 0; i < 200; i++) {
+				final String input = INPUT + i;
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return signer.sign(input);
+					}
+				}));
+			}
+			int i = 0;
+			for (Future<String> result : results) {
+				assertEquals(referenceSignature(TestAtmosRequest.testSecret, INPUT + i), result.get());
+				i++;
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static String referenceSignature(String secret, String input) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(Base64.decodeBase64(secret.getBytes("UTF-8")), "HmacSHA1"));
+		return new String(Base64.encodeBase64(mac.doFinal(input.getBytes("UTF-8"))), "UTF-8");
+	}
+}
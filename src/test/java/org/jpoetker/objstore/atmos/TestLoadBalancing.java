@@ -0,0 +1,201 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jpoetker.objstore.ManualTimeSource;
+import org.jpoetker.objstore.atmos.AtmosObjectStore.CircuitState;
+import org.jpoetker.objstore.atmos.simulator.AtmosSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Spreads requests of <code>AtmosObjectStore</code> over several in-process
+ * <code>AtmosSimulator</code> instances. The simulators do not share objects, so only
+ * object creation is used, and where an object ends up tells which node got the request.
+ */
+public class TestLoadBalancing {
+	private static final String UID = "testuid";
+	private static final int NODES = 3;
+
+	private List<AtmosSimulator> simulators = new ArrayList<AtmosSimulator>();
+	private AtmosObjectStore objectStore;
+
+	@Before
+	public void setUp() throws Exception {
+		List<Endpoint> endpoints = new ArrayList<Endpoint>();
+		for (int i = 0; i < NODES; i++) {
+			AtmosSimulator simulator = new AtmosSimulator();
+			simulator.addUser(UID, TestAtmosRequest.testSecret);
+			simulator.start();
+			simulators.add(simulator);
+			endpoints.add(new Endpoint(simulator.getHost(), simulator.getPort()));
+		}
+
+		objectStore = new AtmosObjectStore(simulators.get(0).getHost(), simulators.get(0).getPort(), "http", UID, TestAtmosRequest.testSecret);
+		objectStore.setEndpoints(endpoints);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		objectStore.close();
+		for (AtmosSimulator simulator : simulators) {
+			simulator.stop();
+		}
+	}
+
+	@Test
+	public void testSpreadsRequestsEvenly() throws Exception {
+		for (int i = 0; i < 30; i++) {
+			create();
+		}
+		for (AtmosSimulator simulator : simulators) {
+			assertThat(simulator.getObjectCount(), is(10));
+		}
+	}
+
+	@Test
+	public void testLatencyWeightedAvoidsSlowNode() throws Exception {
+		objectStore.setBalancingPolicy(AtmosObjectStore.BalancingPolicy.LATENCY_WEIGHTED);
+		simulators.get(0).setLatency(100, 0);
+
+		for (int i = 0; i < 30; i++) {
+			create();
+		}
+		assertThat(simulators.get(0).getObjectCount(), is(1));
+		assertThat(simulators.get(1).getObjectCount() + simulators.get(2).getObjectCount(), is(29));
+	}
+
+	@Test
+	public void testEjectsAndReadmitsFailingNode() throws Exception {
+		ManualTimeSource time = new ManualTimeSource();
+		objectStore.setTimeSource(time);
+		objectStore.setMaxNodeFailures(2);
+		objectStore.setNodeEjectionMillis(200);
+		AtmosSimulator failing = simulators.get(1);
+		failing.setErrorRate(1.0);
+
+		int failures = 0;
+		for (int i = 0; i < 30; i++) {
+			try {
+				create();
+			} catch (AtmosStorageException e) {
+				failures++;
+			}
+		}
+		assertThat(failures, is(2));
+		assertThat(failing.getInjectedErrorCount(), is(2L));
+		assertThat(objectStore.getLoadBalancer().getNodes()[1].isEjected(), is(true));
+
+		failing.setErrorRate(0);
+		time.nanos += TimeUnit.MILLISECONDS.toNanos(250);
+		for (int i = 0; i < 3; i++) {
+			create();
+		}
+		assertThat(failing.getObjectCount() > 0, is(true));
+		assertThat(objectStore.getLoadBalancer().getNodes()[1].isEjected(), is(false));
+	}
+
+	@Test
+	public void testConnectFailureIsTriedOnAnotherNode() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int closedPort = socket.getLocalPort();
+		socket.close();
+
+		List<Endpoint> endpoints = new ArrayList<Endpoint>(objectStore.getEndpoints());
+		endpoints.add(0, new Endpoint(simulators.get(0).getHost(), closedPort));
+		objectStore.setEndpoints(endpoints);
+
+		for (int i = 0; i < 8; i++) {
+			create();
+		}
+		int created = 0;
+		for (AtmosSimulator simulator : simulators) {
+			created += simulator.getObjectCount();
+		}
+		assertThat(created, is(8));
+		assertThat(objectStore.getLoadBalancer().getNodes()[0].isEjected(), is(true));
+	}
+
+	@Test
+	public void testConnectFailureIsNotTriedOnTheSameNodeAgain() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int closedPort = socket.getLocalPort();
+		socket.close();
+
+		// the node that never answers keeps the lowest score and is never ejected
+		List<Endpoint> endpoints = new ArrayList<Endpoint>();
+		endpoints.add(new Endpoint(simulators.get(0).getHost(), closedPort));
+		endpoints.add(new Endpoint(simulators.get(0).getHost(), simulators.get(0).getPort()));
+		objectStore.setEndpoints(endpoints);
+		objectStore.setBalancingPolicy(AtmosObjectStore.BalancingPolicy.LATENCY_WEIGHTED);
+		objectStore.setMaxNodeFailures(100);
+
+		for (int i = 0; i < 5; i++) {
+			create();
+		}
+		assertThat(simulators.get(0).getObjectCount(), is(5));
+		assertThat(objectStore.getLoadBalancer().getNodes()[0].isEjected(), is(false));
+	}
+
+	@Test
+	public void testRequestTurnedAwayByOpenCircuitGoesToAnotherNode() throws Exception {
+		// a node that has not answered yet scores lowest, so the open node is picked first
+		objectStore.setBalancingPolicy(AtmosObjectStore.BalancingPolicy.LATENCY_WEIGHTED);
+		objectStore.setMaxNodeFailures(100);
+		objectStore.setCircuitBreaking(true);
+		objectStore.setCircuitWindowSize(4);
+		AtmosSimulator failing = simulators.get(1);
+		Endpoint failingEndpoint = new Endpoint(failing.getHost(), failing.getPort());
+		failing.setErrorRate(1.0);
+
+		for (int i = 0; (i < 20) && (objectStore.getCircuitStates().get(failingEndpoint) != CircuitState.OPEN); i++) {
+			try {
+				create();
+			} catch (AtmosStorageException e) {
+				// injected
+			}
+		}
+		assertThat(objectStore.getCircuitStates().get(failingEndpoint), is(CircuitState.OPEN));
+
+		long requests = failing.getRequestCount();
+		int created = simulators.get(0).getObjectCount() + simulators.get(2).getObjectCount();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						for (int j = 0; j < 10; j++) {
+							create();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(failing.getRequestCount(), is(requests));
+		assertThat(simulators.get(0).getObjectCount() + simulators.get(2).getObjectCount(), is(created + 80));
+	}
+
+	private void create() {
+		objectStore.createObject(new ByteArrayInputStream(new byte[] {1}), 1, null);
+	}
+}
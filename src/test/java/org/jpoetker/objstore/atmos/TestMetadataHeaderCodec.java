@@ -0,0 +1,121 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jpoetker.objstore.Grant;
+import org.jpoetker.objstore.Grantee;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.Permission;
+import org.junit.Test;
+
+/**
+ * Round trips randomly generated metadata through the header codec, and checks the
+ * encoding of random ACLs. Each case is generated from its own seed, which is reported
+ * when it fails.
+ */
+public class TestMetadataHeaderCodec {
+	private static final int CASES = 500;
+	private static final String NAME_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.";
+	private static final String VALUE_CHARS = NAME_CHARS + " =:/;\"'\u00e9\u4e2d";
+
+	@Test
+	public void testMetadataRoundTrip() throws Exception {
+		for (int seed = 0; seed < CASES; seed++) {
+			Random random = new Random(seed);
+			List<Metadata> metadata = new ArrayList<Metadata>();
+			int count = random.nextInt(20);
+			for (int i = 0; i < count; i++) {
+				metadata.add(new Metadata(randomString(random, NAME_CHARS, 1, 16), randomString(random, VALUE_CHARS, 0, 40), random.nextBoolean()));
+			}
+
+			List<Metadata> decoded = new ArrayList<Metadata>();
+			for (boolean listable : new boolean[] {true, false}) {
+				String header = MetadataHeaderCodec.encodeMetadata(metadata, listable);
+				if (header != null) {
+					MetadataHeaderCodec.decodeMetadata(header, listable, decoded);
+				}
+			}
+			assertThat("seed " + seed, decoded.size(), is(metadata.size()));
+			assertThat("seed " + seed, new LinkedHashSet<Metadata>(decoded), is(new LinkedHashSet<Metadata>(metadata)));
+		}
+	}
+
+	@Test
+	public void testEncodingMatchesKeyValueStrings() throws Exception {
+		for (int seed = 0; seed < CASES; seed++) {
+			Random random = new Random(seed);
+			List<Metadata> metadata = new ArrayList<Metadata>();
+			StringBuilder expected = new StringBuilder();
+			int count = 1 + random.nextInt(10);
+			for (int i = 0; i < count; i++) {
+				Metadata meta = new Metadata(randomString(random, NAME_CHARS, 1, 16), randomString(random, VALUE_CHARS + ",\n", 0, 40), false);
+				metadata.add(meta);
+				if (expected.length() > 0) {
+					expected.append(", ");
+				}
+				expected.append(meta.getName()).append('=').append(meta.getValue().replace(",", "").replace("\n", ""));
+				assertThat("seed " + seed, meta.toKeyValueString(), is(meta.getName() + "=" + meta.getValue().replace(",", "").replace("\n", "")));
+			}
+			assertThat("seed " + seed, MetadataHeaderCodec.encodeMetadata(metadata, false), is(expected.toString()));
+			assertThat("seed " + seed, MetadataHeaderCodec.encodeMetadata(metadata, true), nullValue());
+		}
+	}
+
+	@Test
+	public void testDecodingTolerance() throws Exception {
+		List<Metadata> decoded = new ArrayList<Metadata>();
+		MetadataHeaderCodec.decodeMetadata(" a=1 ,, b = x=y,c,", false, decoded);
+
+		assertThat(decoded.size(), is(3));
+		assertThat(decoded.get(0), is(new Metadata("a", "1 ")));
+		assertThat(decoded.get(1), is(new Metadata("b", " x=y")));
+		assertThat(decoded.get(2), is(new Metadata("c", "")));
+
+		decoded.clear();
+		MetadataHeaderCodec.decodeMetadata("", true, decoded);
+		assertThat(decoded.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testAclEncoding() throws Exception {
+		Permission[] permissions = Permission.values();
+		for (int seed = 0; seed < CASES; seed++) {
+			Random random = new Random(seed);
+			Set<Grant> acl = new LinkedHashSet<Grant>();
+			int count = random.nextInt(12);
+			for (int i = 0; i < count; i++) {
+				Grantee.Type type = random.nextBoolean() ? Grantee.Type.USER : Grantee.Type.GROUP;
+				acl.add(new Grant(new Grantee(randomString(random, NAME_CHARS, 1, 20), type), permissions[random.nextInt(permissions.length)]));
+			}
+
+			for (Grantee.Type type : Grantee.Type.values()) {
+				StringBuilder expected = new StringBuilder();
+				for (Grant grant : acl) {
+					if (grant.getGrantee().getType() == type) {
+						if (expected.length() > 0) {
+							expected.append(',');
+						}
+						expected.append(grant.getGrantee().getSubject()).append('=').append(grant.getPermission().name());
+					}
+				}
+				assertThat("seed " + seed, MetadataHeaderCodec.encodeAcl(acl, type), is(expected.toString()));
+			}
+		}
+	}
+
+	private static String randomString(Random random, String chars, int minLength, int maxLength) {
+		int length = minLength + random.nextInt(maxLength - minLength + 1);
+		StringBuilder buff = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			buff.append(chars.charAt(random.nextInt(chars.length())));
+		}
+		return buff.toString();
+	}
+}
@@ -0,0 +1,102 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.jpoetker.objstore.atmos.TestAtmosObjectStoreSimulator.read;
+import static org.jpoetker.objstore.atmos.TestAtmosObjectStoreSimulator.stream;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs ranged reads and the <code>ObjectByteChannel</code> against the in-process
+ * <code>AtmosSimulator</code>.
+ */
+public class TestObjectByteChannel extends SimulatorTestBase {
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		objectStore.setReadAheadSize(1024);
+	}
+
+	@Test
+	public void testReadRange() throws Exception {
+		String id = objectStore.createObject(stream("hello world"), 11, "text/plain");
+
+		assertThat(read(objectStore.readObject(id, 6, 5)), is("world"));
+		assertThat(read(objectStore.readObject(id, 0, 5)), is("hello"));
+		// the range is cut short at the end of the object
+		assertThat(read(objectStore.readObject(id, 6, 100)), is("world"));
+
+		try {
+			objectStore.readObject(id, 11, 1);
+			fail("Expected the range to be unsatisfiable");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getHttpCode(), is(416));
+		}
+	}
+
+	@Test
+	public void testSmallReadsShareTheReadAheadWindow() throws Exception {
+		byte[] content = randomBytes(10000);
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+
+		SeekableByteChannel channel = objectStore.newByteChannel(id);
+		assertThat(channel.size(), is(10000L));
+
+		long requests = simulator.getRequestCount();
+		ByteBuffer header = ByteBuffer.allocate(16);
+		for (int i = 0; i < 64; i++) {
+			header.clear();
+			assertThat(channel.read(header), is(16));
+			assertThat(Arrays.equals(header.array(), Arrays.copyOfRange(content, i * 16, (i + 1) * 16)), is(true));
+		}
+		assertThat(simulator.getRequestCount() - requests, is(1L));
+
+		channel.position(9990);
+		header.clear();
+		assertThat(channel.read(header), is(10));
+		assertThat(channel.position(), is(10000L));
+		header.clear();
+		assertThat(channel.read(header), is(-1));
+		assertThat(simulator.getRequestCount() - requests, is(2L));
+
+		channel.close();
+		try {
+			channel.read(header);
+			fail("Expected the channel to be closed");
+		} catch (ClosedChannelException e) {
+		}
+	}
+
+	@Test
+	public void testLargeReadsBypassTheWindow() throws Exception {
+		byte[] content = randomBytes(10000);
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+
+		SeekableByteChannel channel = objectStore.newByteChannel(id);
+		channel.position(3000);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8000);
+		assertThat(channel.read(buffer), is(7000));
+
+		byte[] read = new byte[7000];
+		buffer.flip();
+		buffer.get(read);
+		assertThat(Arrays.equals(read, Arrays.copyOfRange(content, 3000, 10000)), is(true));
+
+		try {
+			channel.write(ByteBuffer.allocate(1));
+			fail("Expected the channel to be read only");
+		} catch (NonWritableChannelException e) {
+		}
+		channel.close();
+	}
+}
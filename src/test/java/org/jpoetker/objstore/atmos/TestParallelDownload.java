@@ -0,0 +1,118 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jpoetker.objstore.ParallelOptions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs {@link AtmosObjectStore#readObject(String, java.nio.file.Path, ParallelOptions)}
+ * against the in-process <code>AtmosSimulator</code>.
+ */
+public class TestParallelDownload extends SimulatorTestBase {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDownloadsAllRanges() throws Exception {
+		byte[] content = randomBytes(3 * 1024 * 1024 + 17);
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+
+		File target = folder.newFile();
+		// leftovers of a previous, longer file must be truncated
+		Files.write(target.toPath(), new byte[content.length + 1000]);
+
+		long requests = simulator.getRequestCount();
+		long size = objectStore.readObject(id, target.toPath(), new ParallelOptions(256 * 1024, 4));
+
+		assertThat(size, is((long) content.length));
+		assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), content), is(true));
+		// one metadata lookup and 13 ranges
+		assertThat(simulator.getRequestCount() - requests, is(14L));
+	}
+
+	@Test
+	public void testDownloadsOnAGivenExecutor() throws Exception {
+		byte[] content = randomBytes(100000);
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ParallelOptions options = new ParallelOptions(4096, 8);
+			options.setExecutor(executor);
+			File target = folder.newFile();
+			objectStore.readObject(id, target.toPath(), options);
+
+			assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), content), is(true));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRetriesFailedRanges() throws Exception {
+		byte[] content = randomBytes(1024 * 1024);
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+
+		simulator.setSeed(42);
+		simulator.setErrorRate(0.2);
+		ParallelOptions options = new ParallelOptions(16 * 1024, 4);
+		options.setMaxRetries(20);
+		File target = folder.newFile();
+		objectStore.readObject(id, target.toPath(), options);
+
+		assertThat(simulator.getInjectedErrorCount() > 0, is(true));
+		assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), content), is(true));
+	}
+
+	@Test
+	public void testFailsWhenRetriesAreExhausted() throws Exception {
+		byte[] content = randomBytes(1024);
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null);
+
+		simulator.setErrorRate(1.0);
+		ParallelOptions options = new ParallelOptions(256, 2);
+		options.setMaxRetries(1);
+		try {
+			objectStore.readObject(id, folder.newFile().toPath(), options);
+			fail("Expected the download to fail");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getHttpCode(), is(500));
+		}
+		// the size lookup is retried like a part
+		assertThat(simulator.getInjectedErrorCount(), is(2L));
+	}
+
+	@Test
+	public void testContentRangeMustMatchTheRequest() throws Exception {
+		assertThat(ParallelDownload.isRange("bytes 100-199/1000", 100, 100, 1000), is(true));
+		assertThat(ParallelDownload.isRange("Bytes 100-199/*", 100, 100, 1000), is(true));
+		assertThat(ParallelDownload.isRange("bytes 0-199/1000", 100, 100, 1000), is(false));
+		assertThat(ParallelDownload.isRange("bytes 100-149/1000", 100, 100, 1000), is(false));
+		assertThat(ParallelDownload.isRange("bytes 100-199/1200", 100, 100, 1000), is(false));
+		assertThat(ParallelDownload.isRange("bytes 100-199", 100, 100, 1000), is(false));
+		assertThat(ParallelDownload.isRange("items 100-199/1000", 100, 100, 1000), is(false));
+		assertThat(ParallelDownload.isRange(null, 100, 100, 1000), is(false));
+	}
+
+	@Test
+	public void testMissingObjectIsNotRetried() throws Exception {
+		try {
+			objectStore.readObject("4d773b6ca10574f404d773bd3c6d8e04d773c5d5c1b6", folder.newFile().toPath(), new ParallelOptions());
+			fail("Expected the object to be missing");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getHttpCode(), is(404));
+		}
+		assertThat(simulator.getRequestCount(), is(1L));
+	}
+}
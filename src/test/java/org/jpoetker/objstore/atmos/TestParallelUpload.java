@@ -0,0 +1,125 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.jpoetker.objstore.IncompleteUploadException;
+import org.jpoetker.objstore.ParallelOptions;
+import org.junit.Test;
+
+/**
+ * Runs the chunked uploads of <code>AtmosObjectStore</code> against the in-process
+ * <code>AtmosSimulator</code>.
+ */
+public class TestParallelUpload extends SimulatorTestBase {
+	@Test
+	public void testCreateInChunks() throws Exception {
+		byte[] content = randomBytes(2 * 1024 * 1024 + 5);
+
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, "application/x-test", new ParallelOptions(128 * 1024, 4));
+
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+		// one create and 16 ranged updates
+		assertThat(simulator.getRequestCount(), is(17L));
+	}
+
+	@Test
+	public void testCreateSmallerThanAChunk() throws Exception {
+		byte[] content = randomBytes(1000);
+
+		String id = objectStore.createObject(new ByteArrayInputStream(content), content.length, null, new ParallelOptions());
+
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+		assertThat(simulator.getRequestCount(), is(1L));
+	}
+
+	@Test
+	public void testChunksAreRetried() throws Exception {
+		byte[] content = randomBytes(512 * 1024);
+		String id = objectStore.createObject(new ByteArrayInputStream(new byte[1]), 1, null);
+
+		simulator.setSeed(42);
+		simulator.setErrorRate(0.2);
+		ParallelOptions options = new ParallelOptions(16 * 1024, 4);
+		options.setMaxRetries(20);
+		objectStore.updateObject(id, new ByteArrayInputStream(content), 0, content.length, options);
+
+		assertThat(simulator.getInjectedErrorCount() > 0, is(true));
+		assertThat(Arrays.equals(simulator.getObjectContent(id), content), is(true));
+	}
+
+	@Test
+	public void testChunksAreOnlyRetriedByTheTransfer() throws Exception {
+		byte[] content = randomBytes(16 * 1024);
+		String id = objectStore.createObject(new ByteArrayInputStream(new byte[1]), 1, null);
+		objectStore.setRetrying(true);
+		objectStore.setMaxRetries(3);
+		objectStore.setRetryBaseDelayMillis(1);
+
+		simulator.setErrorRate(1.0);
+		ParallelOptions options = new ParallelOptions(16 * 1024, 1);
+		options.setMaxRetries(2);
+		try {
+			objectStore.updateObject(id, new ByteArrayInputStream(content), 0, content.length, options);
+			fail("Expected the upload to fail");
+		} catch (IncompleteUploadException e) {
+			assertThat(e.getResumeOffset(), is(0L));
+		}
+		assertThat(simulator.getInjectedErrorCount(), is(3L));
+	}
+
+	@Test
+	public void testResumeFromTheLastAcknowledgedChunk() throws Exception {
+		byte[] content = randomBytes(1024 * 1024);
+		ParallelOptions options = new ParallelOptions(64 * 1024, 4);
+
+		try {
+			objectStore.createObject(new FailingInputStream(content, 600 * 1024), content.length, null, options);
+			fail("Expected the upload to fail");
+		} catch (IncompleteUploadException e) {
+			long resumeOffset = e.getResumeOffset();
+			assertThat(resumeOffset <= 600 * 1024, is(true));
+			assertThat(resumeOffset % (64 * 1024), is(0L));
+			assertThat(resumeOffset >= 64 * 1024, is(true));
+
+			InputStream rest = new ByteArrayInputStream(content, (int) resumeOffset, content.length - (int) resumeOffset);
+			objectStore.updateObject(e.getObjectId(), rest, resumeOffset, content.length - resumeOffset, options);
+			assertThat(Arrays.equals(simulator.getObjectContent(e.getObjectId()), content), is(true));
+		}
+	}
+
+	/**
+	 * Throws an <code>IOException</code> once <code>failAt</code> bytes have been read.
+	 */
+	private static class FailingInputStream extends InputStream {
+		private final InputStream in;
+		private int remaining;
+
+		FailingInputStream(byte[] content, int failAt) {
+			super();
+			this.in = new ByteArrayInputStream(content);
+			this.remaining = failAt;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) {
+				throw new IOException("Disk read error");
+			}
+			int read = in.read(b, off, Math.min(len, remaining));
+			remaining -= read;
+			return read;
+		}
+	}
+}
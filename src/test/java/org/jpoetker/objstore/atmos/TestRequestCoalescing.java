@@ -0,0 +1,164 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jpoetker.objstore.Metadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads the same object and metadata from many threads at once with
+ * <code>AtmosObjectStore</code> against the in-process <code>AtmosSimulator</code>.
+ */
+public class TestRequestCoalescing extends SimulatorTestBase {
+	private static final int THREADS = 8;
+
+	private ExecutorService executor;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		objectStore.setCoalescing(true);
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	@Override
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		super.tearDown();
+	}
+
+	@Test
+	public void testConcurrentReadsShareOneRequest() throws Exception {
+		byte[] content = randomBytes(100 * 1024);
+		final String id = objectStore.createObject(content, "application/octet-stream");
+		// small enough for the readers behind to be served from the temporary file
+		objectStore.setCoalescingBufferSize(1024);
+		simulator.setLatency(300, 0);
+		long requests = simulator.getRequestCount();
+
+		List<byte[]> results = all(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return read(objectStore.readObject(id));
+			}
+		});
+
+		assertThat(simulator.getRequestCount() - requests, is(1L));
+		for (byte[] result : results) {
+			assertThat(Arrays.equals(result, content), is(true));
+		}
+	}
+
+	@Test
+	public void testConcurrentMetadataReadsShareOneRequest() throws Exception {
+		final String id = objectStore.createObject(new ByteArrayInputStream(new byte[] {1}), 1, null, new Metadata("color", "red"));
+		simulator.setLatency(300, 0);
+		long requests = simulator.getRequestCount();
+
+		List<Collection<Metadata>> results = all(new Callable<Collection<Metadata>>() {
+			@Override
+			public Collection<Metadata> call() throws Exception {
+				return objectStore.getUserMetadata(id);
+			}
+		});
+
+		assertThat(simulator.getRequestCount() - requests, is(1L));
+		results.get(0).iterator().next().setValue("blue");
+		results.get(0).clear();
+		for (Collection<Metadata> result : results.subList(1, results.size())) {
+			assertThat(result, is((Collection<Metadata>) Arrays.asList(new Metadata("color", "red"))));
+		}
+	}
+
+	@Test
+	public void testFailureIsShared() throws Exception {
+		simulator.setLatency(300, 0);
+		long requests = simulator.getRequestCount();
+
+		try {
+			all(new Callable<InputStream>() {
+				@Override
+				public InputStream call() throws Exception {
+					return objectStore.readObject("missing");
+				}
+			});
+			fail("The object does not exist");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(ObjectNotFoundException.class));
+		}
+		assertThat(simulator.getRequestCount() - requests, is(1L));
+	}
+
+	@Test
+	public void testSequentialReadsAreNotShared() throws Exception {
+		byte[] content = randomBytes(10 * 1024);
+		String id = objectStore.createObject(content, "application/octet-stream");
+		objectStore.setCoalescingBufferSize(1024);
+		long requests = simulator.getRequestCount();
+
+		assertThat(Arrays.equals(read(objectStore.readObject(id)), content), is(true));
+		assertThat(Arrays.equals(read(objectStore.readObject(id)), content), is(true));
+		assertThat(simulator.getRequestCount() - requests, is(2L));
+
+		objectStore.setCoalescing(false);
+		assertThat(Arrays.equals(read(objectStore.readObject(id)), content), is(true));
+	}
+
+	/**
+	 * Runs the call on every thread at once and returns the results, throwing the first
+	 * failure.
+	 */
+	private <T> List<T> all(final Callable<T> call) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					start.await();
+					return call.call();
+				}
+			}));
+		}
+		start.countDown();
+
+		List<T> results = new ArrayList<T>();
+		for (Future<T> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	private static byte[] read(InputStream in) throws Exception {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[700];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
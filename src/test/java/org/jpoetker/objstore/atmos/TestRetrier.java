@@ -0,0 +1,134 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class TestRetrier {
+
+	@Test
+	public void testRetriesTransientFailures() throws Exception {
+		Retrier retrier = new Retrier(3, 1, 5, 10);
+		final AtomicInteger attempts = new AtomicInteger();
+
+		AtmosResponse response = retrier.execute(true, new Retrier.Call() {
+			@Override
+			public AtmosResponse execute() throws IOException {
+				switch (attempts.incrementAndGet()) {
+				case 1:
+					throw new SocketTimeoutException("Read timed out");
+				case 2:
+					throw new ServerBusyException("The server is busy", 500, 1040);
+				default:
+					return new AtmosResponse(new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK"));
+				}
+			}
+		});
+
+		assertThat(response.getStatusLine().getStatusCode(), is(HttpStatus.SC_OK));
+		assertThat(attempts.get(), is(3));
+		assertThat(retrier.getRetryCount(), is(2L));
+	}
+
+	@Test
+	public void testGivesUpAfterMaxRetries() throws Exception {
+		Retrier retrier = new Retrier(2, 0, 0, 10);
+		FailingCall call = new FailingCall(new AtmosStorageException("An internal error occurred.", 500, 1001));
+		try {
+			retrier.execute(true, call);
+			fail("Expected the retries to run out");
+		} catch (AtmosStorageException e) {
+			assertThat(e.getAtmosCode(), is(1001));
+		}
+		assertThat(call.attempts, is(3));
+	}
+
+	@Test
+	public void testClientErrorsAreNotRetried() throws Exception {
+		Retrier retrier = new Retrier(3, 0, 0, 10);
+		FailingCall call = new FailingCall(new ObjectNotFoundException("The requested object was not found.", 404, 1003));
+		try {
+			retrier.execute(true, call);
+			fail("Expected the object to be missing");
+		} catch (ObjectNotFoundException e) {
+			// expected
+		}
+		assertThat(call.attempts, is(1));
+	}
+
+	@Test
+	public void testOnlyConnectFailuresOfOtherRequestsAreRetried() throws Exception {
+		Retrier retrier = new Retrier(3, 0, 0, 10);
+
+		FailingCall timeout = new FailingCall(new SocketTimeoutException("Read timed out"));
+		try {
+			retrier.execute(false, timeout);
+			fail("Expected the timeout");
+		} catch (SocketTimeoutException e) {
+			// expected
+		}
+		assertThat(timeout.attempts, is(1));
+
+		FailingCall refused = new FailingCall(new ConnectException("Connection refused"));
+		try {
+			retrier.execute(false, refused);
+			fail("Expected the connection to be refused");
+		} catch (ConnectException e) {
+			// expected
+		}
+		assertThat(refused.attempts, is(4));
+	}
+
+	@Test
+	public void testBudgetStopsRetryStorms() throws Exception {
+		Retrier retrier = new Retrier(3, 0, 0, 0);
+		int attempts = 0;
+		for (int i = 0; i < 6; i++) {
+			FailingCall call = new FailingCall(new ConnectException("Connection refused"));
+			try {
+				retrier.execute(true, call);
+			} catch (ConnectException e) {
+				attempts += call.attempts;
+			}
+		}
+		// ten retries are saved up front, and nothing is added with a budget of 0
+		assertThat(retrier.getRetryCount(), is(10L));
+		assertThat(attempts, is(16));
+	}
+
+	@Test
+	public void testTransientAtmosErrors() throws Exception {
+		assertThat(Retrier.isTransient(new ServerBusyException("busy", 500, 1040)), is(true));
+		assertThat(Retrier.isTransient(new AtmosStorageException("internal", 500, 1001)), is(true));
+		assertThat(Retrier.isTransient(new AtmosStorageException("Bad Gateway", 502)), is(true));
+		assertThat(Retrier.isTransient(new AtmosStorageException("invalid", 400, 1002)), is(false));
+		assertThat(Retrier.isTransient(new AuthenticationException("signature", 403, 1032)), is(false));
+	}
+
+	private static class FailingCall implements Retrier.Call {
+		private final Exception failure;
+		int attempts;
+
+		FailingCall(Exception failure) {
+			this.failure = failure;
+		}
+
+		@Override
+		public AtmosResponse execute() throws IOException {
+			attempts++;
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			throw (RuntimeException) failure;
+		}
+	}
+}
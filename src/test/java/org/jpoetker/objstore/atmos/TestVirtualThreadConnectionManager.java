@@ -0,0 +1,137 @@
+package org.jpoetker.objstore.atmos;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.jpoetker.objstore.atmos.TestAtmosObjectStoreSimulator.read;
+import static org.jpoetker.objstore.atmos.TestAtmosObjectStoreSimulator.stream;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.BasicHttpContext;
+import org.jpoetker.objstore.ExecutorAsyncObjectStore;
+import org.jpoetker.objstore.Metadata;
+import org.jpoetker.objstore.atmos.simulator.AtmosSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs <code>AtmosObjectStore</code> in {@link AtmosObjectStore.ExecutionMode#VIRTUAL_THREADS}
+ * mode against the in-process <code>AtmosSimulator</code>.
+ */
+public class TestVirtualThreadConnectionManager {
+	private static final String UID = "testuid";
+
+	private AtmosSimulator simulator;
+	private AtmosObjectStore objectStore;
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new AtmosSimulator();
+		simulator.addUser(UID, TestAtmosRequest.testSecret);
+		simulator.start();
+
+		objectStore = new AtmosObjectStore(simulator.getHost(), simulator.getPort(), "http", UID, TestAtmosRequest.testSecret);
+		objectStore.setExecutionMode(AtmosObjectStore.ExecutionMode.VIRTUAL_THREADS);
+		objectStore.setMaxConnections(16);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		objectStore.close();
+		simulator.stop();
+	}
+
+	@Test
+	public void testCreateReadUpdateDelete() throws Exception {
+		String id = objectStore.createObject(stream("hello world"), 11, "text/plain");
+		assertThat(read(objectStore.readObject(id)), is("hello world"));
+
+		objectStore.updateObject(id, stream("goodbye"), 7, "text/plain");
+		assertThat(read(objectStore.readObject(id)), is("goodbye"));
+
+		objectStore.deleteObject(id);
+		assertThat(simulator.getObjectCount(), is(0));
+	}
+
+	@Test
+	public void testFanOutSharesTheConnectionPool() throws Exception {
+		String id = objectStore.createObject(stream("data"), 4, null);
+		simulator.setLatency(20, 0);
+
+		ExecutorAsyncObjectStore async = ExecutorAsyncObjectStore.withVirtualThreads(objectStore, 64);
+		try {
+			List<CompletableFuture<Collection<Metadata>>> results = new ArrayList<CompletableFuture<Collection<Metadata>>>();
+			for (int i = 0; i < 400; i++) {
+				results.add(async.getSystemMetadata(id));
+			}
+			for (CompletableFuture<Collection<Metadata>> result : results) {
+				assertThat(result.get(30, TimeUnit.SECONDS).isEmpty(), is(false));
+			}
+		} finally {
+			async.close();
+		}
+	}
+
+	@Test
+	public void testLeasingIsBoundedAndConnectionsAreReused() throws Exception {
+		VirtualThreadConnectionManager cm = new VirtualThreadConnectionManager(2);
+		HttpRoute route = new HttpRoute(new HttpHost(simulator.getHost(), simulator.getPort()));
+
+		HttpClientConnection first = cm.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+		cm.connect(first, route, 1000, new BasicHttpContext());
+		cm.routeComplete(first, route, null);
+		HttpClientConnection second = cm.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+		assertThat(cm.getLeased(), is(2));
+
+		try {
+			cm.requestConnection(route, null).get(50, TimeUnit.MILLISECONDS);
+			fail("Expected the pool to be exhausted");
+		} catch (ConnectionPoolTimeoutException e) {
+		}
+
+		cm.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+		// the second connection was never connected so it is discarded
+		cm.releaseConnection(second, null, 0, TimeUnit.MILLISECONDS);
+		assertThat(cm.getLeased(), is(0));
+		assertThat(cm.getAvailable(), is(1));
+
+		assertThat(cm.requestConnection(route, null).get(1, TimeUnit.SECONDS), sameInstance(first));
+
+		cm.shutdown();
+		assertThat(first.isOpen(), is(false));
+	}
+
+	@Test
+	public void testStalledRouteDoesNotBlockOtherRoutes() throws Exception {
+		VirtualThreadConnectionManager cm = new VirtualThreadConnectionManager(4, 2);
+		HttpRoute stalled = new HttpRoute(new HttpHost("stalled.example.com", 80));
+		HttpRoute healthy = new HttpRoute(new HttpHost(simulator.getHost(), simulator.getPort()));
+
+		// connections to the stalled route are never released
+		cm.requestConnection(stalled, null).get(1, TimeUnit.SECONDS);
+		cm.requestConnection(stalled, null).get(1, TimeUnit.SECONDS);
+		try {
+			cm.requestConnection(stalled, null).get(50, TimeUnit.MILLISECONDS);
+			fail("Expected the route to be exhausted");
+		} catch (ConnectionPoolTimeoutException e) {
+		}
+
+		HttpClientConnection first = cm.requestConnection(healthy, null).get(50, TimeUnit.MILLISECONDS);
+		HttpClientConnection second = cm.requestConnection(healthy, null).get(50, TimeUnit.MILLISECONDS);
+		assertThat(cm.getLeased(), is(4));
+
+		cm.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+		cm.releaseConnection(second, null, 0, TimeUnit.MILLISECONDS);
+		assertThat(cm.getLeased(), is(2));
+		cm.shutdown();
+	}
+}
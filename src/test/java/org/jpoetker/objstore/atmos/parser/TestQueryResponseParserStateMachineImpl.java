@@ -0,0 +1,91 @@
+package org.jpoetker.objstore.atmos.parser;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHeader;
+import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.QueryResults;
+import org.jpoetker.objstore.atmos.AtmosResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the state machine parser against the results of <code>QueryResponseParserStreamImpl</code>.
+ */
+public class TestQueryResponseParserStateMachineImpl {
+	private QueryResponseParser processor;
+	private QueryResponseParser reference;
+
+	@Before
+	public void setUp() throws Exception {
+		processor = new QueryResponseParserStateMachineImpl();
+		reference = new QueryResponseParserStreamImpl();
+	}
+
+	@Test
+	public void testParseObjectIdentifiers() throws Exception {
+		QueryResults<String> ids = processor.parseObjectIdentifiers(response(TestQueryResponseProcessorStreamImpl.objectResponseXML));
+		QueryResults<String> expected = reference.parseObjectIdentifiers(response(TestQueryResponseProcessorStreamImpl.objectResponseXML));
+
+		assertThat(ids.getContinuationToken(), is("tokenvalue"));
+		assertThat(new ArrayList<String>(ids.getResults()), is(new ArrayList<String>(expected.getResults())));
+	}
+
+	@Test
+	public void testParseObjectInfo() throws Exception {
+		QueryResults<ObjectInfo> objects = processor.parseObjectInfo(response(TestQueryResponseProcessorStreamImpl.objectResonpseWithMetadataXML));
+		QueryResults<ObjectInfo> expected = reference.parseObjectInfo(response(TestQueryResponseProcessorStreamImpl.objectResonpseWithMetadataXML));
+
+		assertThat(objects.getContinuationToken(), is("tokenvalue"));
+		assertThat(objects.getResults().size(), is(2));
+		Iterator<ObjectInfo> expectedObjects = expected.getResults().iterator();
+		for (ObjectInfo object : objects.getResults()) {
+			ObjectInfo expectedObject = expectedObjects.next();
+			assertThat(object.getId(), is(expectedObject.getId()));
+			assertThat(new ArrayList<Object>(object.getSystemMetadata()), is(new ArrayList<Object>(expectedObject.getSystemMetadata())));
+			assertThat(new ArrayList<Object>(object.getUserMetadata()), is(new ArrayList<Object>(expectedObject.getUserMetadata())));
+		}
+	}
+
+	@Test
+	public void testEmptyListingAndSplitText() throws Exception {
+		assertThat(processor.parseObjectInfo(response("<ListObjectsResponse xmlns='http://www.emc.com/cos/'/>")).getResults(), nullValue());
+
+		String xml = "<ListObjectsResponse xmlns='http://www.emc.com/cos/'><Object><ObjectID>abc</ObjectID>" +
+				"<UserMetadataList><Metadata><Name>a&amp;b</Name><Value>one<!-- split -->two</Value>" +
+				"<Listable>true</Listable></Metadata></UserMetadataList></Object></ListObjectsResponse>";
+		List<ObjectInfo> objects = new ArrayList<ObjectInfo>(processor.parseObjectInfo(response(xml)).getResults());
+
+		assertThat(objects.size(), is(1));
+		assertThat(objects.get(0).getId(), is("abc"));
+		assertThat(objects.get(0).getSystemMetadata(), nullValue());
+		assertThat(objects.get(0).getUserMetadata().iterator().next().getName(), is("a&b"));
+		assertThat(objects.get(0).getUserMetadata().iterator().next().getValue(), is("onetwo"));
+		assertThat(objects.get(0).getUserMetadata().iterator().next().isListable(), is(true));
+	}
+
+	private static AtmosResponse response(String xml) throws Exception {
+		StatusLine mock200 = mock(StatusLine.class);
+		when(mock200.getStatusCode()).thenReturn(200);
+		when(mock200.getReasonPhrase()).thenReturn("OK");
+
+		HttpEntity mockEntity = mock(HttpEntity.class);
+		when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+		HttpResponse mockHttpResponse = mock(HttpResponse.class);
+		when(mockHttpResponse.getStatusLine()).thenReturn(mock200);
+		when(mockHttpResponse.getEntity()).thenReturn(mockEntity);
+		when(mockHttpResponse.getFirstHeader("x-emc-token")).thenReturn(new BasicHeader("x-emc-token", "tokenvalue"));
+		return new AtmosResponse(mockHttpResponse);
+	}
+}
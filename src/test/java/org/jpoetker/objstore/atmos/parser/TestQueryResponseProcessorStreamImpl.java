@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -12,6 +14,8 @@ import org.apache.http.StatusLine;
 import org.apache.http.message.BasicHeader;
 
 import org.jpoetker.objstore.ObjectInfo;
+import org.jpoetker.objstore.ObjectInfoHandler;
+import org.jpoetker.objstore.ObjectStorageException;
 import org.jpoetker.objstore.QueryResults;
 import org.jpoetker.objstore.atmos.AtmosResponse;
 import org.junit.Before;
@@ -19,7 +23,7 @@ import org.junit.Test;
 
 
 public class TestQueryResponseProcessorStreamImpl {
-	private static final String objectResponseXML = "<?xml version='1.0' encoding='UTF-8'?>\n" + 
+	static final String objectResponseXML = "<?xml version='1.0' encoding='UTF-8'?>\n" + 
 	"<ListObjectsResponse xmlns='http://www.emc.com/cos/'>\n" + 
 	"	<Object>\n" + 
 	"		<ObjectID>4ee696e4a11f549804f0b909b09e0d04fa41c52938b1</ObjectID>\n" + 
@@ -41,7 +45,7 @@ public class TestQueryResponseProcessorStreamImpl {
 	"	</Object>\n" + 
 	"</ListObjectsResponse>";
 	
-	private static final String objectResonpseWithMetadataXML = "<?xml version='1.0' encoding='UTF-8'?>\n" + 
+	static final String objectResonpseWithMetadataXML = "<?xml version='1.0' encoding='UTF-8'?>\n" + 
 	"<ListObjectsResponse xmlns='http://www.emc.com/cos/'>\n" + 
 	"	<Object>\n" + 
 	"		<ObjectID>4ee696e4a11f549804f0b909b09e0d04fa41c52938b1</ObjectID>\n" + 
@@ -227,4 +231,50 @@ public class TestQueryResponseProcessorStreamImpl {
 		assertThat(first.getUserMetadata().size(), is(3));
 
 	}
+
+	@Test
+	public void testParseObjectInfoWithHandler() throws Exception {
+		HttpEntity mockEntity = mock(HttpEntity.class);
+		when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(objectResonpseWithMetadataXML.getBytes("UTF-8")));
+
+		when(mockHttpResponse.getEntity()).thenReturn(mockEntity);
+		when(mockHttpResponse.getFirstHeader("x-emc-token")).thenReturn(new BasicHeader("x-emc-token", "tokenvalue"));
+
+		final List<ObjectInfo> handled = new ArrayList<ObjectInfo>();
+		String token = processor.parseObjectInfo(new AtmosResponse(mockHttpResponse), new ObjectInfoHandler() {
+			@Override
+			public void handle(ObjectInfo info) {
+				handled.add(info);
+			}
+		});
+
+		assertThat(token, is("tokenvalue"));
+		assertThat(handled.size(), is(2));
+		assertThat(handled.get(0).getId(), is("4ee696e4a11f549804f0b909b09e0d04fa41c52938b1"));
+		assertThat(handled.get(0).getSystemMetadata().size(), is(11));
+		assertThat(handled.get(1).getId(), is("4ee696e4a11f549804f0b909b0abf204faa6a72a6873"));
+		assertThat(handled.get(1).getUserMetadata().size(), is(2));
+	}
+
+	@Test
+	public void testHandlerExceptionStopsParsing() throws Exception {
+		HttpEntity mockEntity = mock(HttpEntity.class);
+		when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(objectResonpseWithMetadataXML.getBytes("UTF-8")));
+		when(mockHttpResponse.getEntity()).thenReturn(mockEntity);
+
+		final List<ObjectInfo> handled = new ArrayList<ObjectInfo>();
+		try {
+			processor.parseObjectInfo(new AtmosResponse(mockHttpResponse), new ObjectInfoHandler() {
+				@Override
+				public void handle(ObjectInfo info) {
+					handled.add(info);
+					throw new ObjectStorageException("stop");
+				}
+			});
+			fail("The handler's exception should have been thrown");
+		} catch (ObjectStorageException e) {
+			assertThat(e.getMessage(), is("stop"));
+		}
+		assertThat(handled.size(), is(1));
+	}
 }
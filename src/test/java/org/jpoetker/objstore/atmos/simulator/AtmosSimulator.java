@@ -0,0 +1,795 @@
+package org.jpoetker.objstore.atmos.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server that speaks the subset of the Atmos REST API used by
+ * <code>AtmosObjectStore</code>.
+ *
+ * Supported are creating, updating (including ranged updates), reading (including ranged
+ * reads) and deleting objects, reading and writing user metadata, reading system
+ * metadata, and listing objects by tag with <code>x-emc-token</code> paging. Every
+ * request must carry a valid <code>x-emc-signature</code> for one of the users added
+ * with {@link #addUser(String, String)}, unless signature verification is turned off.
+ *
+ * Latency, bandwidth and an error rate can be injected to simulate a slow or unhealthy
+ * node. All state is kept in memory.
+ */
+public class AtmosSimulator {
+	private static final String CONTEXT_ROOT = "/rest";
+	private static final String OBJECTS_PATH = CONTEXT_ROOT + "/objects";
+	private static final String UTF_8 = "UTF-8";
+	private static final int DEFAULT_LIST_LIMIT = 5000;
+
+	private final ConcurrentMap<String, String> users = new ConcurrentHashMap<String, String>();
+	private final ConcurrentSkipListMap<String, StoredObject> objects = new ConcurrentSkipListMap<String, StoredObject>();
+	private final AtomicLong objectCounter = new AtomicLong();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong rejectedSignatures = new AtomicLong();
+	private final AtomicLong injectedErrors = new AtomicLong();
+	private final Random random = new Random();
+
+	private int port;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private volatile boolean verifySignatures = true;
+	private volatile long latencyMillis;
+	private volatile long latencyJitterMillis;
+	private volatile long bytesPerSecond;
+	private volatile double errorRate;
+
+	/**
+	 * Creates a simulator listening on an ephemeral port.
+	 */
+	public AtmosSimulator() {
+		this(0);
+	}
+
+	public AtmosSimulator(int port) {
+		super();
+		this.port = port;
+	}
+
+	public synchronized void start() throws IOException {
+		if (server != null) {
+			return;
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		server.createContext(OBJECTS_PATH, new ObjectsHandler());
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+		port = server.getAddress().getPort();
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+			executor = null;
+		}
+	}
+
+	public String getHost() {
+		return "127.0.0.1";
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Adds a user whose requests will be accepted.
+	 *
+	 * @param uid the value of the x-emc-uid header
+	 * @param sharedSecret the Base64 encoded shared secret used to sign requests
+	 */
+	public void addUser(String uid, String sharedSecret) {
+		users.put(uid, sharedSecret);
+	}
+
+	public void setVerifySignatures(boolean verifySignatures) {
+		this.verifySignatures = verifySignatures;
+	}
+
+	/**
+	 * Delays every response by the latency plus a uniformly distributed jitter.
+	 */
+	public void setLatency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = jitterMillis;
+	}
+
+	/**
+	 * Limits the rate at which each request and response body is transferred.
+	 *
+	 * @param bytesPerSecond the rate, or 0 for no limit
+	 */
+	public void setBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * Answers the given fraction of requests with a 500 response and Atmos error code 1001.
+	 *
+	 * @param errorRate between 0.0 and 1.0
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Seeds the random numbers behind injected errors, latency jitter and object ids, so
+	 * that a test injects the same errors on every run.
+	 */
+	public void setSeed(long seed) {
+		synchronized (random) {
+			random.setSeed(seed);
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getRejectedSignatureCount() {
+		return rejectedSignatures.get();
+	}
+
+	public long getInjectedErrorCount() {
+		return injectedErrors.get();
+	}
+
+	public int getObjectCount() {
+		return objects.size();
+	}
+
+	/**
+	 * @return a copy of the content of the object, or <code>null</code> if it does not exist
+	 */
+	public byte[] getObjectContent(String id) {
+		StoredObject object = objects.get(id);
+		return (object != null) ? object.read(0, object.size()) : null;
+	}
+
+	/**
+	 * Removes all objects.
+	 */
+	public void reset() {
+		objects.clear();
+	}
+
+	private class ObjectsHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			requestCount.incrementAndGet();
+			try {
+				if (!"POST".equals(exchange.getRequestMethod()) && !"PUT".equals(exchange.getRequestMethod())) {
+					discardRequestBody(exchange);
+				}
+				injectLatency();
+				if (shouldInjectError()) {
+					injectedErrors.incrementAndGet();
+					sendError(exchange, 500, 1001, "An internal error occurred.");
+				} else if (verifySignatures && !isSignatureValid(exchange)) {
+					rejectedSignatures.incrementAndGet();
+					sendError(exchange, 403, 1032, "There was a mismatch between the signature in the request and the signature computed by the server.");
+				} else {
+					route(exchange);
+				}
+			} catch (AtmosError e) {
+				sendError(exchange, e.httpCode, e.atmosCode, e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				sendError(exchange, 500, 1001, "An internal error occurred.");
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void route(HttpExchange exchange) throws IOException, InterruptedException {
+			String method = exchange.getRequestMethod();
+			String path = exchange.getRequestURI().getPath();
+			String query = exchange.getRequestURI().getRawQuery();
+
+			if (OBJECTS_PATH.equals(path) || (OBJECTS_PATH + "/").equals(path)) {
+				if ("POST".equals(method)) {
+					createObject(exchange);
+				} else if ("GET".equals(method)) {
+					listObjects(exchange);
+				} else {
+					throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+				}
+				return;
+			}
+
+			String id = path.substring(OBJECTS_PATH.length() + 1);
+			if ("metadata/user".equals(query)) {
+				if ("GET".equals(method)) {
+					getUserMetadata(exchange, id);
+				} else if ("POST".equals(method)) {
+					setUserMetadata(exchange, id);
+				} else {
+					throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+				}
+			} else if ("metadata/system".equals(query)) {
+				getSystemMetadata(exchange, id);
+			} else if (query != null) {
+				throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+			} else if ("GET".equals(method)) {
+				readObject(exchange, id);
+			} else if ("PUT".equals(method)) {
+				updateObject(exchange, id);
+			} else if ("DELETE".equals(method)) {
+				deleteObject(exchange, id);
+			} else {
+				throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+			}
+		}
+	}
+
+	private void createObject(HttpExchange exchange) throws IOException, InterruptedException {
+		byte[] content = readBody(exchange);
+		String id = newObjectId();
+
+		StoredObject object = new StoredObject(id, exchange.getRequestHeaders().getFirst("x-emc-uid"), content,
+				exchange.getRequestHeaders().getFirst("Content-Type"));
+		object.setMetadata(exchange.getRequestHeaders());
+		objects.put(id, object);
+
+		exchange.getResponseHeaders().add("Location", OBJECTS_PATH + "/" + id);
+		exchange.sendResponseHeaders(201, -1);
+	}
+
+	private void updateObject(HttpExchange exchange, String id) throws IOException, InterruptedException {
+		StoredObject object = getObject(id);
+		byte[] content = readBody(exchange);
+		String range = exchange.getRequestHeaders().getFirst("Range");
+
+		if (range != null) {
+			long[] bounds = parseRange(range, Long.MAX_VALUE);
+			if ((bounds[1] - bounds[0] + 1) != content.length) {
+				throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+			}
+			object.write(bounds[0], content);
+		} else {
+			object.replace(content);
+		}
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (contentType != null) {
+			object.contentType = contentType;
+		}
+		object.setMetadata(exchange.getRequestHeaders());
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	private void readObject(HttpExchange exchange, String id) throws IOException, InterruptedException {
+		StoredObject object = getObject(id);
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		long size = object.size();
+
+		Headers responseHeaders = exchange.getResponseHeaders();
+		responseHeaders.add("Content-Type", object.contentType);
+		addMetadataHeaders(responseHeaders, object, null);
+
+		if (range != null) {
+			long[] bounds = parseRange(range, size);
+			if ((bounds[0] >= size) || (bounds[0] > bounds[1])) {
+				throw new AtmosError(416, 1004, "The specified range cannot be satisfied.");
+			}
+			long end = Math.min(bounds[1], size - 1);
+			byte[] content = object.read(bounds[0], (int) (end - bounds[0] + 1));
+			responseHeaders.add("Content-Range", "bytes " + bounds[0] + "-" + end + "/" + size);
+			sendBody(exchange, 206, content);
+		} else {
+			sendBody(exchange, 200, object.read(0, (int) size));
+		}
+	}
+
+	private void deleteObject(HttpExchange exchange, String id) throws IOException {
+		if (objects.remove(id) == null) {
+			throw objectNotFound();
+		}
+		exchange.sendResponseHeaders(204, -1);
+	}
+
+	private void getUserMetadata(HttpExchange exchange, String id) throws IOException {
+		StoredObject object = getObject(id);
+		addMetadataHeaders(exchange.getResponseHeaders(), object, exchange.getRequestHeaders().getFirst("x-emc-tags"));
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	private void setUserMetadata(HttpExchange exchange, String id) throws IOException, InterruptedException {
+		StoredObject object = getObject(id);
+		readBody(exchange);
+		object.setMetadata(exchange.getRequestHeaders());
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	private void getSystemMetadata(HttpExchange exchange, String id) throws IOException {
+		StoredObject object = getObject(id);
+		String tags = exchange.getRequestHeaders().getFirst("x-emc-tags");
+		String header = encodeMetadata(filter(object.systemMetadata(), tags));
+		if (header.length() > 0) {
+			exchange.getResponseHeaders().add("x-emc-meta", header);
+		}
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	private void listObjects(HttpExchange exchange) throws IOException, InterruptedException {
+		Headers request = exchange.getRequestHeaders();
+		String tag = request.getFirst("x-emc-tags");
+		if ((tag == null) || (tag.trim().length() == 0)) {
+			throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+		}
+		tag = tag.trim();
+		int limit = (request.getFirst("x-emc-limit") != null) ? Integer.parseInt(request.getFirst("x-emc-limit").trim()) : 0;
+		limit = (limit > 0) ? limit : DEFAULT_LIST_LIMIT;
+		String token = request.getFirst("x-emc-token");
+		boolean includeMeta = "1".equals(request.getFirst("x-emc-include-meta"));
+		String userTags = request.getFirst("x-emc-user-tags");
+		String systemTags = request.getFirst("x-emc-system-tags");
+
+		SortedMap<String, StoredObject> candidates = (token != null) ? objects.tailMap(token) : objects;
+		List<StoredObject> page = new ArrayList<StoredObject>();
+		String nextToken = null;
+		for (StoredObject object : candidates.values()) {
+			if (object.isListableUnder(tag)) {
+				if (page.size() == limit) {
+					nextToken = object.id;
+					break;
+				}
+				page.add(object);
+			}
+		}
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+		xml.append("<ListObjectsResponse xmlns='http://www.emc.com/cos/'>\n");
+		for (StoredObject object : page) {
+			xml.append("\t<Object>\n");
+			xml.append("\t\t<ObjectID>").append(object.id).append("</ObjectID>\n");
+			if (includeMeta) {
+				xml.append("\t\t<SystemMetadataList>\n");
+				for (Map.Entry<String, String> meta : filter(object.systemMetadata(), systemTags).entrySet()) {
+					appendMetadata(xml, meta.getKey(), meta.getValue(), null);
+				}
+				xml.append("\t\t</SystemMetadataList>\n");
+				xml.append("\t\t<UserMetadataList>\n");
+				for (Map.Entry<String, String> meta : filter(object.userMetadata(), userTags).entrySet()) {
+					appendMetadata(xml, meta.getKey(), meta.getValue(), Boolean.valueOf(object.isListable(meta.getKey())));
+				}
+				xml.append("\t\t</UserMetadataList>\n");
+			}
+			xml.append("\t</Object>\n");
+		}
+		xml.append("</ListObjectsResponse>");
+
+		if (nextToken != null) {
+			exchange.getResponseHeaders().add("x-emc-token", nextToken);
+		}
+		exchange.getResponseHeaders().add("Content-Type", "text/xml");
+		sendBody(exchange, 200, xml.toString().getBytes(UTF_8));
+	}
+
+	private StoredObject getObject(String id) {
+		StoredObject object = objects.get(id);
+		if (object == null) {
+			throw objectNotFound();
+		}
+		return object;
+	}
+
+	private static AtmosError objectNotFound() {
+		return new AtmosError(404, 1003, "The requested object was not found.");
+	}
+
+	private void addMetadataHeaders(Headers headers, StoredObject object, String tags) {
+		Map<String, String> metadata = filter(object.userMetadata(), tags);
+		Map<String, String> listable = new LinkedHashMap<String, String>();
+		Map<String, String> nonListable = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> meta : metadata.entrySet()) {
+			(object.isListable(meta.getKey()) ? listable : nonListable).put(meta.getKey(), meta.getValue());
+		}
+		if (!nonListable.isEmpty()) {
+			headers.add("x-emc-meta", encodeMetadata(nonListable));
+		}
+		if (!listable.isEmpty()) {
+			headers.add("x-emc-listable-meta", encodeMetadata(listable));
+		}
+	}
+
+	private static Map<String, String> filter(Map<String, String> metadata, String tags) {
+		if ((tags == null) || (tags.trim().length() == 0)) {
+			return metadata;
+		}
+		Map<String, String> filtered = new LinkedHashMap<String, String>();
+		for (String tag : tags.split(",")) {
+			String value = metadata.get(tag.trim());
+			if (value != null) {
+				filtered.put(tag.trim(), value);
+			}
+		}
+		return filtered;
+	}
+
+	private static String encodeMetadata(Map<String, String> metadata) {
+		StringBuilder buff = new StringBuilder();
+		for (Map.Entry<String, String> meta : metadata.entrySet()) {
+			if (buff.length() > 0) {
+				buff.append(", ");
+			}
+			buff.append(meta.getKey()).append('=').append(meta.getValue());
+		}
+		return buff.toString();
+	}
+
+	private static void appendMetadata(StringBuilder xml, String name, String value, Boolean listable) {
+		xml.append("\t\t\t<Metadata>\n");
+		xml.append("\t\t\t\t<Name>").append(escape(name)).append("</Name>\n");
+		xml.append("\t\t\t\t<Value>").append(escape(value)).append("</Value>\n");
+		if (listable != null) {
+			xml.append("\t\t\t\t<Listable>").append(listable).append("</Listable>\n");
+		}
+		xml.append("\t\t\t</Metadata>\n");
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	/**
+	 * Parses "Bytes=first-last", "Bytes=first-" or "Bytes=-suffix" into an inclusive range.
+	 */
+	private static long[] parseRange(String range, long size) {
+		String value = range.trim();
+		int eq = value.indexOf('=');
+		if ((eq < 0) || !value.substring(0, eq).trim().equalsIgnoreCase("bytes")) {
+			throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+		}
+		String spec = value.substring(eq + 1).trim();
+		int dash = spec.indexOf('-');
+		if ((dash < 0) || (spec.indexOf(',') >= 0)) {
+			throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+		}
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			if (first.length() == 0) {
+				long suffix = Long.parseLong(last);
+				return new long[] {Math.max(0, size - suffix), size - 1};
+			}
+			long start = Long.parseLong(first);
+			long end = (last.length() == 0) ? size - 1 : Long.parseLong(last);
+			return new long[] {start, end};
+		} catch (NumberFormatException e) {
+			throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+		}
+	}
+
+	private boolean isSignatureValid(HttpExchange exchange) {
+		Headers headers = exchange.getRequestHeaders();
+		String uid = headers.getFirst("x-emc-uid");
+		String signature = headers.getFirst("x-emc-signature");
+		String secret = (uid != null) ? users.get(uid) : null;
+		if ((secret == null) || (signature == null)) {
+			return false;
+		}
+		try {
+			return signature.equals(sign(secret, canonicalize(exchange)));
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the string to sign as described in the Atmos Programmer's Guide.
+	 */
+	private static String canonicalize(HttpExchange exchange) throws UnsupportedEncodingException {
+		Headers headers = exchange.getRequestHeaders();
+		StringBuilder buff = new StringBuilder();
+		buff.append(exchange.getRequestMethod()).append('\n');
+		String contentType = headers.getFirst("Content-Type");
+		if (contentType != null) {
+			buff.append(contentType.toLowerCase(Locale.ENGLISH));
+		}
+		buff.append('\n');
+		String range = headers.getFirst("Range");
+		if (range == null) {
+			range = headers.getFirst("Content-Range");
+		}
+		if (range != null) {
+			buff.append(range);
+		}
+		buff.append('\n');
+		String date = headers.getFirst("Date");
+		if (date != null) {
+			buff.append(date);
+		}
+		buff.append('\n');
+		buff.append(URLDecoder.decode(exchange.getRequestURI().getRawPath(), UTF_8).toLowerCase(Locale.ENGLISH));
+		if (exchange.getRequestURI().getRawQuery() != null) {
+			buff.append('?').append(exchange.getRequestURI().getRawQuery());
+		}
+		buff.append('\n');
+
+		SortedMap<String, String> emcHeaders = new TreeMap<String, String>();
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			String name = header.getKey().toLowerCase(Locale.ENGLISH);
+			if (name.startsWith("x-emc") && !name.equals("x-emc-signature")) {
+				StringBuilder value = new StringBuilder();
+				for (String v : header.getValue()) {
+					if (value.length() > 0) {
+						value.append(',');
+					}
+					value.append(v);
+				}
+				emcHeaders.put(name, value.toString().replace("\n", "").replaceAll(" +", " ").trim());
+			}
+		}
+		boolean first = true;
+		for (Map.Entry<String, String> header : emcHeaders.entrySet()) {
+			if (!first) {
+				buff.append('\n');
+			}
+			first = false;
+			buff.append(header.getKey()).append(':').append(header.getValue());
+		}
+		return buff.toString();
+	}
+
+	private static String sign(String secret, String canonical)
+			throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException {
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(Base64.decodeBase64(secret.getBytes(UTF_8)), "HmacSHA1"));
+		return new String(Base64.encodeBase64(mac.doFinal(canonical.getBytes(UTF_8))), UTF_8);
+	}
+
+	private void injectLatency() throws InterruptedException {
+		long delay = latencyMillis;
+		if (latencyJitterMillis > 0) {
+			synchronized (random) {
+				delay += (long) (random.nextDouble() * latencyJitterMillis);
+			}
+		}
+		if (delay > 0) {
+			Thread.sleep(delay);
+		}
+	}
+
+	private boolean shouldInjectError() {
+		if (errorRate <= 0) {
+			return false;
+		}
+		synchronized (random) {
+			return random.nextDouble() < errorRate;
+		}
+	}
+
+	private String newObjectId() {
+		long sequence = objectCounter.incrementAndGet();
+		long high;
+		synchronized (random) {
+			high = random.nextLong();
+		}
+		return String.format("%016x%016x%012x", high, System.nanoTime(), sequence);
+	}
+
+	private byte[] readBody(HttpExchange exchange) throws IOException, InterruptedException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		long started = System.nanoTime();
+		long transferred = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+			transferred += read;
+			throttle(started, transferred);
+		}
+		return body.toByteArray();
+	}
+
+	private void sendBody(HttpExchange exchange, int status, byte[] content) throws IOException, InterruptedException {
+		exchange.sendResponseHeaders(status, (content.length > 0) ? content.length : -1);
+		if (content.length == 0) {
+			return;
+		}
+		OutputStream out = exchange.getResponseBody();
+		long started = System.nanoTime();
+		int offset = 0;
+		while (offset < content.length) {
+			int length = Math.min(8192, content.length - offset);
+			out.write(content, offset, length);
+			offset += length;
+			throttle(started, offset);
+		}
+		out.close();
+	}
+
+	private void throttle(long started, long transferred) throws InterruptedException {
+		long rate = bytesPerSecond;
+		if (rate > 0) {
+			long expectedNanos = (transferred * 1000000000L) / rate;
+			long aheadNanos = expectedNanos - (System.nanoTime() - started);
+			if (aheadNanos > 0) {
+				Thread.sleep(aheadNanos / 1000000L, (int) (aheadNanos % 1000000L));
+			}
+		}
+	}
+
+	/**
+	 * The JDK server closes a connection when the request body was not read to the end, 
+	 * even if there is no body, so it is always drained before responding.
+	 */
+	private static void discardRequestBody(HttpExchange exchange) throws IOException {
+		exchange.getRequestBody().close();
+	}
+
+	private void sendError(HttpExchange exchange, int httpCode, int atmosCode, String message) throws IOException {
+		byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Error>\n\t<Code>" + atmosCode
+				+ "</Code>\n\t<Message>" + message + "</Message>\n</Error>").getBytes(UTF_8);
+		try {
+			discardRequestBody(exchange);
+			exchange.getResponseHeaders().add("Content-Type", "text/xml");
+			exchange.sendResponseHeaders(httpCode, body.length);
+			exchange.getResponseBody().write(body);
+		} catch (IOException e) {
+			// the response may already have been started
+		}
+	}
+
+	private static class AtmosError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int httpCode;
+		final int atmosCode;
+
+		AtmosError(int httpCode, int atmosCode, String message) {
+			super(message);
+			this.httpCode = httpCode;
+			this.atmosCode = atmosCode;
+		}
+	}
+
+	private static class StoredObject {
+		private static final ThreadLocal<SimpleDateFormat> ISO_8601 = new ThreadLocal<SimpleDateFormat>() {
+			@Override
+			protected SimpleDateFormat initialValue() {
+				SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+				format.setTimeZone(TimeZone.getTimeZone("UTC"));
+				return format;
+			}
+		};
+
+		final String id;
+		final String uid;
+		final long ctime;
+		volatile String contentType;
+		private byte[] content;
+		private long mtime;
+		private final Map<String, String> metadata = new LinkedHashMap<String, String>();
+		private final Map<String, Boolean> listable = new LinkedHashMap<String, Boolean>();
+
+		StoredObject(String id, String uid, byte[] content, String contentType) {
+			this.id = id;
+			this.uid = uid;
+			this.content = content;
+			this.contentType = (contentType != null) ? contentType : "application/octet-stream";
+			this.ctime = System.currentTimeMillis();
+			this.mtime = ctime;
+		}
+
+		synchronized long size() {
+			return content.length;
+		}
+
+		synchronized byte[] read(long offset, long length) {
+			byte[] copy = new byte[(int) length];
+			System.arraycopy(content, (int) offset, copy, 0, (int) length);
+			return copy;
+		}
+
+		synchronized void replace(byte[] content) {
+			this.content = content;
+			this.mtime = System.currentTimeMillis();
+		}
+
+		synchronized void write(long offset, byte[] data) {
+			long end = offset + data.length;
+			if (end > content.length) {
+				byte[] grown = new byte[(int) end];
+				System.arraycopy(content, 0, grown, 0, content.length);
+				content = grown;
+			}
+			System.arraycopy(data, 0, content, (int) offset, data.length);
+			this.mtime = System.currentTimeMillis();
+		}
+
+		synchronized void setMetadata(Headers headers) {
+			putMetadata(headers.getFirst("x-emc-meta"), false);
+			putMetadata(headers.getFirst("x-emc-listable-meta"), true);
+		}
+
+		private void putMetadata(String header, boolean isListable) {
+			if ((header == null) || (header.trim().length() == 0)) {
+				return;
+			}
+			for (String pair : header.split(",")) {
+				int eq = pair.indexOf('=');
+				if (eq < 0) {
+					throw new AtmosError(400, 1002, "One or more arguments in the request was invalid.");
+				}
+				String name = pair.substring(0, eq).trim();
+				metadata.put(name, pair.substring(eq + 1).trim());
+				listable.put(name, Boolean.valueOf(isListable));
+			}
+		}
+
+		synchronized Map<String, String> userMetadata() {
+			return new LinkedHashMap<String, String>(metadata);
+		}
+
+		synchronized boolean isListable(String name) {
+			return Boolean.TRUE.equals(listable.get(name));
+		}
+
+		synchronized boolean isListableUnder(String tag) {
+			return Boolean.TRUE.equals(listable.get(tag));
+		}
+
+		synchronized Map<String, String> systemMetadata() {
+			Map<String, String> system = new LinkedHashMap<String, String>();
+			String modified = ISO_8601.get().format(new Date(mtime));
+			system.put("atime", modified);
+			system.put("mtime", modified);
+			system.put("ctime", modified);
+			system.put("itime", ISO_8601.get().format(new Date(ctime)));
+			system.put("type", "regular");
+			system.put("uid", (uid != null) ? uid : "");
+			system.put("gid", "apache");
+			system.put("objectid", id);
+			system.put("objname", "");
+			system.put("size", Long.toString(content.length));
+			system.put("nlink", "0");
+			system.put("policyname", "default");
+			return system;
+		}
+	}
+}